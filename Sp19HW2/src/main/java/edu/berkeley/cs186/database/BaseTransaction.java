@@ -38,6 +38,16 @@ public abstract class BaseTransaction implements AutoCloseable {
     public abstract void createTableWithIndices(Schema s, String tableName,
                                 List<String> indexColumns) throws DatabaseException;
 
+    /**
+     * Create an index on the given columns of an existing table. An index on more
+     * than one column is a composite index keyed by a tuple of the column values.
+     *
+     * @param tableName the name of the table
+     * @param columnNames the list of unique columnNames to maintain an index on
+     * @throws DatabaseException
+     */
+    public abstract void createIndex(String tableName, List<String> columnNames) throws DatabaseException;
+
     /**
      * Delete a table in this database.
      *
@@ -97,11 +107,68 @@ public abstract class BaseTransaction implements AutoCloseable {
      */
     public abstract boolean indexExists(String tableName, String columnName);
 
+    /**
+     * Perform a check to see if the database has an index on exactly these
+     * columns of this table, in this order.
+     *
+     * @param tableName the name of the table
+     * @param columnNames the names of the indexed columns
+     * @return boolean if the index exists
+     */
+    public abstract boolean indexExists(String tableName, List<String> columnNames);
+
+    /**
+     * Returns the columns of every index on this table. A single column index is
+     * a list of one column.
+     *
+     * @param tableName the name of the table
+     * @return the list of indexed columns of each index on the table
+     */
+    public abstract List<List<String>> getIndexColumns(String tableName);
+
     public abstract Iterator<Record> sortedScan(String tableName, String columnName) throws DatabaseException;
 
     public abstract Iterator<Record> sortedScanFrom(String tableName, String columnName,
                                     DataBox startValue) throws DatabaseException;
 
+    /**
+     * Scan the records of a table in ascending order of an index key, between
+     * the given bounds. A null bound leaves that end of the range open, and a
+     * bound on a composite index may be a tuple over a leading prefix of its
+     * columns. See BPlusTree#scanRange.
+     *
+     * @param tableName the name of the table
+     * @param columnNames the names of the indexed columns
+     * @return an iterator over the records in the range
+     * @throws DatabaseException if there is no index on the columns
+     */
+    public abstract Iterator<Record> sortedScanRange(String tableName, List<String> columnNames,
+            DataBox low, boolean lowInclusive,
+            DataBox high, boolean highInclusive) throws DatabaseException;
+
+    /**
+     * sortedScanRange in descending order of the index key.
+     */
+    public abstract Iterator<Record> sortedScanRangeDescending(String tableName, List<String> columnNames,
+            DataBox low, boolean lowInclusive,
+            DataBox high, boolean highInclusive) throws DatabaseException;
+
+    /**
+     * sortedScanRange, except that the records are read from the index alone
+     * and hold only the values of the indexed columns, in index column order.
+     */
+    public abstract Iterator<Record> scanIndexKeys(String tableName, List<String> columnNames,
+            DataBox low, boolean lowInclusive,
+            DataBox high, boolean highInclusive) throws DatabaseException;
+
+    /**
+     * sortedScanRange, except that the records come in record id order rather
+     * than in key order, so that each page of the table is read only once.
+     */
+    public abstract Iterator<Record> scanRangeInPageOrder(String tableName, List<String> columnNames,
+            DataBox low, boolean lowInclusive,
+            DataBox high, boolean highInclusive) throws DatabaseException;
+
     public abstract Iterator<Record> lookupKey(String tableName, String columnName,
                                DataBox key) throws DatabaseException;
 
@@ -150,6 +217,8 @@ public abstract class BaseTransaction implements AutoCloseable {
 
     public abstract int getNumIndexPages(String tableName, String columnName) throws DatabaseException;
 
+    public abstract int getNumIndexPages(String tableName, List<String> columnNames) throws DatabaseException;
+
     public abstract Schema getSchema(String tableName) throws DatabaseException;
 
     public abstract Schema getFullyQualifiedSchema(String tableName) throws DatabaseException;
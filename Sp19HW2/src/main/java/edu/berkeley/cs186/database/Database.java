@@ -12,6 +12,7 @@ import edu.berkeley.cs186.database.common.BacktrackingIterator;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.concurrency.*;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.TupleDataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.index.BPlusTree;
 import edu.berkeley.cs186.database.index.BPlusTreeException;
@@ -233,7 +234,6 @@ public class Database {
             LockContext tableContext = getTableContext(tableName);
 
             List<String> schemaColNames = s.getFieldNames();
-            List<Type> schemaColType = s.getFieldTypes();
 
             HashSet<String> seenColNames = new HashSet<String>();
             List<Integer> schemaColIndex = new ArrayList<Integer>();
@@ -258,21 +258,83 @@ public class Database {
                                           this));
             Database.this.tableIndices.put(tableName, new ArrayList<>());
             for (int i : schemaColIndex) {
-                String colName = schemaColNames.get(i);
-                Type colType = schemaColType.get(i);
-                String indexName = tableName + "," + colName;
-                Path p = Paths.get(Database.this.fileDir, indexName + BPlusTree.FILENAME_EXTENSION);
-                LockContext indexContext = getIndexContext(indexName);
+                addIndex(tableName, s, Collections.singletonList(schemaColNames.get(i)));
+            }
+        }
+
+        /**
+         * Create an index on the given columns of an existing table. An index on
+         * more than one column is a composite index: its keys are TupleDataBoxes
+         * of the column values in the order the columns are given, so it can also
+         * serve lookups and range scans on any leading prefix of those columns.
+         * Records already in the table are added to the new index.
+         *
+         * @param tableName the name of the table
+         * @param columnNames the list of unique columnNames to maintain an index on
+         * @throws DatabaseException
+         */
+        public void createIndex(String tableName, List<String> columnNames) throws DatabaseException {
+            if (this.tempTables.containsKey(tableName)) {
+                throw new DatabaseException("Cannot index a temporary table");
+            }
+            while (aliasMaps.containsKey(tableName)) {
+                tableName = aliasMaps.get(tableName);
+            }
+            Table tab = getTable(tableName);
+            Schema s = tab.getSchema();
+
+            if (columnNames.isEmpty()) {
+                throw new DatabaseException("Cannot create an index on no columns");
+            }
+            HashSet<String> seenColNames = new HashSet<String>();
+            for (String col : columnNames) {
+                if (!s.getFieldNames().contains(col)) {
+                    throw new DatabaseException("Column desired for index does not exist");
+                }
+                if (seenColNames.contains(col)) {
+                    throw new DatabaseException("Column desired for index has been duplicated");
+                }
+                seenColNames.add(col);
+            }
+            if (indexExists(tableName, columnNames)) {
+                throw new DatabaseException("Index already exists");
+            }
+
+            BPlusTree tree = addIndex(tableName, s, columnNames);
+            Iterator<RecordId> recordIds = tab.ridIterator(this);
+            while (recordIds.hasNext()) {
+                RecordId rid = recordIds.next();
+                List<DataBox> values = tab.getRecord(this, rid).getValues();
                 try {
-                    Database.this.indexLookup.put(indexName, new BPlusTree(p.toString(), colType,
-                                                  BPlusTree.maxOrder(Page.pageSize, colType), indexContext, this));
-                    Database.this.tableIndices.get(tableName).add(indexName);
+                    tree.put(this, indexKey(s, columnNames, values), rid);
                 } catch (BPlusTreeException e) {
                     throw new DatabaseException(e.getMessage());
                 }
             }
         }
 
+        private BPlusTree addIndex(String tableName, Schema s,
+                                   List<String> columnNames) throws DatabaseException {
+            List<Type> colTypes = new ArrayList<>();
+            for (String col : columnNames) {
+                colTypes.add(s.getFieldTypes().get(s.getFieldNames().indexOf(col)));
+            }
+            Type keyType = colTypes.size() == 1 ? colTypes.get(0) : Type.tupleType(colTypes);
+
+            String indexName = tableName + "," + String.join(",", columnNames);
+            Path p = Paths.get(Database.this.fileDir, indexName + BPlusTree.FILENAME_EXTENSION);
+            LockContext indexContext = getIndexContext(indexName);
+            try {
+                BPlusTree tree = new BPlusTree(p.toString(), keyType,
+                                               BPlusTree.maxOrder(Page.pageSize, keyType), indexContext, this);
+                Database.this.indexLookup.put(indexName, tree);
+                Database.this.tableIndices.get(tableName).add(indexName);
+                return tree;
+            } catch (BPlusTreeException e) {
+                throw new DatabaseException(e.getMessage());
+            }
+        }
+
         /**
          * Delete a table in this database.
          *
@@ -376,6 +438,30 @@ public class Database {
             return true;
         }
 
+        public boolean indexExists(String tableName, List<String> columnNames) {
+            try {
+                resolveIndexFromName(tableName, columnNames);
+            } catch (DatabaseException e) {
+                return false;
+            }
+            return true;
+        }
+
+        public List<List<String>> getIndexColumns(String tableName) {
+            while (aliasMaps.containsKey(tableName)) {
+                tableName = aliasMaps.get(tableName);
+            }
+            List<List<String>> indexColumns = new ArrayList<>();
+            if (this.tempTables.containsKey(tableName) || !Database.this.tableIndices.containsKey(tableName)) {
+                return indexColumns;
+            }
+            for (String indexName : Database.this.tableIndices.get(tableName)) {
+                List<String> names = Arrays.asList(indexName.split(","));
+                indexColumns.add(names.subList(1, names.size()));
+            }
+            return indexColumns;
+        }
+
         public Iterator<Record> sortedScan(String tableName, String columnName) throws DatabaseException {
             Table tab = getTable(tableName);
             try {
@@ -399,6 +485,83 @@ public class Database {
             return new RecordIterator(this, tab, index.getSecond().scanGreaterEqual(this, startValue));
         }
 
+        public Iterator<Record> sortedScanRange(String tableName, List<String> columnNames,
+                                                DataBox low, boolean lowInclusive,
+                                                DataBox high, boolean highInclusive) throws DatabaseException {
+            Table tab = getTable(tableName);
+            Pair<String, BPlusTree> index = resolveIndexFromName(tableName, columnNames);
+            return new RecordIterator(this, tab, index.getSecond().scanRange(this, low, lowInclusive,
+                                      high, highInclusive));
+        }
+
+        public Iterator<Record> sortedScanRangeDescending(String tableName, List<String> columnNames,
+                DataBox low, boolean lowInclusive,
+                DataBox high, boolean highInclusive) throws DatabaseException {
+            Table tab = getTable(tableName);
+            Pair<String, BPlusTree> index = resolveIndexFromName(tableName, columnNames);
+            return new RecordIterator(this, tab, index.getSecond().scanRangeDescending(this, low,
+                                      lowInclusive, high, highInclusive));
+        }
+
+        public Iterator<Record> scanIndexKeys(String tableName, List<String> columnNames,
+                                              DataBox low, boolean lowInclusive,
+                                              DataBox high, boolean highInclusive) throws DatabaseException {
+            Pair<String, BPlusTree> index = resolveIndexFromName(tableName, columnNames);
+            Iterator<DataBox> keys = index.getSecond().scanRangeKeys(this, low, lowInclusive, high,
+                                     highInclusive);
+            return new Iterator<Record>() {
+                public boolean hasNext() {
+                    return keys.hasNext();
+                }
+
+                public Record next() {
+                    DataBox key = keys.next();
+                    return new Record(columnNames.size() == 1 ? Collections.singletonList(key) : key.getValues());
+                }
+            };
+        }
+
+        public Iterator<Record> scanRangeInPageOrder(String tableName, List<String> columnNames,
+                DataBox low, boolean lowInclusive,
+                DataBox high, boolean highInclusive) throws DatabaseException {
+            Table tab = getTable(tableName);
+            Pair<String, BPlusTree> index = resolveIndexFromName(tableName, columnNames);
+            Iterator<RecordId> rids = index.getSecond().scanRange(this, low, lowInclusive, high,
+                                      highInclusive);
+
+            // Gather the matching entries of each page into a bitmap first, so
+            // that the pages are read in order and each of them only once.
+            SortedMap<Integer, BitSet> pages = new TreeMap<>();
+            while (rids.hasNext()) {
+                RecordId rid = rids.next();
+                pages.computeIfAbsent(rid.getPageNum(), p -> new BitSet()).set(rid.getEntryNum());
+            }
+
+            Iterator<Map.Entry<Integer, BitSet>> pageIter = pages.entrySet().iterator();
+            return new Iterator<Record>() {
+                private Iterator<Record> records = Collections.emptyIterator();
+
+                public boolean hasNext() {
+                    while (!records.hasNext() && pageIter.hasNext()) {
+                        Map.Entry<Integer, BitSet> page = pageIter.next();
+                        try {
+                            records = tab.getRecords(Transaction.this, page.getKey(), page.getValue()).iterator();
+                        } catch (DatabaseException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                    return records.hasNext();
+                }
+
+                public Record next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return records.next();
+                }
+            };
+        }
+
         public Iterator<Record> lookupKey(String tableName, String columnName,
                                           DataBox key) throws DatabaseException {
             Table tab = getTable(tableName);
@@ -417,16 +580,13 @@ public class Database {
             Table tab = getTable(tableName);
             RecordId rid = tab.addRecord(this, values);
             Schema s = tab.getSchema();
-            List<String> colNames = s.getFieldNames();
-
-            for (int i = 0; i < colNames.size(); i++) {
-                String col = colNames.get(i);
-                if (indexExists(tableName, col)) {
-                    try {
-                        resolveIndexFromName(tableName, col).getSecond().put(this, values.get(i), rid);
-                    } catch (BPlusTreeException e) {
-                        throw new DatabaseException(e.getMessage());
-                    }
+
+            for (List<String> indexColumns : getIndexColumns(tableName)) {
+                try {
+                    resolveIndexFromName(tableName, indexColumns).getSecond().put(this,
+                            indexKey(s, indexColumns, values), rid);
+                } catch (BPlusTreeException e) {
+                    throw new DatabaseException(e.getMessage());
                 }
             }
             return rid;
@@ -445,12 +605,9 @@ public class Database {
 
             Record rec = tab.deleteRecord(this, rid);
             List<DataBox> values = rec.getValues();
-            List<String> colNames = s.getFieldNames();
-            for (int i = 0; i < colNames.size(); i++) {
-                String col = colNames.get(i);
-                if (indexExists(tableName, col)) {
-                    resolveIndexFromName(tableName, col).getSecond().remove(this, values.get(i));
-                }
+            for (List<String> indexColumns : getIndexColumns(tableName)) {
+                resolveIndexFromName(tableName, indexColumns).getSecond().remove(this,
+                        indexKey(s, indexColumns, values));
             }
 
             return rid;
@@ -525,18 +682,14 @@ public class Database {
             Record rec = tab.updateRecord(this, values, rid);
 
             List<DataBox> oldValues = rec.getValues();
-            List<String> colNames = s.getFieldNames();
-
-            for (int i = 0; i < colNames.size(); i++) {
-                String col = colNames.get(i);
-                if (indexExists(tableName, col)) {
-                    BPlusTree tree = resolveIndexFromName(tableName, col).getSecond();
-                    tree.remove(this, oldValues.get(i));
-                    try {
-                        tree.put(this, values.get(i), rid);
-                    } catch (BPlusTreeException e) {
-                        throw new DatabaseException(e.getMessage());
-                    }
+
+            for (List<String> indexColumns : getIndexColumns(tableName)) {
+                BPlusTree tree = resolveIndexFromName(tableName, indexColumns).getSecond();
+                tree.remove(this, indexKey(s, indexColumns, oldValues));
+                try {
+                    tree.put(this, indexKey(s, indexColumns, values), rid);
+                } catch (BPlusTreeException e) {
+                    throw new DatabaseException(e.getMessage());
                 }
             }
 
@@ -583,6 +736,11 @@ public class Database {
             return this.resolveIndexFromName(tableName, columnName).getSecond().getNumPages();
         }
 
+        public int getNumIndexPages(String tableName, List<String> columnNames) throws DatabaseException {
+            assert(this.active);
+            return this.resolveIndexFromName(tableName, columnNames).getSecond().getNumPages();
+        }
+
         public Schema getSchema(String tableName) throws DatabaseException {
             assert(this.active);
             return getTable(tableName).getSchema();
@@ -602,26 +760,48 @@ public class Database {
 
         private Pair<String, BPlusTree> resolveIndexFromName(String tableName,
                 String columnName) throws DatabaseException {
+            return resolveIndexFromName(tableName, Collections.singletonList(columnName));
+        }
+
+        private Pair<String, BPlusTree> resolveIndexFromName(String tableName,
+                List<String> columnNames) throws DatabaseException {
             while (aliasMaps.containsKey(tableName)) {
                 tableName = aliasMaps.get(tableName);
             }
-            if (columnName.contains(".")) {
-                String columnPrefix = columnName.split("\\.")[0];
-                while (aliasMaps.containsKey(columnPrefix)) {
-                    columnPrefix = aliasMaps.get(columnPrefix);
-                }
-                if (!tableName.equals(columnPrefix)) {
-                    throw new DatabaseException("Column: " + columnName + " is not a column of " + tableName);
+            List<String> unqualifiedNames = new ArrayList<>();
+            for (String columnName : columnNames) {
+                if (columnName.contains(".")) {
+                    String columnPrefix = columnName.split("\\.")[0];
+                    while (aliasMaps.containsKey(columnPrefix)) {
+                        columnPrefix = aliasMaps.get(columnPrefix);
+                    }
+                    if (!tableName.equals(columnPrefix)) {
+                        throw new DatabaseException("Column: " + columnName + " is not a column of " + tableName);
+                    }
+                    columnName = columnName.split("\\.")[1];
                 }
-                columnName = columnName.split("\\.")[1];
+                unqualifiedNames.add(columnName);
             }
-            String indexName = tableName + "," + columnName;
+            String indexName = tableName + "," + String.join(",", unqualifiedNames);
             if (Database.this.indexLookup.containsKey(indexName)) {
                 return new Pair<>(indexName, Database.this.indexLookup.get(indexName));
             }
             throw new DatabaseException("Index does not exist");
         }
 
+        /**
+         * Returns the key under which a record with the given values is stored in
+         * the index on the given columns: the column value itself for a single
+         * column index, and a tuple of the column values for a composite index.
+         */
+        private DataBox indexKey(Schema s, List<String> indexColumns, List<DataBox> values) {
+            List<DataBox> key = new ArrayList<>();
+            for (String col : indexColumns) {
+                key.add(values.get(s.getFieldNames().indexOf(col)));
+            }
+            return key.size() == 1 ? key.get(0) : new TupleDataBox(key);
+        }
+
         private Table getTable(String tableName) throws DatabaseException {
             if (this.tempTables.containsKey(tableName)) {
                 return this.tempTables.get(tableName);
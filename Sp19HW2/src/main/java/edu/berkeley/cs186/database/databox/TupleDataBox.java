@@ -0,0 +1,102 @@
+package edu.berkeley.cs186.database.databox;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class TupleDataBox extends DataBox {
+    private List<DataBox> values;
+
+    // Construct a tuple of one or more primitive DataBoxes. Tuples are the keys
+    // of composite indices and are compared lexicographically: element by
+    // element, with the first unequal element deciding the order.
+    //
+    // A tuple that is a prefix of another tuple sorts before it. That is,
+    //
+    //   (1) < (1, 0) < (1, 1) < (1, 1, 0) < (2)
+    //
+    // so a prefix tuple can be used as the start key of a scan over every
+    // tuple that begins with it, even though prefix tuples are never stored.
+    public TupleDataBox(List<DataBox> values) {
+        if (values.isEmpty()) {
+            throw new DataBoxException("Cannot construct an empty tuple.");
+        }
+        for (DataBox d : values) {
+            if (d instanceof TupleDataBox) {
+                throw new DataBoxException("Cannot construct a nested tuple.");
+            }
+        }
+        this.values = Collections.unmodifiableList(new ArrayList<>(values));
+    }
+
+    @Override
+    public Type type() {
+        List<Type> types = new ArrayList<>();
+        for (DataBox d : values) {
+            types.add(d.type());
+        }
+        return Type.tupleType(types);
+    }
+
+    @Override
+    public List<DataBox> getValues() {
+        return values;
+    }
+
+    @Override
+    public byte[] toBytes() {
+        ByteBuffer buf = ByteBuffer.allocate(type().getSizeInBytes());
+        for (DataBox d : values) {
+            buf.put(d.toBytes());
+        }
+        return buf.array();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < values.size(); ++i) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(values.get(i).toString());
+        }
+        return sb.append(")").toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof TupleDataBox)) {
+            return false;
+        }
+        TupleDataBox t = (TupleDataBox) o;
+        return this.values.equals(t.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return values.hashCode();
+    }
+
+    @Override
+    public int compareTo(DataBox d) {
+        if (!(d instanceof TupleDataBox)) {
+            String err = String.format("Invalid comparison between %s and %s.",
+                                       toString(), d.toString());
+            throw new DataBoxException(err);
+        }
+        TupleDataBox t = (TupleDataBox) d;
+        int n = Math.min(this.values.size(), t.values.size());
+        for (int i = 0; i < n; ++i) {
+            int c = this.values.get(i).compareTo(t.values.get(i));
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(this.values.size(), t.values.size());
+    }
+}
@@ -3,6 +3,9 @@ package edu.berkeley.cs186.database.databox;
 import edu.berkeley.cs186.database.common.Buffer;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -15,6 +18,12 @@ import java.util.Objects;
  *
  * Note that n-byte strings and m-byte strings are considered different types
  * when n != m.
+ *
+ * There is also one compound type, the tuple (Type.tupleType(types)), whose
+ * elements are a fixed sequence of primitive types. Tuples are used as the
+ * keys of composite (multi-column) indices. A tuple is as wide as the sum of
+ * its element types, and two tuple types are equal only if their element
+ * types are equal.
  */
 public class Type {
     // The type of this type.
@@ -23,9 +32,17 @@ public class Type {
     // The size (in bytes) of an element of this type.
     private int sizeInBytes;
 
+    // The types of the elements of this type. Empty unless this is a tuple.
+    private List<Type> elementTypes;
+
     private Type(TypeId typeId, int sizeInBytes) {
+        this(typeId, sizeInBytes, Collections.emptyList());
+    }
+
+    private Type(TypeId typeId, int sizeInBytes, List<Type> elementTypes) {
         this.typeId = typeId;
         this.sizeInBytes = sizeInBytes;
+        this.elementTypes = elementTypes;
     }
 
     public static Type boolType() {
@@ -55,6 +72,22 @@ public class Type {
         return new Type(TypeId.STRING, n);
     }
 
+    public static Type tupleType(List<Type> elementTypes) {
+        if (elementTypes.isEmpty()) {
+            String msg = String.format("Empty tuples are not supported.");
+            throw new DataBoxException(msg);
+        }
+        int n = 0;
+        for (Type t : elementTypes) {
+            if (t.getTypeId() == TypeId.TUPLE) {
+                String msg = String.format("Nested tuples are not supported.");
+                throw new DataBoxException(msg);
+            }
+            n += t.getSizeInBytes();
+        }
+        return new Type(TypeId.TUPLE, n, Collections.unmodifiableList(new ArrayList<>(elementTypes)));
+    }
+
     public TypeId getTypeId() {
         return typeId;
     }
@@ -63,6 +96,10 @@ public class Type {
         return sizeInBytes;
     }
 
+    public List<Type> getElementTypes() {
+        return elementTypes;
+    }
+
     public byte[] toBytes() {
         // A Type is uniquely identified by its typeId `t` and the size (in bytes)
         // of an element of the type `s`. A Type is serialized as two integers. The
@@ -71,9 +108,29 @@ public class Type {
         // For example, the type "42-byte string" would serialized as the bytes [3,
         // 42] because 3 is the ordinal of the STRING TypeId and 42 is the number
         // of bytes in a 42-byte string (duh).
-        ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES * 2);
+        //
+        // A tuple type is followed by the number of elements in the tuple and
+        // then the serialization of each element type, so the type of a
+        // (42-byte string, int) tuple is serialized as [4, 46, 2, 3, 42, 1, 4].
+        List<byte[]> elementBytes = new ArrayList<>();
+        int size = Integer.BYTES * 2;
+        if (typeId == TypeId.TUPLE) {
+            size += Integer.BYTES;
+            for (Type t : elementTypes) {
+                byte[] bytes = t.toBytes();
+                elementBytes.add(bytes);
+                size += bytes.length;
+            }
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
         buf.putInt(typeId.ordinal());
         buf.putInt(sizeInBytes);
+        if (typeId == TypeId.TUPLE) {
+            buf.putInt(elementTypes.size());
+            for (byte[] bytes : elementBytes) {
+                buf.put(bytes);
+            }
+        }
         return buf.array();
     }
 
@@ -91,6 +148,15 @@ public class Type {
             return Type.floatType();
         } else if (ordinal == TypeId.STRING.ordinal()) {
             return Type.stringType(sizeInBytes);
+        } else if (ordinal == TypeId.TUPLE.ordinal()) {
+            int numElements = buf.getInt();
+            List<Type> elementTypes = new ArrayList<>();
+            for (int i = 0; i < numElements; ++i) {
+                elementTypes.add(Type.fromBytes(buf));
+            }
+            Type t = Type.tupleType(elementTypes);
+            assert(sizeInBytes == t.getSizeInBytes());
+            return t;
         } else {
             String err = String.format("Unknown TypeId ordinal %d.", ordinal);
             throw new IllegalArgumentException(err);
@@ -99,6 +165,9 @@ public class Type {
 
     @Override
     public String toString() {
+        if (typeId == TypeId.TUPLE) {
+            return String.format("(%s, %d, %s)", typeId.toString(), sizeInBytes, elementTypes.toString());
+        }
         return String.format("(%s, %d)", typeId.toString(), sizeInBytes);
     }
 
@@ -111,11 +180,12 @@ public class Type {
             return false;
         }
         Type t = (Type) o;
-        return typeId.equals(t.typeId) && sizeInBytes == t.sizeInBytes;
+        return typeId.equals(t.typeId) && sizeInBytes == t.sizeInBytes &&
+               elementTypes.equals(t.elementTypes);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(typeId, sizeInBytes);
+        return Objects.hash(typeId, sizeInBytes, elementTypes);
     }
 }
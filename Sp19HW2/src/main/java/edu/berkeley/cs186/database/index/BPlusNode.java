@@ -1,12 +1,18 @@
 package edu.berkeley.cs186.database.index;
 
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
 
 import edu.berkeley.cs186.database.BaseTransaction;
 import edu.berkeley.cs186.database.common.Buffer;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.table.RecordId;
 
@@ -92,7 +98,9 @@ abstract class BPlusNode {
      *   leaf0                  leaf3
      *
      * When a leaf splits, it returns the first entry in the right node as the
-     * split key. In this example, 3 is the split key. After leaf0 splits, inner
+     * split key. In this example, 3 is the split key. (Leaves with compressed
+     * keys instead return the shortest separator between the last key of the
+     * left node and the first key of the right node; see shortestSeparator.) After leaf0 splits, inner
      * inserts the new key and child pointer into itself and hits case 0 (i.e. it
      * does not overflow). The tree looks like this:
      *
@@ -216,6 +224,89 @@ abstract class BPlusNode {
     /** Get the page on which this node is persisted. */
     abstract Page getPage();
 
+    // Key Compression ///////////////////////////////////////////////////////////
+    // A StringDataBox is always padded with spaces out to the full width of its
+    // type, so a stringType(100) key costs 100 bytes on a page even if the
+    // actual value is "cs186". Nodes of string-keyed trees therefore do not
+    // store keys at their fixed width. Instead,
+    //
+    //   - leaves factor out the longest prefix shared by all of their keys
+    //     (prefix compression) and store only the remaining suffixes, and
+    //   - inner nodes store the shortest separator that still distinguishes
+    //     their children (suffix truncation; see shortestSeparator).
+    //
+    // In both cases the trailing padding is dropped and re-added when a node is
+    // read back from its page. Since compressed keys vary in size, these nodes
+    // split when their serialization no longer fits on a page, not only when
+    // they exceed 2d entries.
+
+    /** Returns whether nodes keyed by `keySchema` store compressed keys. */
+    static boolean isCompressed(Type keySchema) {
+        return keySchema.getTypeId() == TypeId.STRING;
+    }
+
+    /** Returns the bytes of `key` with its trailing padding removed. */
+    static byte[] unpaddedBytes(DataBox key) {
+        String s = key.getString();
+        int end = s.length();
+        while (end > 0 && s.charAt(end - 1) == ' ') {
+            --end;
+        }
+        return s.substring(0, end).getBytes(Charset.forName("UTF-8"));
+    }
+
+    /** Inverse of unpaddedBytes: pads `bytes` back out to a key of `keySchema`. */
+    static DataBox fromUnpaddedBytes(byte[] bytes, Type keySchema) {
+        String s = new String(bytes, Charset.forName("UTF-8"));
+        return new StringDataBox(s, keySchema.getSizeInBytes());
+    }
+
+    /**
+     * Returns the length of the longest common prefix of the (unpadded) keys in
+     * `keys`, or 0 if there are no keys.
+     */
+    static int commonPrefixLength(List<byte[]> keys) {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        byte[] first = keys.get(0);
+        int n = first.length;
+        for (byte[] key : keys) {
+            n = Math.min(n, key.length);
+            for (int i = 0; i < n; ++i) {
+                if (key[i] != first[i]) {
+                    n = i;
+                    break;
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Given two keys left < right, returns the shortest key s such that left <
+     * s <= right. This is what we push up into an inner node when splitting
+     * between `left` and `right`. For example, the shortest separator of
+     * "jones" and "smith" is "s", and of "smith" and "smithers" is "smithe".
+     *
+     * For keys that are not compressed (see isCompressed), this is just right.
+     */
+    static DataBox shortestSeparator(DataBox left, DataBox right) {
+        if (!isCompressed(right.type())) {
+            return right;
+        }
+        // The padding character ' ' sorts before every other character, so any
+        // prefix of right pads out to a key that is <= right.
+        byte[] bytes = unpaddedBytes(right);
+        for (int i = 1; i < bytes.length; ++i) {
+            DataBox separator = fromUnpaddedBytes(Arrays.copyOf(bytes, i), right.type());
+            if (separator.compareTo(left) > 0) {
+                return separator;
+            }
+        }
+        return right;
+    }
+
     // Pretty Printing ///////////////////////////////////////////////////////////
     /**
      * S-expressions (or sexps) are a compact way of encoding nested tree-like
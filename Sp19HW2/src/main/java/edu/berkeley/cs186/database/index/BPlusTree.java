@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.io.FileWriter;
 import java.io.File;
 import java.util.*;
+import java.util.function.Function;
 
 import edu.berkeley.cs186.database.BaseTransaction;
 import edu.berkeley.cs186.database.common.Buffer;
@@ -13,7 +14,9 @@ import edu.berkeley.cs186.database.concurrency.LockContext;
 import edu.berkeley.cs186.database.concurrency.LockType;
 import edu.berkeley.cs186.database.concurrency.LockUtil;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.TupleDataBox;
 import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.io.PageAllocator;
 import edu.berkeley.cs186.database.table.RecordId;
@@ -216,8 +219,7 @@ public class BPlusTree implements Closeable {
      * memory will receive 0 points.
      */
     public Iterator<RecordId> scanAll(BaseTransaction transaction) {
-        // TODO(hw2): Return a BPlusTreeIterator.
-        return new BPlusTreeIterator(transaction);
+        return scanRange(transaction, null, false, null, false);
     }
 
     /**
@@ -245,10 +247,80 @@ public class BPlusTree implements Closeable {
      * memory will receive 0 points.
      */
     public Iterator<RecordId> scanGreaterEqual(BaseTransaction transaction, DataBox key) {
-        typecheck(key);
-        // TODO(hw2): Return a BPlusTreeIterator.
-        LeafNode rootLeafNote = root.get(transaction, key);
-        return new BPlusTreeIterator(rootLeafNote, rootLeafNote.scanGreaterEqual(key));
+        return scanRange(transaction, key, true, null, false);
+    }
+
+    /**
+     * Returns an iterator over all the RecordIds stored in the B+ tree whose
+     * keys lie between `low` and `high`, in ascending order of their keys.
+     * Each bound is inclusive or exclusive as specified, and a null bound
+     * leaves that end of the range open. The scan stops at the first key past
+     * `high` instead of running to the end of the tree.
+     *
+     *   // With keys 1 through 5 in the tree.
+     *   Iterator<RecordId> iter = tree.scanRange(new IntDataBox(2), false,
+     *                                            new IntDataBox(4), true);
+     *   iter.next(); // RecordId(3, 3)
+     *   iter.next(); // RecordId(4, 4)
+     *   iter.next(); // NoSuchElementException
+     *
+     * If the keys are tuples, a bound may also be a shorter tuple, which is
+     * compared against the leading elements of each key. For example, with
+     * (int, int) keys, scanRange((1), true, (1), true) returns every key whose
+     * first element is 1.
+     */
+    public Iterator<RecordId> scanRange(BaseTransaction transaction, DataBox low, boolean lowInclusive,
+                                        DataBox high, boolean highInclusive) {
+        typecheckBound(low);
+        typecheckBound(high);
+        return new EntryIterator<>(new BPlusTreeIterator(transaction, low, lowInclusive, high,
+                                   highInclusive), Pair::getSecond);
+    }
+
+    /**
+     * scanRangeKeys is scanRange except that it returns the keys in the range
+     * rather than their RecordIds. The keys come straight from the leaves, so
+     * a caller that only needs the indexed values never has to fetch records.
+     */
+    public Iterator<DataBox> scanRangeKeys(BaseTransaction transaction, DataBox low, boolean lowInclusive,
+                                           DataBox high, boolean highInclusive) {
+        typecheckBound(low);
+        typecheckBound(high);
+        return new EntryIterator<>(new BPlusTreeIterator(transaction, low, lowInclusive, high,
+                                   highInclusive), Pair::getFirst);
+    }
+
+    /**
+     * scanRangeDescending is scanRange in descending order of keys. It starts
+     * at the last key at or below `high` and stops at the first key past
+     * `low`, so it reads only the leaves that hold the range.
+     *
+     *   // With keys 1 through 5 in the tree.
+     *   Iterator<RecordId> iter = tree.scanRangeDescending(null, false,
+     *                                                      new IntDataBox(4), false);
+     *   iter.next(); // RecordId(3, 3)
+     *   iter.next(); // RecordId(2, 2)
+     *   iter.next(); // RecordId(1, 1)
+     *   iter.next(); // NoSuchElementException
+     *
+     * Leaves only link to their right sibling, so the iterator keeps the path
+     * of inner nodes from the root to the current leaf and walks back up it to
+     * reach the previous leaf.
+     */
+    public Iterator<RecordId> scanRangeDescending(BaseTransaction transaction, DataBox low,
+            boolean lowInclusive, DataBox high, boolean highInclusive) {
+        typecheckBound(low);
+        typecheckBound(high);
+        return new EntryIterator<>(new ReverseBPlusTreeIterator(transaction, low, lowInclusive, high,
+                                   highInclusive), Pair::getSecond);
+    }
+
+    /**
+     * Returns an iterator over all the RecordIds stored in the B+ tree in
+     * descending order of their corresponding keys.
+     */
+    public Iterator<RecordId> scanAllDescending(BaseTransaction transaction) {
+        return scanRangeDescending(transaction, null, false, null, false);
     }
 
     /**
@@ -271,6 +343,7 @@ public class BPlusTree implements Closeable {
             otherChildren.add(root.getPage().getPageNum());
             otherChildren.add(pair.get().getSecond());
             root = new InnerNode(metadata, otherKeys, otherChildren, transaction);
+            writeHeader(transaction, headerPage);
         }
     }
 
@@ -300,6 +373,7 @@ public class BPlusTree implements Closeable {
                 otherChildren.add(root.getPage().getPageNum());
                 otherChildren.add(returned.get().getSecond());
                 root = new InnerNode(metadata, otherKeys, otherChildren, transaction);
+                writeHeader(transaction, headerPage);
             }
         }
     }
@@ -382,7 +456,8 @@ public class BPlusTree implements Closeable {
     /**
      * Returns the largest number d such that the serialization of a LeafNode
      * with 2d entries and an InnerNode with 2d keys will fit on a single page
-     * of size `pageSizeInBytes`.
+     * of size `pageSizeInBytes`. String keys are stored compressed, so for them
+     * d is only an upper bound and nodes split once they fill their page.
      */
     public static int maxOrder(int pageSizeInBytes, Type keySchema) {
         int leafOrder = LeafNode.maxOrder(pageSizeInBytes, keySchema);
@@ -412,41 +487,243 @@ public class BPlusTree implements Closeable {
         }
     }
 
-    // Iterator ////////////////////////////////////////////////////////////////
-    private class BPlusTreeIterator implements Iterator<RecordId> {
-        // TODO(hw2): Add whatever fields and constructors you want here.
+    /**
+     * Checks a scan bound, which may be null or, for tuple keys, a tuple over
+     * a leading prefix of the key's element types.
+     */
+    private void typecheckBound(DataBox bound) {
+        if (bound == null) {
+            return;
+        }
+        Type t = metadata.getKeySchema();
+        Type b = bound.type();
+        if (t.getTypeId() == TypeId.TUPLE && b.getTypeId() == TypeId.TUPLE) {
+            List<Type> elementTypes = t.getElementTypes();
+            List<Type> boundTypes = b.getElementTypes();
+            if (boundTypes.size() <= elementTypes.size() &&
+                    boundTypes.equals(elementTypes.subList(0, boundTypes.size()))) {
+                return;
+            }
+        }
+        typecheck(bound);
+    }
+
+    /** Returns true if `bound` is a tuple shorter than the keys of this tree. */
+    private boolean isPrefixBound(DataBox bound) {
+        Type t = metadata.getKeySchema();
+        return t.getTypeId() == TypeId.TUPLE &&
+               bound.getValues().size() < t.getElementTypes().size();
+    }
+
+    /**
+     * Compares `key` against the scan bound `bound`. If the bound is a tuple
+     * shorter than the key, only the leading elements of the key are compared,
+     * so every key that starts with the bound compares equal to it.
+     */
+    private static int compareToBound(DataBox key, DataBox bound) {
+        if (bound instanceof TupleDataBox) {
+            List<DataBox> values = key.getValues();
+            int n = bound.getValues().size();
+            if (n < values.size()) {
+                return new TupleDataBox(values.subList(0, n)).compareTo(bound);
+            }
+        }
+        return key.compareTo(bound);
+    }
+
+    /**
+     * Returns the number of keys in the sorted list `keys` that fall before
+     * the scan bound, counting keys equal to the bound if `orEqual` is true.
+     * Since keys are sorted, this is also the index of the first key that
+     * does not.
+     */
+    private static int numBefore(List<DataBox> keys, DataBox bound, boolean orEqual) {
+        int n = 0;
+        for (DataBox key : keys) {
+            int c = compareToBound(key, bound);
+            if (c > 0 || (c == 0 && !orEqual)) {
+                break;
+            }
+            ++n;
+        }
+        return n;
+    }
+
+    // Iterators ///////////////////////////////////////////////////////////////
+    /** Yields one part of each (key, rid) entry yielded by another iterator. */
+    private static class EntryIterator<T> implements Iterator<T> {
+        private Iterator<Pair<DataBox, RecordId>> entries;
+        private Function<Pair<DataBox, RecordId>, T> part;
+
+        EntryIterator(Iterator<Pair<DataBox, RecordId>> entries,
+                      Function<Pair<DataBox, RecordId>, T> part) {
+            this.entries = entries;
+            this.part = part;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return entries.hasNext();
+        }
 
-        private Iterator<RecordId> recordIdIterator;
-        private LeafNode leafNode;
+        @Override
+        public T next() {
+            return part.apply(entries.next());
+        }
+    }
+
+    /**
+     * Iterates over a range of keys in ascending order, following the right
+     * sibling links between leaves. One leaf is held in memory at a time.
+     */
+    private class BPlusTreeIterator implements Iterator<Pair<DataBox, RecordId>> {
         private BaseTransaction transaction;
+        private DataBox high;
+        private boolean highInclusive;
+
+        // The current leaf, and the index in it of the next entry to return.
+        private LeafNode leaf;
+        private int index;
+        private boolean done;
+
+        BPlusTreeIterator(BaseTransaction transaction, DataBox low, boolean lowInclusive,
+                          DataBox high, boolean highInclusive) {
+            this.transaction = transaction;
+            this.high = high;
+            this.highInclusive = highInclusive;
+            this.done = false;
+
+            // The first key in the range is in the leftmost subtree that could
+            // hold a key in the range, or at the start of the leaf after it.
+            // Every key left of a separator is smaller than it, so a separator
+            // equal to an inclusive bound can be skipped past unless the bound
+            // is a prefix that keys left of the separator may also start with.
+            boolean skipEqual = low != null && (!lowInclusive || !isPrefixBound(low));
+            BPlusNode n = root;
+            while (n instanceof InnerNode) {
+                InnerNode inner = (InnerNode) n;
+                int i = low == null ? 0 : numBefore(inner.getKeys(), low, skipEqual);
+                n = BPlusNode.fromBytes(transaction, metadata, inner.getChildren().get(i));
+            }
+            this.leaf = (LeafNode) n;
+            this.index = low == null ? 0 : numBefore(leaf.getKeys(), low, !lowInclusive);
+        }
 
-        public BPlusTreeIterator(BaseTransaction transaction) {
-            this(root.getLeftmostLeaf(transaction), null);
+        @Override
+        public boolean hasNext() {
+            while (!done && index >= leaf.getKeys().size()) {
+                Optional<LeafNode> sibling = leaf.getRightSibling(transaction);
+                if (!sibling.isPresent()) {
+                    done = true;
+                } else {
+                    leaf = sibling.get();
+                    index = 0;
+                }
+            }
+            if (!done && high != null) {
+                int c = compareToBound(leaf.getKeys().get(index), high);
+                done = c > 0 || (c == 0 && !highInclusive);
+            }
+            return !done;
+        }
+
+        @Override
+        public Pair<DataBox, RecordId> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Pair<DataBox, RecordId> entry = new Pair<>(leaf.getKeys().get(index), leaf.getRids().get(index));
+            ++index;
+            return entry;
         }
+    }
 
-        public BPlusTreeIterator(LeafNode leafNode, Iterator<RecordId> recordIdIterator) {
-            this.leafNode = leafNode;
+    /**
+     * Iterates over a range of keys in descending order. Leaves have no left
+     * sibling links, so the iterator keeps the stack of inner nodes on the
+     * path from the root to the current leaf, along with the index of the
+     * child taken at each. The previous leaf is the rightmost leaf under the
+     * nearest ancestor child to the left of that path.
+     */
+    private class ReverseBPlusTreeIterator implements Iterator<Pair<DataBox, RecordId>> {
+        private BaseTransaction transaction;
+        private DataBox low;
+        private boolean lowInclusive;
+
+        private Deque<Pair<InnerNode, Integer>> path;
+
+        // The current leaf, and the index in it of the next entry to return.
+        private LeafNode leaf;
+        private int index;
+        private boolean done;
+
+        ReverseBPlusTreeIterator(BaseTransaction transaction, DataBox low, boolean lowInclusive,
+                                 DataBox high, boolean highInclusive) {
             this.transaction = transaction;
-            this.recordIdIterator = recordIdIterator;
-            if (recordIdIterator == null) {
-                this.recordIdIterator = leafNode.scanAll();
+            this.low = low;
+            this.lowInclusive = lowInclusive;
+            this.path = new ArrayDeque<>();
+            this.done = false;
+
+            // The last key in the range is in the rightmost subtree that could
+            // hold a key in the range, or at the end of the leaf before it.
+            BPlusNode n = root;
+            while (n instanceof InnerNode) {
+                InnerNode inner = (InnerNode) n;
+                int i = high == null ? inner.getKeys().size() : numBefore(inner.getKeys(), high, highInclusive);
+                path.push(new Pair<>(inner, i));
+                n = BPlusNode.fromBytes(transaction, metadata, inner.getChildren().get(i));
             }
+            this.leaf = (LeafNode) n;
+            int end = high == null ? leaf.getKeys().size() : numBefore(leaf.getKeys(), high, highInclusive);
+            this.index = end - 1;
+        }
+
+        /** Moves to the last entry of the previous leaf, if there is one. */
+        private void previousLeaf() {
+            while (!path.isEmpty() && path.peek().getSecond() == 0) {
+                path.pop();
+            }
+            if (path.isEmpty()) {
+                done = true;
+                return;
+            }
+
+            Pair<InnerNode, Integer> top = path.pop();
+            InnerNode inner = top.getFirst();
+            int i = top.getSecond() - 1;
+            path.push(new Pair<>(inner, i));
+            BPlusNode n = BPlusNode.fromBytes(transaction, metadata, inner.getChildren().get(i));
+            while (n instanceof InnerNode) {
+                inner = (InnerNode) n;
+                i = inner.getChildren().size() - 1;
+                path.push(new Pair<>(inner, i));
+                n = BPlusNode.fromBytes(transaction, metadata, inner.getChildren().get(i));
+            }
+            leaf = (LeafNode) n;
+            index = leaf.getKeys().size() - 1;
         }
 
         @Override
         public boolean hasNext() {
-            return recordIdIterator.hasNext() || leafNode.getRightSibling(transaction).isPresent();
+            while (!done && index < 0) {
+                previousLeaf();
+            }
+            if (!done && low != null) {
+                int c = compareToBound(leaf.getKeys().get(index), low);
+                done = c < 0 || (c == 0 && !lowInclusive);
+            }
+            return !done;
         }
 
         @Override
-        public RecordId next() {
-            if (recordIdIterator.hasNext()) {
-                return recordIdIterator.next();
-            } else {
-                leafNode = leafNode.getRightSibling(transaction).get();
-                recordIdIterator = leafNode.scanAll();
-                return next();
+        public Pair<DataBox, RecordId> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
             }
+            Pair<DataBox, RecordId> entry = new Pair<>(leaf.getKeys().get(index), leaf.getRids().get(index));
+            --index;
+            return entry;
         }
     }
 }
@@ -1,7 +1,6 @@
 package edu.berkeley.cs186.database.index;
 
 import java.nio.ByteBuffer;
-import java.time.chrono.ThaiBuddhistDate;
 import java.util.*;
 
 import edu.berkeley.cs186.database.BaseTransaction;
@@ -69,18 +68,8 @@ class InnerNode extends BPlusNode {
     // See BPlusNode.get.
     @Override
     public LeafNode get(BaseTransaction transaction, DataBox key) {
-        BPlusNode toReturn = this;
-        if (key.getInt() >= keys.get(keys.size() - 1).getInt()) {
-            toReturn = BPlusNode.fromBytes(transaction, metadata, children.get(keys.size()));
-        } else {
-            for (int i = 0; i < keys.size(); i++) {
-                if (key.getInt() < keys.get(i).getInt()) {
-                    toReturn = BPlusNode.fromBytes(transaction, metadata, children.get(i));
-                    break;
-                }
-            }
-        }
-        return toReturn.get(transaction, key);
+        int index = numLessThanEqual(key, keys);
+        return getChild(transaction, index).get(transaction, key);
     }
 
     // See BPlusNode.getLeftmostLeaf.
@@ -93,41 +82,15 @@ class InnerNode extends BPlusNode {
     @Override
     public Optional<Pair<DataBox, Integer>> put(BaseTransaction transaction, DataBox key, RecordId rid)
     throws BPlusTreeException {
-        Optional<Pair<DataBox, Integer>> pair = Optional.empty();
-        int index = -1;
-        if (key.getInt() >= keys.get(keys.size() - 1).getInt()) {
-            pair = BPlusNode.fromBytes(transaction, metadata, children.get(keys.size())).put(transaction, key, rid);
-            if (!pair.equals(Optional.empty())) {
-                index = keys.size();
-            }
-        } else {
-            for (int i = 0; i < keys.size(); i++) {
-                if (key.getInt() < keys.get(i).getInt()) {
-                    pair = BPlusNode.fromBytes(transaction, metadata, children.get(i)).put(transaction, key, rid);
-                    if (!pair.equals(Optional.empty())) {
-                        index = i;
-                    }   
-                    break;
-                }
-            }
+        int index = numLessThanEqual(key, keys);
+        Optional<Pair<DataBox, Integer>> pair = getChild(transaction, index).put(transaction, key, rid);
+        if (!pair.isPresent()) {
+            return Optional.empty();
         }
 
-        if (!pair.equals(Optional.empty())) {
-            keys.add(index, pair.get().getFirst());
-            children.add(index + 1, pair.get().getSecond());
-            pair = Optional.empty();
-            if (keys.size() > metadata.getOrder() * 2) {
-                List<DataBox> otherkeys = keys.subList(metadata.getOrder() + 1, keys.size());
-                List<Integer> otherchildren = children.subList(metadata.getOrder() + 1, children.size());
-                InnerNode othernode = new InnerNode(metadata, otherkeys, otherchildren, transaction);
-                DataBox upinnerkeys = keys.get(metadata.getOrder());
-                keys = keys.subList(0, metadata.getOrder());
-                children = children.subList(0, metadata.getOrder() + 1);
-                pair = Optional.of(new Pair<>(upinnerkeys, othernode.page.getPageNum()));
-            }
-        }
-        sync(transaction);
-        return pair;
+        keys.add(index, pair.get().getFirst());
+        children.add(index + 1, pair.get().getSecond());
+        return splitIfOverflowing(transaction);
     }
 
     // See BPlusNode.bulkLoad.
@@ -136,43 +99,27 @@ class InnerNode extends BPlusNode {
             Iterator<Pair<DataBox, RecordId>> data,
             float fillFactor)
     throws BPlusTreeException {
-        Optional<Pair<DataBox, Integer>> pair = Optional.empty();
         while (data.hasNext()) {
-            pair = LeafNode.fromBytes(transaction, metadata, children.get(keys.size())).bulkLoad(transaction, data, fillFactor);
-            if (keys.size() < metadata.getOrder() * 2) {
-                if (!pair.equals(Optional.empty())) {
-                    keys.add(pair.get().getFirst());
-                    children.add(pair.get().getSecond());
+            BPlusNode rightmost = getChild(transaction, children.size() - 1);
+            Optional<Pair<DataBox, Integer>> pair = rightmost.bulkLoad(transaction, data, fillFactor);
+            if (pair.isPresent()) {
+                keys.add(pair.get().getFirst());
+                children.add(pair.get().getSecond());
+                Optional<Pair<DataBox, Integer>> split = splitIfOverflowing(transaction);
+                if (split.isPresent()) {
+                    return split;
                 }
-            } else {
-                InnerNode otherNode = new InnerNode(metadata, 
-                    keys.subList(metadata.getOrder() + 1, keys.size()),
-                    children.subList(metadata.getOrder() + 1, children.size()),
-                    transaction);
-                DataBox nodeKey = keys.get(metadata.getOrder());
-                keys = keys.subList(0, metadata.getOrder());
-                children = children.subList(0, metadata.getOrder() + 1);
-                pair = Optional.of(new Pair<DataBox, Integer>(nodeKey, otherNode.page.getPageNum()));
             }
         }
         sync(transaction);
-        return pair;
+        return Optional.empty();
     }
 
     // See BPlusNode.remove.
     @Override
     public void remove(BaseTransaction transaction, DataBox key) {
-        if (key.getInt() >= keys.get(keys.size() - 1).getInt()) {
-            BPlusNode.fromBytes(transaction, metadata, children.get(keys.size())).remove(transaction, key);
-        } else {
-            for (int i = 0; i < keys.size(); i++) {
-                if (key.getInt() < keys.get(i).getInt()) {
-                BPlusNode.fromBytes(transaction, metadata, children.get(i)).remove(transaction, key);
-                break;
-                }
-            }
-        }
-        sync(transaction);    
+        int index = numLessThanEqual(key, keys);
+        getChild(transaction, index).remove(transaction, key);
     }
 
     // Helpers ///////////////////////////////////////////////////////////////////
@@ -186,6 +133,29 @@ class InnerNode extends BPlusNode {
         return BPlusNode.fromBytes(transaction, metadata, pageNum);
     }
 
+    /**
+     * Splits this node if it has more than 2d keys or no longer fits on its
+     * page, syncs it, and returns the split key and the page number of the new
+     * right node (see BPlusNode.put). The middle key moves up; a node with 2d + 1
+     * keys keeps d of them.
+     */
+    private Optional<Pair<DataBox, Integer>> splitIfOverflowing(BaseTransaction transaction) {
+        if (keys.size() <= metadata.getOrder() * 2 && numBytes() <= Page.pageSize) {
+            sync(transaction);
+            return Optional.empty();
+        }
+
+        int mid = keys.size() / 2;
+        DataBox splitKey = keys.get(mid);
+        List<DataBox> rightKeys = new ArrayList<>(keys.subList(mid + 1, keys.size()));
+        List<Integer> rightChildren = new ArrayList<>(children.subList(mid + 1, children.size()));
+        InnerNode right = new InnerNode(metadata, rightKeys, rightChildren, transaction);
+        keys = new ArrayList<>(keys.subList(0, mid));
+        children = new ArrayList<>(children.subList(0, mid + 1));
+        sync(transaction);
+        return Optional.of(new Pair<>(splitKey, right.getPage().getPageNum()));
+    }
+
     private void sync(BaseTransaction transaction) {
         Buffer b = page.getBuffer(transaction);
         byte[] newBytes = toBytes();
@@ -206,9 +176,25 @@ class InnerNode extends BPlusNode {
         return children;
     }
 
+    /** Returns the number of bytes in the serialization of this node. */
+    private int numBytes() {
+        int size = 1 + Integer.BYTES + Integer.BYTES * children.size();
+        if (!BPlusNode.isCompressed(metadata.getKeySchema())) {
+            return size + metadata.getKeySchema().getSizeInBytes() * keys.size();
+        }
+        for (DataBox key : keys) {
+            size += Short.BYTES + BPlusNode.unpaddedBytes(key).length;
+        }
+        return size;
+    }
+
     /**
      * Returns the largest number d such that the serialization of an InnerNode
      * with 2d keys will fit on a single page of size `pageSizeInBytes`.
+     *
+     * For compressed keys (see BPlusNode.isCompressed), this is an upper bound
+     * computed for the shortest possible separators; such nodes also split as
+     * soon as their keys no longer fit on a page.
      */
     public static int maxOrder(int pageSizeInBytes, Type keySchema) {
         // A leaf node with n entries takes up the following number of bytes:
@@ -232,7 +218,12 @@ class InnerNode extends BPlusNode {
         //   n = (pageSizeInBytes - 9) / (keySize + 4)
         //
         // The order d is half of n.
-        int keySize = keySchema.getSizeInBytes();
+        //
+        // Compressed keys are stored as a 2-byte length followed by at least one
+        // byte (a separator is never empty), so at best
+        //
+        //   n = (pageSizeInBytes - 9) / (2 + 1 + 4)
+        int keySize = BPlusNode.isCompressed(keySchema) ? Short.BYTES + 1 : keySchema.getSizeInBytes();
         int n = (pageSizeInBytes - 9) / (keySize + 4);
         return n / 2;
     }
@@ -368,19 +359,20 @@ class InnerNode extends BPlusNode {
         //
         // represent an inner node with one key (i.e. 1) and two children pointers
         // (i.e. page 3 and page 7).
-
-        // All sizes are in bytes.
-        int isLeafSize = 1;
-        int numKeysSize = Integer.BYTES;
-        int keysSize = metadata.getKeySchema().getSizeInBytes() * keys.size();
-        int childrenSize = Integer.BYTES * children.size();
-        int size = isLeafSize + numKeysSize + keysSize + childrenSize;
-
-        ByteBuffer buf = ByteBuffer.allocate(size);
+        //
+        // If the keys are compressed (see BPlusNode.isCompressed), each key in c
+        // is written as its length (2 bytes) followed by its unpadded bytes.
+        ByteBuffer buf = ByteBuffer.allocate(numBytes());
         buf.put((byte) 0);
         buf.putInt(keys.size());
         for (DataBox key : keys) {
-            buf.put(key.toBytes());
+            if (BPlusNode.isCompressed(metadata.getKeySchema())) {
+                byte[] bytes = BPlusNode.unpaddedBytes(key);
+                buf.putShort((short) bytes.length);
+                buf.put(bytes);
+            } else {
+                buf.put(key.toBytes());
+            }
         }
         for (Integer child : children) {
             buf.putInt(child);
@@ -402,8 +394,15 @@ class InnerNode extends BPlusNode {
         List<DataBox> keys = new ArrayList<>();
         List<Integer> children = new ArrayList<>();
         int n = buf.getInt();
+        Type keySchema = metadata.getKeySchema();
         for (int i = 0; i < n; ++i) {
-            keys.add(DataBox.fromBytes(buf, metadata.getKeySchema()));
+            if (BPlusNode.isCompressed(keySchema)) {
+                byte[] bytes = new byte[buf.getShort()];
+                buf.get(bytes);
+                keys.add(BPlusNode.fromUnpaddedBytes(bytes, keySchema));
+            } else {
+                keys.add(DataBox.fromBytes(buf, keySchema));
+            }
         }
         for (int i = 0; i < n + 1; ++i) {
             children.add(buf.getInt());
@@ -148,30 +148,22 @@ class LeafNode extends BPlusNode {
         }
         Optional<Pair<DataBox, Integer>> pair = Optional.empty();
 
-        int num = keys.size();
-        if ((num == 0) || (key.getInt() > keys.get(num - 1).getInt())) {
-            keys.add(key);
-            rids.add(rid);
-        } else {
-            for (int i = 0; i < num; i++) {
-                if (key.getInt() < keys.get(i).getInt()) {
-                    keys.add(i, key);
-                    rids.add(i, rid);
-                    break;
-                }
-            }
-        }
+        int index = InnerNode.numLessThan(key, keys);
+        keys.add(index, key);
+        rids.add(index, rid);
 
-        num = keys.size();
-        if (num > metadata.getOrder() * 2) {
-            int mid = metadata.getOrder();
-            LeafNode newLeafNode = new LeafNode(metadata, keys.subList(mid, num),
-                rids.subList(mid, num), rightSibling, transaction);
-            keys = keys.subList(0, mid);
-            rids = rids.subList(0, mid);
+        // A leaf with 2d + 1 entries keeps d of them. A compressed leaf that
+        // outgrows its page before that keeps half of them.
+        int num = keys.size();
+        if (num > metadata.getOrder() * 2 || numBytes() > Page.pageSize) {
+            int mid = num / 2;
+            LeafNode newLeafNode = new LeafNode(metadata, new ArrayList<>(keys.subList(mid, num)),
+                new ArrayList<>(rids.subList(mid, num)), rightSibling, transaction);
+            DataBox splitKey = BPlusNode.shortestSeparator(keys.get(mid - 1), keys.get(mid));
+            keys = new ArrayList<>(keys.subList(0, mid));
+            rids = new ArrayList<>(rids.subList(0, mid));
             rightSibling = Optional.of(newLeafNode.getPage().getPageNum());
-            pair = Optional.of(new Pair<>(newLeafNode.keys.get(0), 
-                newLeafNode.getPage().getPageNum()));
+            pair = Optional.of(new Pair<>(splitKey, newLeafNode.getPage().getPageNum()));
         }
         sync(transaction);
         return pair;
@@ -185,13 +177,41 @@ class LeafNode extends BPlusNode {
     throws BPlusTreeException {
         Optional<Pair<DataBox, Integer>> pair = Optional.empty();
         
+        // Compressed leaves can hold far more than 2d entries of short keys, so
+        // for them the fill factor also bounds the number of bytes used.
         int maxLoad = (int) Math.ceil(metadata.getOrder() * 2 * fillFactor);
-        for (int i = keys.size(); i < maxLoad; i++) {
-            if (data.hasNext()) {
-                Pair<DataBox, RecordId> nextData = data.next();
-                keys.add(nextData.getFirst());
-                rids.add(nextData.getSecond());
+        boolean compressed = BPlusNode.isCompressed(metadata.getKeySchema());
+        float maxBytes = compressed ? fillFactor * Page.pageSize : Page.pageSize;
+        int maxEntrySize = (compressed ? Short.BYTES : 0) +
+                           metadata.getKeySchema().getSizeInBytes() + RecordId.getSizeInBytes();
+        // Recomputing numBytes() for every entry would make filling a leaf
+        // quadratic, so we keep a running count instead. Appending a compressed
+        // key can shorten the common prefix, which lengthens every suffix
+        // already stored by the bytes the prefix lost.
+        int ridSize = RecordId.getSizeInBytes();
+        int bytes = numBytes();
+        byte[] firstKey = compressed && !keys.isEmpty() ? BPlusNode.unpaddedBytes(keys.get(0)) : null;
+        int prefixLength = compressed ? BPlusNode.commonPrefixLength(unpaddedKeys()) : 0;
+        while (data.hasNext() && keys.size() < maxLoad &&
+                (keys.isEmpty() || bytes + maxEntrySize <= maxBytes)) {
+            Pair<DataBox, RecordId> nextData = data.next();
+            if (compressed) {
+                byte[] key = BPlusNode.unpaddedBytes(nextData.getFirst());
+                int newPrefixLength = key.length;
+                if (firstKey == null) {
+                    firstKey = key;
+                } else {
+                    newPrefixLength = Math.min(prefixLength,
+                                               BPlusNode.commonPrefixLength(Arrays.asList(firstKey, key)));
+                }
+                bytes += (newPrefixLength - prefixLength) + (prefixLength - newPrefixLength) * keys.size() +
+                         Short.BYTES + (key.length - newPrefixLength) + ridSize;
+                prefixLength = newPrefixLength;
+            } else {
+                bytes += metadata.getKeySchema().getSizeInBytes() + ridSize;
             }
+            keys.add(nextData.getFirst());
+            rids.add(nextData.getSecond());
         }
 
         if (data.hasNext()) {
@@ -200,10 +220,11 @@ class LeafNode extends BPlusNode {
             Pair<DataBox, RecordId> pairData = data.next();
             otherKeys.add(pairData.getFirst());
             otherRids.add(pairData.getSecond());
-            LeafNode sibLeafNode = new LeafNode(metadata, otherKeys, otherRids, Optional.empty(), transaction);
-            sibLeafNode.rightSibling = rightSibling;
+            LeafNode sibLeafNode = new LeafNode(metadata, otherKeys, otherRids, rightSibling, transaction);
             rightSibling = Optional.of(sibLeafNode.getPage().getPageNum());
-            pair = Optional.of(new Pair<>(sibLeafNode.keys.get(0), sibLeafNode.getPage().getPageNum()));
+            DataBox splitKey = BPlusNode.shortestSeparator(keys.get(keys.size() - 1),
+                               pairData.getFirst());
+            pair = Optional.of(new Pair<>(splitKey, sibLeafNode.getPage().getPageNum()));
         }
         sync(transaction);
         return pair;
@@ -272,9 +293,39 @@ class LeafNode extends BPlusNode {
         }
     }
 
+    /** Returns the number of bytes in the serialization of this leaf. */
+    private int numBytes() {
+        int headerSize = 1 + Integer.BYTES + Integer.BYTES;
+        int ridSize = RecordId.getSizeInBytes();
+        if (!BPlusNode.isCompressed(metadata.getKeySchema())) {
+            int keySize = metadata.getKeySchema().getSizeInBytes();
+            return headerSize + (keySize + ridSize) * keys.size();
+        }
+
+        List<byte[]> unpadded = unpaddedKeys();
+        int prefixLength = BPlusNode.commonPrefixLength(unpadded);
+        int size = headerSize + Short.BYTES + prefixLength;
+        for (byte[] key : unpadded) {
+            size += Short.BYTES + (key.length - prefixLength) + ridSize;
+        }
+        return size;
+    }
+
+    private List<byte[]> unpaddedKeys() {
+        List<byte[]> unpadded = new ArrayList<>();
+        for (DataBox key : keys) {
+            unpadded.add(BPlusNode.unpaddedBytes(key));
+        }
+        return unpadded;
+    }
+
     /**
      * Returns the largest number d such that the serialization of a LeafNode
      * with 2d entries will fit on a single page of size `pageSizeInBytes`.
+     *
+     * For compressed keys (see BPlusNode.isCompressed), this is an upper bound
+     * computed for the smallest possible entries; such leaves also split as
+     * soon as their entries no longer fit on a page.
      */
     public static int maxOrder(int pageSizeInBytes, Type keySchema) {
         // A leaf node with n entries takes up the following number of bytes:
@@ -299,8 +350,18 @@ class LeafNode extends BPlusNode {
         //   n = (pageSizeInBytes - 9) / (keySize + ridSize)
         //
         // The order d is half of n.
-        int keySize = keySchema.getSizeInBytes();
+        //
+        // A compressed leaf also stores a 2-byte prefix length and the prefix,
+        // and each entry stores a 2-byte suffix length and the (possibly empty)
+        // suffix instead of a full key, so at best
+        //
+        //   n = (pageSizeInBytes - 11) / (2 + ridSize)
         int ridSize = RecordId.getSizeInBytes();
+        if (BPlusNode.isCompressed(keySchema)) {
+            int n = (pageSizeInBytes - 11) / (Short.BYTES + ridSize);
+            return n / 2;
+        }
+        int keySize = keySchema.getSizeInBytes();
         int n = (pageSizeInBytes - 9) / (keySize + ridSize);
         return n / 2;
     }
@@ -373,22 +434,34 @@ class LeafNode extends BPlusNode {
         //
         // represent a leaf node with sibling on page 4 and a single (key, rid)
         // pair with key 3 and page id (3, 1).
-
-        // All sizes are in bytes.
-        int isLeafSize = 1;
-        int siblingSize = Integer.BYTES;
-        int lenSize = Integer.BYTES;
-        int keySize = metadata.getKeySchema().getSizeInBytes();
-        int ridSize = RecordId.getSizeInBytes();
-        int entriesSize = (keySize + ridSize) * keys.size();
-        int size = isLeafSize + siblingSize + lenSize + entriesSize;
-
-        ByteBuffer buf = ByteBuffer.allocate(size);
+        //
+        // If the keys are compressed (see BPlusNode.isCompressed), d instead
+        // consists of the length (2 bytes) and bytes of the prefix shared by all
+        // keys, followed by the length (2 bytes) and bytes of each key's
+        // remaining suffix along with its rid. For example, the keys "cs161" and
+        // "cs186" are stored as the prefix "cs1" and the suffixes "61" and "86".
+        ByteBuffer buf = ByteBuffer.allocate(numBytes());
         buf.put((byte) 1);
         buf.putInt(rightSibling.orElse(-1));
         buf.putInt(keys.size());
+        if (!BPlusNode.isCompressed(metadata.getKeySchema())) {
+            for (int i = 0; i < keys.size(); ++i) {
+                buf.put(keys.get(i).toBytes());
+                buf.put(rids.get(i).toBytes());
+            }
+            return buf.array();
+        }
+
+        List<byte[]> unpadded = unpaddedKeys();
+        int prefixLength = BPlusNode.commonPrefixLength(unpadded);
+        buf.putShort((short) prefixLength);
+        if (prefixLength > 0) {
+            buf.put(unpadded.get(0), 0, prefixLength);
+        }
         for (int i = 0; i < keys.size(); ++i) {
-            buf.put(keys.get(i).toBytes());
+            byte[] key = unpadded.get(i);
+            buf.putShort((short) (key.length - prefixLength));
+            buf.put(key, prefixLength, key.length - prefixLength);
             buf.put(rids.get(i).toBytes());
         }
         return buf.array();
@@ -417,9 +490,21 @@ class LeafNode extends BPlusNode {
             rightSibling = Optional.of(temp);
         }
         int n = buf.getInt();
-        if (n != 0) {
+        Type keySchema = metadata.getKeySchema();
+        if (!BPlusNode.isCompressed(keySchema)) {
+            for (int i = 0; i < n; i++) {
+                keys.add(DataBox.fromBytes(buf, keySchema));
+                rids.add(RecordId.fromBytes(buf));
+            }
+        } else {
+            byte[] prefix = new byte[buf.getShort()];
+            buf.get(prefix);
             for (int i = 0; i < n; i++) {
-                keys.add(DataBox.fromBytes(buf, metadata.getKeySchema()));
+                byte[] suffix = new byte[buf.getShort()];
+                buf.get(suffix);
+                byte[] key = Arrays.copyOf(prefix, prefix.length + suffix.length);
+                System.arraycopy(suffix, 0, key, prefix.length, suffix.length);
+                keys.add(BPlusNode.fromUnpaddedBytes(key, keySchema));
                 rids.add(RecordId.fromBytes(buf));
             }
         }
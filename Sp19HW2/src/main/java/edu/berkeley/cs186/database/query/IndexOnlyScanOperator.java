@@ -0,0 +1,94 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * An index-only scan operator. It scans the same range of an index as an
+ * IndexScanOperator, but builds its output records from the keys stored in
+ * the leaves of the index instead of fetching every matching record from the
+ * table. Its output schema is just the indexed columns, so it can only answer
+ * queries that need no other column.
+ */
+public class IndexOnlyScanOperator extends IndexScanOperator {
+    /**
+     * An index-only scan operator over a leading prefix of the columns of a
+     * (possibly composite) index. See IndexScanOperator.
+     *
+     * @param transaction the transaction containing this operator
+     * @param tableName the table to iterate over
+     * @param indexColumns the names of the columns the index is on
+     * @param prefix the values of the leading index columns
+     * @param predicate the comparison on the index column following the prefix
+     * @param value the value to compare against
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public IndexOnlyScanOperator(Database.Transaction transaction,
+                                 String tableName,
+                                 List<String> indexColumns,
+                                 List<DataBox> prefix,
+                                 QueryPlan.PredicateOperator predicate,
+                                 DataBox value) throws QueryPlanException, DatabaseException {
+        super(transaction, tableName, indexColumns, prefix, predicate, value);
+    }
+
+    public String str() {
+        return super.str() + "\nindex only: true";
+    }
+
+    /**
+     * Estimates the IO cost of executing this query operator. No table pages
+     * are read, and of the index only the share of its pages holding matching
+     * keys is, which we estimate from the fraction of records that match.
+     *
+     * @return estimate IO cost
+     * @throws QueryPlanException
+     */
+    public int estimateIOCost() throws QueryPlanException {
+        long numRecords;
+        long numIndexPages;
+        try {
+            numRecords = this.transaction.getNumRecords(this.tableName);
+            numIndexPages = this.transaction.getNumIndexPages(this.tableName, this.indexColumns);
+        } catch (DatabaseException err) {
+            throw new QueryPlanException(err);
+        }
+
+        float fraction = numRecords == 0 ? 0 : Math.min(1, (float) this.stats.getNumRecords() / numRecords);
+        return Math.max(1, (int) Math.ceil(fraction * numIndexPages));
+    }
+
+    public Schema computeSchema() throws QueryPlanException {
+        Schema tableSchema;
+        try {
+            tableSchema = this.transaction.getFullyQualifiedSchema(this.tableName);
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
+
+        List<String> names = new ArrayList<String>();
+        List<Type> types = new ArrayList<Type>();
+        for (String column : this.indexColumns) {
+            String name = this.checkSchemaForColumn(tableSchema, column);
+            names.add(name);
+            types.add(tableSchema.getFieldTypes().get(tableSchema.getFieldNames().indexOf(name)));
+        }
+        return new Schema(names, types);
+    }
+
+    @Override
+    protected Iterator<Record> scanRange(DataBox low, boolean lowInclusive, DataBox high,
+                                         boolean highInclusive) throws DatabaseException {
+        return this.transaction.scanIndexKeys(this.tableName, this.indexColumns, low, lowInclusive,
+                                              high, highInclusive);
+    }
+}
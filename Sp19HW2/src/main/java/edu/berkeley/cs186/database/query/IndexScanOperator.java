@@ -5,28 +5,36 @@ import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.concurrency.LockType;
 import edu.berkeley.cs186.database.concurrency.LockUtil;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.TupleDataBox;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 import edu.berkeley.cs186.database.table.stats.Histogram;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 
 public class IndexScanOperator extends QueryOperator {
-    private Database.Transaction transaction;
-    private String tableName;
+    protected Database.Transaction transaction;
+    protected String tableName;
+    protected List<String> indexColumns;
+    private List<DataBox> prefix;
     private String columnName;
     private QueryPlan.PredicateOperator predicate;
     private DataBox value;
 
+    private List<Integer> prefixIndices;
     private int columnIndex;
 
     /**
      * An index scan operator.
      *
+     * If there is no index on columnName alone, the scan uses a composite index
+     * whose leading column is columnName.
+     *
      * @param transaction the transaction containing this operator
      * @param tableName the table to iterate over
      * @param columnName the name of the column the index is on
@@ -38,23 +46,82 @@ public class IndexScanOperator extends QueryOperator {
                              String columnName,
                              QueryPlan.PredicateOperator predicate,
                              DataBox value) throws QueryPlanException, DatabaseException {
+        this(transaction, tableName, indexLedBy(transaction, tableName, columnName),
+             Collections.emptyList(), predicate, value);
+    }
+
+    /**
+     * An index scan operator over a leading prefix of the columns of a
+     * (possibly composite) index. The first prefix.size() index columns must
+     * equal the values in prefix, and the next index column is compared against
+     * value using predicate.
+     *
+     * @param transaction the transaction containing this operator
+     * @param tableName the table to iterate over
+     * @param indexColumns the names of the columns the index is on
+     * @param prefix the values of the leading index columns
+     * @param predicate the comparison on the index column following the prefix
+     * @param value the value to compare against
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public IndexScanOperator(Database.Transaction transaction,
+                             String tableName,
+                             List<String> indexColumns,
+                             List<DataBox> prefix,
+                             QueryPlan.PredicateOperator predicate,
+                             DataBox value) throws QueryPlanException, DatabaseException {
         super(OperatorType.INDEXSCAN);
+        if (prefix.size() >= indexColumns.size()) {
+            throw new QueryPlanException("Index scan prefix must be shorter than the index.");
+        }
         this.tableName = tableName;
         this.transaction = transaction;
-        this.columnName = columnName;
+        this.indexColumns = indexColumns;
+        this.prefix = prefix;
+        this.columnName = indexColumns.get(prefix.size());
         this.predicate = predicate;
         this.value = value;
         this.setOutputSchema(this.computeSchema());
-        columnName = this.checkSchemaForColumn(this.getOutputSchema(), columnName);
-        this.columnIndex = this.getOutputSchema().getFieldNames().indexOf(columnName);
+
+        // Column positions are positions in the table, whose statistics are
+        // used to estimate the output of the scan.
+        Schema tableSchema = transaction.getFullyQualifiedSchema(tableName);
+        this.prefixIndices = new ArrayList<Integer>();
+        for (int i = 0; i < prefix.size(); i++) {
+            String prefixColumn = this.checkSchemaForColumn(tableSchema, indexColumns.get(i));
+            this.prefixIndices.add(tableSchema.getFieldNames().indexOf(prefixColumn));
+        }
+        String columnName = this.checkSchemaForColumn(tableSchema, this.columnName);
+        this.columnIndex = tableSchema.getFieldNames().indexOf(columnName);
 
         this.stats = this.estimateStats();
         this.cost = this.estimateIOCost();
     }
 
+    /**
+     * Returns the columns of the index to scan for a predicate on columnName:
+     * the index on columnName itself if there is one, and otherwise a composite
+     * index whose leading column is columnName.
+     */
+    private static List<String> indexLedBy(Database.Transaction transaction, String tableName,
+                                           String columnName) throws QueryPlanException {
+        if (transaction.indexExists(tableName, columnName)) {
+            return Collections.singletonList(columnName);
+        }
+        for (List<String> indexColumns : transaction.getIndexColumns(tableName)) {
+            if (QueryPlan.isIndexColumn(tableName, indexColumns.get(0), columnName)) {
+                return indexColumns;
+            }
+        }
+        throw new QueryPlanException("No index on column " + columnName + ".");
+    }
+
     public String str() {
+        String index = this.indexColumns.size() > 1 ? "\nindex: " + this.indexColumns +
+                       "\nprefix: " + this.prefix : "";
         return "type: " + this.getType() +
-               "\ntable: " + this.tableName +
+               "\ntable: " + this.tableName + index +
                "\ncolumn: " + this.columnName +
                "\noperator: " + this.predicate +
                "\nvalue: " + this.value;
@@ -83,6 +150,11 @@ public class IndexScanOperator extends QueryOperator {
             throw new QueryPlanException(de);
         }
 
+        for (int i = 0; i < this.prefix.size(); i++) {
+            stats = stats.copyWithPredicate(this.prefixIndices.get(i),
+                                            QueryPlan.PredicateOperator.EQUALS,
+                                            this.prefix.get(i));
+        }
         return stats.copyWithPredicate(this.columnIndex,
                                        this.predicate,
                                        this.value);
@@ -106,21 +178,16 @@ public class IndexScanOperator extends QueryOperator {
      * @throws QueryPlanException
      */
     public int estimateIOCost() throws QueryPlanException {
-        long numRecords;
         long numIndexPages;
-        TableStats tableStats;
         try {
-            numRecords = this.transaction.getNumRecords(this.tableName);
-            numIndexPages = this.transaction.getNumIndexPages(this.tableName, this.columnName);
-            tableStats = this.transaction.getStats(this.tableName);
-
+            numIndexPages = this.transaction.getNumIndexPages(this.tableName, this.indexColumns);
         } catch (DatabaseException err) {
             throw new QueryPlanException("Can't find the number of records in IndexScanOperator#estimateIOCost().");
 
         }
 
-        return (int)(tableStats.getHistograms().get(columnIndex).getCount() +
-                     numIndexPages); //round up and cast to an int
+        // The index is unclustered, so every matching record costs a page read.
+        return (int)(this.stats.getNumRecords() + numIndexPages);
     }
 
     public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
@@ -135,45 +202,71 @@ public class IndexScanOperator extends QueryOperator {
         }
     }
 
+    /**
+     * Scans the records whose index keys lie in the given range. See
+     * Database.Transaction#sortedScanRange.
+     */
+    protected Iterator<Record> scanRange(DataBox low, boolean lowInclusive, DataBox high,
+                                         boolean highInclusive) throws DatabaseException {
+        return this.transaction.sortedScanRange(this.tableName, this.indexColumns, low, lowInclusive,
+                                                high, highInclusive);
+    }
+
+    /**
+     * Returns the index key, or key prefix, made up of the given leading
+     * index column values, or null if there are none.
+     */
+    private DataBox indexKey(List<DataBox> values) {
+        if (values.isEmpty()) {
+            return null;
+        }
+        return this.indexColumns.size() == 1 ? values.get(0) : new TupleDataBox(values);
+    }
+
     /**
      * An implementation of Iterator that provides an iterator interface for this operator.
      */
     private class IndexScanIterator implements Iterator<Record> {
         private Iterator<Record> sourceIterator;
-        private Record nextRecord;
 
         public IndexScanIterator() throws QueryPlanException, DatabaseException {
-            this.nextRecord = null;
-            if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.EQUALS) {
-                this.sourceIterator = IndexScanOperator.this.transaction.lookupKey(
-                                          IndexScanOperator.this.tableName,
-                                          IndexScanOperator.this.columnName,
-                                          IndexScanOperator.this.value);
-            } else if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.LESS_THAN ||
-                       IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.LESS_THAN_EQUALS) {
-                this.sourceIterator = IndexScanOperator.this.transaction.sortedScan(
-                                          IndexScanOperator.this.tableName,
-                                          IndexScanOperator.this.columnName);
-            } else if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.GREATER_THAN) {
-                this.sourceIterator = IndexScanOperator.this.transaction.sortedScanFrom(
-                                          IndexScanOperator.this.tableName,
-                                          IndexScanOperator.this.columnName,
-                                          IndexScanOperator.this.value);
-                while (this.sourceIterator.hasNext()) {
-                    Record r = this.sourceIterator.next();
-
-                    if (r.getValues().get(IndexScanOperator.this.columnIndex)
-                            .compareTo(IndexScanOperator.this.value) > 0) {
-                        this.nextRecord = r;
-                        break;
-                    }
-                }
-            } else if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.GREATER_THAN_EQUALS) {
-                this.sourceIterator = IndexScanOperator.this.transaction.sortedScanFrom(
-                                          IndexScanOperator.this.tableName,
-                                          IndexScanOperator.this.columnName,
-                                          IndexScanOperator.this.value);
+            // The scan covers the keys that start with the prefix, and within
+            // those the keys whose next column satisfies the predicate. Both
+            // ends of the range are bounded in the index, so the scan reads
+            // only the leaves that hold matching keys.
+            List<DataBox> withValue = new ArrayList<>(IndexScanOperator.this.prefix);
+            withValue.add(IndexScanOperator.this.value);
+            DataBox prefixKey = IndexScanOperator.this.indexKey(IndexScanOperator.this.prefix);
+            DataBox valueKey = IndexScanOperator.this.indexKey(withValue);
+
+            DataBox low = prefixKey;
+            boolean lowInclusive = true;
+            DataBox high = prefixKey;
+            boolean highInclusive = true;
+            switch (IndexScanOperator.this.predicate) {
+            case EQUALS:
+                low = valueKey;
+                high = valueKey;
+                break;
+            case LESS_THAN:
+                high = valueKey;
+                highInclusive = false;
+                break;
+            case LESS_THAN_EQUALS:
+                high = valueKey;
+                break;
+            case GREATER_THAN:
+                low = valueKey;
+                lowInclusive = false;
+                break;
+            case GREATER_THAN_EQUALS:
+                low = valueKey;
+                break;
+            default:
+                throw new QueryPlanException("Cannot scan an index for " + IndexScanOperator.this.predicate);
             }
+
+            this.sourceIterator = IndexScanOperator.this.scanRange(low, lowInclusive, high, highInclusive);
         }
 
         /**
@@ -182,37 +275,7 @@ public class IndexScanOperator extends QueryOperator {
          * @return true if this iterator has another record to yield, otherwise false
          */
         public boolean hasNext() {
-            if (this.nextRecord != null) {
-                return true;
-            }
-            if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.LESS_THAN) {
-                if (this.sourceIterator.hasNext()) {
-                    Record r = this.sourceIterator.next();
-                    if (r.getValues().get(IndexScanOperator.this.columnIndex)
-                            .compareTo(IndexScanOperator.this.value) >= 0) {
-                        return false;
-                    }
-                    this.nextRecord = r;
-                    return true;
-                }
-                return false;
-            } else if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.LESS_THAN_EQUALS) {
-                if (this.sourceIterator.hasNext()) {
-                    Record r = this.sourceIterator.next();
-                    if (r.getValues().get(IndexScanOperator.this.columnIndex)
-                            .compareTo(IndexScanOperator.this.value) > 0) {
-                        return false;
-                    }
-                    this.nextRecord = r;
-                    return true;
-                }
-                return false;
-            }
-            if (this.sourceIterator.hasNext()) {
-                this.nextRecord = this.sourceIterator.next();
-                return true;
-            }
-            return false;
+            return this.sourceIterator.hasNext();
         }
 
         /**
@@ -223,9 +286,7 @@ public class IndexScanOperator extends QueryOperator {
          */
         public Record next() {
             if (this.hasNext()) {
-                Record r = this.nextRecord;
-                this.nextRecord = null;
-                return r;
+                return this.sourceIterator.next();
             }
             throw new NoSuchElementException();
         }
@@ -178,10 +178,10 @@ public class QueryPlan {
      * @throws QueryPlanException
      */
     public Iterator<Record> execute() throws DatabaseException, QueryPlanException {
-        String indexColumn = this.checkIndexEligible();
+        List<String> indexColumns = this.checkIndexEligible();
 
-        if (indexColumn != null) {
-            this.generateIndexPlan(indexColumn);
+        if (indexColumns != null) {
+            this.generateIndexPlan(indexColumns);
         } else {
             // start off with the start table scan as the source
             this.finalOperator = new SequentialScanOperator(this.transaction, this.startTableName);
@@ -209,18 +209,26 @@ public class QueryPlan {
 
     /**
      * Gets all SELECT predicates for which there exists an index on the column
-     * referenced in that predicate for the given table.
+     * referenced in that predicate for the given table, or a composite index
+     * whose leading column is the column referenced in that predicate.
      *
      * @return an ArrayList of SELECT predicates
      */
     private List<Integer> getEligibleIndexColumns(String table) {
         List<Integer> selectIndices = new ArrayList<Integer>();
+        List<List<String>> allIndexColumns = this.transaction.getIndexColumns(table);
 
         for (int i = 0; i < this.selectColumnNames.size(); i++) {
             String column = this.selectColumnNames.get(i);
+            if (this.selectOperators.get(i) == PredicateOperator.NOT_EQUALS) {
+                continue;
+            }
 
-            if (this.transaction.indexExists(table, column) &&
-                    this.selectOperators.get(i) != PredicateOperator.NOT_EQUALS) {
+            boolean eligible = this.transaction.indexExists(table, column);
+            for (List<String> indexColumns : allIndexColumns) {
+                eligible |= isIndexColumn(table, indexColumns.get(0), column);
+            }
+            if (eligible) {
                 selectIndices.add(i);
             }
         }
@@ -228,6 +236,55 @@ public class QueryPlan {
         return selectIndices;
     }
 
+    /**
+     * Matches the SELECT predicates against a leading prefix of the columns of
+     * an index. Each index column in turn is matched by an EQUALS predicate on
+     * it, in which case matching moves on to the next column, or by any other
+     * predicate except NOT_EQUALS, in which case matching stops.
+     *
+     * @return the indices of the matched SELECT predicates, one per matched
+     * index column, in index column order
+     */
+    private List<Integer> matchIndexPrefix(List<String> indexColumns) {
+        List<Integer> matched = new ArrayList<Integer>();
+
+        for (String indexColumn : indexColumns) {
+            int equalsIndex = -1;
+            int rangeIndex = -1;
+            for (int i = 0; i < this.selectColumnNames.size(); i++) {
+                if (!isIndexColumn(this.startTableName, indexColumn, this.selectColumnNames.get(i))) {
+                    continue;
+                }
+                PredicateOperator operator = this.selectOperators.get(i);
+                if (operator == PredicateOperator.EQUALS && equalsIndex == -1) {
+                    equalsIndex = i;
+                } else if (operator != PredicateOperator.NOT_EQUALS && rangeIndex == -1) {
+                    rangeIndex = i;
+                }
+            }
+
+            if (equalsIndex != -1) {
+                matched.add(equalsIndex);
+                continue;
+            }
+            if (rangeIndex != -1) {
+                matched.add(rangeIndex);
+            }
+            break;
+        }
+
+        return matched;
+    }
+
+    /**
+     * Returns true if column, which is either unqualified or qualified by the
+     * name of its table, is the column indexColumn of an index on table. A
+     * column qualified by another table is not, even if it has the same name.
+     */
+    static boolean isIndexColumn(String table, String indexColumn, String column) {
+        return column.equals(indexColumn) || column.equals(table + "." + indexColumn);
+    }
+
     /**
      * Gets all columns for which there exists an index for that table
      *
@@ -285,15 +342,21 @@ public class QueryPlan {
     /**
      * Finds the lowest cost QueryOperator that scans the given table. First
      * determine the cost of a sequential scan for the given table. Then for every index that can be
-     * used on that table, determine the cost of an index scan. Keep track of
+     * used on that table, determine the cost of an index scan, and of an index scan that
+     * fetches the matching records in record id order. Keep track of
      * the minimum cost operation. Then push down eligible projects (SELECT
      * predicates). If an index scan was chosen, exclude that SELECT predicate when
      * pushing down selects. This method will be called during the first pass of the search
      * algorithm to determine the most efficient way to access each single table.
      *
+     * A plain index scan reads a table page for every matching record, while a
+     * record id sorted scan reads each page holding a match once, so the latter
+     * wins as soon as several matches share a page. Neither wins over a
+     * sequential scan once most pages hold a match.
+     *
      * @return a QueryOperator that has the lowest cost of scanning the given table which is
-     * either a SequentialScanOperator or an IndexScanOperator nested within any possible
-     * pushed down select operators
+     * either a SequentialScanOperator, an IndexScanOperator or a
+     * RidSortedIndexScanOperator nested within any possible pushed down select operators
      * @throws DatabaseException
      * @throws QueryPlanException
      */
@@ -303,8 +366,34 @@ public class QueryPlan {
 
         // Find the cost of a sequential scan of the table
         minOp = new SequentialScanOperator(this.transaction, table);
+        int minCost = minOp.estimateIOCost();
+        int indexUsedForScan = -1;
 
-        return minOp;
+        // Find the cost of each kind of index scan for every eligible SELECT
+        // predicate, preferring the plain index scan on ties since it returns
+        // records in key order
+        for (int i : this.getEligibleIndexColumns(table)) {
+            String column = this.selectColumnNames.get(i);
+            PredicateOperator operator = this.selectOperators.get(i);
+            DataBox value = this.selectDataBoxes.get(i);
+
+            List<QueryOperator> indexScans = new ArrayList<QueryOperator>();
+            indexScans.add(new IndexScanOperator(this.transaction, table, column, operator, value));
+            indexScans.add(new RidSortedIndexScanOperator(this.transaction, table, column, operator, value));
+
+            for (QueryOperator indexScan : indexScans) {
+                int cost = indexScan.estimateIOCost();
+                if (cost < minCost) {
+                    minOp = indexScan;
+                    minCost = cost;
+                    indexUsedForScan = i;
+                }
+            }
+        }
+
+        // Push down SELECT predicates that apply to this table and that were
+        // not used for an index scan
+        return this.addEligibleSelections(minOp, indexUsedForScan);
     }
 
     /**
@@ -384,42 +473,119 @@ public class QueryPlan {
         return minOp;
     }
 
-    private String checkIndexEligible() {
+    /**
+     * Picks the index that matches the longest leading prefix of its columns
+     * against the SELECT predicates, breaking ties in favor of the index whose
+     * leading column appears first among the SELECT predicates.
+     *
+     * @return the columns of the chosen index, or null if no index is eligible
+     */
+    private List<String> checkIndexEligible() {
         if (this.selectColumnNames.size() > 0
                 && this.groupByColumn == null
                 && this.joinTableNames.size() == 0) {
-            int index = 0;
-            for (String column : selectColumnNames) {
-                if (this.transaction.indexExists(this.startTableName, column)) {
-                    if (this.selectOperators.get(index) != PredicateOperator.NOT_EQUALS) {
-                        return column;
-                    }
+            List<String> bestIndex = null;
+            List<Integer> bestMatch = null;
+            for (List<String> indexColumns : this.transaction.getIndexColumns(this.startTableName)) {
+                List<Integer> match = this.matchIndexPrefix(indexColumns);
+                if (match.isEmpty()) {
+                    continue;
+                }
+                if (bestMatch == null || match.size() > bestMatch.size() ||
+                        (match.size() == bestMatch.size() && match.get(0) < bestMatch.get(0))) {
+                    bestIndex = indexColumns;
+                    bestMatch = match;
                 }
-
-                index++;
             }
+            return bestIndex;
         }
 
         return null;
     }
 
-    private void generateIndexPlan(String indexColumn) throws QueryPlanException, DatabaseException {
-        int selectIndex = this.selectColumnNames.indexOf(indexColumn);
+    private void generateIndexPlan(List<String> indexColumns) throws QueryPlanException,
+        DatabaseException {
+        List<Integer> match = this.matchIndexPrefix(indexColumns);
+        int selectIndex = match.get(match.size() - 1);
         PredicateOperator operator = this.selectOperators.get(selectIndex);
         DataBox value = this.selectDataBoxes.get(selectIndex);
 
-        this.finalOperator = new IndexScanOperator(this.transaction, this.startTableName, indexColumn,
-                operator,
-                value);
+        List<DataBox> prefix = new ArrayList<DataBox>();
+        for (int i : match.subList(0, match.size() - 1)) {
+            prefix.add(this.selectDataBoxes.get(i));
+        }
+
+        boolean indexOnly = this.indexCovers(indexColumns);
+        if (indexOnly) {
+            this.finalOperator = new IndexOnlyScanOperator(this.transaction, this.startTableName, indexColumns,
+                    prefix,
+                    operator,
+                    value);
+        } else {
+            this.finalOperator = new IndexScanOperator(this.transaction, this.startTableName, indexColumns,
+                    prefix,
+                    operator,
+                    value);
+        }
 
-        this.selectColumnNames.remove(selectIndex);
-        this.selectOperators.remove(selectIndex);
-        this.selectDataBoxes.remove(selectIndex);
+        List<Integer> used = new ArrayList<Integer>(match);
+        used.sort(Collections.reverseOrder());
+        for (int i : used) {
+            this.selectColumnNames.remove(i);
+            this.selectOperators.remove(i);
+            this.selectDataBoxes.remove(i);
+        }
 
         this.addSelects();
+        // An index-only scan yields the columns in index order, so SELECT *
+        // puts them back in table order.
+        List<String> tableColumns = this.transaction.getSchema(this.startTableName).getFieldNames();
+        if (indexOnly && this.selectsAllColumns() && !indexColumns.equals(tableColumns)) {
+            this.finalOperator = new ProjectOperator(this.finalOperator,
+                    this.transaction.getFullyQualifiedSchema(this.startTableName).getFieldNames(),
+                    false, null, null);
+        }
         this.addProjects();
     }
 
+    /**
+     * Returns true if this query yields every column of its tables (SELECT *).
+     */
+    private boolean selectsAllColumns() {
+        return this.projectColumns.isEmpty() && !this.hasCount && this.sumColumnName == null
+               && this.averageColumnName == null;
+    }
+
+    /**
+     * Returns true if every column this query reads from the start table is
+     * one of the given index columns, in which case the query can be answered
+     * by an index-only scan. COUNT(*) reads no column.
+     */
+    private boolean indexCovers(List<String> indexColumns) throws DatabaseException {
+        List<String> columns = new ArrayList<String>(this.selectColumnNames);
+        if (this.selectsAllColumns()) {
+            columns.addAll(this.transaction.getSchema(this.startTableName).getFieldNames());
+        }
+        columns.addAll(this.projectColumns);
+        if (this.sumColumnName != null) {
+            columns.add(this.sumColumnName);
+        }
+        if (this.averageColumnName != null) {
+            columns.add(this.averageColumnName);
+        }
+
+        for (String column : columns) {
+            boolean covered = false;
+            for (String indexColumn : indexColumns) {
+                covered |= isIndexColumn(this.startTableName, indexColumn, column);
+            }
+            if (!covered) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private void addJoins() throws QueryPlanException, DatabaseException {
         int index = 0;
 
@@ -0,0 +1,95 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.table.Record;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * An index scan operator that fetches the matching records in record id order.
+ * It scans the same range of an index as an IndexScanOperator, but first
+ * collects the record ids of every match, grouped by page, and then reads each
+ * page of the table once, returning all of its matching records together. The
+ * records are not returned in index key order.
+ */
+public class RidSortedIndexScanOperator extends IndexScanOperator {
+    /**
+     * A record id sorted index scan operator. See IndexScanOperator.
+     *
+     * @param transaction the transaction containing this operator
+     * @param tableName the table to iterate over
+     * @param columnName the name of the column the index is on
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public RidSortedIndexScanOperator(Database.Transaction transaction,
+                                      String tableName,
+                                      String columnName,
+                                      QueryPlan.PredicateOperator predicate,
+                                      DataBox value) throws QueryPlanException, DatabaseException {
+        super(transaction, tableName, columnName, predicate, value);
+    }
+
+    /**
+     * A record id sorted index scan operator over a leading prefix of the
+     * columns of a (possibly composite) index. See IndexScanOperator.
+     *
+     * @param transaction the transaction containing this operator
+     * @param tableName the table to iterate over
+     * @param indexColumns the names of the columns the index is on
+     * @param prefix the values of the leading index columns
+     * @param predicate the comparison on the index column following the prefix
+     * @param value the value to compare against
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public RidSortedIndexScanOperator(Database.Transaction transaction,
+                                      String tableName,
+                                      List<String> indexColumns,
+                                      List<DataBox> prefix,
+                                      QueryPlan.PredicateOperator predicate,
+                                      DataBox value) throws QueryPlanException, DatabaseException {
+        super(transaction, tableName, indexColumns, prefix, predicate, value);
+    }
+
+    public String str() {
+        return super.str() + "\nrid sorted: true";
+    }
+
+    /**
+     * Estimates the IO cost of executing this query operator. As with an
+     * IndexScanOperator the index is read, but each table page holding a
+     * matching record is read only once. We estimate the number of such pages
+     * as the expected number of distinct pages hit by that many records placed
+     * uniformly at random, which is at most the number of data pages and at
+     * most the number of matching records.
+     *
+     * @return estimate IO cost
+     * @throws QueryPlanException
+     */
+    public int estimateIOCost() throws QueryPlanException {
+        long numIndexPages;
+        int numDataPages;
+        try {
+            numIndexPages = this.transaction.getNumIndexPages(this.tableName, this.indexColumns);
+            numDataPages = this.transaction.getNumDataPages(this.tableName);
+        } catch (DatabaseException err) {
+            throw new QueryPlanException(err);
+        }
+
+        int numMatches = this.stats.getNumRecords();
+        double pagesRead = numDataPages == 0 ? 0 :
+                           numDataPages * (1 - Math.pow(1 - 1.0 / numDataPages, numMatches));
+        return (int) (Math.ceil(pagesRead) + numIndexPages);
+    }
+
+    @Override
+    protected Iterator<Record> scanRange(DataBox low, boolean lowInclusive, DataBox high,
+                                         boolean highInclusive) throws DatabaseException {
+        return this.transaction.scanRangeInPageOrder(this.tableName, this.indexColumns, low,
+                lowInclusive, high, highInclusive);
+    }
+}
@@ -332,6 +332,32 @@ public class Table implements Closeable {
         return Record.fromBytes(buf, schema);
     }
 
+    /**
+     * Retrieves the records in the given entries of a single data page,
+     * fetching the page only once, in entry order. An exception is thrown if
+     * any of the entries holds no record.
+     */
+    public synchronized List<Record> getRecords(BaseTransaction transaction, int pageNum,
+            BitSet entryNums) throws DatabaseException {
+        List<Record> records = new ArrayList<>();
+        if (entryNums.isEmpty()) {
+            return records;
+        }
+        validateRecordId(new RecordId(pageNum, (short) (entryNums.length() - 1)));
+        Page page = allocator.fetchPage(transaction, pageNum);
+        byte[] bitmap = getBitMap(transaction, page);
+        Buffer buf = page.getBuffer(transaction);
+        for (int e = entryNums.nextSetBit(0); e >= 0; e = entryNums.nextSetBit(e + 1)) {
+            if (Bits.getBit(bitmap, e) == Bits.Bit.ZERO) {
+                String msg = String.format("Record %s does not exist.", new RecordId(pageNum, (short) e));
+                throw new DatabaseException(msg);
+            }
+            buf.position(bitmapSizeInBytes + (e * schema.getSizeInBytes()));
+            records.add(Record.fromBytes(buf, schema));
+        }
+        return records;
+    }
+
     /**
      * Overwrites an existing record with new values and returns the existing
      * record. stats is updated accordingly. An exception is thrown if rid does
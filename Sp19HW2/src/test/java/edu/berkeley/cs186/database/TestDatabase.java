@@ -1,6 +1,14 @@
 package edu.berkeley.cs186.database;
 
 import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.query.IndexOnlyScanOperator;
+import edu.berkeley.cs186.database.query.IndexScanOperator;
+import edu.berkeley.cs186.database.query.QueryOperator;
+import edu.berkeley.cs186.database.query.QueryPlan;
+import edu.berkeley.cs186.database.query.QueryPlanException;
+import edu.berkeley.cs186.database.query.RidSortedIndexScanOperator;
 import edu.berkeley.cs186.database.table.*;
 
 import org.junit.After;
@@ -13,6 +21,10 @@ import org.junit.rules.TemporaryFolder;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 
 @Category({HW99Tests.class, SystemTests.class})
 public class TestDatabase {
@@ -134,4 +146,189 @@ public class TestDatabase {
         t1.end();
     }
 
+    private static List<DataBox> twoInts(int i, int j) {
+        return Arrays.asList(new IntDataBox(i), new IntDataBox(j));
+    }
+
+    @Test
+    public void testCompositeIndex() throws DatabaseException, QueryPlanException {
+        Schema s = TestUtils.createSchemaWithTwoInts();
+        String tableName = "testTable1";
+
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createTable(s, tableName);
+        t1.createIndex(tableName, Arrays.asList("int1", "int2"));
+        for (int i = 9; i >= 0; --i) {
+            for (int j = 0; j < 10; ++j) {
+                t1.addRecord(tableName, twoInts(i, j));
+            }
+        }
+        t1.end();
+
+        db.close();
+        db = new Database(this.filename);
+
+        Database.Transaction t2 = db.beginTransaction();
+        assertTrue(t2.indexExists(tableName, Arrays.asList("int1", "int2")));
+        assertFalse(t2.indexExists(tableName, Arrays.asList("int2", "int1")));
+        assertFalse(t2.indexExists(tableName, "int1"));
+
+        // An equality on the leading column and a range on the second column.
+        QueryPlan query = t2.query(tableName);
+        query.select("int1", QueryPlan.PredicateOperator.EQUALS, new IntDataBox(7));
+        query.select("int2", QueryPlan.PredicateOperator.GREATER_THAN, new IntDataBox(4));
+        Iterator<Record> records = query.execute();
+        assertTrue(query.getFinalOperator() instanceof IndexScanOperator);
+        for (int j = 5; j < 10; ++j) {
+            assertTrue(records.hasNext());
+            assertEquals(new Record(twoInts(7, j)), records.next());
+        }
+        assertFalse(records.hasNext());
+
+        // An equality on the leading column bounds the range on the second
+        // column from below as well.
+        query = t2.query(tableName);
+        query.select("int1", QueryPlan.PredicateOperator.EQUALS, new IntDataBox(7));
+        query.select("int2", QueryPlan.PredicateOperator.LESS_THAN, new IntDataBox(2));
+        records = query.execute();
+        assertTrue(query.getFinalOperator() instanceof IndexScanOperator);
+        assertEquals(new Record(twoInts(7, 0)), records.next());
+        assertEquals(new Record(twoInts(7, 1)), records.next());
+        assertFalse(records.hasNext());
+
+        // A range on the leading column alone.
+        query = t2.query(tableName);
+        query.select("int1", QueryPlan.PredicateOperator.LESS_THAN_EQUALS, new IntDataBox(1));
+        records = query.execute();
+        assertTrue(query.getFinalOperator() instanceof IndexScanOperator);
+        for (int i = 0; i < 2; ++i) {
+            for (int j = 0; j < 10; ++j) {
+                assertEquals(new Record(twoInts(i, j)), records.next());
+            }
+        }
+        assertFalse(records.hasNext());
+
+        // A predicate on the second column alone cannot use the index.
+        query = t2.query(tableName);
+        query.select("int2", QueryPlan.PredicateOperator.EQUALS, new IntDataBox(1));
+        records = query.execute();
+        assertFalse(query.getFinalOperator() instanceof IndexScanOperator);
+
+        // Neither can a predicate on a column of another table that has the
+        // same name as the leading column.
+        t2.createTable(s, "testTable2");
+        IntDataBox seven = new IntDataBox(7);
+        assertTrue(new IndexScanOperator(t2, tableName, tableName + ".int1",
+                                         QueryPlan.PredicateOperator.EQUALS, seven).iterator().hasNext());
+        try {
+            new IndexScanOperator(t2, tableName, "testTable2.int1", QueryPlan.PredicateOperator.EQUALS, seven);
+            fail();
+        } catch (QueryPlanException e) {
+            // The index on testTable1 is not an index on testTable2.int1.
+        }
+        query = t2.query(tableName);
+        query.join("testTable2", tableName + ".int1", "testTable2.int1");
+        query.select("testTable2.int1", QueryPlan.PredicateOperator.EQUALS, seven);
+        assertFalse(query.minCostSingleAccess(tableName) instanceof IndexScanOperator);
+        t2.end();
+    }
+
+    @Test
+    public void testIndexOnlyScan() throws DatabaseException, QueryPlanException {
+        Schema s = TestUtils.createSchemaWithTwoInts();
+        String tableName = "testTable1";
+
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createTableWithIndices(s, tableName, Collections.singletonList("int1"));
+        for (int i = 0; i < 100; ++i) {
+            t1.addRecord(tableName, twoInts(i, -i));
+        }
+
+        // Only the indexed column is read, so the table is never touched.
+        QueryPlan query = t1.query(tableName);
+        query.select("int1", QueryPlan.PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(95));
+        query.project(Collections.singletonList("int1"));
+        Iterator<Record> records = query.execute();
+        assertTrue(query.getFinalOperator().getSource() instanceof IndexOnlyScanOperator);
+        for (int i = 95; i < 100; ++i) {
+            assertEquals(new Record(Collections.singletonList(new IntDataBox(i))), records.next());
+        }
+        assertFalse(records.hasNext());
+
+        // COUNT(*) reads no column at all.
+        query = t1.query(tableName);
+        query.select("int1", QueryPlan.PredicateOperator.LESS_THAN, new IntDataBox(10));
+        query.count();
+        records = query.execute();
+        assertTrue(query.getFinalOperator().getSource() instanceof IndexOnlyScanOperator);
+        assertEquals(new Record(Collections.singletonList(new IntDataBox(10))), records.next());
+
+        // Projecting an unindexed column needs the records themselves.
+        query = t1.query(tableName);
+        query.select("int1", QueryPlan.PredicateOperator.EQUALS, new IntDataBox(7));
+        query.project(Collections.singletonList("int2"));
+        records = query.execute();
+        QueryOperator source = query.getFinalOperator().getSource();
+        assertTrue(source instanceof IndexScanOperator);
+        assertFalse(source instanceof IndexOnlyScanOperator);
+        assertEquals(new Record(Collections.singletonList(new IntDataBox(-7))), records.next());
+
+        // SELECT * over an index on every column, in another order than the
+        // table's, yields the columns in table order.
+        t1.createTable(s, "testTable2");
+        t1.createIndex("testTable2", Arrays.asList("int2", "int1"));
+        for (int i = 0; i < 100; ++i) {
+            t1.addRecord("testTable2", twoInts(i, -i));
+        }
+        query = t1.query("testTable2");
+        query.select("int2", QueryPlan.PredicateOperator.EQUALS, new IntDataBox(-7));
+        records = query.execute();
+        assertTrue(query.getFinalOperator().getSource() instanceof IndexOnlyScanOperator);
+        assertEquals(t1.getFullyQualifiedSchema("testTable2").getFieldNames(),
+                     query.getFinalOperator().getOutputSchema().getFieldNames());
+        assertEquals(new Record(twoInts(7, -7)), records.next());
+        assertFalse(records.hasNext());
+        t1.end();
+    }
+
+    @Test
+    public void testScanRangeInPageOrder() throws DatabaseException, QueryPlanException {
+        Schema s = TestUtils.createSchemaWithTwoInts();
+        String tableName = "testTable1";
+
+        // Keys are scattered across the pages of the table, and int2 follows
+        // the order of the records in the table.
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createTableWithIndices(s, tableName, Collections.singletonList("int1"));
+        for (int i = 0; i < 1000; ++i) {
+            t1.addRecord(tableName, twoInts((i * 37) % 1000, i));
+        }
+
+        Iterator<Record> records = t1.scanRangeInPageOrder(tableName, Collections.singletonList("int1"),
+                                   new IntDataBox(100), true, new IntDataBox(400), false);
+        int count = 0;
+        int previous = -1;
+        while (records.hasNext()) {
+            Record r = records.next();
+            int key = r.getValues().get(0).getInt();
+            int position = r.getValues().get(1).getInt();
+            assertTrue(key >= 100 && key < 400);
+            assertEquals((position * 37) % 1000, key);
+            assertTrue(position > previous);
+            previous = position;
+            count++;
+        }
+        assertEquals(300, count);
+
+        QueryOperator scan = new RidSortedIndexScanOperator(t1, tableName, "int1",
+                QueryPlan.PredicateOperator.LESS_THAN_EQUALS, new IntDataBox(9));
+        records = scan.iterator();
+        count = 0;
+        while (records.hasNext()) {
+            assertTrue(records.next().getValues().get(0).getInt() <= 9);
+            count++;
+        }
+        assertEquals(10, count);
+        t1.end();
+    }
 }
@@ -56,6 +56,10 @@ public class DummyTransaction extends BaseTransaction {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    public void createIndex(String tableName, List<String> columnNames) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     public boolean deleteTable(String tableName) {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
@@ -84,6 +88,14 @@ public class DummyTransaction extends BaseTransaction {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    public boolean indexExists(String tableName, List<String> columnNames) {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public List<List<String>> getIndexColumns(String tableName) {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     public Iterator<Record> sortedScan(String tableName, String columnName) throws DatabaseException {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
@@ -93,6 +105,30 @@ public class DummyTransaction extends BaseTransaction {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    public Iterator<Record> sortedScanRange(String tableName, List<String> columnNames,
+                                            DataBox low, boolean lowInclusive,
+                                            DataBox high, boolean highInclusive) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public Iterator<Record> sortedScanRangeDescending(String tableName, List<String> columnNames,
+            DataBox low, boolean lowInclusive,
+            DataBox high, boolean highInclusive) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public Iterator<Record> scanIndexKeys(String tableName, List<String> columnNames,
+                                          DataBox low, boolean lowInclusive,
+                                          DataBox high, boolean highInclusive) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public Iterator<Record> scanRangeInPageOrder(String tableName, List<String> columnNames,
+            DataBox low, boolean lowInclusive,
+            DataBox high, boolean highInclusive) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     public Iterator<Record> lookupKey(String tableName, String columnName,
                                       DataBox key) throws DatabaseException {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
@@ -183,6 +219,10 @@ public class DummyTransaction extends BaseTransaction {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    public int getNumIndexPages(String tableName, List<String> columnNames) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     public Schema getSchema(String tableName) throws DatabaseException {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
@@ -0,0 +1,93 @@
+package edu.berkeley.cs186.database.databox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({HW99Tests.class, SystemTests.class})
+public class TestTupleDataBox {
+    private static TupleDataBox tuple(DataBox... values) {
+        return new TupleDataBox(Arrays.asList(values));
+    }
+
+    @Test
+    public void testType() {
+        Type t = Type.tupleType(Arrays.asList(Type.intType(), Type.stringType(3)));
+        assertEquals(t, tuple(new IntDataBox(0), new StringDataBox("abc", 3)).type());
+        assertEquals(7, t.getSizeInBytes());
+    }
+
+    @Test(expected = DataBoxException.class)
+    public void testEmpty() {
+        new TupleDataBox(Collections.emptyList());
+    }
+
+    @Test(expected = DataBoxException.class)
+    public void testNested() {
+        tuple(new IntDataBox(0), tuple(new IntDataBox(1)));
+    }
+
+    @Test(expected = DataBoxException.class)
+    public void testGetInt() {
+        tuple(new IntDataBox(0)).getInt();
+    }
+
+    @Test
+    public void testGetValues() {
+        assertEquals(Arrays.asList(new IntDataBox(0), new BoolDataBox(true)),
+                     tuple(new IntDataBox(0), new BoolDataBox(true)).getValues());
+    }
+
+    @Test
+    public void testToAndFromBytes() {
+        for (int i = -10; i < 10; ++i) {
+            TupleDataBox d = tuple(new IntDataBox(i), new StringDataBox("s" + (i + 10), 4),
+                                   new FloatDataBox(i / 2.0f), new BoolDataBox(i % 2 == 0));
+            byte[] bytes = d.toBytes();
+            assertEquals(d.type().getSizeInBytes(), bytes.length);
+            assertEquals(d, DataBox.fromBytes(ByteBuffer.wrap(bytes), d.type()));
+        }
+    }
+
+    @Test
+    public void testEquals() {
+        TupleDataBox zeroOne = tuple(new IntDataBox(0), new IntDataBox(1));
+        TupleDataBox oneZero = tuple(new IntDataBox(1), new IntDataBox(0));
+        assertEquals(zeroOne, zeroOne);
+        assertEquals(zeroOne, tuple(new IntDataBox(0), new IntDataBox(1)));
+        assertNotEquals(zeroOne, oneZero);
+        assertNotEquals(zeroOne, tuple(new IntDataBox(0)));
+    }
+
+    @Test
+    public void testCompareTo() {
+        TupleDataBox zeroOne = tuple(new IntDataBox(0), new IntDataBox(1));
+        TupleDataBox oneZero = tuple(new IntDataBox(1), new IntDataBox(0));
+        TupleDataBox oneOne = tuple(new IntDataBox(1), new IntDataBox(1));
+        assertTrue(zeroOne.compareTo(zeroOne) == 0);
+        assertTrue(zeroOne.compareTo(oneZero) < 0);
+        assertTrue(oneZero.compareTo(oneOne) < 0);
+        assertTrue(oneOne.compareTo(zeroOne) > 0);
+    }
+
+    @Test
+    public void testCompareToPrefix() {
+        TupleDataBox one = tuple(new IntDataBox(1));
+        TupleDataBox zeroNine = tuple(new IntDataBox(0), new IntDataBox(9));
+        TupleDataBox oneZero = tuple(new IntDataBox(1), new IntDataBox(0));
+        TupleDataBox two = tuple(new IntDataBox(2));
+        assertTrue(zeroNine.compareTo(one) < 0);
+        assertTrue(one.compareTo(oneZero) < 0);
+        assertTrue(oneZero.compareTo(one) > 0);
+        assertTrue(oneZero.compareTo(two) < 0);
+    }
+}
@@ -7,6 +7,8 @@ import edu.berkeley.cs186.database.categories.*;
 import edu.berkeley.cs186.database.common.Buffer;
 import edu.berkeley.cs186.database.common.ByteBuffer;
 
+import java.util.Arrays;
+
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
@@ -111,4 +113,28 @@ public class TestType {
         assertNotEquals(stringType, Type.stringType(1));
         assertEquals(stringType, Type.stringType(2));
     }
+
+    @Test
+    public void testTupleType() {
+        // Check type id and size.
+        Type tupleType = Type.tupleType(Arrays.asList(Type.intType(), Type.stringType(2)));
+        assertEquals(tupleType.getTypeId(), TypeId.TUPLE);
+        assertEquals(tupleType.getSizeInBytes(), 6);
+        assertEquals(tupleType.getElementTypes(), Arrays.asList(Type.intType(), Type.stringType(2)));
+
+        // Check toBytes and fromBytes.
+        Buffer buf = ByteBuffer.wrap(tupleType.toBytes());
+        assertEquals(tupleType, Type.fromBytes(buf));
+
+        // Check equality.
+        assertNotEquals(tupleType, Type.intType());
+        assertNotEquals(tupleType, Type.stringType(6));
+        assertEquals(tupleType, Type.tupleType(Arrays.asList(Type.intType(), Type.stringType(2))));
+        assertNotEquals(tupleType, Type.tupleType(Arrays.asList(Type.stringType(2), Type.intType())));
+    }
+
+    @Test(expected = DataBoxException.class)
+    public void testNestedTupleType() {
+        Type.tupleType(Arrays.asList(Type.tupleType(Arrays.asList(Type.intType()))));
+    }
 }
@@ -1,9 +1,11 @@
 package edu.berkeley.cs186.database.index;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -23,7 +25,10 @@ import edu.berkeley.cs186.database.categories.*;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.TupleDataBox;
 import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.table.RecordId;
 
 @Category(HW2Tests.class)
@@ -408,4 +413,169 @@ public class TestBPlusTree {
         assertEquals(5, InnerNode.maxOrder(pageSizeInBytes, keySchema));
         assertEquals(4, BPlusTree.maxOrder(pageSizeInBytes, keySchema));
     }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testShortestSeparator() {
+        assertEquals(new StringDataBox("s", 10),
+                     BPlusNode.shortestSeparator(new StringDataBox("jones", 10),
+                                                 new StringDataBox("smith", 10)));
+        assertEquals(new StringDataBox("smithe", 10),
+                     BPlusNode.shortestSeparator(new StringDataBox("smith", 10),
+                                                 new StringDataBox("smithers", 10)));
+        assertEquals(new IntDataBox(7),
+                     BPlusNode.shortestSeparator(new IntDataBox(3), new IntDataBox(7)));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testCompressedStringKeys() throws BPlusTreeException, IOException {
+        Type keySchema = Type.stringType(100);
+        int d = BPlusTree.maxOrder(Page.pageSize, keySchema);
+
+        List<DataBox> keys = new ArrayList<>();
+        List<RecordId> rids = new ArrayList<>();
+        List<RecordId> sortedRids = new ArrayList<>();
+        List<Pair<DataBox, RecordId>> data = new ArrayList<>();
+        for (int i = 0; i < 2000; ++i) {
+            DataBox key = new StringDataBox(String.format("student%05d", i), 100);
+            RecordId rid = new RecordId(i, (short) i);
+            keys.add(key);
+            rids.add(rid);
+            sortedRids.add(rid);
+            data.add(new Pair<>(key, rid));
+        }
+
+        // Uncompressed 100-byte keys fit at most 38 to a leaf, which would take
+        // at least 53 leaves. Compressed, only the digits of each key differ.
+        BPlusTree loaded = new BPlusTree(tempFolder.newFile("loaded").getAbsolutePath(), keySchema, d,
+                                         new DummyLockContext(), null);
+        loaded.bulkLoad(null, data.iterator(), 1.0f);
+        assertEquals(sortedRids, iteratorToList(loaded.scanAll(null)));
+        assertTrue(loaded.getNumPages() < 20);
+
+        Collections.shuffle(keys, new Random(42));
+        Collections.shuffle(rids, new Random(42));
+        BPlusTree tree = getBPlusTree(keySchema, d);
+        for (int i = 0; i < keys.size(); ++i) {
+            tree.put(null, keys.get(i), rids.get(i));
+        }
+        assertTrue(tree.getNumPages() < 20);
+
+        BPlusTree fromDisk = new BPlusTree(file.getAbsolutePath(), new DummyLockContext(), null);
+        for (int i = 0; i < keys.size(); ++i) {
+            assertEquals(Optional.of(rids.get(i)), fromDisk.get(null, keys.get(i)));
+        }
+        assertEquals(sortedRids, iteratorToList(fromDisk.scanAll(null)));
+        assertEquals(sortedRids.subList(1500, 2000), iteratorToList(fromDisk.scanGreaterEqual(
+                         null, new StringDataBox("student015", 100))));
+    }
+
+    // Returns the rids of the even keys 0, 2, ..., 2 * (n - 1) that lie in the
+    // given range, in ascending order. A null bound is open.
+    private static List<RecordId> evenRidsInRange(int n, Integer low, boolean lowInclusive,
+            Integer high, boolean highInclusive) {
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 2 * n; i += 2) {
+            boolean aboveLow = low == null || i > low || (lowInclusive && i == low);
+            boolean belowHigh = high == null || i < high || (highInclusive && i == high);
+            if (aboveLow && belowHigh) {
+                rids.add(new RecordId(i, (short) 0));
+            }
+        }
+        return rids;
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testScanRange() throws BPlusTreeException, IOException {
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < 1000; i += 2) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys, new Random(42));
+        BPlusTree tree = getBPlusTree(Type.intType(), 2);
+        for (int i : keys) {
+            tree.put(null, new IntDataBox(i), new RecordId(i, (short) 0));
+        }
+
+        Integer[] bounds = {null, -1, 0, 1, 99, 100, 501, 998, 999, 1000};
+        for (Integer low : bounds) {
+            for (Integer high : bounds) {
+                for (int flags = 0; flags < 4; ++flags) {
+                    boolean lowInclusive = (flags & 1) != 0;
+                    boolean highInclusive = (flags & 2) != 0;
+                    DataBox lowKey = low == null ? null : new IntDataBox(low);
+                    DataBox highKey = high == null ? null : new IntDataBox(high);
+
+                    List<RecordId> expected = evenRidsInRange(500, low, lowInclusive, high, highInclusive);
+                    assertEquals(expected, iteratorToList(tree.scanRange(null, lowKey, lowInclusive,
+                                 highKey, highInclusive)));
+                    Collections.reverse(expected);
+                    assertEquals(expected, iteratorToList(tree.scanRangeDescending(null, lowKey,
+                                 lowInclusive, highKey, highInclusive)));
+                }
+            }
+        }
+
+        List<RecordId> all = evenRidsInRange(500, null, false, null, false);
+        assertEquals(all, iteratorToList(tree.scanAll(null)));
+        Collections.reverse(all);
+        assertEquals(all, iteratorToList(tree.scanAllDescending(null)));
+
+        // Removing keys leaves empty leaves behind, which both scans skip.
+        for (int i = 100; i < 900; i += 2) {
+            tree.remove(null, new IntDataBox(i));
+        }
+        List<RecordId> expected = evenRidsInRange(50, null, false, null, false);
+        List<RecordId> upper = evenRidsInRange(500, 900, true, null, false);
+        expected.addAll(upper);
+        assertEquals(expected, iteratorToList(tree.scanAll(null)));
+        assertEquals(upper, iteratorToList(tree.scanRange(null, new IntDataBox(98), false,
+                     new IntDataBox(1000), false)));
+        Collections.reverse(expected);
+        assertEquals(expected, iteratorToList(tree.scanAllDescending(null)));
+        assertEquals(Arrays.asList(new RecordId(98, (short) 0)), iteratorToList(tree.scanRangeDescending(
+                         null, new IntDataBox(98), true, new IntDataBox(900), false)));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testScanRangePrefix() throws BPlusTreeException, IOException {
+        Type keySchema = Type.tupleType(Arrays.asList(Type.intType(), Type.intType()));
+        BPlusTree tree = getBPlusTree(keySchema, 2);
+        for (int i = 9; i >= 0; --i) {
+            for (int j = 0; j < 10; ++j) {
+                DataBox key = new TupleDataBox(Arrays.asList(new IntDataBox(i), new IntDataBox(j)));
+                tree.put(null, key, new RecordId(i, (short) j));
+            }
+        }
+
+        List<RecordId> threes = new ArrayList<>();
+        List<RecordId> fours = new ArrayList<>();
+        for (int j = 0; j < 10; ++j) {
+            threes.add(new RecordId(3, (short) j));
+            fours.add(new RecordId(4, (short) j));
+        }
+        DataBox three = new TupleDataBox(Arrays.asList(new IntDataBox(3)));
+        DataBox five = new TupleDataBox(Arrays.asList(new IntDataBox(5)));
+
+        // A shorter tuple bounds the keys that start with it.
+        assertEquals(threes, iteratorToList(tree.scanRange(null, three, true, three, true)));
+        assertEquals(fours, iteratorToList(tree.scanRange(null, three, false, five, false)));
+        Collections.reverse(fours);
+        assertEquals(fours, iteratorToList(tree.scanRangeDescending(null, three, false, five, false)));
+
+        // The keys themselves can be scanned without their record ids.
+        List<DataBox> threeKeys = new ArrayList<>();
+        for (int j = 0; j < 10; ++j) {
+            threeKeys.add(new TupleDataBox(Arrays.asList(new IntDataBox(3), new IntDataBox(j))));
+        }
+        assertEquals(threeKeys, iteratorToList(tree.scanRangeKeys(null, three, true, three, true)));
+
+        // A full tuple and a prefix can be mixed.
+        DataBox threeFive = new TupleDataBox(Arrays.asList(new IntDataBox(3), new IntDataBox(5)));
+        assertEquals(threes.subList(6, 10), iteratorToList(tree.scanRange(null, threeFive, false,
+                     three, true)));
+    }
 }
@@ -26,6 +26,7 @@ import edu.berkeley.cs186.database.categories.*;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.io.PageAllocator;
@@ -292,4 +293,28 @@ public class TestLeafNode {
             assertEquals(leaf, LeafNode.fromBytes(null, meta, pageNum));
         }
     }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testToAndFromBytesCompressed() throws BPlusTreeException, IOException {
+        int d = 5;
+        Type keySchema = Type.stringType(20);
+        BPlusTreeMetadata meta = getBPlusTreeMetadata(keySchema, d);
+
+        List<DataBox> keys = new ArrayList<>();
+        List<RecordId> rids = new ArrayList<>();
+        LeafNode leaf = new LeafNode(meta, keys, rids, Optional.of(42), null);
+        int pageNum = leaf.getPage().getPageNum();
+
+        assertEquals(leaf, LeafNode.fromBytes(null, meta, pageNum));
+
+        // The keys share the prefix "cs1", and all but one are much shorter
+        // than 20 bytes, so the leaf takes up far less than 2d full keys.
+        String[] strings = {"cs186", "cs162", "cs1", "cs170", "cs161 section"};
+        for (int i = 0; i < strings.length; ++i) {
+            leaf.put(null, new StringDataBox(strings[i], 20), new RecordId(i, (short) i));
+            assertEquals(leaf, LeafNode.fromBytes(null, meta, pageNum));
+        }
+        assertTrue(leaf.toBytes().length < 9 + strings.length * (20 + RecordId.getSizeInBytes()));
+    }
 }
@@ -8,6 +8,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.List;
 
@@ -190,6 +191,39 @@ public class TestTable {
         }
     }
 
+    @Test
+    @Category(SystemTests.class)
+    public void testGetRecordsOfPage() throws DatabaseException {
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < table.getNumRecordsPerPage() * 2; ++i) {
+            Record r = createRecordWithAllTypes(i);
+            rids.add(table.addRecord(null, r.getValues()));
+        }
+
+        // Every third entry of the second page.
+        BitSet entryNums = new BitSet();
+        List<Record> expected = new ArrayList<>();
+        for (int i = table.getNumRecordsPerPage(); i < table.getNumRecordsPerPage() * 2; i += 3) {
+            entryNums.set(rids.get(i).getEntryNum());
+            expected.add(createRecordWithAllTypes(i));
+        }
+        int pageNum = rids.get(table.getNumRecordsPerPage()).getPageNum();
+        assertEquals(expected, table.getRecords(null, pageNum, entryNums));
+        assertTrue(table.getRecords(null, pageNum, new BitSet()).isEmpty());
+    }
+
+    @Test(expected = DatabaseException.class)
+    @Category(SystemTests.class)
+    public void testGetRecordsOfPageDeletedRecord() throws DatabaseException {
+        RecordId rid = table.addRecord(null, createRecordWithAllTypes(0).getValues());
+        table.addRecord(null, createRecordWithAllTypes(1).getValues());
+        table.deleteRecord(null, rid);
+
+        BitSet entryNums = new BitSet();
+        entryNums.set(0, 2);
+        table.getRecords(null, rid.getPageNum(), entryNums);
+    }
+
     @Test(expected = DatabaseException.class)
     @Category(SystemTests.class)
     public void testGetDeletedRecord() throws DatabaseException {
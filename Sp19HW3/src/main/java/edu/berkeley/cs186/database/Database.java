@@ -5,6 +5,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -16,6 +17,9 @@ import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.index.BPlusTree;
 import edu.berkeley.cs186.database.index.BPlusTreeException;
 import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.io.PageAllocator;
+import edu.berkeley.cs186.database.io.TempPageAllocator;
+import edu.berkeley.cs186.database.io.TempPagePool;
 import edu.berkeley.cs186.database.query.QueryPlan;
 import edu.berkeley.cs186.database.query.QueryPlanException;
 import edu.berkeley.cs186.database.query.SortOperator;
@@ -28,6 +32,10 @@ import edu.berkeley.cs186.database.table.stats.TableStats;
 import edu.berkeley.cs186.database.io.PageAllocator.PageIterator;
 
 public class Database {
+    // The most pages of the temporary tables of a transaction to keep in
+    // memory at once; the rest are written out to a scratch file.
+    private static final int TEMP_MEMORY_PAGES = 256;
+
     private Map<String, Table> tableLookup;
     private Map<String, BPlusTree> indexLookup;
     private Map<String, List<String>> tableIndices;
@@ -36,6 +44,8 @@ public class Database {
     private String fileDir;
     private LockManager lockManager;
     private int numMemoryPages;
+    private int parallelism;
+    private ForkJoinPool workerPool;
 
     /**
      * Creates a new database with locking disabled.
@@ -59,7 +69,7 @@ public class Database {
     }
 
     /**
-     * Creates a new database.
+     * Creates a new database, which runs every query on a single thread.
      *
      * @param fileDir the directory to put the table files in
      * @param numMemoryPages the number of pages of memory Database Operations should use when executing Queries
@@ -67,8 +77,23 @@ public class Database {
      * @throws DatabaseException
      */
     public Database(String fileDir, int numMemoryPages, LockManager lockManager)
+    throws DatabaseException {
+        this(fileDir, numMemoryPages, lockManager, 1);
+    }
+
+    /**
+     * Creates a new database.
+     *
+     * @param fileDir the directory to put the table files in
+     * @param numMemoryPages the number of pages of memory Database Operations should use when executing Queries
+     * @param lockManager the lock manager
+     * @param parallelism the most worker threads a single query may run on at once, or 1 to run
+     *                    every query on the thread that executes it
+     */
+    public Database(String fileDir, int numMemoryPages, LockManager lockManager, int parallelism)
     throws DatabaseException {
         this.numMemoryPages = numMemoryPages;
+        this.parallelism = Math.max(1, parallelism);
         this.fileDir = fileDir;
         numTransactions = 0;
         tableLookup = new ConcurrentHashMap<>();
@@ -132,6 +157,21 @@ public class Database {
             this.indexLookup.clear();
             this.tableIndices.clear();
         }
+        if (this.workerPool != null) {
+            this.workerPool.shutdownNow();
+            this.workerPool = null;
+        }
+    }
+
+    /**
+     * Returns the pool that parallel queries run their workers on, which is
+     * created the first time it is needed.
+     */
+    private synchronized ForkJoinPool getWorkerPool() {
+        if (this.workerPool == null) {
+            this.workerPool = new ForkJoinPool(this.parallelism);
+        }
+        return this.workerPool;
     }
 
     public Table getTable(String tableName) {
@@ -164,12 +204,18 @@ public class Database {
      * of the transaction are called from a different thread than the thread that the
      * transaction is associated with. This implementation blocks the thread when
      * block() is called.
+     *
+     * The one exception is the workers of a parallel query, which read tables
+     * and create, fill and read temporary tables of the transaction from the
+     * threads of the worker pool while the query runs.
      */
     public class Transaction extends BaseTransaction {
         long transNum;
         boolean active;
         boolean blocked;
-        HashMap<String, Table> tempTables;
+        Map<String, Table> tempTables;
+        TempPagePool tempPagePool;
+        Set<Runnable> cancellations;
         HashMap<String, String> aliasMaps;
         long tempTableCounter;
 
@@ -180,9 +226,12 @@ public class Database {
             this.transNum = tNum;
             this.active = true;
             this.blocked = false;
-            this.tempTables = new HashMap<String, Table>();
+            this.tempTables = new ConcurrentHashMap<String, Table>();
+            this.tempPagePool = new TempPagePool(TEMP_MEMORY_PAGES,
+                                                 Paths.get(fileDir, "temp", "scratch" + tNum).toString());
             this.aliasMaps = new HashMap<String, String>();
             this.tempTableCounter = 0;
+            this.cancellations = ConcurrentHashMap.newKeySet();
         }
 
         public long getTransNum() {
@@ -196,7 +245,14 @@ public class Database {
         public void end() {
             assert(this.active);
 
+            // Stop the workers of queries whose output was not read to the
+            // end before deleting the temporary tables they may be using.
+            for (Runnable cancel : this.cancellations) {
+                cancel.run();
+            }
+            this.cancellations.clear();
             deleteAllTempTables();
+            this.tempPagePool.close();
             this.active = false;
             Database.this.activeTransactions.remove(this.transNum);
         }
@@ -339,7 +395,7 @@ public class Database {
             }
         }
 
-        public String createTempTable(Schema schema) throws DatabaseException {
+        public synchronized String createTempTable(Schema schema) throws DatabaseException {
             assert(this.active);
             String tempTableName = "tempTable" + tempTableCounter;
             tempTableCounter++;
@@ -355,16 +411,11 @@ public class Database {
                 throw new DatabaseException("Table name already exists");
             }
 
-            Path dir = Paths.get(Database.this.fileDir, "temp");
-            File f = new File(dir.toAbsolutePath().toString());
-            if (!f.exists()) {
-                f.mkdirs();
-            }
-
-            Path path = Paths.get(Database.this.fileDir, "temp", tempTableName + Table.FILENAME_EXTENSION);
-            LockContext lockContext = lockManager.orphanContext("temp-" + tempTableName);
-            this.tempTables.put(tempTableName, newTable(tempTableName, schema, path.toString(), lockContext,
-                                this));
+            // Temporary tables are only ever seen by this transaction, so they
+            // are not locked, and they never need to survive a crash, so they
+            // are kept in the transaction's pool of temporary pages.
+            this.tempTables.put(tempTableName, newTempTable(tempTableName, schema,
+                                new TempPageAllocator(this.tempPagePool), this));
         }
 
         public boolean indexExists(String tableName, String columnName) {
@@ -437,6 +488,51 @@ public class Database {
             return Database.this.numMemoryPages;
         }
 
+        /**
+         * Returns the most worker threads a single query may run on at once.
+         */
+        public int getParallelism() {
+            return Database.this.parallelism;
+        }
+
+        /**
+         * Returns the pool that parallel queries run their workers on.
+         */
+        public ForkJoinPool getWorkerPool() {
+            assert(this.active);
+            return Database.this.getWorkerPool();
+        }
+
+        /**
+         * Registers cancel to be run when this transaction ends, to stop the
+         * workers of a parallel query, unless it is removed first with
+         * removeCancellation once the query is done.
+         */
+        public void addCancellation(Runnable cancel) {
+            assert(this.active);
+            this.cancellations.add(cancel);
+        }
+
+        public void removeCancellation(Runnable cancel) {
+            this.cancellations.remove(cancel);
+        }
+
+        /**
+         * Appends records, in order, to fresh pages of the table tableName,
+         * which must not have any indices. See Table.appendRecords.
+         */
+        public void appendRecords(String tableName, List<Record> records) throws DatabaseException {
+            assert(this.active);
+
+            Table tab = getTable(tableName);
+            for (String col : tab.getSchema().getFieldNames()) {
+                if (indexExists(tableName, col)) {
+                    throw new DatabaseException("Cannot append records to the indexed table " + tableName + ".");
+                }
+            }
+            tab.appendRecords(this, records);
+        }
+
         public RecordId deleteRecord(String tableName, RecordId rid)  throws DatabaseException {
             assert(this.active);
 
@@ -645,11 +741,7 @@ public class Database {
                 return;
             }
 
-            this.tempTables.get(tempTableName).close();
-            Database.this.tableLookup.remove(tempTableName);
-
-            File f = new File(Database.this.fileDir + "temp/" + tempTableName + Table.FILENAME_EXTENSION);
-            f.delete();
+            this.tempTables.remove(tempTableName).close();
         }
 
         private void deleteAllTempTables() {
@@ -697,6 +789,11 @@ public class Database {
         return new Table(name, schema, filename, lockContext, transaction);
     }
 
+    protected Table newTempTable(String name, Schema schema, PageAllocator allocator,
+                                 BaseTransaction transaction) {
+        return new Table(name, schema, allocator, new DummyLockContext(), transaction);
+    }
+
     protected Table newTable(String name, String filename, LockContext lockContext,
                              BaseTransaction transaction) throws DatabaseException {
         return new Table(name, filename, lockContext, transaction);
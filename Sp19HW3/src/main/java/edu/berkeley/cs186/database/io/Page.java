@@ -54,6 +54,17 @@ public class Page {
         }
     }
 
+    /**
+     * Create a new page with virtual page number pageNum whose bytes are not
+     * memory-mapped from a file. Subclasses that keep their bytes elsewhere
+     * override readData and writeData.
+     */
+    Page(LockContext lockContext, int pageNum) {
+        this.lockContext = lockContext;
+        this.pageNum = pageNum;
+        this.durable = false;
+    }
+
     public Buffer getBuffer(BaseTransaction transaction) {
         return new PageBuffer(transaction);
     }
@@ -75,6 +86,14 @@ public class Page {
         if (buf.length < num) {
             throw new PageException("num bytes to read is longer than buffer");
         }
+        readData(position, num, buf);
+    }
+
+    /**
+     * Copies the num bytes of the page at offset position into buf. The bounds
+     * have already been checked.
+     */
+    void readData(int position, int num, byte[] buf) {
         pageData.position(position);
         pageData.get(buf, 0, num);
     }
@@ -110,6 +129,14 @@ public class Page {
             throw new PageException("writeBytes would go out of bounds");
         }
 
+        writeData(position, num, buf);
+    }
+
+    /**
+     * Copies num bytes from buf into the page at offset position. The bounds
+     * have already been checked.
+     */
+    void writeData(int position, int num, byte[] buf) {
         pageData.position(position);
         pageData.put(buf, 0, num);
     }
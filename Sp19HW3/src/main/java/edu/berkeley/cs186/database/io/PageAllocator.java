@@ -116,6 +116,18 @@ public class PageAllocator implements Closeable {
 
     }
 
+    /**
+     * Create a PageAllocator that does not keep its pages in a file, for
+     * subclasses that keep them elsewhere and override the methods that
+     * allocate, fetch and free pages.
+     *
+     * @param lockContext the lock context
+     */
+    PageAllocator(LockContext lockContext) {
+        this.lockContext = lockContext;
+        this.allocID = pACounter.getAndIncrement();
+    }
+
     /**
      * Allocates a new page in the file.
      *
@@ -393,7 +405,7 @@ public class PageAllocator implements Closeable {
         }
 
         public boolean hasNext() {
-            return this.pageNum < PageAllocator.this.numPages;
+            return this.pageNum < PageAllocator.this.getNumPages();
         }
 
         public Page next() {
@@ -0,0 +1,83 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.berkeley.cs186.database.BaseTransaction;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+
+/**
+ * A PageAllocator for temporary tables, whose pages are kept in the frames of
+ * a TempPagePool instead of being memory-mapped from a file of their own.
+ * Nothing is ever forced to disk, there are no header pages to update, and
+ * the pages are not locked.
+ *
+ * Page numbers are handed out in order, and are not reused once freed.
+ */
+public class TempPageAllocator extends PageAllocator {
+    private TempPagePool pool;
+
+    // The pages of this allocator by page number, with null for freed pages.
+    private List<TempPagePool.TempPage> pages = new ArrayList<>();
+    private int numPages;
+
+    public TempPageAllocator(TempPagePool pool) {
+        super(new DummyLockContext());
+        this.pool = pool;
+    }
+
+    @Override
+    public synchronized int allocPage(BaseTransaction transaction) {
+        int pageNum = this.pages.size();
+        this.pages.add(this.pool.newPage(pageNum));
+        this.numPages++;
+        return pageNum;
+    }
+
+    @Override
+    public synchronized Page fetchPage(BaseTransaction transaction, int pageNum) {
+        if (pageNum < 0 || pageNum >= this.pages.size()) {
+            throw new PageException("invalid page number -- out of bounds");
+        }
+        Page page = this.pages.get(pageNum);
+        if (page == null) {
+            throw new PageException("invalid page number -- page not allocated");
+        }
+        return page;
+    }
+
+    @Override
+    public synchronized boolean freePage(BaseTransaction transaction, Page p) {
+        return this.freePage(transaction, p.getPageNum());
+    }
+
+    @Override
+    public synchronized boolean freePage(BaseTransaction transaction, int pageNum) {
+        if (pageNum < 0 || pageNum >= this.pages.size() || this.pages.get(pageNum) == null) {
+            return false;
+        }
+        this.pool.free(this.pages.get(pageNum));
+        this.pages.set(pageNum, null);
+        this.numPages--;
+        return true;
+    }
+
+    /**
+     * Frees every page of this allocator.
+     */
+    @Override
+    public synchronized void close() {
+        for (TempPagePool.TempPage page : this.pages) {
+            if (page != null) {
+                this.pool.free(page);
+            }
+        }
+        this.pages.clear();
+        this.numPages = 0;
+    }
+
+    @Override
+    public synchronized int getNumPages() {
+        return this.numPages;
+    }
+}
@@ -0,0 +1,253 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+
+/**
+ * A bounded pool of in-memory frames for the pages of temporary tables, which
+ * never need to survive a crash.
+ *
+ * The pages of a pool live in its frames, of which there are at most
+ * numFrames, and are only written out to the pool's scratch file when a page
+ * needs a frame and there are none to spare. The least recently used page
+ * that no thread is reading or writing at the moment gives up its frame,
+ * and is read back from the scratch file the next time it is used. Nothing
+ * is ever forced to disk, and the scratch file is only created once a page is
+ * first written out to it.
+ *
+ * Pages are allocated from a pool by a TempPageAllocator. Closing the pool
+ * frees all of its pages at once, and deletes the scratch file.
+ */
+public class TempPagePool implements Closeable {
+    private int numFrames;
+    private String scratchFileName;
+    private FileChannel scratch;
+
+    // The number of frames allocated so far, and the frames that no page is
+    // using at the moment.
+    private int numFramesAllocated;
+    private Deque<ByteBuffer> freeFrames = new ArrayDeque<>();
+
+    // The pages that have a frame, least recently used first.
+    private LinkedHashSet<TempPage> residentPages = new LinkedHashSet<>();
+
+    // The number of page-sized slots of the scratch file, and the slots that
+    // no page is using at the moment.
+    private long numSlots;
+    private Deque<Long> freeSlots = new ArrayDeque<>();
+
+    /**
+     * @param numFrames the most pages to keep in memory at once
+     * @param scratchFileName the name of the file that pages are written out
+     *                        to when they do not fit in memory
+     */
+    public TempPagePool(int numFrames, String scratchFileName) {
+        this.numFrames = numFrames;
+        this.scratchFileName = scratchFileName;
+    }
+
+    /**
+     * A page of a temporary table, which is in a frame of the pool, in a slot
+     * of the scratch file, or both. The fields of a TempPage are guarded by
+     * the pool.
+     */
+    class TempPage extends Page {
+        // The frame the page is in, or null if it is not in memory.
+        private ByteBuffer frame;
+
+        // The slot of the scratch file the page was last written out to, or
+        // -1 if it has never been written out.
+        private long slot = -1;
+
+        // Whether the frame has changed since the page was last written out.
+        private boolean dirty;
+
+        // The number of threads reading or writing the frame at the moment,
+        // which keep the page from giving up its frame.
+        private int pins;
+
+        TempPage(int pageNum) {
+            super(new DummyLockContext(), pageNum);
+        }
+
+        @Override
+        void readData(int position, int num, byte[] buf) {
+            ByteBuffer frame = TempPagePool.this.pin(this);
+            try {
+                ByteBuffer data = frame.duplicate();
+                data.position(position);
+                data.get(buf, 0, num);
+            } finally {
+                TempPagePool.this.unpin(this, false);
+            }
+        }
+
+        @Override
+        void writeData(int position, int num, byte[] buf) {
+            ByteBuffer frame = TempPagePool.this.pin(this);
+            try {
+                ByteBuffer data = frame.duplicate();
+                data.position(position);
+                data.put(buf, 0, num);
+            } finally {
+                TempPagePool.this.unpin(this, true);
+            }
+        }
+    }
+
+    /**
+     * Creates a new page of zeros with virtual page number pageNum. The page
+     * does not take up a frame until it is first used.
+     */
+    TempPage newPage(int pageNum) {
+        return new TempPage(pageNum);
+    }
+
+    /**
+     * Frees the frame and the slot of the scratch file of page.
+     */
+    synchronized void free(TempPage page) {
+        if (page.frame != null) {
+            this.residentPages.remove(page);
+            this.freeFrames.push(page.frame);
+            page.frame = null;
+        }
+        if (page.slot >= 0) {
+            this.freeSlots.push(page.slot);
+            page.slot = -1;
+        }
+    }
+
+    /**
+     * Returns the frame of page, reading the page back into memory if it was
+     * written out, and keeps the page in memory until unpin is called.
+     */
+    private synchronized ByteBuffer pin(TempPage page) {
+        if (page.frame == null) {
+            page.frame = this.takeFrame();
+            if (page.slot >= 0) {
+                this.read(page);
+            }
+        } else {
+            this.residentPages.remove(page);
+        }
+        this.residentPages.add(page);
+        page.pins++;
+        return page.frame;
+    }
+
+    private synchronized void unpin(TempPage page, boolean wrote) {
+        page.pins--;
+        if (wrote) {
+            page.dirty = true;
+        }
+    }
+
+    /**
+     * Returns a frame of zeros, writing out the least recently used unpinned
+     * page to free up its frame if every frame is in use. If every page in
+     * memory is pinned, a frame is allocated past numFrames.
+     */
+    private ByteBuffer takeFrame() {
+        ByteBuffer frame = this.freeFrames.poll();
+        if (frame == null && this.numFramesAllocated >= this.numFrames) {
+            Iterator<TempPage> iter = this.residentPages.iterator();
+            while (iter.hasNext()) {
+                TempPage victim = iter.next();
+                if (victim.pins == 0) {
+                    if (victim.dirty || victim.slot < 0) {
+                        this.write(victim);
+                    }
+                    iter.remove();
+                    frame = victim.frame;
+                    victim.frame = null;
+                    break;
+                }
+            }
+        }
+        if (frame == null) {
+            this.numFramesAllocated++;
+            return ByteBuffer.allocate(Page.pageSize);
+        }
+        Arrays.fill(frame.array(), (byte) 0);
+        return frame;
+    }
+
+    private void write(TempPage page) {
+        if (page.slot < 0) {
+            page.slot = this.freeSlots.isEmpty() ? this.numSlots++ : this.freeSlots.pop();
+        }
+        ByteBuffer data = page.frame.duplicate();
+        data.clear();
+        try {
+            FileChannel scratch = this.getScratch();
+            while (data.hasRemaining()) {
+                scratch.write(data, page.slot * Page.pageSize + data.position());
+            }
+        } catch (IOException e) {
+            throw new PageException("Could not write out temporary page: " + e.getMessage());
+        }
+        page.dirty = false;
+        PageAllocator.incrementNumIOs();
+    }
+
+    private void read(TempPage page) {
+        ByteBuffer data = page.frame.duplicate();
+        data.clear();
+        try {
+            while (data.hasRemaining()) {
+                if (this.scratch.read(data, page.slot * Page.pageSize + data.position()) < 0) {
+                    throw new PageException("Temporary page was not written out");
+                }
+            }
+        } catch (IOException e) {
+            throw new PageException("Could not read back temporary page: " + e.getMessage());
+        }
+        page.dirty = false;
+        PageAllocator.incrementNumIOs();
+    }
+
+    private FileChannel getScratch() throws IOException {
+        if (this.scratch == null) {
+            File file = new File(this.scratchFileName);
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (dir != null && !dir.exists()) {
+                dir.mkdirs();
+            }
+            this.scratch = new RandomAccessFile(file, "rw").getChannel();
+        }
+        return this.scratch;
+    }
+
+    /**
+     * Frees every page of the pool at once, and deletes the scratch file.
+     */
+    public synchronized void close() {
+        this.residentPages.clear();
+        this.freeFrames.clear();
+        this.numFramesAllocated = 0;
+        this.freeSlots.clear();
+        this.numSlots = 0;
+        if (this.scratch != null) {
+            try {
+                this.scratch.close();
+            } catch (IOException e) {
+                throw new PageException("Could not close scratch file: " + e.getMessage());
+            } finally {
+                this.scratch = null;
+                new File(this.scratchFileName).delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+
+/**
+ * The running state of one aggregate over the records of one group. Each
+ * record of the group is added to it in turn, after which it yields the value
+ * of the aggregate.
+ *
+ * Counts, sums and the minimum and maximum of INT and FLOAT columns are kept
+ * in primitive fields, so adding a value to them does not allocate, and they
+ * add a whole RecordBatch in a loop over its primitive vector.
+ */
+abstract class Accumulator {
+    /**
+     * Adds the aggregated column of a record of the group. For COUNT(*),
+     * value is null.
+     */
+    abstract void add(DataBox value);
+
+    /**
+     * Adds a row of a vector holding the aggregated column. For COUNT(*),
+     * column is null.
+     */
+    void add(ColumnVector column, int row) {
+        this.add(column == null ? null : column.get(row));
+    }
+
+    /**
+     * Adds the selected rows of a vector holding the aggregated column. For
+     * COUNT(*), column is null.
+     */
+    void addAll(ColumnVector column, int[] selection, int numSelected) {
+        for (int i = 0; i < numSelected; i++) {
+            this.add(column, selection[i]);
+        }
+    }
+
+    /**
+     * Adds all the values added to other, an accumulator of the same
+     * aggregate, as when parallel workers each aggregate part of a group.
+     */
+    abstract void merge(Accumulator other);
+
+    /**
+     * Returns the value of the aggregate over the values added so far. At
+     * least one value has been added.
+     */
+    abstract DataBox result();
+
+    static class Count extends Accumulator {
+        private long count;
+
+        void add(DataBox value) {
+            this.count++;
+        }
+
+        @Override
+        void add(ColumnVector column, int row) {
+            this.count++;
+        }
+
+        @Override
+        void addAll(ColumnVector column, int[] selection, int numSelected) {
+            this.count += numSelected;
+        }
+
+        void merge(Accumulator other) {
+            this.count += ((Count) other).count;
+        }
+
+        DataBox result() {
+            return new IntDataBox((int) this.count);
+        }
+    }
+
+    static class IntSum extends Accumulator {
+        private long sum;
+
+        void add(DataBox value) {
+            this.sum += value.getInt();
+        }
+
+        @Override
+        void add(ColumnVector column, int row) {
+            this.sum += column.ints[row];
+        }
+
+        @Override
+        void addAll(ColumnVector column, int[] selection, int numSelected) {
+            int[] ints = column.ints;
+            long sum = this.sum;
+            for (int i = 0; i < numSelected; i++) {
+                sum += ints[selection[i]];
+            }
+            this.sum = sum;
+        }
+
+        void merge(Accumulator other) {
+            this.sum += ((IntSum) other).sum;
+        }
+
+        DataBox result() {
+            return new IntDataBox((int) this.sum);
+        }
+    }
+
+    static class FloatSum extends Accumulator {
+        private double sum;
+
+        void add(DataBox value) {
+            this.sum += value.getFloat();
+        }
+
+        @Override
+        void add(ColumnVector column, int row) {
+            this.sum += column.floats[row];
+        }
+
+        @Override
+        void addAll(ColumnVector column, int[] selection, int numSelected) {
+            float[] floats = column.floats;
+            double sum = this.sum;
+            for (int i = 0; i < numSelected; i++) {
+                sum += floats[selection[i]];
+            }
+            this.sum = sum;
+        }
+
+        void merge(Accumulator other) {
+            this.sum += ((FloatSum) other).sum;
+        }
+
+        DataBox result() {
+            return new FloatDataBox((float) this.sum);
+        }
+    }
+
+    static class Average extends Accumulator {
+        private boolean isFloat;
+        private double sum;
+        private long count;
+
+        Average(boolean isFloat) {
+            this.isFloat = isFloat;
+        }
+
+        void add(DataBox value) {
+            this.sum += this.isFloat ? value.getFloat() : value.getInt();
+            this.count++;
+        }
+
+        @Override
+        void add(ColumnVector column, int row) {
+            this.sum += this.isFloat ? column.floats[row] : column.ints[row];
+            this.count++;
+        }
+
+        @Override
+        void addAll(ColumnVector column, int[] selection, int numSelected) {
+            double sum = this.sum;
+            if (this.isFloat) {
+                float[] floats = column.floats;
+                for (int i = 0; i < numSelected; i++) {
+                    sum += floats[selection[i]];
+                }
+            } else {
+                int[] ints = column.ints;
+                for (int i = 0; i < numSelected; i++) {
+                    sum += ints[selection[i]];
+                }
+            }
+            this.sum = sum;
+            this.count += numSelected;
+        }
+
+        void merge(Accumulator other) {
+            this.sum += ((Average) other).sum;
+            this.count += ((Average) other).count;
+        }
+
+        DataBox result() {
+            return new FloatDataBox((float) (this.sum / this.count));
+        }
+    }
+
+    /**
+     * The minimum (or maximum, if max is set) of an INT column.
+     */
+    static class IntExtreme extends Accumulator {
+        private boolean max;
+        private int extreme;
+
+        IntExtreme(boolean max) {
+            this.max = max;
+            this.extreme = max ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        }
+
+        void add(DataBox value) {
+            int i = value.getInt();
+            this.extreme = this.max ? Math.max(this.extreme, i) : Math.min(this.extreme, i);
+        }
+
+        @Override
+        void add(ColumnVector column, int row) {
+            int i = column.ints[row];
+            this.extreme = this.max ? Math.max(this.extreme, i) : Math.min(this.extreme, i);
+        }
+
+        @Override
+        void addAll(ColumnVector column, int[] selection, int numSelected) {
+            int[] ints = column.ints;
+            int extreme = this.extreme;
+            if (this.max) {
+                for (int i = 0; i < numSelected; i++) {
+                    extreme = Math.max(extreme, ints[selection[i]]);
+                }
+            } else {
+                for (int i = 0; i < numSelected; i++) {
+                    extreme = Math.min(extreme, ints[selection[i]]);
+                }
+            }
+            this.extreme = extreme;
+        }
+
+        void merge(Accumulator other) {
+            int i = ((IntExtreme) other).extreme;
+            this.extreme = this.max ? Math.max(this.extreme, i) : Math.min(this.extreme, i);
+        }
+
+        DataBox result() {
+            return new IntDataBox(this.extreme);
+        }
+    }
+
+    /**
+     * The minimum (or maximum, if max is set) of a FLOAT column.
+     */
+    static class FloatExtreme extends Accumulator {
+        private boolean max;
+        private float extreme;
+
+        FloatExtreme(boolean max) {
+            this.max = max;
+            this.extreme = max ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY;
+        }
+
+        void add(DataBox value) {
+            float f = value.getFloat();
+            this.extreme = this.max ? Math.max(this.extreme, f) : Math.min(this.extreme, f);
+        }
+
+        @Override
+        void add(ColumnVector column, int row) {
+            float f = column.floats[row];
+            this.extreme = this.max ? Math.max(this.extreme, f) : Math.min(this.extreme, f);
+        }
+
+        @Override
+        void addAll(ColumnVector column, int[] selection, int numSelected) {
+            float[] floats = column.floats;
+            float extreme = this.extreme;
+            if (this.max) {
+                for (int i = 0; i < numSelected; i++) {
+                    extreme = Math.max(extreme, floats[selection[i]]);
+                }
+            } else {
+                for (int i = 0; i < numSelected; i++) {
+                    extreme = Math.min(extreme, floats[selection[i]]);
+                }
+            }
+            this.extreme = extreme;
+        }
+
+        void merge(Accumulator other) {
+            float f = ((FloatExtreme) other).extreme;
+            this.extreme = this.max ? Math.max(this.extreme, f) : Math.min(this.extreme, f);
+        }
+
+        DataBox result() {
+            return new FloatDataBox(this.extreme);
+        }
+    }
+
+    /**
+     * The minimum (or maximum, if max is set) of a column of any other type.
+     */
+    static class Extreme extends Accumulator {
+        private boolean max;
+        private DataBox extreme;
+
+        Extreme(boolean max) {
+            this.max = max;
+        }
+
+        void add(DataBox value) {
+            if (this.extreme == null) {
+                this.extreme = value;
+            } else {
+                int c = value.compareTo(this.extreme);
+                if (this.max ? c > 0 : c < 0) {
+                    this.extreme = value;
+                }
+            }
+        }
+
+        void merge(Accumulator other) {
+            if (((Extreme) other).extreme != null) {
+                this.add(((Extreme) other).extreme);
+            }
+        }
+
+        DataBox result() {
+            return this.extreme;
+        }
+    }
+
+    static class CountDistinct extends Accumulator {
+        private Set<DataBox> values = new HashSet<>();
+
+        void add(DataBox value) {
+            this.values.add(value);
+        }
+
+        void merge(Accumulator other) {
+            this.values.addAll(((CountDistinct) other).values);
+        }
+
+        DataBox result() {
+            return new IntDataBox(this.values.size());
+        }
+    }
+}
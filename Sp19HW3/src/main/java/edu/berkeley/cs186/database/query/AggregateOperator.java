@@ -0,0 +1,634 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+/**
+ * An operator that computes any number of aggregates over the groups of its
+ * input in a single pass, yielding one record per group. The record holds the
+ * group by value, if there is a group by column, followed by the value of each
+ * aggregate.
+ */
+public class AggregateOperator extends QueryOperator {
+    public enum AggregateFunction {
+        COUNT("count"),
+        SUM("sum"),
+        AVERAGE("average"),
+        MIN("min"),
+        MAX("max"),
+        COUNT_DISTINCT("countDistinct");
+
+        private String columnPrefix;
+
+        AggregateFunction(String columnPrefix) {
+            this.columnPrefix = columnPrefix;
+        }
+    }
+
+    /**
+     * An aggregate function applied to a column, or to whole records for
+     * COUNT(*), in which case the column is null.
+     */
+    public static class Aggregate {
+        private AggregateFunction function;
+        private String column;
+
+        public Aggregate(AggregateFunction function, String column) {
+            this.function = function;
+            this.column = column;
+        }
+
+        public AggregateFunction getFunction() {
+            return this.function;
+        }
+
+        public String getColumn() {
+            return this.column;
+        }
+
+        public String toString() {
+            return this.function + "(" + (this.column == null ? "*" : this.column) + ")";
+        }
+    }
+
+    private Database.Transaction transaction;
+    private String groupByColumn;
+    private int groupByColumnIndex;
+    private List<Aggregate> aggregates;
+    private List<Integer> columnIndices;
+    private List<TypeId> columnTypes;
+    private int numBuffers;
+
+    /**
+     * Creates a new AggregateOperator that pulls from source and computes
+     * aggregates over each group of records with the same value of
+     * groupByColumn.
+     *
+     * @param source the source operator of this operator
+     * @param transaction the transaction containing this operator
+     * @param groupByColumn the column to group on, or null to aggregate over all of source
+     * @param aggregates the aggregates to compute
+     * @throws QueryPlanException
+     */
+    public AggregateOperator(QueryOperator source,
+                             Database.Transaction transaction,
+                             String groupByColumn,
+                             List<Aggregate> aggregates) throws QueryPlanException {
+        super(OperatorType.AGGREGATE);
+        this.transaction = transaction;
+        this.groupByColumn = groupByColumn;
+        this.groupByColumnIndex = -1;
+        this.aggregates = new ArrayList<>(aggregates);
+        this.columnIndices = new ArrayList<>();
+        this.columnTypes = new ArrayList<>();
+
+        // NOTE: Setting the source computes the output schema, which resolves the
+        // columns above.
+        this.setSource(source);
+
+        try {
+            this.numBuffers = transaction.getNumMemoryPages();
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        return new AggregateIterator();
+    }
+
+    protected Schema computeSchema() throws QueryPlanException {
+        Schema sourceSchema = this.getSource().getOutputSchema();
+        List<String> sourceColumnNames = sourceSchema.getFieldNames();
+        List<Type> sourceColumnTypes = sourceSchema.getFieldTypes();
+        List<String> names = new ArrayList<>();
+        List<Type> types = new ArrayList<>();
+
+        if (this.groupByColumn != null) {
+            this.groupByColumn = this.checkSchemaForColumn(sourceSchema, this.groupByColumn);
+            this.groupByColumnIndex = sourceColumnNames.indexOf(this.groupByColumn);
+            names.add(this.groupByColumn);
+            types.add(sourceColumnTypes.get(this.groupByColumnIndex));
+        }
+
+        this.columnIndices.clear();
+        this.columnTypes.clear();
+        for (Aggregate aggregate : this.aggregates) {
+            int index = -1;
+            Type type = null;
+            if (aggregate.column != null) {
+                index = sourceColumnNames.indexOf(this.checkSchemaForColumn(sourceSchema, aggregate.column));
+                type = sourceColumnTypes.get(index);
+            } else if (aggregate.function != AggregateFunction.COUNT) {
+                throw new QueryPlanException("Only COUNT can be computed over whole records.");
+            }
+            this.columnIndices.add(index);
+            this.columnTypes.add(type == null ? null : type.getTypeId());
+
+            // Aggregates are named countAgg, sumAgg and so on, numbered from the
+            // second one of a kind.
+            String name = aggregate.function.columnPrefix + "Agg";
+            for (int n = 2; names.contains(name); n++) {
+                name = aggregate.function.columnPrefix + "Agg" + n;
+            }
+            names.add(name);
+            types.add(resultType(aggregate, type));
+        }
+        return new Schema(names, types);
+    }
+
+    private static Type resultType(Aggregate aggregate, Type columnType) throws QueryPlanException {
+        switch (aggregate.function) {
+        case COUNT:
+        case COUNT_DISTINCT:
+            return Type.intType();
+        case MIN:
+        case MAX:
+            return columnType;
+        default:
+            TypeId typeId = columnType.getTypeId();
+            if (typeId != TypeId.INT && typeId != TypeId.FLOAT) {
+                throw new QueryPlanException("Cannot compute " + aggregate + " over a non-numeric column.");
+            }
+            if (aggregate.function == AggregateFunction.SUM && typeId == TypeId.INT) {
+                return Type.intType();
+            }
+            return Type.floatType();
+        }
+    }
+
+    private Accumulator[] newAccumulators() {
+        Accumulator[] accumulators = new Accumulator[this.aggregates.size()];
+        for (int i = 0; i < accumulators.length; i++) {
+            TypeId typeId = this.columnTypes.get(i);
+            AggregateFunction function = this.aggregates.get(i).function;
+            switch (function) {
+            case COUNT:
+                accumulators[i] = new Accumulator.Count();
+                break;
+            case SUM:
+                accumulators[i] = typeId == TypeId.INT ? new Accumulator.IntSum() : new Accumulator.FloatSum();
+                break;
+            case AVERAGE:
+                accumulators[i] = new Accumulator.Average(typeId == TypeId.FLOAT);
+                break;
+            case MIN:
+            case MAX:
+                boolean max = function == AggregateFunction.MAX;
+                if (typeId == TypeId.INT) {
+                    accumulators[i] = new Accumulator.IntExtreme(max);
+                } else if (typeId == TypeId.FLOAT) {
+                    accumulators[i] = new Accumulator.FloatExtreme(max);
+                } else {
+                    accumulators[i] = new Accumulator.Extreme(max);
+                }
+                break;
+            case COUNT_DISTINCT:
+                accumulators[i] = new Accumulator.CountDistinct();
+                break;
+            }
+        }
+        return accumulators;
+    }
+
+    /**
+     * Returns the vector of batch that aggregate i is computed over, or null
+     * for COUNT(*).
+     */
+    private ColumnVector aggregatedColumn(RecordBatch batch, int i) {
+        int index = this.columnIndices.get(i);
+        return index == -1 ? null : batch.getColumn(index);
+    }
+
+    private void accumulate(Accumulator[] accumulators, RecordBatch batch, int row) {
+        for (int i = 0; i < accumulators.length; i++) {
+            accumulators[i].add(this.aggregatedColumn(batch, i), row);
+        }
+    }
+
+    private Record result(DataBox group, Accumulator[] accumulators) {
+        List<DataBox> values = new ArrayList<>();
+        if (this.groupByColumnIndex != -1) {
+            values.add(group);
+        }
+        for (Accumulator accumulator : accumulators) {
+            values.add(accumulator.result());
+        }
+        return new Record(values);
+    }
+
+    public String str() {
+        return "type: " + this.getType() +
+               "\ngroup by column: " + this.groupByColumn +
+               "\naggregates: " + this.aggregates;
+    }
+
+    /**
+     * Estimates the table statistics for the result of executing this query operator.
+     *
+     * @return estimated TableStats
+     */
+    public TableStats estimateStats() throws QueryPlanException {
+        return this.getSource().getStats();
+    }
+
+    /**
+     * Estimates the IO cost of executing this query operator. The input is
+     * read once, and as long as its groups fit in memory, nothing else is read
+     * or written.
+     */
+    public int estimateIOCost() throws QueryPlanException {
+        return this.getSource().getIOCost();
+    }
+
+    /**
+     * A table of records whose groups did not fit in memory in the given
+     * pass, which hash to the same partition in that pass.
+     */
+    private static class Partition {
+        String tableName;
+        int pass;
+
+        Partition(String tableName, int pass) {
+            this.tableName = tableName;
+            this.pass = pass;
+        }
+    }
+
+    /**
+     * Adds all the selected rows of batch to accumulators.
+     */
+    private void accumulateAll(Accumulator[] accumulators, RecordBatch batch) {
+        for (int i = 0; i < accumulators.length; i++) {
+            accumulators[i].addAll(this.aggregatedColumn(batch, i), batch.getSelection(), batch.getNumSelected());
+        }
+    }
+
+    /**
+     * Aggregates groups in an in-memory hash table from group by values to
+     * accumulators, which holds up to maxGroups groups. Once it is full,
+     * records of groups not in it are hashed into numBuffers - 1 partitions,
+     * each spilled to a temporary table, and each partition is then
+     * aggregated the same way in a later pass, with a different hash
+     * function. Since the hash table holds groups rather than records, groups
+     * with many records take no more memory than any other group.
+     */
+    private class HashAggregation {
+        private int maxGroups;
+
+        // The results of the groups aggregated in the last pass, and the
+        // partitions still to be aggregated.
+        private Iterator<Record> results;
+        private Deque<Partition> partitions = new ArrayDeque<>();
+
+        HashAggregation(Iterator<RecordBatch> batches, int pass, int maxGroups) throws DatabaseException,
+            QueryPlanException {
+            this.maxGroups = maxGroups;
+            this.results = this.aggregate(batches, pass);
+        }
+
+        /**
+         * Returns the result of the next group, aggregating the next partition
+         * if the groups of the last pass have run out.
+         *
+         * @return the result of the next group, or null if there are none left
+         */
+        Record next() throws DatabaseException, QueryPlanException {
+            while (!this.results.hasNext()) {
+                if (this.partitions.isEmpty()) {
+                    return null;
+                }
+                Partition p = this.partitions.pop();
+                this.results = this.aggregate(new TableBatchIterator(transaction, p.tableName), p.pass);
+            }
+            return this.results.next();
+        }
+
+        /**
+         * Aggregates batches in the hash table, spilling the records of groups
+         * that do not fit to partitions for the next pass.
+         *
+         * @return the results of the groups that fit
+         */
+        private Iterator<Record> aggregate(Iterator<RecordBatch> batches, int pass) throws DatabaseException,
+            QueryPlanException {
+            Map<DataBox, Accumulator[]> groups = new LinkedHashMap<>();
+            String[] tableNames = null;
+            while (batches.hasNext()) {
+                RecordBatch batch = batches.next();
+                ColumnVector groupColumn = batch.getColumn(groupByColumnIndex);
+                int[] selection = batch.getSelection();
+                for (int i = 0; i < batch.getNumSelected(); i++) {
+                    int row = selection[i];
+                    DataBox group = groupColumn.get(row);
+                    Accumulator[] accumulators = groups.get(group);
+                    if (accumulators == null) {
+                        if (groups.size() == this.maxGroups) {
+                            if (tableNames == null) {
+                                tableNames = this.createPartitions();
+                            }
+                            int p = Math.floorMod(GraceHashOperator.hash(group, pass), tableNames.length);
+                            transaction.addRecord(tableNames[p], batch.getRecord(row).getValues());
+                            continue;
+                        }
+                        accumulators = newAccumulators();
+                        groups.put(group, accumulators);
+                    }
+                    accumulate(accumulators, batch, row);
+                }
+            }
+
+            if (tableNames != null) {
+                for (String tableName : tableNames) {
+                    if (transaction.getNumRecords(tableName) > 0) {
+                        this.partitions.push(new Partition(tableName, pass + 1));
+                    }
+                }
+            }
+
+            List<Record> results = new ArrayList<>();
+            for (Map.Entry<DataBox, Accumulator[]> entry : groups.entrySet()) {
+                results.add(result(entry.getKey(), entry.getValue()));
+            }
+            return results.iterator();
+        }
+
+        private String[] createPartitions() throws DatabaseException, QueryPlanException {
+            Schema schema = AggregateOperator.this.getSource().getOutputSchema();
+            String[] tableNames = new String[numBuffers - 1];
+            for (int i = 0; i < tableNames.length; i++) {
+                tableNames[i] = transaction.createTempTable(schema);
+            }
+            return tableNames;
+        }
+    }
+
+    /**
+     * An implementation of Iterator that provides an iterator interface for this operator.
+     *
+     * The input is read in RecordBatches. Without a group by column, every
+     * aggregate adds each batch in one loop over its vector. If the input is
+     * sorted on the group by column, the rows of each group come together,
+     * and each group is aggregated as it is read. Otherwise, the groups are
+     * aggregated by a HashAggregation.
+     *
+     * If the input is a GatherOperator, its workers aggregate the input in
+     * parallel. Without a group by column, each worker aggregates the morsels
+     * it reads, and the aggregates of the workers are merged at the end.
+     * Otherwise the workers repartition the records they read on the group by
+     * value, between as many consumers as there are workers, each of which
+     * aggregates its partition with a HashAggregation of its own, holding its
+     * share of the groups that fit in memory.
+     */
+    private class AggregateIterator implements Iterator<Record> {
+        private int maxGroups;
+
+        // For input that is grouped already: its batches, and the next row to
+        // read, as a position in the selection vector of the current batch.
+        private Iterator<RecordBatch> sourceBatches;
+        private RecordBatch batch;
+        private int nextSelected;
+
+        // For input that is not.
+        private HashAggregation hashAggregation;
+
+        // For input aggregated in parallel: the results of all the groups.
+        private Iterator<Record> results;
+
+        private Record nextRecord;
+
+        public AggregateIterator() throws QueryPlanException, DatabaseException {
+            this.maxGroups = Math.max(1, (numBuffers - 1) * Table.computeNumRecordsPerPage(Page.pageSize,
+                                      AggregateOperator.this.getOutputSchema()));
+
+            QueryOperator source = AggregateOperator.this.getSource();
+            if (source.isGather() && ((GatherOperator) source).getNumWorkers() > 1) {
+                GatherOperator gather = (GatherOperator) source;
+                this.results = groupByColumnIndex == -1 ? this.aggregateInParallel(gather) :
+                               this.aggregateRepartitioned(gather);
+            } else if (groupByColumnIndex == -1 || isSortedOn(source, groupByColumnIndex)) {
+                this.sourceBatches = source.batchIterator();
+            } else {
+                this.hashAggregation = new HashAggregation(source.batchIterator(), 0, this.maxGroups);
+            }
+        }
+
+        /**
+         * Moves on to the next batch with rows left, if the current one has
+         * none.
+         *
+         * @return false if there are no rows left
+         */
+        private boolean advance() {
+            while (this.batch == null || this.nextSelected == this.batch.getNumSelected()) {
+                if (!this.sourceBatches.hasNext()) {
+                    return false;
+                }
+                this.batch = this.sourceBatches.next();
+                this.nextSelected = 0;
+            }
+            return true;
+        }
+
+        private DataBox nextGroupValue() {
+            return this.batch.getColumn(groupByColumnIndex).get(this.batch.getSelection()[this.nextSelected]);
+        }
+
+        /**
+         * Aggregates the next group of rows of sourceBatches.
+         *
+         * @return the result of the group, or null if there are no rows left
+         */
+        private Record nextGroup() {
+            if (!this.advance()) {
+                return null;
+            }
+            Accumulator[] accumulators = newAccumulators();
+            if (groupByColumnIndex == -1) {
+                do {
+                    accumulateAll(accumulators, this.batch);
+                    this.nextSelected = this.batch.getNumSelected();
+                } while (this.advance());
+                return result(null, accumulators);
+            }
+
+            DataBox group = this.nextGroupValue();
+            do {
+                accumulate(accumulators, this.batch, this.batch.getSelection()[this.nextSelected++]);
+            } while (this.advance() && group.equals(this.nextGroupValue()));
+            return result(group, accumulators);
+        }
+
+        /**
+         * Aggregates the whole input, without a group by column, on the
+         * workers of gather.
+         */
+        private Iterator<Record> aggregateInParallel(GatherOperator gather) throws QueryPlanException,
+            DatabaseException {
+            Accumulator[] totals = newAccumulators();
+            boolean[] anyRows = new boolean[1];
+            GatherOperator.awaitAll(gather.startWorkers(batches -> {
+                Accumulator[] accumulators = newAccumulators();
+                boolean any = false;
+                while (batches.hasNext()) {
+                    RecordBatch batch = batches.next();
+                    any |= batch.getNumSelected() > 0;
+                    accumulateAll(accumulators, batch);
+                }
+                if (any) {
+                    synchronized (totals) {
+                        for (int i = 0; i < totals.length; i++) {
+                            totals[i].merge(accumulators[i]);
+                        }
+                        anyRows[0] = true;
+                    }
+                }
+            }));
+            if (!anyRows[0]) {
+                return Collections.emptyIterator();
+            }
+            return Collections.singletonList(result(null, totals)).iterator();
+        }
+
+        /**
+         * Aggregates the input on the workers of gather, which repartition it
+         * on the group by value between as many consumers as there are
+         * workers.
+         */
+        private Iterator<Record> aggregateRepartitioned(GatherOperator gather) throws QueryPlanException,
+            DatabaseException {
+            int numPartitions = gather.getNumWorkers();
+            int partitionMaxGroups = Math.max(1, this.maxGroups / numPartitions);
+            Schema schema = AggregateOperator.this.getSource().getOutputSchema();
+
+            ExchangeQueue[] exchanges = new ExchangeQueue[numPartitions];
+            List<Future<List<Record>>> consumers = new ArrayList<>();
+            for (int i = 0; i < numPartitions; i++) {
+                ExchangeQueue exchange = new ExchangeQueue(gather.getNumWorkers(), 2 * gather.getNumWorkers());
+                exchanges[i] = exchange;
+                // The workers partition with the hash function of pass 0, so
+                // the consumers start at pass 1.
+                consumers.add(transaction.getWorkerPool().submit(() -> {
+                    HashAggregation aggregation = new HashAggregation(exchange.iterator(), 1, partitionMaxGroups);
+                    List<Record> results = new ArrayList<>();
+                    for (Record r = aggregation.next(); r != null; r = aggregation.next()) {
+                        results.add(r);
+                    }
+                    return results;
+                }));
+            }
+
+            List<Future<?>> workers = gather.startWorkers(new GatherOperator.Worker() {
+                public void run(Iterator<RecordBatch> batches) throws InterruptedException {
+                    RecordBatch[] outputs = new RecordBatch[numPartitions];
+                    for (int i = 0; i < numPartitions; i++) {
+                        outputs[i] = new RecordBatch(schema);
+                    }
+                    while (batches.hasNext()) {
+                        RecordBatch batch = batches.next();
+                        ColumnVector groupColumn = batch.getColumn(groupByColumnIndex);
+                        int[] selection = batch.getSelection();
+                        for (int i = 0; i < batch.getNumSelected(); i++) {
+                            int row = selection[i];
+                            int p = Math.floorMod(GraceHashOperator.hash(groupColumn.get(row), 0), numPartitions);
+                            outputs[p].copyRow(batch, row);
+                            if (outputs[p].isFull()) {
+                                if (!exchanges[p].put(outputs[p])) {
+                                    return;
+                                }
+                                outputs[p] = new RecordBatch(schema);
+                            }
+                        }
+                    }
+                    for (int p = 0; p < numPartitions; p++) {
+                        if (outputs[p].getNumRows() > 0) {
+                            exchanges[p].put(outputs[p]);
+                        }
+                    }
+                }
+
+                public void finish(Throwable failure) {
+                    for (ExchangeQueue exchange : exchanges) {
+                        exchange.finish(failure);
+                    }
+                }
+            });
+
+            List<Record> results = new ArrayList<>();
+            try {
+                for (Future<List<Record>> consumer : consumers) {
+                    results.addAll(consumer.get());
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                // Let the workers still waiting on a failed consumer finish.
+                for (ExchangeQueue exchange : exchanges) {
+                    exchange.cancel();
+                }
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                Throwable cause = e.getCause();
+                throw new DatabaseException(cause instanceof Exception ? (Exception) cause : e);
+            }
+            GatherOperator.awaitAll(workers);
+            return results.iterator();
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        public boolean hasNext() {
+            if (this.nextRecord != null) {
+                return true;
+            }
+            if (this.sourceBatches != null) {
+                this.nextRecord = this.nextGroup();
+            } else if (this.hashAggregation != null) {
+                try {
+                    this.nextRecord = this.hashAggregation.next();
+                } catch (DatabaseException | QueryPlanException e) {
+                    return false;
+                }
+            } else if (this.results.hasNext()) {
+                this.nextRecord = this.results.next();
+            }
+            return this.nextRecord != null;
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        public Record next() {
+            if (this.hasNext()) {
+                Record r = this.nextRecord;
+                this.nextRecord = null;
+                return r;
+            }
+            throw new NoSuchElementException();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
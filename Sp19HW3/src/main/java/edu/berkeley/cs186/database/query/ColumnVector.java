@@ -0,0 +1,137 @@
+package edu.berkeley.cs186.database.query;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import edu.berkeley.cs186.database.databox.BoolDataBox;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
+
+/**
+ * The values of one column for the rows of a RecordBatch, kept in a primitive
+ * array for the type of the column: ints for INT, floats for FLOAT, bools for
+ * BOOL, and the encoded bytes of each value for STRING. Only the array for the
+ * type of the column is allocated.
+ */
+public class ColumnVector {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private Type type;
+
+    public int[] ints;
+    public float[] floats;
+    public boolean[] bools;
+    public byte[][] strings;
+
+    public ColumnVector(Type type, int capacity) {
+        this.type = type;
+        switch (type.getTypeId()) {
+        case INT:
+            this.ints = new int[capacity];
+            break;
+        case FLOAT:
+            this.floats = new float[capacity];
+            break;
+        case BOOL:
+            this.bools = new boolean[capacity];
+            break;
+        case STRING:
+            this.strings = new byte[capacity][];
+            break;
+        default:
+            throw new IllegalArgumentException("Unhandled TypeId " + type.getTypeId() + ".");
+        }
+    }
+
+    public Type getType() {
+        return this.type;
+    }
+
+    public TypeId getTypeId() {
+        return this.type.getTypeId();
+    }
+
+    /**
+     * Returns the value of row as a DataBox.
+     */
+    public DataBox get(int row) {
+        switch (this.type.getTypeId()) {
+        case INT:
+            return new IntDataBox(this.ints[row]);
+        case FLOAT:
+            return new FloatDataBox(this.floats[row]);
+        case BOOL:
+            return new BoolDataBox(this.bools[row]);
+        default:
+            return new StringDataBox(new String(this.strings[row], UTF8), this.type.getSizeInBytes());
+        }
+    }
+
+    /**
+     * Sets the value of row from a DataBox.
+     */
+    public void set(int row, DataBox value) {
+        switch (this.type.getTypeId()) {
+        case INT:
+            this.ints[row] = value.getInt();
+            break;
+        case FLOAT:
+            this.floats[row] = value.getFloat();
+            break;
+        case BOOL:
+            this.bools[row] = value.getBool();
+            break;
+        default:
+            this.strings[row] = value.toBytes();
+            break;
+        }
+    }
+
+    /**
+     * Sets the value of row to the value of sourceRow of source, a vector of
+     * the same type.
+     */
+    public void copy(int row, ColumnVector source, int sourceRow) {
+        switch (this.type.getTypeId()) {
+        case INT:
+            this.ints[row] = source.ints[sourceRow];
+            break;
+        case FLOAT:
+            this.floats[row] = source.floats[sourceRow];
+            break;
+        case BOOL:
+            this.bools[row] = source.bools[sourceRow];
+            break;
+        default:
+            this.strings[row] = source.strings[sourceRow];
+            break;
+        }
+    }
+
+    /**
+     * Sets the value of row from its encoding at offset in buf, as written by
+     * DataBox.toBytes. buf must be backed by an array.
+     */
+    public void decode(int row, ByteBuffer buf, int offset) {
+        switch (this.type.getTypeId()) {
+        case INT:
+            this.ints[row] = buf.getInt(offset);
+            break;
+        case FLOAT:
+            this.floats[row] = buf.getFloat(offset);
+            break;
+        case BOOL:
+            this.bools[row] = buf.get(offset) == 1;
+            break;
+        default:
+            byte[] bytes = new byte[this.type.getSizeInBytes()];
+            System.arraycopy(buf.array(), buf.arrayOffset() + offset, bytes, 0, bytes.length);
+            this.strings[row] = bytes;
+            break;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import edu.berkeley.cs186.database.table.Schema;
+
+/**
+ * A bounded queue of RecordBatches passed from the workers of a parallel
+ * query, which produce them, to the thread that consumes them. Once every
+ * producer has called finish(), the consumer's iterator runs out after the
+ * last batch.
+ *
+ * Producers block while the queue is full and the consumer blocks while it is
+ * empty. Both block through ForkJoinPool.managedBlock, so that a worker pool
+ * running both producers and consumers starts more threads rather than
+ * running out of them while its workers wait on each other.
+ */
+class ExchangeQueue {
+    // Put on the queue once the last producer finishes, or once one fails, to
+    // wake the consumer.
+    private static final RecordBatch END = new RecordBatch(new Schema(Collections.emptyList(),
+                                           Collections.emptyList()));
+
+    private BlockingQueue<RecordBatch> queue;
+    private int numProducers;
+    private volatile Throwable failure;
+    private volatile boolean cancelled;
+
+    /**
+     * @param numProducers the number of producers that will call finish()
+     * @param capacity the most batches the queue holds at once
+     */
+    ExchangeQueue(int numProducers, int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.numProducers = numProducers;
+    }
+
+    /**
+     * Adds a batch to the queue, waiting for room if it is full. Once the
+     * queue is cancelled, the batch is dropped instead.
+     *
+     * @return false if the queue is cancelled, in which case the producer
+     * should stop
+     */
+    boolean put(RecordBatch batch) throws InterruptedException {
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+            public boolean block() throws InterruptedException {
+                while (!ExchangeQueue.this.cancelled &&
+                        !ExchangeQueue.this.queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                    // Check for cancellation every so often.
+                }
+                return true;
+            }
+
+            public boolean isReleasable() {
+                return ExchangeQueue.this.cancelled || ExchangeQueue.this.queue.offer(batch);
+            }
+        });
+        return !this.cancelled;
+    }
+
+    /**
+     * Cancels the queue once the consumer stops reading it, so that the
+     * producers stop rather than wait for room forever.
+     */
+    void cancel() {
+        this.cancelled = true;
+        this.queue.clear();
+    }
+
+    /**
+     * Signals that a producer is done. If e is not null, the producer failed
+     * with e, which the consumer rethrows.
+     */
+    void finish(Throwable e) {
+        if (e != null) {
+            this.failure = e;
+        }
+        boolean last;
+        synchronized (this) {
+            last = --this.numProducers == 0;
+        }
+        if (last || e != null) {
+            try {
+                this.put(END);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private RecordBatch take() throws InterruptedException {
+        RecordBatch[] taken = new RecordBatch[1];
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+            public boolean block() throws InterruptedException {
+                taken[0] = ExchangeQueue.this.queue.take();
+                return true;
+            }
+
+            public boolean isReleasable() {
+                if (taken[0] == null) {
+                    taken[0] = ExchangeQueue.this.queue.poll();
+                }
+                return taken[0] != null;
+            }
+        });
+        return taken[0];
+    }
+
+    /**
+     * Returns an iterator over the batches of all the producers, for the
+     * consumer. If a producer fails, the queue is cancelled, and the iterator
+     * throws an IllegalStateException with the cause of the failure.
+     */
+    Iterator<RecordBatch> iterator() {
+        return this.iterator(() -> {});
+    }
+
+    /**
+     * Returns an iterator over the batches of all the producers, which runs
+     * onDone once it runs out or throws.
+     */
+    Iterator<RecordBatch> iterator(Runnable onDone) {
+        return new Iterator<RecordBatch>() {
+            private RecordBatch nextBatch;
+            private boolean done;
+
+            public boolean hasNext() {
+                if (this.nextBatch != null) {
+                    return true;
+                }
+                if (this.done) {
+                    return false;
+                }
+                RecordBatch batch;
+                try {
+                    batch = ExchangeQueue.this.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    ExchangeQueue.this.cancel();
+                    onDone.run();
+                    throw new IllegalStateException("Interrupted while waiting for a worker.", e);
+                }
+                Throwable failure = ExchangeQueue.this.failure;
+                if (failure != null) {
+                    this.done = true;
+                    ExchangeQueue.this.cancel();
+                    onDone.run();
+                    throw new IllegalStateException("A worker of a parallel query failed.", failure);
+                }
+                if (batch == END) {
+                    this.done = true;
+                    onDone.run();
+                    return false;
+                }
+                this.nextBatch = batch;
+                return true;
+            }
+
+            public RecordBatch next() {
+                if (this.hasNext()) {
+                    RecordBatch batch = this.nextBatch;
+                    this.nextBatch = null;
+                    return batch;
+                }
+                throw new NoSuchElementException();
+            }
+        };
+    }
+}
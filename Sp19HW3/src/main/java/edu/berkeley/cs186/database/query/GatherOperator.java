@@ -0,0 +1,197 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+/**
+ * An exchange operator that runs its source in parallel, on numWorkers
+ * threads of the worker pool of the database at once, and gathers the output
+ * of all the workers into a single stream.
+ *
+ * Each worker runs the source's morselIterator over the morsels it takes of
+ * the source's table, so the source must be a pipeline of operators that can
+ * run in parallel: a sequential scan beneath selects, projects and parallel
+ * hash joins. The output comes in no particular order.
+ *
+ * Operators above a GatherOperator that can make use of its workers directly,
+ * such as AggregateOperator, call startWorkers instead of reading its output.
+ */
+public class GatherOperator extends QueryOperator {
+    // The most batches of output waiting to be read, per worker.
+    private static final int BATCHES_PER_WORKER = 2;
+
+    private Database.Transaction transaction;
+    private int numWorkers;
+
+    /**
+     * Creates a new GatherOperator that runs source on numWorkers workers.
+     *
+     * @param source the pipeline to run in parallel
+     * @param transaction the transaction containing this operator
+     * @param numWorkers the number of workers to run source on
+     * @throws QueryPlanException if source cannot run in parallel
+     */
+    public GatherOperator(QueryOperator source,
+                          Database.Transaction transaction,
+                          int numWorkers) throws QueryPlanException {
+        super(OperatorType.GATHER, source);
+        if (source.getMorselTableName() == null) {
+            throw new QueryPlanException("Operators of type " + source.getType() + " cannot run in parallel.");
+        }
+        this.transaction = transaction;
+        this.numWorkers = numWorkers;
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    public int getNumWorkers() {
+        return this.numWorkers;
+    }
+
+    protected Schema computeSchema() throws QueryPlanException {
+        return this.getSource().getOutputSchema();
+    }
+
+    public String str() {
+        return "type: " + this.getType() +
+               "\nworkers: " + this.numWorkers;
+    }
+
+    /**
+     * The work done by one worker over the batches of its part of the output
+     * of the source.
+     */
+    interface Worker {
+        void run(Iterator<RecordBatch> batches) throws Exception;
+
+        /**
+         * Called once the worker is done, whether run returned normally or
+         * failed with an exception, in which case failure is that exception.
+         * This includes the case where the worker failed before run was called.
+         */
+        default void finish(Throwable failure) {}
+    }
+
+    /**
+     * Starts numWorkers workers on the worker pool, each of which runs worker
+     * over its own morselIterator of the source.
+     *
+     * @return the tasks running the workers, which complete as the workers do
+     */
+    List<Future<?>> startWorkers(Worker worker) throws QueryPlanException, DatabaseException {
+        ForkJoinPool pool = this.transaction.getWorkerPool();
+        MorselQueue morsels = new MorselQueue(this.transaction, this.getSource().getMorselTableName());
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < this.numWorkers; i++) {
+            tasks.add(pool.submit(() -> {
+                Throwable failure = null;
+                try {
+                    worker.run(this.getSource().morselIterator(morsels));
+                } catch (Exception | Error e) {
+                    failure = e;
+                    throw e;
+                } finally {
+                    worker.finish(failure);
+                }
+                return null;
+            }));
+        }
+        return tasks;
+    }
+
+    /**
+     * Waits for tasks to complete.
+     *
+     * @throws DatabaseException if any of the tasks failed
+     */
+    static void awaitAll(List<? extends Future<?>> tasks) throws DatabaseException {
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DatabaseException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw new DatabaseException(cause instanceof Exception ? (Exception) cause : e);
+            }
+        }
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        return RecordBatch.toRecords(this.batchIterator());
+    }
+
+    /**
+     * Waits for tasks to complete, without reporting their failures.
+     */
+    private static void awaitQuietly(List<? extends Future<?>> tasks) {
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                // The consumer is gone, so there is no one to report it to.
+            }
+        }
+    }
+
+    /**
+     * Yields the batches of all the workers as they come in. If the batches
+     * are not read to the end, the workers are stopped when the transaction
+     * ends.
+     */
+    @Override
+    public Iterator<RecordBatch> batchIterator() throws QueryPlanException, DatabaseException {
+        ExchangeQueue exchange = new ExchangeQueue(this.numWorkers, BATCHES_PER_WORKER * this.numWorkers);
+        List<Future<?>> tasks = this.startWorkers(new Worker() {
+            public void run(Iterator<RecordBatch> batches) throws InterruptedException {
+                while (batches.hasNext()) {
+                    if (!exchange.put(batches.next())) {
+                        return;
+                    }
+                }
+            }
+
+            public void finish(Throwable failure) {
+                exchange.finish(failure);
+            }
+        });
+        Runnable cancel = () -> {
+            exchange.cancel();
+            awaitQuietly(tasks);
+        };
+        this.transaction.addCancellation(cancel);
+        return exchange.iterator(() -> this.transaction.removeCancellation(cancel));
+    }
+
+    /**
+     * Estimates the table statistics for the result of executing this query operator.
+     *
+     * @return estimated TableStats
+     */
+    public TableStats estimateStats() throws QueryPlanException {
+        return this.getSource().getStats();
+    }
+
+    /**
+     * Estimates the IO cost of executing this query operator. The workers
+     * read the same pages between them that the source would read alone.
+     */
+    public int estimateIOCost() throws QueryPlanException {
+        return this.getSource().getIOCost();
+    }
+}
@@ -0,0 +1,384 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.*;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.TypeId;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
+
+public class GraceHashOperator extends JoinOperator {
+    private int numBuffers;
+
+    public GraceHashOperator(QueryOperator leftSource,
+                             QueryOperator rightSource,
+                             String leftColumnName,
+                             String rightColumnName,
+                             Database.Transaction transaction) throws QueryPlanException, DatabaseException {
+        super(leftSource, rightSource, leftColumnName, rightColumnName, transaction, JoinType.GRACEHASH);
+
+        this.numBuffers = transaction.getNumMemoryPages();
+
+        // for HW4
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        return new GraceHashIterator();
+    }
+
+    /**
+     * Estimates the IO cost of a Grace hash join. Every partitioning pass reads
+     * and writes both inputs once, and a pass divides the smaller input into
+     * numBuffers - 1 partitions. Partitioning stops once the partitions of the
+     * smaller input fit in the numBuffers - 2 pages left for a hash table, and
+     * the final pass reads both inputs once more to build and probe. If the
+     * smaller input fits to begin with, that final pass is all there is.
+     */
+    public int estimateIOCost() {
+        int numLeftPages = getLeftSource().getStats().getNumPages();
+        int numRightPages = getRightSource().getStats().getNumPages();
+
+        int numPasses = 0;
+        double partitionPages = Math.min(numLeftPages, numRightPages);
+        while (partitionPages > numBuffers - 2) {
+            partitionPages /= numBuffers - 1;
+            numPasses++;
+        }
+
+        return (2 * numPasses + 1) * (numLeftPages + numRightPages);
+    }
+
+    /**
+     * Hashes a join value for the given partitioning pass. Each pass must use
+     * a different hash function, or repartitioning a partition would put all
+     * of its records back into a single partition.
+     */
+    static int hash(DataBox value, int pass) {
+        int h = keyHashCode(value) ^ (pass * 0x9E3779B9);
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Returns the hash code of a join value. FloatDataBoxes compare with ==,
+     * so 0.0 and -0.0 are the same join value and get the same hash code, as
+     * they get the same key in a JoinHashTable; Float.hashCode tells them apart.
+     */
+    private static int keyHashCode(DataBox value) {
+        if (value.type().getTypeId() == TypeId.FLOAT) {
+            float f = value.getFloat();
+            return f == 0.0f ? 0 : Float.floatToIntBits(f);
+        }
+        return value.hashCode();
+    }
+
+    /**
+     * A pair of tables holding the left and right records whose join values
+     * hash to the same partition in every pass so far. The partition before
+     * the first pass has no tables, and its records are read from the input
+     * operators.
+     */
+    private class Partition {
+        String leftTableName;
+        String rightTableName;
+        int pass;
+        boolean splittable;
+
+        Partition(String leftTableName, String rightTableName, int pass, boolean splittable) {
+            this.leftTableName = leftTableName;
+            this.rightTableName = rightTableName;
+            this.pass = pass;
+            this.splittable = splittable;
+        }
+    }
+
+    /**
+     * Grace Hash Join
+     *
+     * If the smaller input fits in memory, it is loaded straight from its
+     * input operator into an in-memory hash table, and the other input is
+     * streamed past it once. Neither input is written to a temporary table.
+     *
+     * Otherwise, both inputs are hashed on their join column into numBuffers - 1
+     * partitions, each spilled to a temporary table, so that matching records
+     * always end up in partitions with the same number. For each pair of
+     * partitions, the smaller one is then loaded into an in-memory hash table
+     * and the other one is streamed past it.
+     *
+     * A pair whose smaller partition does not fit in memory is partitioned
+     * again with a different hash function. If that does not make it any
+     * smaller, as happens when most of its records share one join value, it is
+     * joined a memory-sized chunk of the smaller partition at a time instead.
+     */
+    private class GraceHashIterator extends JoinIterator {
+        private Deque<Partition> partitions = new ArrayDeque<>();
+
+        // The partition being joined, and which of its sides the hash table is
+        // built from.
+        private Partition partition;
+        private boolean buildLeft;
+        private Iterator<Page> buildPageIterator;
+
+        // The hash table, and the batches of the probe side streamed past it,
+        // with the next row of probeBatch to probe, as a position in its
+        // selection vector.
+        private JoinHashTable hashTable;
+        private Iterator<RecordBatch> probeBatches;
+        private RecordBatch probeBatch;
+        private int nextProbe;
+        private Record probeRecord;
+        private Iterator<Record> matchIterator = Collections.emptyIterator();
+        private Record nextRecord;
+
+        public GraceHashIterator() throws QueryPlanException, DatabaseException {
+            super(false);
+            int numLeftPages = getLeftSource().getStats().getNumPages();
+            int numRightPages = getRightSource().getStats().getNumPages();
+            this.buildLeft = numLeftPages <= numRightPages;
+            if (Math.min(numLeftPages, numRightPages) > numBuffers - 2 || !this.buildInMemory()) {
+                // The first pass partitions the inputs straight from the input
+                // operators, so they are not made into tables first.
+                this.repartition(new Partition(null, null, 0, true));
+            }
+        }
+
+        /**
+         * Builds a hash table over the whole build side straight from its
+         * input operator, and starts streaming the probe side from its input
+         * operator.
+         *
+         * @return false, with nothing built, if the build side turns out not
+         * to fit in numBuffers - 2 pages after all
+         */
+        private boolean buildInMemory() throws QueryPlanException, DatabaseException {
+            QueryOperator buildSource = this.buildLeft ? getLeftSource() : getRightSource();
+            QueryOperator probeSource = this.buildLeft ? getRightSource() : getLeftSource();
+            int maxRecords = (numBuffers - 2) * Table.computeNumRecordsPerPage(Page.pageSize,
+                             buildSource.getOutputSchema());
+
+            this.hashTable = this.newHashTable();
+            Iterator<Record> records = buildSource.iterator();
+            for (int n = 0; records.hasNext(); n++) {
+                if (n == maxRecords) {
+                    this.hashTable = null;
+                    return false;
+                }
+                Record record = records.next();
+                this.hashTable.put(record.getValues().get(this.buildColumnIndex()), record);
+            }
+            this.probeBatches = probeSource.batchIterator();
+            return true;
+        }
+
+        private JoinHashTable newHashTable() {
+            Schema schema = getLeftSource().getOutputSchema();
+            return new JoinHashTable(schema.getFieldTypes().get(getLeftColumnIndex()).getTypeId());
+        }
+
+        private int buildColumnIndex() {
+            return this.buildLeft ? getLeftColumnIndex() : getRightColumnIndex();
+        }
+
+        private int probeColumnIndex() {
+            return this.buildLeft ? getRightColumnIndex() : getLeftColumnIndex();
+        }
+
+        /**
+         * Partitions both sides of the given partition with the hash function
+         * of its pass, and queues the resulting pairs that are not empty.
+         */
+        private void repartition(Partition parent) throws QueryPlanException, DatabaseException {
+            int numPartitions = numBuffers - 1;
+            Iterator<Record> leftRecords = parent.leftTableName == null ? getLeftSource().iterator() :
+                                           getRecordIterator(parent.leftTableName);
+            Iterator<Record> rightRecords = parent.rightTableName == null ? getRightSource().iterator() :
+                                            getRecordIterator(parent.rightTableName);
+            String[] leftTableNames = this.spill(leftRecords, getLeftColumnIndex(), parent.pass,
+                                                 numPartitions, getLeftSource().getOutputSchema());
+            String[] rightTableNames = this.spill(rightRecords, getRightColumnIndex(), parent.pass,
+                                                  numPartitions, getRightSource().getOutputSchema());
+
+            long[] numLeft = new long[numPartitions];
+            long[] numRight = new long[numPartitions];
+            long totalLeft = 0;
+            long totalRight = 0;
+            for (int i = 0; i < numPartitions; i++) {
+                numLeft[i] = getTransaction().getNumRecords(leftTableNames[i]);
+                numRight[i] = getTransaction().getNumRecords(rightTableNames[i]);
+                totalLeft += numLeft[i];
+                totalRight += numRight[i];
+            }
+            for (int i = 0; i < numPartitions; i++) {
+                if (numLeft[i] == 0 || numRight[i] == 0) {
+                    continue;
+                }
+                boolean splittable = numLeft[i] < totalLeft || numRight[i] < totalRight;
+                this.partitions.push(new Partition(leftTableNames[i], rightTableNames[i],
+                                                   parent.pass + 1, splittable));
+            }
+        }
+
+        private String[] spill(Iterator<Record> records, int columnIndex, int pass, int numPartitions,
+                               Schema schema) throws DatabaseException {
+            String[] tableNames = new String[numPartitions];
+            for (int i = 0; i < numPartitions; i++) {
+                tableNames[i] = createTempTable(schema);
+            }
+            while (records.hasNext()) {
+                List<DataBox> values = records.next().getValues();
+                int i = Math.floorMod(hash(values.get(columnIndex), pass), numPartitions);
+                addRecord(tableNames[i], values);
+            }
+            return tableNames;
+        }
+
+        /**
+         * Moves on to the next partition to join, partitioning partitions that
+         * are too large for memory along the way.
+         *
+         * @return false if there are no partitions left
+         */
+        private boolean nextPartition() throws QueryPlanException, DatabaseException {
+            while (!this.partitions.isEmpty()) {
+                Partition p = this.partitions.pop();
+                int numLeftPages = getTransaction().getNumDataPages(p.leftTableName);
+                int numRightPages = getTransaction().getNumDataPages(p.rightTableName);
+                if (Math.min(numLeftPages, numRightPages) > numBuffers - 2 && p.splittable) {
+                    this.repartition(p);
+                    continue;
+                }
+
+                this.partition = p;
+                this.buildLeft = numLeftPages <= numRightPages;
+                this.buildPageIterator = getPageIterator(this.buildTableName());
+                this.buildPageIterator.next(); // skip the header page
+                return true;
+            }
+            return false;
+        }
+
+        private String buildTableName() {
+            return this.buildLeft ? this.partition.leftTableName : this.partition.rightTableName;
+        }
+
+        private String probeTableName() {
+            return this.buildLeft ? this.partition.rightTableName : this.partition.leftTableName;
+        }
+
+        /**
+         * Builds a hash table over the next chunk of at most numBuffers - 2
+         * pages of the build side of the current partition, and starts a new
+         * scan of its probe side.
+         *
+         * @return false if the build side has no pages left
+         */
+        private boolean nextChunk() throws DatabaseException {
+            if (this.buildPageIterator == null || !this.buildPageIterator.hasNext()) {
+                return false;
+            }
+            this.hashTable = this.newHashTable();
+            Iterator<Record> records = getBlockIterator(this.buildTableName(), this.buildPageIterator,
+                                       numBuffers - 2);
+            while (records.hasNext()) {
+                Record record = records.next();
+                this.hashTable.put(record.getValues().get(this.buildColumnIndex()), record);
+            }
+            this.probeBatches = new TableBatchIterator(getTransaction(), this.probeTableName());
+            this.probeBatch = null;
+            return true;
+        }
+
+        /**
+         * Moves on to the next probe batch with rows left, if the current one
+         * has none.
+         *
+         * @return false if the probe side has no rows left
+         */
+        private boolean nextProbeRow() {
+            if (this.probeBatches == null) {
+                return false;
+            }
+            while (this.probeBatch == null || this.nextProbe == this.probeBatch.getNumSelected()) {
+                if (!this.probeBatches.hasNext()) {
+                    return false;
+                }
+                this.probeBatch = this.probeBatches.next();
+                this.nextProbe = 0;
+            }
+            return true;
+        }
+
+        private Record joinRecords(Record leftRecord, Record rightRecord) {
+            List<DataBox> values = new ArrayList<>(leftRecord.getValues());
+            values.addAll(rightRecord.getValues());
+            return new Record(values);
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        public boolean hasNext() {
+            if (this.nextRecord != null) {
+                return true;
+            }
+
+            try {
+                while (true) {
+                    if (this.matchIterator.hasNext()) {
+                        Record match = this.matchIterator.next();
+                        this.nextRecord = this.buildLeft ? joinRecords(match, this.probeRecord) :
+                                          joinRecords(this.probeRecord, match);
+                        return true;
+                    }
+                    if (this.nextProbeRow()) {
+                        int row = this.probeBatch.getSelection()[this.nextProbe++];
+                        List<Record> matches = this.hashTable.get(this.probeBatch.getColumn(this.probeColumnIndex()),
+                                                                  row);
+                        if (!matches.isEmpty()) {
+                            // Only probe rows that match are made into records.
+                            this.probeRecord = this.probeBatch.getRecord(row);
+                            this.matchIterator = matches.iterator();
+                        }
+                        continue;
+                    }
+                    if (!this.nextChunk() && !this.nextPartition()) {
+                        return false;
+                    }
+                }
+            } catch (QueryPlanException | DatabaseException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        public Record next() {
+            if (this.hasNext()) {
+                Record r = this.nextRecord;
+                this.nextRecord = null;
+                return r;
+            }
+            throw new NoSuchElementException();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
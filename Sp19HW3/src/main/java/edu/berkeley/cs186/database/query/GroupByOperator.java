@@ -1,22 +1,22 @@
 package edu.berkeley.cs186.database.query;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.NoSuchElementException;
+import java.util.*;
 
 import edu.berkeley.cs186.database.Database;
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.table.MarkerRecord;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 public class GroupByOperator extends QueryOperator {
     private int groupByColumnIndex;
     private String groupByColumn;
     private Database.Transaction transaction;
+    private int numBuffers;
 
     /**
      * Create a new GroupByOperator that pulls from source and groups by groupByColumn.
@@ -36,6 +36,12 @@ public class GroupByOperator extends QueryOperator {
 
         this.groupByColumnIndex = sourceSchema.getFieldNames().indexOf(this.groupByColumn);
 
+        try {
+            this.numBuffers = transaction.getNumMemoryPages();
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
+
         this.stats = this.estimateStats();
         this.cost = this.estimateIOCost();
     }
@@ -44,6 +50,15 @@ public class GroupByOperator extends QueryOperator {
         return new GroupByIterator();
     }
 
+    /**
+     * The groups yielded by this operator are delimited by MarkerRecords, which
+     * a RecordBatch cannot hold.
+     */
+    @Override
+    public Iterator<RecordBatch> batchIterator() throws QueryPlanException {
+        throw new QueryPlanException("The output of a GroupByOperator cannot be split into batches.");
+    }
+
     protected Schema computeSchema() throws QueryPlanException {
         return this.getSource().getOutputSchema();
     }
@@ -62,43 +77,125 @@ public class GroupByOperator extends QueryOperator {
         return this.getSource().getStats();
     }
 
+    /**
+     * Estimates the IO cost of executing this query operator. Input that is
+     * already sorted on the group by column, or that fits in memory, is grouped
+     * as it is read. Otherwise it is written out to partitions once and read
+     * back once.
+     */
     public int estimateIOCost() throws QueryPlanException {
-        return this.getSource().getIOCost();
+        int cost = this.getSource().getIOCost();
+        int numPages = this.getSource().getStats().getNumPages();
+        if (!isSortedOn(this.getSource(), this.groupByColumnIndex) && numPages > this.numBuffers - 1) {
+            cost += 2 * numPages;
+        }
+        return cost;
     }
 
     /**
      * An implementation of Iterator that provides an iterator interface for this operator.
+     *
+     * Records are yielded one group at a time, with a MarkerRecord between
+     * consecutive groups.
+     *
+     * If the input is sorted on the group by column, the records of a group
+     * already come together and the input is streamed through as is.
+     * Otherwise the input is grouped in an in-memory hash table on the group
+     * by value, as long as it fits in numBuffers - 1 pages. Input that does not
+     * fit is hashed into numBuffers - 1 partitions, each spilled to a temporary
+     * table, so that all the records of a group end up in the same partition.
+     * Each partition is then grouped in memory in turn, or, if a few large
+     * groups keep it from fitting, sorted on the group by column.
      */
     private class GroupByIterator implements Iterator<Record> {
-        private Iterator<Record> sourceIterator;
         private MarkerRecord markerRecord;
-        private Map<String, String> hashGroupTempTables;
-        private int currCount;
-        private Iterator<String> keyIter;
-        private Iterator<Record> rIter;
+        private int maxRecords;
+
+        // Records in which the records of each group come together, and the
+        // spilled partitions still to be grouped after them.
+        private Iterator<Record> groupedRecords;
+        private Deque<String> partitions;
+
+        // The group by value of the last record yielded, or null if the last
+        // record yielded was a marker.
+        private DataBox currGroup;
+        private Record nextRecord;
 
         public GroupByIterator() throws QueryPlanException, DatabaseException {
-            this.sourceIterator = GroupByOperator.this.getSource().iterator();
             this.markerRecord = MarkerRecord.getMarker();
-            this.hashGroupTempTables = new HashMap<String, String>();
-            this.currCount = 0;
-            this.rIter = null;
-            while (this.sourceIterator.hasNext()) {
-                Record record = this.sourceIterator.next();
-                DataBox groupByColumn = record.getValues().get(GroupByOperator.this.groupByColumnIndex);
-                String tableName;
-                if (!this.hashGroupTempTables.containsKey(groupByColumn.toString())) {
-                    tableName = "Temp" + GroupByOperator.this.groupByColumn + "GroupBy" +
-                                this.hashGroupTempTables.size();
-                    GroupByOperator.this.transaction.createTempTable(GroupByOperator.this.getSource().getOutputSchema(),
-                            tableName);
-                    this.hashGroupTempTables.put(groupByColumn.toString(), tableName);
-                } else {
-                    tableName = this.hashGroupTempTables.get(groupByColumn.toString());
+            this.partitions = new ArrayDeque<>();
+            this.maxRecords = (numBuffers - 1) * Table.computeNumRecordsPerPage(Page.pageSize,
+                              GroupByOperator.this.getOutputSchema());
+
+            Iterator<Record> sourceIterator = GroupByOperator.this.getSource().iterator();
+            if (isSortedOn(GroupByOperator.this.getSource(), groupByColumnIndex)) {
+                this.groupedRecords = sourceIterator;
+                return;
+            }
+
+            Map<DataBox, List<Record>> groups = new LinkedHashMap<>();
+            for (int n = 0; n < this.maxRecords && sourceIterator.hasNext(); n++) {
+                this.addToGroup(groups, sourceIterator.next());
+            }
+            if (!sourceIterator.hasNext()) {
+                this.groupedRecords = flatten(groups);
+                return;
+            }
+
+            // The input does not fit in memory, so spill all of it, starting
+            // with the records read so far.
+            int numPartitions = numBuffers - 1;
+            String[] tableNames = new String[numPartitions];
+            for (int i = 0; i < numPartitions; i++) {
+                tableNames[i] = transaction.createTempTable(GroupByOperator.this.getOutputSchema());
+            }
+            for (List<Record> group : groups.values()) {
+                for (Record record : group) {
+                    this.spill(tableNames, record);
+                }
+            }
+            groups = null;
+            while (sourceIterator.hasNext()) {
+                this.spill(tableNames, sourceIterator.next());
+            }
+            for (String tableName : tableNames) {
+                if (transaction.getNumRecords(tableName) > 0) {
+                    this.partitions.add(tableName);
                 }
-                GroupByOperator.this.transaction.addRecord(tableName, record.getValues());
             }
-            this.keyIter = hashGroupTempTables.keySet().iterator();
+            this.groupedRecords = Collections.emptyIterator();
+        }
+
+        private void addToGroup(Map<DataBox, List<Record>> groups, Record record) {
+            DataBox group = record.getValues().get(groupByColumnIndex);
+            groups.computeIfAbsent(group, g -> new ArrayList<>()).add(record);
+        }
+
+        private Iterator<Record> flatten(Map<DataBox, List<Record>> groups) {
+            return groups.values().stream().flatMap(List::stream).iterator();
+        }
+
+        private void spill(String[] tableNames, Record record) throws DatabaseException {
+            List<DataBox> values = record.getValues();
+            int i = Math.floorMod(GraceHashOperator.hash(values.get(groupByColumnIndex), 0), tableNames.length);
+            transaction.addRecord(tableNames[i], values);
+        }
+
+        /**
+         * Returns the records of a spilled partition with the records of each
+         * group together.
+         */
+        private Iterator<Record> groupPartition(String tableName) throws DatabaseException, QueryPlanException {
+            if (transaction.getNumRecords(tableName) <= this.maxRecords) {
+                Map<DataBox, List<Record>> groups = new LinkedHashMap<>();
+                Iterator<Record> records = transaction.getRecordIterator(tableName);
+                while (records.hasNext()) {
+                    this.addToGroup(groups, records.next());
+                }
+                return flatten(groups);
+            }
+            Comparator<Record> comparator = Comparator.comparing(r -> r.getValues().get(groupByColumnIndex));
+            return new SortOperator(transaction, tableName, comparator).iterator();
         }
 
         /**
@@ -107,7 +204,21 @@ public class GroupByOperator extends QueryOperator {
          * @return true if this iterator has another record to yield, otherwise false
          */
         public boolean hasNext() {
-            return this.keyIter.hasNext() || (this.rIter != null && this.rIter.hasNext());
+            if (this.nextRecord != null) {
+                return true;
+            }
+            try {
+                while (!this.groupedRecords.hasNext()) {
+                    if (this.partitions.isEmpty()) {
+                        return false;
+                    }
+                    this.groupedRecords = this.groupPartition(this.partitions.pop());
+                }
+            } catch (DatabaseException | QueryPlanException e) {
+                return false;
+            }
+            this.nextRecord = this.groupedRecords.next();
+            return true;
         }
 
         /**
@@ -117,24 +228,18 @@ public class GroupByOperator extends QueryOperator {
          * @throws NoSuchElementException if there are no more Records to yield
          */
         public Record next() {
-            while (this.hasNext()) {
-                if (this.rIter != null && this.rIter.hasNext()) {
-                    return this.rIter.next();
-                } else if (this.keyIter.hasNext()) {
-                    String key = this.keyIter.next();
-                    String tableName = this.hashGroupTempTables.get(key);
-                    Iterator<Record> prevIter = this.rIter;
-                    try {
-                        this.rIter = GroupByOperator.this.transaction.getRecordIterator(tableName);
-                    } catch (DatabaseException de) {
-                        throw new NoSuchElementException();
-                    }
-                    if (prevIter != null && ++this.currCount < this.hashGroupTempTables.size()) {
-                        return markerRecord;
-                    }
-                }
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            DataBox group = this.nextRecord.getValues().get(groupByColumnIndex);
+            if (this.currGroup != null && !this.currGroup.equals(group)) {
+                this.currGroup = null;
+                return this.markerRecord;
             }
-            throw new NoSuchElementException();
+            this.currGroup = group;
+            Record r = this.nextRecord;
+            this.nextRecord = null;
+            return r;
         }
 
         public void remove() {
@@ -0,0 +1,175 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.*;
+
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.TypeId;
+import edu.berkeley.cs186.database.table.Record;
+
+/**
+ * An in-memory hash table from join values to the records holding them, used
+ * to build and probe hash joins.
+ *
+ * Join values of type INT, FLOAT and BOOL are kept as primitive longs in an
+ * open-addressing table with linear probing, so that probing never hashes or
+ * compares DataBox objects. Other join values are kept in a HashMap.
+ */
+class JoinHashTable {
+    private static final List<Record> NO_RECORDS = Collections.emptyList();
+
+    private TypeId keyType;
+
+    // The open-addressing table, for primitive join values. A slot is free if
+    // its records are null.
+    private long[] keys;
+    private List<Record>[] records;
+    private int size;
+
+    // The table for all other join values.
+    private Map<DataBox, List<Record>> map;
+
+    JoinHashTable(TypeId keyType) {
+        this.keyType = keyType;
+        if (keyType == TypeId.STRING) {
+            this.map = new HashMap<>();
+        } else {
+            this.allocate(16);
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.records = newRecordLists(capacity);
+        this.size = 0;
+    }
+
+    /**
+     * Returns a new array of capacity lists of records, all null. Java cannot
+     * create an array of List<Record> directly, so the array of List<?> is cast.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Record>[] newRecordLists(int capacity) {
+        return (List<Record>[]) new List<?>[capacity];
+    }
+
+    /**
+     * Returns the primitive form of a join value. FloatDataBoxes compare with
+     * ==, so 0.0 and -0.0 get the same key.
+     */
+    private long primitiveKey(DataBox value) {
+        switch (this.keyType) {
+        case INT:
+            return value.getInt();
+        case FLOAT:
+            float f = value.getFloat();
+            return f == 0.0f ? 0 : Float.floatToIntBits(f);
+        case BOOL:
+            return value.getBool() ? 1 : 0;
+        default:
+            throw new IllegalStateException("No primitive key for type " + this.keyType + ".");
+        }
+    }
+
+    private boolean isNaN(DataBox value) {
+        return this.keyType == TypeId.FLOAT && Float.isNaN(value.getFloat());
+    }
+
+    /**
+     * Returns the slot holding key, or the free slot where key belongs if no
+     * slot holds it.
+     */
+    private int slot(long key) {
+        int mask = this.keys.length - 1;
+        long h = key * 0x9E3779B97F4A7C15L;
+        int i = (int) (h ^ (h >>> 32)) & mask;
+        while (this.records[i] != null && this.keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Adds record to the records holding join value key.
+     */
+    void put(DataBox key, Record record) {
+        if (this.map != null) {
+            this.map.computeIfAbsent(key, k -> new ArrayList<>()).add(record);
+            return;
+        }
+        if (this.isNaN(key)) {
+            // NaN is equal to nothing, so it can never be matched.
+            return;
+        }
+
+        long k = this.primitiveKey(key);
+        int i = this.slot(k);
+        if (this.records[i] == null) {
+            // Keep the table at most half full.
+            if (2 * (this.size + 1) > this.keys.length) {
+                this.grow();
+                i = this.slot(k);
+            }
+            this.keys[i] = k;
+            this.records[i] = new ArrayList<>();
+            this.size++;
+        }
+        this.records[i].add(record);
+    }
+
+    private void grow() {
+        long[] oldKeys = this.keys;
+        List<Record>[] oldRecords = this.records;
+        this.allocate(2 * oldKeys.length);
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldRecords[j] != null) {
+                int i = this.slot(oldKeys[j]);
+                this.keys[i] = oldKeys[j];
+                this.records[i] = oldRecords[j];
+                this.size++;
+            }
+        }
+    }
+
+    /**
+     * Returns the records holding the join value in row of column, which may
+     * be empty. Primitive join values are read from the vector without boxing
+     * them.
+     */
+    List<Record> get(ColumnVector column, int row) {
+        if (this.map != null) {
+            return this.get(column.get(row));
+        }
+        long k;
+        switch (this.keyType) {
+        case INT:
+            k = column.ints[row];
+            break;
+        case FLOAT:
+            float f = column.floats[row];
+            if (Float.isNaN(f)) {
+                return NO_RECORDS;
+            }
+            k = f == 0.0f ? 0 : Float.floatToIntBits(f);
+            break;
+        default:
+            k = column.bools[row] ? 1 : 0;
+            break;
+        }
+        List<Record> matches = this.records[this.slot(k)];
+        return matches == null ? NO_RECORDS : matches;
+    }
+
+    /**
+     * Returns the records holding join value key, which may be empty.
+     */
+    List<Record> get(DataBox key) {
+        if (this.map != null) {
+            return this.map.getOrDefault(key, NO_RECORDS);
+        }
+        if (this.isNaN(key)) {
+            return NO_RECORDS;
+        }
+        List<Record> matches = this.records[this.slot(this.primitiveKey(key))];
+        return matches == null ? NO_RECORDS : matches;
+    }
+}
@@ -3,6 +3,7 @@ package edu.berkeley.cs186.database.query;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import edu.berkeley.cs186.database.Database;
 import edu.berkeley.cs186.database.DatabaseException;
@@ -14,6 +15,7 @@ import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.RecordId;
 import edu.berkeley.cs186.database.table.RecordIterator;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 public abstract class JoinOperator extends QueryOperator {
@@ -22,7 +24,8 @@ public abstract class JoinOperator extends QueryOperator {
         PNLJ,
         BNLJ,
         GRACEHASH,
-        SORTMERGE
+        SORTMERGE,
+        PARALLELHASH
     }
 
     private JoinType joinType;
@@ -233,12 +236,38 @@ public abstract class JoinOperator extends QueryOperator {
      * All iterators for subclasses of JoinOperator should subclass from
      * JoinIterator; JoinIterator handles creating temporary tables out of the left and right
      * input operators.
+     *
+     * Making a table out of an input that is not a sequential scan writes out
+     * and reads back all of its records, so iterators that can read an input
+     * front to back only once should read it straight from its input operator
+     * instead, and materialize just the inputs they must rescan or partition.
      */
     protected abstract class JoinIterator implements Iterator<Record> {
         private String leftTableName;
         private String rightTableName;
 
         public JoinIterator() throws QueryPlanException, DatabaseException {
+            this(true);
+        }
+
+        /**
+         * Creates a join iterator that only makes tables out of its inputs if
+         * materializeInputs is true. Iterators that read their inputs straight
+         * from the input operators pass false, and call materializeLeft and
+         * materializeRight themselves for the inputs they need tables of.
+         */
+        protected JoinIterator(boolean materializeInputs) throws QueryPlanException, DatabaseException {
+            if (materializeInputs) {
+                this.materializeInputs();
+            }
+        }
+
+        protected void materializeInputs() throws QueryPlanException, DatabaseException {
+            this.materializeLeft();
+            this.materializeRight();
+        }
+
+        protected void materializeLeft() throws QueryPlanException, DatabaseException {
             if (JoinOperator.this.getLeftSource().isSequentialScan()) {
                 this.leftTableName = ((SequentialScanOperator) JoinOperator.this.getLeftSource()).getTableName();
             } else {
@@ -249,6 +278,9 @@ public abstract class JoinOperator extends QueryOperator {
                     JoinOperator.this.addRecord(this.leftTableName, leftIter.next().getValues());
                 }
             }
+        }
+
+        protected void materializeRight() throws QueryPlanException, DatabaseException {
             if (JoinOperator.this.getRightSource().isSequentialScan()) {
                 this.rightTableName = ((SequentialScanOperator) JoinOperator.this.getRightSource()).getTableName();
             } else {
@@ -269,4 +301,123 @@ public abstract class JoinOperator extends QueryOperator {
             return this.rightTableName;
         }
     }
+
+    /**
+     * A nested loop join iterator that reads the left input straight from its
+     * input operator, a block of at most blockPages pages worth of records at a
+     * time, and scans the right input once per block, a page at a time. Each
+     * left record of the block is joined against each page of the right input
+     * in turn, so only the right input is ever made into a table.
+     */
+    protected class BlockNestedLoopIterator extends JoinIterator {
+        private int maxBlockRecords;
+        private Iterator<Record> leftIterator;
+        private List<Record> leftBlock = new ArrayList<>();
+        private Iterator<Page> rightPageIterator;
+        private List<Record> rightPage;
+        private int leftIndex;
+        private int rightIndex;
+        private Record nextRecord;
+
+        public BlockNestedLoopIterator(int blockPages) throws QueryPlanException, DatabaseException {
+            super(false);
+            this.materializeRight();
+            Schema leftSchema = JoinOperator.this.getLeftSource().getOutputSchema();
+            this.maxBlockRecords = blockPages * Table.computeNumRecordsPerPage(Page.pageSize, leftSchema);
+            this.leftIterator = JoinOperator.this.getLeftSource().iterator();
+        }
+
+        /**
+         * Reads the next block of left records, and starts a new scan of the
+         * right input.
+         *
+         * @return false if there are no left records left
+         */
+        private boolean nextLeftBlock() throws DatabaseException {
+            if (!this.leftIterator.hasNext()) {
+                return false;
+            }
+            this.leftBlock.clear();
+            while (this.leftIterator.hasNext() && this.leftBlock.size() < this.maxBlockRecords) {
+                this.leftBlock.add(this.leftIterator.next());
+            }
+            this.rightPageIterator = JoinOperator.this.getPageIterator(this.getRightTableName());
+            this.rightPageIterator.next(); // skip the header page
+            this.rightPage = null;
+            return true;
+        }
+
+        /**
+         * Reads the records of the next page of the right input.
+         *
+         * @return false if the right input has no pages left in this scan
+         */
+        private boolean nextRightPage() throws DatabaseException {
+            if (this.rightPageIterator == null || !this.rightPageIterator.hasNext()) {
+                return false;
+            }
+            this.rightPage = new ArrayList<>();
+            JoinOperator.this.getBlockIterator(this.getRightTableName(),
+                                               new Page[] {this.rightPageIterator.next()})
+            .forEachRemaining(this.rightPage::add);
+            this.leftIndex = 0;
+            this.rightIndex = 0;
+            return true;
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        public boolean hasNext() {
+            if (this.nextRecord != null) {
+                return true;
+            }
+
+            try {
+                while (true) {
+                    if (this.rightPage != null) {
+                        for (; this.leftIndex < this.leftBlock.size(); this.leftIndex++, this.rightIndex = 0) {
+                            Record leftRecord = this.leftBlock.get(this.leftIndex);
+                            DataBox leftJoinValue = leftRecord.getValues().get(getLeftColumnIndex());
+                            while (this.rightIndex < this.rightPage.size()) {
+                                Record rightRecord = this.rightPage.get(this.rightIndex++);
+                                if (leftJoinValue.equals(rightRecord.getValues().get(getRightColumnIndex()))) {
+                                    List<DataBox> values = new ArrayList<>(leftRecord.getValues());
+                                    values.addAll(rightRecord.getValues());
+                                    this.nextRecord = new Record(values);
+                                    return true;
+                                }
+                            }
+                        }
+                    }
+                    if (!this.nextRightPage() && !this.nextLeftBlock()) {
+                        return false;
+                    }
+                }
+            } catch (DatabaseException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        public Record next() {
+            if (this.hasNext()) {
+                Record r = this.nextRecord;
+                this.nextRecord = null;
+                return r;
+            }
+            throw new NoSuchElementException();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
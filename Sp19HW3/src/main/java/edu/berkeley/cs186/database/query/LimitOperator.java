@@ -0,0 +1,116 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+/**
+ * Yields the first limit records of its source, and stops reading the source
+ * as soon as it has them. The source is not read at all if limit is 0.
+ */
+public class LimitOperator extends QueryOperator {
+    private int limit;
+
+    /**
+     * Creates a new LimitOperator that yields at most limit records of source.
+     *
+     * @param source the source of this operator
+     * @param limit the largest number of records to yield
+     * @throws QueryPlanException
+     */
+    public LimitOperator(QueryOperator source, int limit) throws QueryPlanException {
+        super(OperatorType.LIMIT, source);
+        if (limit < 0) {
+            throw new QueryPlanException("Cannot limit a query to a negative number of records.");
+        }
+        this.limit = limit;
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    public int getLimit() {
+        return this.limit;
+    }
+
+    protected Schema computeSchema() throws QueryPlanException {
+        return this.getSource().getOutputSchema();
+    }
+
+    public String str() {
+        return "type: " + this.getType() +
+               "\nlimit: " + this.limit;
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        if (this.limit == 0) {
+            return Collections.emptyIterator();
+        }
+        Iterator<Record> sourceIterator = this.getSource().iterator();
+        return new Iterator<Record>() {
+            private int numYielded = 0;
+
+            public boolean hasNext() {
+                return this.numYielded < LimitOperator.this.limit && sourceIterator.hasNext();
+            }
+
+            public Record next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                this.numYielded++;
+                return sourceIterator.next();
+            }
+        };
+    }
+
+    /**
+     * Passes on the batches of the source, cutting the selection vector of
+     * the last one short once limit rows have been selected.
+     */
+    @Override
+    public Iterator<RecordBatch> batchIterator() throws QueryPlanException, DatabaseException {
+        if (this.limit == 0) {
+            return Collections.emptyIterator();
+        }
+        Iterator<RecordBatch> sourceIterator = this.getSource().batchIterator();
+        return new Iterator<RecordBatch>() {
+            private int numYielded = 0;
+
+            public boolean hasNext() {
+                return this.numYielded < LimitOperator.this.limit && sourceIterator.hasNext();
+            }
+
+            public RecordBatch next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                RecordBatch batch = sourceIterator.next();
+                int remaining = LimitOperator.this.limit - this.numYielded;
+                if (batch.getNumSelected() > remaining) {
+                    batch.setNumSelected(remaining);
+                }
+                this.numYielded += batch.getNumSelected();
+                return batch;
+            }
+        };
+    }
+
+    /**
+     * Estimates the table statistics for the result of executing this query operator.
+     *
+     * @return estimated TableStats
+     */
+    public TableStats estimateStats() throws QueryPlanException {
+        return this.getSource().getStats().copyWithLimit(this.limit);
+    }
+
+    public int estimateIOCost() throws QueryPlanException {
+        return this.getSource().getIOCost();
+    }
+}
@@ -0,0 +1,107 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Merges k sorted iterators into one sorted iterator with a tree of losers.
+ *
+ * The k sources are the leaves of a complete binary tree, and each internal
+ * node holds the source that lost the match played at that node, with the
+ * overall winner kept at the root. Taking the winner replaces it with the next
+ * element of its source, which then only replays the matches on the path from
+ * its leaf to the root: log k comparisons per element, against its siblings'
+ * losers, where a binary heap needs up to 2 log k.
+ *
+ * Equal elements come out in the order of their sources, so that a merge of
+ * stable runs is stable.
+ */
+class LoserTree<T> implements Iterator<T> {
+    private Comparator<? super T> comparator;
+    private List<? extends Iterator<? extends T>> sources;
+    private int k;
+
+    // The next element of each source, or null once it runs out.
+    private T[] heads;
+
+    // tree[0] is the source of the winner, and tree[n] the source that lost
+    // at internal node n, where the children of node n are 2n and 2n + 1 and
+    // the leaf of source i is k + i.
+    private int[] tree;
+
+    @SuppressWarnings("unchecked")
+    LoserTree(List<? extends Iterator<? extends T>> sources, Comparator<? super T> comparator) {
+        this.comparator = comparator;
+        this.sources = sources;
+        this.k = sources.size();
+        this.heads = (T[]) new Object[this.k];
+        for (int i = 0; i < this.k; i++) {
+            this.advance(i);
+        }
+
+        // Play the first round bottom up, keeping the winner of each node.
+        this.tree = new int[Math.max(1, this.k)];
+        int[] winners = new int[2 * this.k];
+        for (int i = 0; i < this.k; i++) {
+            winners[this.k + i] = i;
+        }
+        for (int n = this.k - 1; n >= 1; n--) {
+            int a = winners[2 * n];
+            int b = winners[2 * n + 1];
+            if (this.beats(a, b)) {
+                winners[n] = a;
+                this.tree[n] = b;
+            } else {
+                winners[n] = b;
+                this.tree[n] = a;
+            }
+        }
+        this.tree[0] = this.k > 1 ? winners[1] : 0;
+    }
+
+    private void advance(int source) {
+        Iterator<? extends T> iterator = this.sources.get(source);
+        this.heads[source] = iterator.hasNext() ? iterator.next() : null;
+    }
+
+    /**
+     * Returns whether the head of source a comes before the head of source b.
+     * A source that has run out loses to every other source.
+     */
+    private boolean beats(int a, int b) {
+        if (this.heads[a] == null) {
+            return false;
+        }
+        if (this.heads[b] == null) {
+            return true;
+        }
+        int c = this.comparator.compare(this.heads[a], this.heads[b]);
+        return c < 0 || (c == 0 && a < b);
+    }
+
+    public boolean hasNext() {
+        return this.k > 0 && this.heads[this.tree[0]] != null;
+    }
+
+    public T next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int winner = this.tree[0];
+        T next = this.heads[winner];
+        this.advance(winner);
+
+        // Replay the matches on the path from the winner's leaf to the root.
+        for (int n = (this.k + winner) / 2; n >= 1; n /= 2) {
+            if (this.beats(this.tree[n], winner)) {
+                int loser = winner;
+                winner = this.tree[n];
+                this.tree[n] = loser;
+            }
+        }
+        this.tree[0] = winner;
+        return next;
+    }
+}
@@ -0,0 +1,72 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.io.Page;
+
+/**
+ * Hands out the data pages of a table to the workers of a parallel query in
+ * morsels of up to MORSEL_PAGES consecutive pages. Each worker takes a new
+ * morsel whenever it is done with its last one, so workers that are slowed
+ * down take fewer morsels, and every page is read by exactly one worker.
+ */
+class MorselQueue {
+    static final int MORSEL_PAGES = 16;
+
+    private String tableName;
+    private Iterator<Page> pageIterator;
+
+    MorselQueue(Database.Transaction transaction, String tableName) throws DatabaseException {
+        this.tableName = tableName;
+        this.pageIterator = transaction.getPageIterator(tableName);
+        if (this.pageIterator.hasNext()) {
+            this.pageIterator.next(); // skip the header page
+        }
+    }
+
+    String getTableName() {
+        return this.tableName;
+    }
+
+    /**
+     * Takes the next morsel.
+     *
+     * @return the pages of the morsel, or an empty list if there are none left
+     */
+    synchronized List<Page> next() {
+        List<Page> morsel = new ArrayList<>(MORSEL_PAGES);
+        while (morsel.size() < MORSEL_PAGES && this.pageIterator.hasNext()) {
+            morsel.add(this.pageIterator.next());
+        }
+        return morsel;
+    }
+
+    /**
+     * Returns an iterator over the pages of the morsels one worker takes,
+     * which takes the next morsel when the pages of the last one run out.
+     */
+    Iterator<Page> pages() {
+        return new Iterator<Page>() {
+            private Iterator<Page> morsel = MorselQueue.this.next().iterator();
+
+            public boolean hasNext() {
+                if (!this.morsel.hasNext()) {
+                    this.morsel = MorselQueue.this.next().iterator();
+                }
+                return this.morsel.hasNext();
+            }
+
+            public Page next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return this.morsel.next();
+            }
+        };
+    }
+}
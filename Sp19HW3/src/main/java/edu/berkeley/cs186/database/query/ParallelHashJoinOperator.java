@@ -0,0 +1,172 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.*;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.table.Record;
+
+/**
+ * A hash join whose probe side can run in parallel. The right input is loaded
+ * into an in-memory hash table, and the left input is streamed past it a
+ * batch at a time. Beneath a GatherOperator, the left input is divided into
+ * morsels among the workers, which all probe the same hash table.
+ *
+ * The whole right input is held in memory, so this join should only be
+ * planned when the right input fits in numBuffers - 2 pages; the right input
+ * of a larger join is better joined by a GraceHashOperator.
+ */
+public class ParallelHashJoinOperator extends JoinOperator {
+    private int numBuffers;
+
+    // The hash table over the right input, and the morsels of the run it
+    // was built for, so that the workers of one run share one hash table.
+    private JoinHashTable hashTable;
+    private MorselQueue hashTableMorsels;
+
+    public ParallelHashJoinOperator(QueryOperator leftSource,
+                                    QueryOperator rightSource,
+                                    String leftColumnName,
+                                    String rightColumnName,
+                                    Database.Transaction transaction) throws QueryPlanException, DatabaseException {
+        super(leftSource, rightSource, leftColumnName, rightColumnName, transaction, JoinType.PARALLELHASH);
+
+        this.numBuffers = transaction.getNumMemoryPages();
+
+        // for HW4
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    /**
+     * Reads each input once, if the right input fits in memory. Otherwise the
+     * hash table is paged in and out as it is probed, which costs about one
+     * IO per left page per page of the right input that does not fit.
+     */
+    public int estimateIOCost() {
+        int numLeftPages = getLeftSource().getStats().getNumPages();
+        int numRightPages = getRightSource().getStats().getNumPages();
+        int cost = numLeftPages + numRightPages;
+        if (numRightPages > numBuffers - 2) {
+            cost += numLeftPages * (numRightPages - (numBuffers - 2));
+        }
+        return cost;
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        return RecordBatch.toRecords(this.batchIterator());
+    }
+
+    @Override
+    public Iterator<RecordBatch> batchIterator() throws QueryPlanException, DatabaseException {
+        return this.probe(this.buildHashTable(), getLeftSource().batchIterator());
+    }
+
+    @Override
+    String getMorselTableName() throws QueryPlanException {
+        return getLeftSource().getMorselTableName();
+    }
+
+    /**
+     * Probes the hash table with the morsels of the left input this worker
+     * takes. The first worker of a run to get here builds the hash table, and
+     * the others wait for it.
+     */
+    @Override
+    Iterator<RecordBatch> morselIterator(MorselQueue morsels) throws QueryPlanException, DatabaseException {
+        JoinHashTable hashTable;
+        synchronized (this) {
+            if (this.hashTableMorsels != morsels) {
+                this.hashTable = this.buildHashTable();
+                this.hashTableMorsels = morsels;
+            }
+            hashTable = this.hashTable;
+        }
+        return this.probe(hashTable, getLeftSource().morselIterator(morsels));
+    }
+
+    private JoinHashTable buildHashTable() throws QueryPlanException, DatabaseException {
+        QueryOperator rightSource = getRightSource();
+        JoinHashTable hashTable = new JoinHashTable(
+            rightSource.getOutputSchema().getFieldTypes().get(getRightColumnIndex()).getTypeId());
+        Iterator<Record> records = rightSource.iterator();
+        while (records.hasNext()) {
+            Record record = records.next();
+            hashTable.put(record.getValues().get(getRightColumnIndex()), record);
+        }
+        return hashTable;
+    }
+
+    /**
+     * Returns an iterator over the joined rows of each left batch of
+     * probeBatches and the right records matching it in hashTable.
+     */
+    private Iterator<RecordBatch> probe(JoinHashTable hashTable, Iterator<RecordBatch> probeBatches) {
+        return new Iterator<RecordBatch>() {
+            // The left batch being probed, and the next row of it to probe, as
+            // a position in its selection vector.
+            private RecordBatch probeBatch;
+            private int nextProbe;
+
+            // The row last probed, and the right records matching it that
+            // are yet to be joined with it.
+            private int probeRow;
+            private List<Record> matches = Collections.emptyList();
+            private int nextMatch;
+
+            private RecordBatch nextBatch;
+
+            public boolean hasNext() {
+                if (this.nextBatch != null) {
+                    return true;
+                }
+                RecordBatch batch = new RecordBatch(ParallelHashJoinOperator.this.getOutputSchema());
+                while (!batch.isFull()) {
+                    if (this.nextMatch < this.matches.size()) {
+                        this.addJoinedRow(batch, this.matches.get(this.nextMatch++));
+                        continue;
+                    }
+                    if (this.probeBatch == null || this.nextProbe == this.probeBatch.getNumSelected()) {
+                        if (!probeBatches.hasNext()) {
+                            break;
+                        }
+                        this.probeBatch = probeBatches.next();
+                        this.nextProbe = 0;
+                        continue;
+                    }
+                    this.probeRow = this.probeBatch.getSelection()[this.nextProbe++];
+                    this.matches = hashTable.get(this.probeBatch.getColumn(getLeftColumnIndex()), this.probeRow);
+                    this.nextMatch = 0;
+                }
+                if (batch.getNumRows() == 0) {
+                    return false;
+                }
+                this.nextBatch = batch;
+                return true;
+            }
+
+            private void addJoinedRow(RecordBatch batch, Record match) {
+                int row = batch.getNumRows();
+                int numLeftColumns = this.probeBatch.getNumColumns();
+                for (int i = 0; i < numLeftColumns; i++) {
+                    batch.getColumn(i).copy(row, this.probeBatch.getColumn(i), this.probeRow);
+                }
+                List<DataBox> values = match.getValues();
+                for (int i = 0; i < values.size(); i++) {
+                    batch.getColumn(numLeftColumns + i).set(row, values.get(i));
+                }
+                batch.selectNewRow();
+            }
+
+            public RecordBatch next() {
+                if (this.hasNext()) {
+                    RecordBatch batch = this.nextBatch;
+                    this.nextBatch = null;
+                    return batch;
+                }
+                throw new NoSuchElementException();
+            }
+        };
+    }
+}
@@ -7,10 +7,7 @@ import java.util.NoSuchElementException;
 
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.databox.DataBox;
-import edu.berkeley.cs186.database.databox.FloatDataBox;
-import edu.berkeley.cs186.database.databox.IntDataBox;
 import edu.berkeley.cs186.database.databox.Type;
-import edu.berkeley.cs186.database.databox.TypeId;
 import edu.berkeley.cs186.database.table.MarkerRecord;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
@@ -19,47 +16,20 @@ import edu.berkeley.cs186.database.table.stats.TableStats;
 public class ProjectOperator extends QueryOperator {
     private List<String> columns;
     private List<Integer> indices;
-    private boolean hasCount;
-    private int averageColumnIndex;
-    private int sumColumnIndex;
-    private boolean hasAggregate = false;
-    private int countValue;
-    private double sumValue;
-    private double averageSumValue;
-    private int averageCountValue;
-    private String sumColumn;
-    private String averageColumn;
-    private boolean sumIsFloat;
 
     /**
-     * Creates a new ProjectOperator that reads tuples from source and filters out columns. Optionally
-     * computers an aggregate if it is specified.
+     * Creates a new ProjectOperator that reads tuples from source and filters out columns.
+     * Aggregates are computed by an AggregateOperator instead.
      *
      * @param source
      * @param columns
-     * @param count
-     * @param averageColumn
-     * @param sumColumn
      * @throws QueryPlanException
      */
     public ProjectOperator(QueryOperator source,
-                           List<String> columns,
-                           boolean count,
-                           String averageColumn,
-                           String sumColumn) throws QueryPlanException {
+                           List<String> columns) throws QueryPlanException {
         super(OperatorType.PROJECT);
         this.columns = columns;
         this.indices = new ArrayList<Integer>();
-        this.countValue = 0;
-        this.sumValue = 0;
-        this.averageCountValue = 0;
-        this.averageSumValue = 0;
-        this.averageColumnIndex = -1;
-        this.sumColumnIndex = -1;
-        this.sumColumn = sumColumn;
-        this.averageColumn = averageColumn;
-        this.hasCount = count;
-        this.hasAggregate = this.hasCount || averageColumn != null || sumColumn != null;
 
         // NOTE: Don't need to explicitly set the output schema because setting the source recomputes
         // the schema for the query optimization case.
@@ -75,96 +45,47 @@ public class ProjectOperator extends QueryOperator {
         List<String> sourceColumnNames = new ArrayList<String>(sourceSchema.getFieldNames());
         List<Type> sourceColumnTypes = new ArrayList<>(sourceSchema.getFieldTypes());
         List<Type> columnTypes = new ArrayList<>();
+        this.indices.clear();
         for (String columnName : this.columns) {
             columnName = this.checkSchemaForColumn(sourceSchema, columnName);
             int sourceColumnIndex = sourceColumnNames.indexOf(columnName);
             columnTypes.add(sourceColumnTypes.get(sourceColumnIndex));
             this.indices.add(sourceColumnIndex);
         }
-        if (this.sumColumn != null) {
-            this.sumColumn = this.checkSchemaForColumn(sourceSchema, this.sumColumn);
-            this.sumColumnIndex = sourceColumnNames.indexOf(this.sumColumn);
-            if (!(sourceColumnTypes.get(this.sumColumnIndex).getTypeId() == TypeId.INT) &&
-                    !(sourceColumnTypes.get(this.sumColumnIndex).getTypeId() == TypeId.FLOAT)) {
-                throw new QueryPlanException("Cannot compute sum over a non-integer column: " + this.sumColumn +
-                                             ".");
-            }
-        }
-        if (this.averageColumn != null) {
-            this.averageColumn = this.checkSchemaForColumn(sourceSchema, this.averageColumn);
-            this.averageColumnIndex = sourceColumnNames.indexOf(this.averageColumn);
-            if (!(sourceColumnTypes.get(this.averageColumnIndex).getTypeId() == TypeId.INT) &&
-                    !(sourceColumnTypes.get(this.sumColumnIndex).getTypeId() == TypeId.FLOAT)) {
-                throw new QueryPlanException("Cannot compute sum over a non-integer column: " + this.averageColumn +
-                                             ".");
-            }
-        }
-
-        // make sure we add the correct columns to the output schema if we have aggregates in the
-        // projection
-        if (this.hasAggregate) {
-            if (this.hasCount) {
-                this.columns.add("countAgg");
-                columnTypes.add(Type.intType());
-            }
-            if (this.sumColumn != null) {
-                this.columns.add("sumAgg");
-                if (sourceColumnTypes.get(this.sumColumnIndex).getTypeId() == TypeId.INT) {
-                    columnTypes.add(Type.intType());
-                    this.sumIsFloat = false;
-                } else {
-                    columnTypes.add(Type.floatType());
-                    this.sumIsFloat = true;
-                }
-            }
-            if (this.averageColumn != null) {
-                this.columns.add("averageAgg");
-                columnTypes.add(Type.floatType());
-            }
-        }
         return new Schema(this.columns, columnTypes);
     }
 
     public Iterator<Record> iterator() throws QueryPlanException, DatabaseException { return new ProjectIterator(); }
 
-    private void addToCount() {
-        this.countValue++;
-    }
-
-    private int getAndResetCount() {
-        int result = this.countValue;
-        this.countValue = 0;
-        return result;
-    }
-
-    private void addToSum(Record record) {
-        if (this.sumIsFloat) {
-            this.sumValue += record.getValues().get(this.sumColumnIndex).getFloat();
-        } else {
-            this.sumValue += record.getValues().get(this.sumColumnIndex).getInt();
-        }
+    /**
+     * Projects each batch of the source by picking out the vectors of the
+     * projected columns, without copying them.
+     */
+    @Override
+    public Iterator<RecordBatch> batchIterator() throws QueryPlanException, DatabaseException {
+        return this.projected(this.getSource().batchIterator());
     }
 
-    private double getAndResetSum() {
-        double result = this.sumValue;
-        this.sumValue = 0;
-        return result;
+    @Override
+    String getMorselTableName() throws QueryPlanException {
+        return this.getSource().getMorselTableName();
     }
 
-    private void addToAverage(Record record) {
-        this.averageCountValue++;
-        this.averageSumValue += record.getValues().get(this.averageColumnIndex).getInt();
+    @Override
+    Iterator<RecordBatch> morselIterator(MorselQueue morsels) throws QueryPlanException, DatabaseException {
+        return this.projected(this.getSource().morselIterator(morsels));
     }
 
-    private double getAndResetAverage() {
-        if (this.averageCountValue == 0) {
-            return 0f;
-        }
+    private Iterator<RecordBatch> projected(Iterator<RecordBatch> sourceIterator) {
+        return new Iterator<RecordBatch>() {
+            public boolean hasNext() {
+                return sourceIterator.hasNext();
+            }
 
-        double result =  this.averageSumValue / this.averageCountValue;
-        this.averageSumValue = 0;
-        this.averageCountValue = 0;
-        return result;
+            public RecordBatch next() {
+                return sourceIterator.next().project(ProjectOperator.this.indices);
+            }
+        };
     }
 
     public String str() {
@@ -191,16 +112,10 @@ public class ProjectOperator extends QueryOperator {
     private class ProjectIterator implements Iterator<Record> {
         private Iterator<Record> sourceIterator;
         private MarkerRecord markerRecord;
-        private Record nextRecord;
-        private boolean prevWasMarker;
-        private List<DataBox> baseValues;
 
         public ProjectIterator() throws QueryPlanException, DatabaseException {
             this.sourceIterator = ProjectOperator.this.getSource().iterator();
             this.markerRecord = MarkerRecord.getMarker();
-            this.nextRecord = null;
-            this.prevWasMarker = true;
-            this.baseValues = new ArrayList<DataBox>();
         }
 
         /**
@@ -220,91 +135,19 @@ public class ProjectOperator extends QueryOperator {
          */
         public Record next() {
             if (this.hasNext()) {
-                if (ProjectOperator.this.hasAggregate) {
-                    while (this.sourceIterator.hasNext()) {
-                        Record r = this.sourceIterator.next();
-                        List<DataBox> recordValues = r.getValues();
-
-                        // if the record is a MarkerRecord, that means we reached the end of a group... we reset
-                        // the aggregates and add the appropriate new record to the new Records
-                        if (r == this.markerRecord) {
-                            if (ProjectOperator.this.hasCount) {
-                                int count = ProjectOperator.this.getAndResetCount();
-                                this.baseValues.add(new IntDataBox(count));
-                            }
-                            if (ProjectOperator.this.sumColumnIndex != -1) {
-                                double sum = ProjectOperator.this.getAndResetSum();
-
-                                if (ProjectOperator.this.sumIsFloat) {
-                                    this.baseValues.add(new FloatDataBox((float) sum));
-                                } else {
-                                    this.baseValues.add(new IntDataBox((int) sum));
-                                }
-                            }
-                            if (ProjectOperator.this.averageColumnIndex != -1) {
-                                double average = (float) ProjectOperator.this.getAndResetAverage();
-                                this.baseValues.add(new FloatDataBox((float) average));
-                            }
-                            // record that we just saw a marker record
-                            this.prevWasMarker = true;
-                            return new Record(this.baseValues);
-                        } else {
-                            // if the previous record was a marker (or for the first record) we have to get the relevant
-                            // fields out of the record
-                            if (this.prevWasMarker) {
-                                this.baseValues = new ArrayList<DataBox>();
-                                for (int index : ProjectOperator.this.indices) {
-                                    this.baseValues.add(recordValues.get(index));
-                                }
-                                this.prevWasMarker = false;
-                            }
-                            if (ProjectOperator.this.hasCount) {
-                                ProjectOperator.this.addToCount();
-                            }
-                            if (ProjectOperator.this.sumColumnIndex != -1) {
-                                ProjectOperator.this.addToSum(r);
-                            }
-                            if (ProjectOperator.this.averageColumnIndex != -1) {
-                                ProjectOperator.this.addToAverage(r);
-                            }
-                        }
-                    }
-
-                    // at the very end, we need to make sure we add all the aggregated records to the result
-                    // either because there was no group by or to add the last group we saw
-                    if (ProjectOperator.this.hasCount) {
-                        int count = ProjectOperator.this.getAndResetCount();
-                        this.baseValues.add(new IntDataBox(count));
-                    }
-                    if (ProjectOperator.this.sumColumnIndex != -1) {
-                        double sum = ProjectOperator.this.getAndResetSum();
-
-                        if (ProjectOperator.this.sumIsFloat) {
-                            this.baseValues.add(new FloatDataBox((float) sum));
-                        } else {
-                            this.baseValues.add(new IntDataBox((int) sum));
-                        }
-                    }
-                    if (ProjectOperator.this.averageColumnIndex != -1) {
-                        double average = ProjectOperator.this.getAndResetAverage();
-                        this.baseValues.add(new FloatDataBox((float) average));
-                    }
-                    return new Record(this.baseValues);
+                Record r = this.sourceIterator.next();
+                List<DataBox> recordValues = r.getValues();
+                List<DataBox> newValues = new ArrayList<DataBox>();
+
+                // if there is a marker record (in the case we're projecting from a group by), we simply
+                // leave the marker records in
+                if (r == this.markerRecord) {
+                    return markerRecord;
                 } else {
-                    Record r = this.sourceIterator.next();
-                    List<DataBox> recordValues = r.getValues();
-                    List<DataBox> newValues = new ArrayList<DataBox>();
-
-                    // if there is a marker record (in the case we're projecting from a group by), we simply
-                    // leave the marker records in
-                    if (r == this.markerRecord) {
-                        return markerRecord;
-                    } else {
-                        for (int index : ProjectOperator.this.indices) {
-                            newValues.add(recordValues.get(index));
-                        }
-                        return new Record(newValues);
+                    for (int index : ProjectOperator.this.indices) {
+                        newValues.add(recordValues.get(index));
                     }
+                    return new Record(newValues);
                 }
             }
             throw new NoSuchElementException();
@@ -21,7 +21,11 @@ public abstract class QueryOperator {
         SELECT,
         GROUPBY,
         SEQSCAN,
-        INDEXSCAN
+        INDEXSCAN,
+        AGGREGATE,
+        GATHER,
+        TOPN,
+        LIMIT
     }
 
     private OperatorType type;
@@ -60,6 +64,10 @@ public abstract class QueryOperator {
         return this.type.equals(OperatorType.GROUPBY);
     }
 
+    public boolean isAggregate() {
+        return this.type.equals(OperatorType.AGGREGATE);
+    }
+
     public boolean isSequentialScan() {
         return this.type.equals(OperatorType.SEQSCAN);
     }
@@ -68,6 +76,10 @@ public abstract class QueryOperator {
         return this.type.equals(OperatorType.INDEXSCAN);
     }
 
+    public boolean isGather() {
+        return this.type.equals(OperatorType.GATHER);
+    }
+
     public QueryOperator getSource() throws QueryPlanException {
         return this.source;
     }
@@ -101,6 +113,44 @@ public abstract class QueryOperator {
 
     public abstract Iterator<Record> iterator() throws QueryPlanException, DatabaseException;
 
+    /**
+     * Returns an iterator over the output of this operator in RecordBatches.
+     * Operators that can work a batch at a time override this; by default the
+     * records of iterator() are collected into batches.
+     *
+     * @return an iterator over the batches of this operator's output
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public Iterator<RecordBatch> batchIterator() throws QueryPlanException, DatabaseException {
+        return RecordBatch.fromRecords(this.iterator(), this.getOutputSchema());
+    }
+
+    /**
+     * Returns the table whose pages the workers of a parallel run of this
+     * operator divide among themselves, or null if this operator cannot run
+     * in parallel. Operators that can run in parallel override this and
+     * morselIterator.
+     */
+    String getMorselTableName() throws QueryPlanException {
+        return null;
+    }
+
+    /**
+     * Returns an iterator over the part of this operator's output that one
+     * worker of a parallel run produces, from the morsels it takes of the
+     * pages of getMorselTableName(). Every worker of the run shares morsels,
+     * and calls this from its own thread.
+     *
+     * @param morsels the queue of morsels shared by the workers
+     * @return an iterator over the batches of this worker's output
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    Iterator<RecordBatch> morselIterator(MorselQueue morsels) throws QueryPlanException, DatabaseException {
+        throw new QueryPlanException("Operators of type " + this.type + " cannot run in parallel.");
+    }
+
     /**
      * Utility method that checks to see if a column is found in a schema using dot notation.
      *
@@ -151,6 +201,27 @@ public abstract class QueryOperator {
         return foundName;
     }
 
+    /**
+     * Returns whether the records of source come in order of the column at
+     * columnIndex: source is an index scan on that column, possibly beneath
+     * selects, which keep the order of their input.
+     */
+    protected static boolean isSortedOn(QueryOperator source, int columnIndex) throws QueryPlanException {
+        String columnName = source.getOutputSchema().getFieldNames().get(columnIndex);
+        while (source.isSelect()) {
+            source = source.getSource();
+        }
+        if (!source.isIndexScan()) {
+            return false;
+        }
+        String indexColumnName = ((IndexScanOperator) source).getColumnName();
+        return unqualified(columnName).equals(unqualified(indexColumnName));
+    }
+
+    private static String unqualified(String columnName) {
+        return columnName.substring(columnName.indexOf('.') + 1);
+    }
+
     public String str() {
         return "type: " + this.getType();
     }
@@ -23,6 +23,9 @@ public class QueryPlan {
         GREATER_THAN_EQUALS
     }
 
+    // Each parallel worker should get at least this many pages of morsels.
+    private static final int MIN_PAGES_PER_WORKER = 2 * MorselQueue.MORSEL_PAGES;
+
     private Database.Transaction transaction;
     private QueryOperator finalOperator;
     private String startTableName;
@@ -35,9 +38,10 @@ public class QueryPlan {
     private List<DataBox> selectDataBoxes;
     private List<String> projectColumns;
     private String groupByColumn;
-    private boolean hasCount;
-    private String averageColumnName;
-    private String sumColumnName;
+    private List<AggregateOperator.Aggregate> aggregates;
+    private String orderByColumn;
+    private boolean orderByAscending;
+    private int limit;
 
     /**
      * Creates a new QueryPlan within transaction. The base table is startTableName.
@@ -58,12 +62,13 @@ public class QueryPlan {
         this.selectOperators = new ArrayList<PredicateOperator>();
         this.selectDataBoxes = new ArrayList<DataBox>();
 
-        this.hasCount = false;
-        this.averageColumnName = null;
-        this.sumColumnName = null;
+        this.aggregates = new ArrayList<AggregateOperator.Aggregate>();
 
         this.groupByColumn = null;
 
+        this.orderByColumn = null;
+        this.limit = TopNOperator.NO_LIMIT;
+
         this.finalOperator = null;
     }
 
@@ -116,13 +121,44 @@ public class QueryPlan {
         this.groupByColumn = column;
     }
 
+    /**
+     * Order the result of this query on column. Can only order by one column.
+     *
+     * @param column the column to order by
+     * @param ascending whether to order from the smallest value up
+     * @throws QueryPlanException
+     */
+    public void orderBy(String column, boolean ascending) throws QueryPlanException {
+        if (this.orderByColumn != null) {
+            throw new QueryPlanException("Cannot order by more than one column.");
+        }
+        this.orderByColumn = column;
+        this.orderByAscending = ascending;
+    }
+
+    /**
+     * Limit the result of this query to its first n records. Can only specify one limit.
+     *
+     * @param n the largest number of records to return
+     * @throws QueryPlanException
+     */
+    public void limit(int n) throws QueryPlanException {
+        if (this.limit != TopNOperator.NO_LIMIT) {
+            throw new QueryPlanException("Cannot add more than one limit to this query.");
+        }
+        if (n < 0) {
+            throw new QueryPlanException("Cannot limit a query to a negative number of records.");
+        }
+        this.limit = n;
+    }
+
     /**
      * Add a count aggregate to this query. Only can specify count(*).
      *
      * @throws QueryPlanException
      */
     public void count() throws QueryPlanException {
-        this.hasCount = true;
+        this.aggregates.add(new AggregateOperator.Aggregate(AggregateOperator.AggregateFunction.COUNT, null));
     }
 
     /**
@@ -132,7 +168,7 @@ public class QueryPlan {
      * @throws QueryPlanException
      */
     public void average(String column) throws QueryPlanException {
-        this.averageColumnName = column;
+        this.aggregates.add(new AggregateOperator.Aggregate(AggregateOperator.AggregateFunction.AVERAGE, column));
     }
 
     /**
@@ -142,7 +178,38 @@ public class QueryPlan {
      * @throws QueryPlanException
      */
     public void sum(String column) throws QueryPlanException {
-        this.sumColumnName = column;
+        this.aggregates.add(new AggregateOperator.Aggregate(AggregateOperator.AggregateFunction.SUM, column));
+    }
+
+    /**
+     * Add a min on column.
+     *
+     * @param column the column to find the minimum of
+     * @throws QueryPlanException
+     */
+    public void min(String column) throws QueryPlanException {
+        this.aggregates.add(new AggregateOperator.Aggregate(AggregateOperator.AggregateFunction.MIN, column));
+    }
+
+    /**
+     * Add a max on column.
+     *
+     * @param column the column to find the maximum of
+     * @throws QueryPlanException
+     */
+    public void max(String column) throws QueryPlanException {
+        this.aggregates.add(new AggregateOperator.Aggregate(AggregateOperator.AggregateFunction.MAX, column));
+    }
+
+    /**
+     * Add a count of the distinct values of column.
+     *
+     * @param column the column to count the distinct values of
+     * @throws QueryPlanException
+     */
+    public void countDistinct(String column) throws QueryPlanException {
+        this.aggregates.add(new AggregateOperator.Aggregate(AggregateOperator.AggregateFunction.COUNT_DISTINCT,
+                            column));
     }
 
     /**
@@ -173,6 +240,13 @@ public class QueryPlan {
      * Generates a naive QueryPlan in which all joins are at the bottom of the DAG followed by all select
      * predicates, an optional group by operator, and a set of projects (in that order).
      *
+     * If the joins and selects can run in parallel, and the start table is large enough, they run on
+     * parallel workers beneath a GatherOperator.
+     *
+     * An ORDER BY and LIMIT go beneath the projects, so that only the records that are kept are
+     * projected, unless the query groups or aggregates, in which case they go on top. A LIMIT without
+     * an ORDER BY keeps the plan serial, so that the scans stop as soon as there are enough records.
+     *
      * @return an iterator of records that is the result of this query
      * @throws DatabaseException
      * @throws QueryPlanException
@@ -188,8 +262,11 @@ public class QueryPlan {
 
             this.addJoins();
             this.addSelects();
+            if (this.limit == TopNOperator.NO_LIMIT || this.orderByColumn != null) {
+                this.addParallelism();
+            }
             this.addGroupBy();
-            this.addProjects();
+            this.addOrderByAndLimit();
         }
 
         return this.finalOperator.execute();
@@ -326,6 +403,7 @@ public class QueryPlan {
         List<QueryOperator> allJoins = new ArrayList<QueryOperator>();
         allJoins.add(new SNLJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
         allJoins.add(new BNLJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
+        allJoins.add(new GraceHashOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
 
         for (QueryOperator join : allJoins) {
             int joinCost = join.estimateIOCost();
@@ -417,7 +495,8 @@ public class QueryPlan {
         this.selectDataBoxes.remove(selectIndex);
 
         this.addSelects();
-        this.addProjects();
+        this.addGroupBy();
+        this.addOrderByAndLimit();
     }
 
     private void addJoins() throws QueryPlanException, DatabaseException {
@@ -426,9 +505,18 @@ public class QueryPlan {
         for (String joinTable : this.joinTableNames) {
             SequentialScanOperator scanOperator = new SequentialScanOperator(this.transaction, joinTable);
 
-            SNLJOperator joinOperator = new SNLJOperator(finalOperator, scanOperator,
-                    this.joinLeftColumnNames.get(index), this.joinRightColumnNames.get(index),
-                    this.transaction); //changed from new JoinOperator
+            // Joined tables that fit in memory are hash joined, which yields the same records in the
+            // same order as a nested loop join, and which lets the join run in parallel.
+            JoinOperator joinOperator;
+            if (scanOperator.getStats().getNumPages() <= this.transaction.getNumMemoryPages() - 2) {
+                joinOperator = new ParallelHashJoinOperator(finalOperator, scanOperator,
+                        this.joinLeftColumnNames.get(index), this.joinRightColumnNames.get(index),
+                        this.transaction);
+            } else {
+                joinOperator = new SNLJOperator(finalOperator, scanOperator,
+                        this.joinLeftColumnNames.get(index), this.joinRightColumnNames.get(index),
+                        this.transaction); //changed from new JoinOperator
+            }
 
             this.finalOperator = joinOperator;
             index++;
@@ -450,13 +538,36 @@ public class QueryPlan {
         }
     }
 
+    /**
+     * Runs the plan so far on parallel workers beneath a GatherOperator, if it can run in parallel and
+     * the table its workers divide between them is large enough to keep more than one worker busy. The
+     * number of workers grows with the number of pages of that table, up to the parallelism of the
+     * database.
+     */
+    private void addParallelism() throws QueryPlanException, DatabaseException {
+        String tableName = this.finalOperator.getMorselTableName();
+        if (tableName == null) {
+            return;
+        }
+        int numPages = this.transaction.getStats(tableName).getNumPages();
+        int numWorkers = Math.min(this.transaction.getParallelism(), numPages / MIN_PAGES_PER_WORKER);
+        if (numWorkers > 1) {
+            this.finalOperator = new GatherOperator(this.finalOperator, this.transaction, numWorkers);
+        }
+    }
+
     private void addGroupBy() throws QueryPlanException, DatabaseException {
-        if (this.groupByColumn != null) {
-            if (this.projectColumns.size() > 2 || (this.projectColumns.size() == 1 &&
+        if (this.groupByColumn != null || !this.aggregates.isEmpty()) {
+            if (this.projectColumns.size() > 1 || (this.projectColumns.size() == 1 &&
                                                    !this.projectColumns.get(0).equals(this.groupByColumn))) {
                 throw new QueryPlanException("Can only project columns specified in the GROUP BY clause.");
             }
+        }
 
+        if (!this.aggregates.isEmpty()) {
+            this.finalOperator = new AggregateOperator(this.finalOperator, this.transaction,
+                    this.groupByColumn, this.aggregates);
+        } else if (this.groupByColumn != null) {
             GroupByOperator groupByOperator = new GroupByOperator(this.finalOperator, this.transaction,
                     this.groupByColumn);
 
@@ -464,11 +575,47 @@ public class QueryPlan {
         }
     }
 
+    /**
+     * Adds the ORDER BY and LIMIT of the query along with the projects, beneath them if the query
+     * neither groups nor aggregates.
+     */
+    private void addOrderByAndLimit() throws QueryPlanException, DatabaseException {
+        if (this.orderByColumn == null && this.limit == TopNOperator.NO_LIMIT) {
+            this.addProjects();
+            return;
+        }
+        if (this.finalOperator.isGroupBy()) {
+            throw new QueryPlanException("Cannot order or limit the groups of a GROUP BY without aggregates.");
+        }
+
+        boolean onTop = this.finalOperator.isAggregate();
+        if (onTop) {
+            this.addProjects();
+        }
+        if (this.orderByColumn != null) {
+            this.finalOperator = new TopNOperator(this.finalOperator, this.transaction, this.orderByColumn,
+                                                  this.orderByAscending, this.limit);
+        } else {
+            this.finalOperator = new LimitOperator(this.finalOperator, this.limit);
+        }
+        if (!onTop) {
+            this.addProjects();
+        }
+    }
+
     private void addProjects() throws QueryPlanException, DatabaseException {
-        if (!this.projectColumns.isEmpty() || this.hasCount || this.sumColumnName != null
-                || this.averageColumnName != null) {
-            ProjectOperator projectOperator = new ProjectOperator(this.finalOperator, this.projectColumns,
-                    this.hasCount, this.averageColumnName, this.sumColumnName);
+        List<String> columns = this.projectColumns;
+        if (this.finalOperator.isAggregate()) {
+            if (this.groupByColumn == null || !this.projectColumns.isEmpty()) {
+                // The aggregate operator yields exactly the projected columns.
+                return;
+            }
+            // Drop the group by column, which was not projected.
+            List<String> names = this.finalOperator.getOutputSchema().getFieldNames();
+            columns = new ArrayList<String>(names.subList(1, names.size()));
+        }
+        if (!columns.isEmpty()) {
+            ProjectOperator projectOperator = new ProjectOperator(this.finalOperator, columns);
 
             this.finalOperator = projectOperator;
         }
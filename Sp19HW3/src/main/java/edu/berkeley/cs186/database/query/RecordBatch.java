@@ -0,0 +1,203 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.MarkerRecord;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+
+/**
+ * A batch of up to CAPACITY rows, stored a column at a time in ColumnVectors,
+ * that operators pass to each other instead of one Record at a time.
+ *
+ * The rows of the batch are rows 0 to getNumRows() - 1 of its vectors, but
+ * only the rows listed in its selection vector are part of the batch. A
+ * filter removes rows by shrinking the selection vector, without touching
+ * the vectors, and a projection picks vectors without copying them.
+ */
+public class RecordBatch {
+    public static final int CAPACITY = 1024;
+
+    private ColumnVector[] columns;
+    private int numRows;
+
+    // The selected rows are selection[0] to selection[numSelected - 1], in
+    // increasing order.
+    private int[] selection;
+    private int numSelected;
+
+    /**
+     * Creates an empty batch with a vector for each column of schema.
+     */
+    public RecordBatch(Schema schema) {
+        List<Type> types = schema.getFieldTypes();
+        this.columns = new ColumnVector[types.size()];
+        for (int i = 0; i < this.columns.length; i++) {
+            this.columns[i] = new ColumnVector(types.get(i), CAPACITY);
+        }
+        this.selection = new int[CAPACITY];
+    }
+
+    private RecordBatch(ColumnVector[] columns, int numRows, int[] selection, int numSelected) {
+        this.columns = columns;
+        this.numRows = numRows;
+        this.selection = selection;
+        this.numSelected = numSelected;
+    }
+
+    public ColumnVector getColumn(int i) {
+        return this.columns[i];
+    }
+
+    public int getNumColumns() {
+        return this.columns.length;
+    }
+
+    public int getNumRows() {
+        return this.numRows;
+    }
+
+    public boolean isFull() {
+        return this.numRows == CAPACITY;
+    }
+
+    public int[] getSelection() {
+        return this.selection;
+    }
+
+    public int getNumSelected() {
+        return this.numSelected;
+    }
+
+    /**
+     * Keeps only the first numSelected rows of the selection vector, after a
+     * filter has moved the rows it keeps to the front of it.
+     */
+    public void setNumSelected(int numSelected) {
+        this.numSelected = numSelected;
+    }
+
+    /**
+     * Empties the batch so that it can be filled again.
+     */
+    public void clear() {
+        this.numRows = 0;
+        this.numSelected = 0;
+    }
+
+    /**
+     * Adds a row with the given values, and selects it.
+     */
+    public void addRow(List<DataBox> values) {
+        for (int i = 0; i < this.columns.length; i++) {
+            this.columns[i].set(this.numRows, values.get(i));
+        }
+        this.selectNewRow();
+    }
+
+    /**
+     * Adds a copy of row of source, a batch of the same schema, and selects
+     * it.
+     */
+    public void copyRow(RecordBatch source, int row) {
+        for (int i = 0; i < this.columns.length; i++) {
+            this.columns[i].copy(this.numRows, source.columns[i], row);
+        }
+        this.selectNewRow();
+    }
+
+    /**
+     * Selects the next row, whose values have been set in the vectors
+     * directly.
+     */
+    public void selectNewRow() {
+        this.selection[this.numSelected++] = this.numRows++;
+    }
+
+    /**
+     * Returns row of the batch as a Record.
+     */
+    public Record getRecord(int row) {
+        List<DataBox> values = new ArrayList<>(this.columns.length);
+        for (ColumnVector column : this.columns) {
+            values.add(column.get(row));
+        }
+        return new Record(values);
+    }
+
+    /**
+     * Returns a batch of the same rows made of the given columns of this
+     * batch, which shares their vectors and the selection vector.
+     */
+    public RecordBatch project(List<Integer> indices) {
+        ColumnVector[] projected = new ColumnVector[indices.size()];
+        for (int i = 0; i < projected.length; i++) {
+            projected[i] = this.columns[indices.get(i)];
+        }
+        return new RecordBatch(projected, this.numRows, this.selection, this.numSelected);
+    }
+
+    /**
+     * Returns an iterator over the batches holding records, for operators
+     * that only yield records one at a time.
+     *
+     * @param records the records, which must not include MarkerRecords
+     * @param schema the schema of the records
+     */
+    public static Iterator<RecordBatch> fromRecords(Iterator<Record> records, Schema schema) {
+        return new Iterator<RecordBatch>() {
+            public boolean hasNext() {
+                return records.hasNext();
+            }
+
+            public RecordBatch next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                RecordBatch batch = new RecordBatch(schema);
+                while (!batch.isFull() && records.hasNext()) {
+                    Record record = records.next();
+                    if (record == MarkerRecord.getMarker()) {
+                        throw new IllegalStateException("A RecordBatch cannot hold a MarkerRecord.");
+                    }
+                    batch.addRow(record.getValues());
+                }
+                return batch;
+            }
+        };
+    }
+
+    /**
+     * Returns an iterator over the selected rows of batches, as records, for
+     * operators that only take records one at a time.
+     */
+    public static Iterator<Record> toRecords(Iterator<RecordBatch> batches) {
+        return new Iterator<Record>() {
+            private RecordBatch batch;
+            private int next;
+
+            public boolean hasNext() {
+                while (this.batch == null || this.next == this.batch.numSelected) {
+                    if (!batches.hasNext()) {
+                        return false;
+                    }
+                    this.batch = batches.next();
+                    this.next = 0;
+                }
+                return true;
+            }
+
+            public Record next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return this.batch.getRecord(this.batch.selection[this.next++]);
+            }
+        };
+    }
+}
@@ -53,18 +53,21 @@ public class SNLJOperator extends JoinOperator {
     /**
      * An implementation of Iterator that provides an iterator interface for this operator.
      * Note that the left table is the "outer" loop and the right table is the "inner" loop.
+     * The outer loop reads the left input only once, so it reads it straight from its input
+     * operator; only the right input is made into a table.
      */
     private class SNLJIterator extends JoinIterator {
-        private RecordIterator leftIterator;
+        private Iterator<Record> leftIterator;
         private RecordIterator rightIterator;
         private Record leftRecord;
         private Record rightRecord;
         private Record nextRecord;
 
         public SNLJIterator() throws QueryPlanException, DatabaseException {
-            super();
+            super(false);
+            this.materializeRight();
             this.rightIterator = SNLJOperator.this.getRecordIterator(this.getRightTableName());
-            this.leftIterator = SNLJOperator.this.getRecordIterator(this.getLeftTableName());
+            this.leftIterator = SNLJOperator.this.getLeftSource().iterator();
 
             this.nextRecord = null;
 
@@ -5,6 +5,7 @@ import java.util.NoSuchElementException;
 
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.TypeId;
 import edu.berkeley.cs186.database.table.MarkerRecord;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
@@ -70,6 +71,158 @@ public class SelectOperator extends QueryOperator {
 
     public Iterator<Record> iterator() throws QueryPlanException, DatabaseException { return new SelectIterator(); }
 
+    /**
+     * Filters each batch of the source by removing the rows that do not
+     * satisfy the predicate from its selection vector.
+     */
+    @Override
+    public Iterator<RecordBatch> batchIterator() throws QueryPlanException, DatabaseException {
+        return this.filtered(this.getSource().batchIterator());
+    }
+
+    @Override
+    String getMorselTableName() throws QueryPlanException {
+        return this.getSource().getMorselTableName();
+    }
+
+    @Override
+    Iterator<RecordBatch> morselIterator(MorselQueue morsels) throws QueryPlanException, DatabaseException {
+        return this.filtered(this.getSource().morselIterator(morsels));
+    }
+
+    private Iterator<RecordBatch> filtered(Iterator<RecordBatch> sourceIterator) {
+        return new Iterator<RecordBatch>() {
+            private RecordBatch nextBatch;
+
+            public boolean hasNext() {
+                while (this.nextBatch == null && sourceIterator.hasNext()) {
+                    RecordBatch batch = sourceIterator.next();
+                    SelectOperator.this.filter(batch);
+                    if (batch.getNumSelected() > 0) {
+                        this.nextBatch = batch;
+                    }
+                }
+                return this.nextBatch != null;
+            }
+
+            public RecordBatch next() {
+                if (this.hasNext()) {
+                    RecordBatch batch = this.nextBatch;
+                    this.nextBatch = null;
+                    return batch;
+                }
+                throw new NoSuchElementException();
+            }
+        };
+    }
+
+    /**
+     * Returns whether a value that compares to this.value as c does (negative
+     * if less, zero if equal, positive if greater) satisfies the predicate.
+     */
+    private boolean satisfies(int c) {
+        switch (this.operator) {
+        case EQUALS:
+            return c == 0;
+        case NOT_EQUALS:
+            return c != 0;
+        case LESS_THAN:
+            return c < 0;
+        case LESS_THAN_EQUALS:
+            return c <= 0;
+        case GREATER_THAN:
+            return c > 0;
+        case GREATER_THAN_EQUALS:
+            return c >= 0;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Returns whether value satisfies the predicate. EQUALS and NOT_EQUALS
+     * compare with equals, and the other operators with compareTo.
+     */
+    private boolean satisfies(DataBox value) {
+        boolean equality = this.operator == QueryPlan.PredicateOperator.EQUALS ||
+                           this.operator == QueryPlan.PredicateOperator.NOT_EQUALS;
+        return this.satisfies(equality ? (value.equals(this.value) ? 0 : 1) : value.compareTo(this.value));
+    }
+
+    /**
+     * Removes the selected rows of batch that do not satisfy the predicate
+     * from its selection vector. INT, FLOAT and BOOL columns are compared in a
+     * loop over their primitive vector.
+     */
+    private void filter(RecordBatch batch) {
+        ColumnVector column = batch.getColumn(this.columnIndex);
+        int[] selection = batch.getSelection();
+        int numSelected = batch.getNumSelected();
+        int numKept = 0;
+
+        // Whether the predicate keeps values less than, equal to and greater
+        // than this.value.
+        boolean keepLess = this.satisfies(-1);
+        boolean keepEqual = this.satisfies(0);
+        boolean keepGreater = this.satisfies(1);
+        boolean equality = this.operator == QueryPlan.PredicateOperator.EQUALS ||
+                           this.operator == QueryPlan.PredicateOperator.NOT_EQUALS;
+
+        // STRING values, and values of a different type than this.value, are
+        // compared as DataBoxes in the default case, as the record iterator does.
+        TypeId typeId = column.getTypeId() == this.value.type().getTypeId() ? column.getTypeId() : TypeId.STRING;
+        switch (typeId) {
+        case INT: {
+            int[] ints = column.ints;
+            int v = this.value.getInt();
+            for (int i = 0; i < numSelected; i++) {
+                int row = selection[i];
+                int x = ints[row];
+                if (x < v ? keepLess : (x == v ? keepEqual : keepGreater)) {
+                    selection[numKept++] = row;
+                }
+            }
+            break;
+        }
+        case FLOAT: {
+            float[] floats = column.floats;
+            float v = this.value.getFloat();
+            for (int i = 0; i < numSelected; i++) {
+                int row = selection[i];
+                float x = floats[row];
+                // FloatDataBoxes are equal by ==, but ordered by Float.compare.
+                int c = equality ? (x == v ? 0 : 1) : Float.compare(x, v);
+                if (c < 0 ? keepLess : (c == 0 ? keepEqual : keepGreater)) {
+                    selection[numKept++] = row;
+                }
+            }
+            break;
+        }
+        case BOOL: {
+            boolean[] bools = column.bools;
+            boolean v = this.value.getBool();
+            for (int i = 0; i < numSelected; i++) {
+                int row = selection[i];
+                int c = Boolean.compare(bools[row], v);
+                if (c < 0 ? keepLess : (c == 0 ? keepEqual : keepGreater)) {
+                    selection[numKept++] = row;
+                }
+            }
+            break;
+        }
+        default: {
+            for (int i = 0; i < numSelected; i++) {
+                int row = selection[i];
+                if (this.satisfies(column.get(row))) {
+                    selection[numKept++] = row;
+                }
+            }
+            break;
+        }
+        }
+        batch.setNumSelected(numKept);
+    }
+
     /**
      * An implementation of Iterator that provides an iterator interface for this operator.
      */
@@ -99,51 +252,9 @@ public class SelectOperator extends QueryOperator {
                     this.nextRecord = r;
                     return true;
                 }
-                switch (SelectOperator.this.operator) {
-                case EQUALS:
-                    if (r.getValues().get(SelectOperator.this.columnIndex).equals(value)) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                case NOT_EQUALS:
-                    if (!r.getValues().get(SelectOperator.this.columnIndex).equals(value)) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                case LESS_THAN:
-                    if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == -1) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                case LESS_THAN_EQUALS:
-                    if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == -1) {
-                        this.nextRecord = r;
-                        return true;
-                    } else if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == 0) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                case GREATER_THAN:
-                    if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == 1) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                case GREATER_THAN_EQUALS:
-                    if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == 1) {
-                        this.nextRecord = r;
-                        return true;
-                    } else if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == 0) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                default:
-                    break;
+                if (SelectOperator.this.satisfies(r.getValues().get(SelectOperator.this.columnIndex))) {
+                    this.nextRecord = r;
+                    return true;
                 }
             }
             return false;
@@ -42,6 +42,28 @@ public class SequentialScanOperator extends QueryOperator {
         return this.transaction.getRecordIterator(tableName);
     }
 
+    /**
+     * Scans the table a page at a time, decoding its records straight into
+     * batches.
+     */
+    @Override
+    public Iterator<RecordBatch> batchIterator() throws DatabaseException {
+        return new TableBatchIterator(this.transaction, this.tableName);
+    }
+
+    @Override
+    String getMorselTableName() {
+        return this.tableName;
+    }
+
+    /**
+     * Scans the pages of the morsels this worker takes.
+     */
+    @Override
+    Iterator<RecordBatch> morselIterator(MorselQueue morsels) throws DatabaseException {
+        return new TableBatchIterator(this.transaction, this.tableName, morsels.pages());
+    }
+
     public Schema computeSchema() throws QueryPlanException {
         try {
             return this.transaction.getFullyQualifiedSchema(this.tableName);
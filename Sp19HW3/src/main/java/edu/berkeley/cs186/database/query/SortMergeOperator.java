@@ -50,7 +50,7 @@ public class SortMergeOperator extends JoinOperator {
 
         private String leftTableName;
         private String rightTableName;
-        private RecordIterator leftIterator;
+        private Iterator<Record> leftIterator;
         private RecordIterator rightIterator;
         private Record leftRecord;
         private Record nextRecord;
@@ -59,14 +59,26 @@ public class SortMergeOperator extends JoinOperator {
         private LR_RecordComparator comparator;
 
         public SortMergeIterator() throws QueryPlanException, DatabaseException {
-            super();
+            super(false);
             // throw new UnsupportedOperationException("TODO(hw3): implement");
 
-            
-            this.leftTableName = new SortOperator(getTransaction(), getLeftTableName(), new LeftRecordComparator()).sort();
-            this.rightTableName = new SortOperator(getTransaction(), getRightTableName(), new RightRecordComparator()).sort();
-            
-            this.leftIterator = getRecordIterator(this.leftTableName);
+            // The merge only ever moves forward through the left input, so an
+            // already sorted left input is read straight from its input
+            // operator. The right input is backed up to the start of each run
+            // of equal join values, which takes a table.
+            if (isSortedOn(getLeftSource(), getLeftColumnIndex())) {
+                this.leftIterator = getLeftSource().iterator();
+            } else {
+                this.materializeLeft();
+                this.leftTableName = new SortOperator(getTransaction(), getLeftTableName(), new LeftRecordComparator()).sort();
+                this.leftIterator = getRecordIterator(this.leftTableName);
+            }
+            this.materializeRight();
+            if (isSortedOn(getRightSource(), getRightColumnIndex())) {
+                this.rightTableName = getRightTableName();
+            } else {
+                this.rightTableName = new SortOperator(getTransaction(), getRightTableName(), new RightRecordComparator()).sort();
+            }
             this.rightIterator = getRecordIterator(this.rightTableName);
             
             this.leftRecord = this.leftIterator.hasNext() ? this.leftIterator.next() : null;
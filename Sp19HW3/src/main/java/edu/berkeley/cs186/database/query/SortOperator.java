@@ -7,15 +7,31 @@ import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.table.Table;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+/**
+ * An external merge sort of a table.
+ *
+ * The initial sorted runs are generated by replacement selection, on as many
+ * workers of the worker pool of the database as the size of the table and the
+ * number of buffers allow, each of which takes the pages of the table in
+ * morsels. The runs are then merged numBuffers - 1 at a time with a tree of
+ * losers until one run is left.
+ *
+ * Runs are written a page at a time, with Transaction.appendRecords, instead
+ * of a record at a time.
+ */
 public class SortOperator {
     private Database.Transaction transaction;
     private String tableName;
     private Comparator<Record> comparator;
     private Schema operatorSchema;
     private int numBuffers;
+    private int numRecordsPerPage;
     private String sortedTableName = null;
 
     public SortOperator(Database.Transaction transaction, String tableName,
@@ -25,6 +41,7 @@ public class SortOperator {
         this.comparator = comparator;
         this.operatorSchema = this.computeSchema();
         this.numBuffers = this.transaction.getNumMemoryPages();
+        this.numRecordsPerPage = Table.computeNumRecordsPerPage(Page.pageSize, this.operatorSchema);
     }
 
     public Schema computeSchema() throws QueryPlanException {
@@ -35,8 +52,14 @@ public class SortOperator {
         }
     }
 
+    /**
+     * A sorted run. Records added to a run are buffered until there is a page
+     * of them, which is then appended to the run's table all at once. A run is
+     * only ever used by one thread at a time.
+     */
     public class Run {
         String tempTableName;
+        private List<Record> buffer = new ArrayList<>();
 
         public Run() throws DatabaseException {
             this.tempTableName = SortOperator.this.transaction.createTempTable(
@@ -44,7 +67,10 @@ public class SortOperator {
         }
 
         public void addRecord(List<DataBox> values) throws DatabaseException {
-            SortOperator.this.transaction.addRecord(this.tempTableName, values);
+            this.buffer.add(new Record(values));
+            if (this.buffer.size() == SortOperator.this.numRecordsPerPage) {
+                this.flush();
+            }
         }
 
         public void addRecords(List<Record> records) throws DatabaseException {
@@ -53,7 +79,18 @@ public class SortOperator {
             }
         }
 
+        /**
+         * Writes out the records added to this run that are still buffered.
+         */
+        public void flush() throws DatabaseException {
+            if (!this.buffer.isEmpty()) {
+                SortOperator.this.transaction.appendRecords(this.tempTableName, this.buffer);
+                this.buffer = new ArrayList<>();
+            }
+        }
+
         public Iterator<Record> iterator() throws DatabaseException {
+            this.flush();
             return SortOperator.this.transaction.getRecordIterator(this.tempTableName);
         }
 
@@ -78,33 +115,29 @@ public class SortOperator {
 
         records.sort(comparator);
         r.addRecords(records);
+        r.flush();
 
         return r;
     }
 
     /**
      * Given a list of sorted runs, returns a new run that is the result
-     * of merging the input runs. You should use a Priority Queue (java.util.PriorityQueue)
-     * to determine which record should be should be added to the output run next.
-     * It is recommended that your Priority Queue hold Pair<Record, Integer> objects
-     * where a Pair (r, i) is the Record r with the smallest value you are
-     * sorting on currently unmerged from run i.
+     * of merging the input runs. The runs are merged with a LoserTree, which
+     * streams through each input run a page at a time, so only one page of
+     * each run is in memory at once.
      */
     public Run mergeSortedRuns(List<Run> runs) throws DatabaseException {
-        // throw new UnsupportedOperationException("TODO(hw3): implement");
-        PriorityQueue<Pair<Record, Integer>> queue = new PriorityQueue<>(new RecordPairComparator());
-
-        for (int i = 0; i < runs.size(); i++) {
-            Iterator<Record> iter = runs.get(i).iterator();
-            while (iter.hasNext()) {
-              queue.add(new Pair<>(iter.next(), i));
-            }
-          }
-          Run mergedRuns = this.createRun();
-          while (!queue.isEmpty()) {
-            mergedRuns.addRecord(queue.poll().getFirst().getValues());
-          }
-          return mergedRuns;
+        List<Iterator<Record>> iterators = new ArrayList<>();
+        for (Run run : runs) {
+            iterators.add(run.iterator());
+        }
+        Iterator<Record> merged = new LoserTree<>(iterators, this.comparator);
+        Run mergedRun = this.createRun();
+        while (merged.hasNext()) {
+            mergedRun.addRecord(merged.next().getValues());
+        }
+        mergedRun.flush();
+        return mergedRun;
     }
 
     /**
@@ -113,7 +146,6 @@ public class SortOperator {
      * of the input runs at a time.
      */
     public List<Run> mergePass(List<Run> runs) throws DatabaseException {
-        // throw new UnsupportedOperationException("TODO(hw3): implement");
         List<Run> merged = new ArrayList<>();
         for (int i = 0; i < runs.size(); i += (numBuffers - 1)) {
             merged.add(mergeSortedRuns(runs.subList(i, Math.min(runs.size(), i + numBuffers - 1))));
@@ -127,26 +159,89 @@ public class SortOperator {
      * Returns the name of the table that backs the final run.
      */
     public String sort() throws DatabaseException {
-        //throw new UnsupportedOperationException("TODO(hw3): implement");  
-        List<Run> runs = new ArrayList<>();
-        Iterator<Page> pageIter = this.transaction.getPageIterator(this.tableName);
-        pageIter.next();
-        
-        while (pageIter.hasNext()) {
-            Iterator<Record> backIter = this.transaction.getBlockIterator(this.tableName, pageIter, this.numBuffers);
-            Run run = this.createRun();
-            while (backIter.hasNext()) {
-                run.addRecord(backIter.next().getValues());
-            }
-            runs.add(sortRun(run));
+        List<Run> runs = this.generateRuns();
+        if (runs.isEmpty()) {
+            return this.createRun().tableName();
         }
-
-        while (mergePass(runs).size() > 1) {
+        while (runs.size() > 1) {
             runs = mergePass(runs);
         }
-
         return runs.get(0).tableName();
-        
+    }
+
+    /**
+     * Generates the initial sorted runs of the table. The table is split
+     * between up to transaction.getParallelism() workers in morsels, and the
+     * buffers are split between them evenly, but each worker gets at least two
+     * buffers and MorselQueue.MORSEL_PAGES pages of the table.
+     */
+    private List<Run> generateRuns() throws DatabaseException {
+        int numDataPages = this.transaction.getNumDataPages(this.tableName);
+        int numWorkers = Math.min(this.transaction.getParallelism(),
+                                  Math.min(this.numBuffers / 2, numDataPages / MorselQueue.MORSEL_PAGES));
+        MorselQueue morsels = new MorselQueue(this.transaction, this.tableName);
+        if (numWorkers <= 1) {
+            return this.replacementSelection(morsels, this.numBuffers);
+        }
+
+        ForkJoinPool pool = this.transaction.getWorkerPool();
+        List<Run> runs = Collections.synchronizedList(new ArrayList<>());
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < numWorkers; i++) {
+            tasks.add(pool.submit(() -> {
+                runs.addAll(this.replacementSelection(morsels, this.numBuffers / numWorkers));
+                return null;
+            }));
+        }
+        GatherOperator.awaitAll(tasks);
+        return new ArrayList<>(runs);
+    }
+
+    /**
+     * Sorts the records of the morsels taken from morsels into runs by
+     * replacement selection, with a heap of numBuffers - 1 pages of records
+     * and a page to write the runs through. The heap holds the records that
+     * are yet to be written out, each tagged with the run it belongs to: the
+     * current run, if it comes after the last record written out, or the next
+     * one if it does not. On random input, the runs come out about twice the
+     * size of the heap.
+     */
+    private List<Run> replacementSelection(MorselQueue morsels, int numBuffers) throws DatabaseException {
+        Iterator<Record> records = RecordBatch.toRecords(
+                                       new TableBatchIterator(this.transaction, this.tableName, morsels.pages()));
+        int heapCapacity = Math.max(1, numBuffers - 1) * this.numRecordsPerPage;
+        PriorityQueue<Pair<Integer, Record>> heap = new PriorityQueue<>(heapCapacity,
+                Comparator.comparing((Pair<Integer, Record> p) -> p.getFirst())
+                .thenComparing(Pair::getSecond, this.comparator));
+        while (heap.size() < heapCapacity && records.hasNext()) {
+            heap.add(new Pair<>(0, records.next()));
+        }
+
+        List<Run> runs = new ArrayList<>();
+        Run run = null;
+        int runNum = -1;
+        while (!heap.isEmpty()) {
+            Pair<Integer, Record> smallest = heap.poll();
+            if (smallest.getFirst() != runNum) {
+                if (run != null) {
+                    run.flush();
+                }
+                run = this.createRun();
+                runs.add(run);
+                runNum = smallest.getFirst();
+            }
+            run.addRecord(smallest.getSecond().getValues());
+
+            if (records.hasNext()) {
+                Record record = records.next();
+                boolean fitsRun = this.comparator.compare(record, smallest.getSecond()) >= 0;
+                heap.add(new Pair<>(fitsRun ? runNum : runNum + 1, record));
+            }
+        }
+        if (run != null) {
+            run.flush();
+        }
+        return runs;
     }
 
     public Iterator<Record> iterator() throws DatabaseException {
@@ -156,12 +251,6 @@ public class SortOperator {
         return this.transaction.getRecordIterator(sortedTableName);
     }
 
-    private class RecordPairComparator implements Comparator<Pair<Record, Integer>> {
-        public int compare(Pair<Record, Integer> o1, Pair<Record, Integer> o2) {
-            return SortOperator.this.comparator.compare(o1.getFirst(), o2.getFirst());
-
-        }
-    }
     public Run createRun() throws DatabaseException {
         return new Run();
     }
@@ -0,0 +1,121 @@
+package edu.berkeley.cs186.database.query;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.table.Schema;
+
+/**
+ * An iterator over the records of a table in RecordBatches. Each data page is
+ * read once, and the columns of each record on it are decoded straight from
+ * the bytes of the page into the vectors of a batch, without creating a
+ * Record or any DataBoxes.
+ */
+class TableBatchIterator implements Iterator<RecordBatch> {
+    private Database.Transaction transaction;
+    private Iterator<Page> pageIterator;
+    private Schema schema;
+    private int bitmapSize;
+    private int recordSize;
+    private int numRecordsPerPage;
+    private int[] columnOffsets;
+
+    // The bytes of the page being read, and the next entry of it to read.
+    private ByteBuffer page;
+    private int nextEntry;
+
+    private RecordBatch nextBatch;
+
+    TableBatchIterator(Database.Transaction transaction, String tableName) throws DatabaseException {
+        this(transaction, tableName, transaction.getPageIterator(tableName));
+        if (this.pageIterator.hasNext()) {
+            this.pageIterator.next(); // skip the header page
+        }
+    }
+
+    /**
+     * Creates an iterator over the records on the data pages of pageIterator,
+     * which must not include the header page of the table.
+     */
+    TableBatchIterator(Database.Transaction transaction, String tableName,
+                       Iterator<Page> pageIterator) throws DatabaseException {
+        this.transaction = transaction;
+        this.schema = transaction.getSchema(tableName);
+        this.bitmapSize = transaction.getPageHeaderSize(tableName);
+        this.recordSize = transaction.getEntrySize(tableName);
+        this.numRecordsPerPage = transaction.getNumEntriesPerPage(tableName);
+
+        List<Type> types = this.schema.getFieldTypes();
+        this.columnOffsets = new int[types.size()];
+        for (int i = 1; i < types.size(); i++) {
+            this.columnOffsets[i] = this.columnOffsets[i - 1] + types.get(i - 1).getSizeInBytes();
+        }
+
+        this.pageIterator = pageIterator;
+    }
+
+    /**
+     * Checks if there are more batch(es) to yield
+     *
+     * @return true if this iterator has another batch to yield, otherwise false
+     */
+    public boolean hasNext() {
+        if (this.nextBatch != null) {
+            return true;
+        }
+
+        RecordBatch batch = new RecordBatch(this.schema);
+        while (!batch.isFull()) {
+            if (this.page == null || this.nextEntry == this.numRecordsPerPage) {
+                if (!this.pageIterator.hasNext()) {
+                    break;
+                }
+                this.page = ByteBuffer.wrap(this.pageIterator.next().readBytes(this.transaction));
+                this.nextEntry = 0;
+            }
+            for (; this.nextEntry < this.numRecordsPerPage && !batch.isFull(); this.nextEntry++) {
+                // The bitmap holds a bit per entry, most significant bit first.
+                if (((this.page.get(this.nextEntry / 8) >> (7 - this.nextEntry % 8)) & 1) == 0) {
+                    continue;
+                }
+                int offset = this.bitmapSize + this.nextEntry * this.recordSize;
+                int row = batch.getNumRows();
+                for (int c = 0; c < this.columnOffsets.length; c++) {
+                    batch.getColumn(c).decode(row, this.page, offset + this.columnOffsets[c]);
+                }
+                batch.selectNewRow();
+            }
+        }
+
+        if (batch.getNumRows() == 0) {
+            return false;
+        }
+        this.nextBatch = batch;
+        return true;
+    }
+
+    /**
+     * Yields the next batch of this iterator.
+     *
+     * @return the next RecordBatch
+     * @throws NoSuchElementException if there are no more batches to yield
+     */
+    public RecordBatch next() {
+        if (this.hasNext()) {
+            RecordBatch batch = this.nextBatch;
+            this.nextBatch = null;
+            return batch;
+        }
+        throw new NoSuchElementException();
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,217 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+/**
+ * Yields the records of its source ordered on one column, ascending or
+ * descending, and only the first limit of them if there is a limit.
+ *
+ * With a limit, the source is read once, a batch at a time, into a heap of at
+ * most limit records whose head is the worst of them, so that a row of the
+ * source only becomes a Record if it is better than the head. Records with
+ * equal values in the column come out in the order the source yielded them.
+ *
+ * Without a limit, the source is written to a temporary table, which is then
+ * sorted with a SortOperator.
+ */
+public class TopNOperator extends QueryOperator {
+    // The value of limit if there is no limit.
+    public static final int NO_LIMIT = -1;
+
+    private Database.Transaction transaction;
+    private String columnName;
+    private int columnIndex;
+    private boolean ascending;
+    private int limit;
+
+    /**
+     * Creates a new TopNOperator that yields the first limit records of
+     * source ordered on columnName.
+     *
+     * @param source the source of this operator
+     * @param transaction the transaction containing this operator
+     * @param columnName the column to order by
+     * @param ascending whether to order from the smallest value up
+     * @param limit the largest number of records to yield, or NO_LIMIT
+     * @throws QueryPlanException
+     */
+    public TopNOperator(QueryOperator source,
+                        Database.Transaction transaction,
+                        String columnName,
+                        boolean ascending,
+                        int limit) throws QueryPlanException {
+        super(OperatorType.TOPN, source);
+        if (limit < 0 && limit != NO_LIMIT) {
+            throw new QueryPlanException("Cannot limit a query to a negative number of records.");
+        }
+        this.transaction = transaction;
+        this.ascending = ascending;
+        this.limit = limit;
+
+        this.columnName = this.checkSchemaForColumn(source.getOutputSchema(), columnName);
+        this.columnIndex = this.getOutputSchema().getFieldNames().indexOf(this.columnName);
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    public int getLimit() {
+        return this.limit;
+    }
+
+    protected Schema computeSchema() throws QueryPlanException {
+        return this.getSource().getOutputSchema();
+    }
+
+    public String str() {
+        return "type: " + this.getType() +
+               "\ncolumn: " + this.columnName +
+               "\norder: " + (this.ascending ? "ASC" : "DESC") +
+               "\nlimit: " + (this.limit == NO_LIMIT ? "none" : Integer.toString(this.limit));
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        if (this.limit == NO_LIMIT) {
+            return this.sortAll();
+        }
+        return this.topN().iterator();
+    }
+
+    /**
+     * Compares two values of the column in output order.
+     */
+    private int compareKeys(DataBox a, DataBox b) {
+        return this.ascending ? a.compareTo(b) : b.compareTo(a);
+    }
+
+    /**
+     * A record kept in the heap, with its value in the column and its
+     * position in the source to break ties with.
+     */
+    private static class Entry {
+        private DataBox key;
+        private long position;
+        private Record record;
+
+        private Entry(DataBox key, long position, Record record) {
+            this.key = key;
+            this.position = position;
+            this.record = record;
+        }
+    }
+
+    private List<Record> topN() throws QueryPlanException, DatabaseException {
+        if (this.limit == 0) {
+            return Collections.emptyList();
+        }
+
+        Comparator<Entry> outputOrder = (a, b) -> {
+            int c = this.compareKeys(a.key, b.key);
+            return c != 0 ? c : Long.compare(a.position, b.position);
+        };
+        PriorityQueue<Entry> heap = new PriorityQueue<>(Math.min(this.limit, RecordBatch.CAPACITY),
+                outputOrder.reversed());
+
+        long position = 0;
+        Iterator<RecordBatch> batches = this.getSource().batchIterator();
+        while (batches.hasNext()) {
+            RecordBatch batch = batches.next();
+            ColumnVector column = batch.getColumn(this.columnIndex);
+            int[] selection = batch.getSelection();
+            for (int i = 0; i < batch.getNumSelected(); i++, position++) {
+                int row = selection[i];
+                DataBox key = column.get(row);
+                if (heap.size() < this.limit) {
+                    heap.add(new Entry(key, position, batch.getRecord(row)));
+                } else if (this.compareKeys(key, heap.peek().key) < 0) {
+                    // A row that ties with the head came after it, so only a
+                    // strictly better row replaces it.
+                    heap.poll();
+                    heap.add(new Entry(key, position, batch.getRecord(row)));
+                }
+            }
+        }
+
+        List<Entry> entries = new ArrayList<>(heap);
+        entries.sort(outputOrder);
+        List<Record> records = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            records.add(entry.record);
+        }
+        return records;
+    }
+
+    private Iterator<Record> sortAll() throws QueryPlanException, DatabaseException {
+        Schema schema = this.getOutputSchema();
+        String tableName = this.transaction.createTempTable(schema);
+        int numRecordsPerPage = Table.computeNumRecordsPerPage(Page.pageSize, schema);
+
+        List<Record> page = new ArrayList<>(numRecordsPerPage);
+        Iterator<Record> records = RecordBatch.toRecords(this.getSource().batchIterator());
+        while (records.hasNext()) {
+            page.add(records.next());
+            if (page.size() == numRecordsPerPage) {
+                this.transaction.appendRecords(tableName, page);
+                page.clear();
+            }
+        }
+        if (!page.isEmpty()) {
+            this.transaction.appendRecords(tableName, page);
+        }
+
+        Comparator<Record> comparator = (a, b) -> this.compareKeys(
+                a.getValues().get(this.columnIndex), b.getValues().get(this.columnIndex));
+        String sortedTableName = new SortOperator(this.transaction, tableName, comparator).sort();
+        return this.transaction.getRecordIterator(sortedTableName);
+    }
+
+    /**
+     * Estimates the table statistics for the result of executing this query operator.
+     *
+     * @return estimated TableStats
+     */
+    public TableStats estimateStats() throws QueryPlanException {
+        TableStats stats = this.getSource().getStats();
+        return this.limit == NO_LIMIT ? stats : stats.copyWithLimit(this.limit);
+    }
+
+    /**
+     * With a limit, the heap is kept in memory and only the source is read.
+     * Otherwise the source is written out once, and read and written again by
+     * every pass of the sort.
+     */
+    public int estimateIOCost() throws QueryPlanException {
+        int cost = this.getSource().getIOCost();
+        if (this.limit != NO_LIMIT) {
+            return cost;
+        }
+        int numBuffers;
+        try {
+            numBuffers = this.transaction.getNumMemoryPages();
+        } catch (DatabaseException e) {
+            throw new QueryPlanException(e);
+        }
+        int numPages = this.getSource().getStats().getNumPages();
+        int numRuns = (int) Math.ceil((double) numPages / numBuffers);
+        int numPasses = 1;
+        while (numRuns > 1) {
+            numRuns = (int) Math.ceil((double) numRuns / (numBuffers - 1));
+            numPasses++;
+        }
+        return cost + numPages + 2 * numPages * numPasses;
+    }
+}
@@ -101,7 +101,8 @@ public class Table implements Closeable {
     // The name of the database.
     private String name;
 
-    // The filename of the file in which this table is persisted.
+    // The filename of the file in which this table is persisted, or null if it
+    // is not persisted.
     private String filename;
 
     // The schema of the database.
@@ -135,10 +136,22 @@ public class Table implements Closeable {
      */
     public Table(String name, Schema schema, String filename, LockContext lockContext,
                  BaseTransaction transaction) {
-        this.name = name;
+        this(name, schema, new PageAllocator(lockContext, filename, true, transaction), lockContext,
+             transaction);
         this.filename = filename;
+    }
+
+    /**
+     * Construct a brand new table named `name` with schema `schema` whose
+     * pages are allocated by `allocator`. The table has no file of its own
+     * unless `allocator` does; this is how the temporary tables of a
+     * transaction are kept in memory, with a TempPageAllocator.
+     */
+    public Table(String name, Schema schema, PageAllocator allocator, LockContext lockContext,
+                 BaseTransaction transaction) {
+        this.name = name;
         this.schema = schema;
-        this.allocator = new PageAllocator(lockContext, filename, true, transaction);
+        this.allocator = allocator;
         this.bitmapSizeInBytes = computeBitmapSizeInBytes(Page.pageSize, schema);
         numRecordsPerPage = computeNumRecordsPerPage(Page.pageSize, schema);
         this.stats = new TableStats(this.schema);
@@ -312,6 +325,44 @@ public class Table implements Closeable {
         return new RecordId(page.getPageNum(), (short) entryNum);
     }
 
+    /**
+     * appendRecords adds records to this table in order, filling the slots of
+     * newly allocated pages one page at a time. Each page, bitmap and all, is
+     * written with a single write instead of one write per record and bitmap
+     * bit, as in addRecord. Unlike addRecord, appendRecords never fills the
+     * free slots of pages that are already allocated, so records appended to a
+     * table that nothing else adds to are read back in the order they were
+     * appended in.
+     */
+    public synchronized void appendRecords(BaseTransaction transaction,
+                                           List<Record> records) throws DatabaseException {
+        int recordSize = schema.getSizeInBytes();
+        for (int start = 0; start < records.size(); start += numRecordsPerPage) {
+            int numOnPage = Math.min(numRecordsPerPage, records.size() - start);
+            byte[] bytes = new byte[bitmapSizeInBytes + numOnPage * recordSize];
+
+            // The first numOnPage slots are full.
+            Arrays.fill(bytes, 0, numOnPage / 8, (byte) 0xFF);
+            if (numOnPage % 8 != 0) {
+                bytes[numOnPage / 8] = (byte) (0xFF << (8 - numOnPage % 8));
+            }
+            int offset = bitmapSizeInBytes;
+            for (int i = start; i < start + numOnPage; i++) {
+                Record record = schema.verify(records.get(i).getValues());
+                System.arraycopy(record.toBytes(schema), 0, bytes, offset, recordSize);
+                offset += recordSize;
+                stats.addRecord(record);
+            }
+
+            int pageNum = allocator.allocPage(transaction);
+            allocator.fetchPage(transaction, pageNum).writeBytes(transaction, bytes);
+            if (numOnPage < numRecordsPerPage) {
+                freePageNums.add(pageNum);
+            }
+            numRecords += numOnPage;
+        }
+    }
+
     /**
      * Retrieves a record from the table, throwing an exception if no such record
      * exists.
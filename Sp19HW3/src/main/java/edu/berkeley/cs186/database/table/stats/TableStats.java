@@ -177,6 +177,15 @@ public class TableStats {
         return new TableStats(this.tableSchema, numRecords, copyHistograms);
     }
 
+    /**
+     * Estimates the table statistics for the first `limit` records of this
+     * table. The histograms are kept as they are, as if the records that are
+     * kept were a sample of the whole table.
+     */
+    public TableStats copyWithLimit(int limit) {
+        return new TableStats(this.tableSchema, Math.min(limit, numRecords), histograms);
+    }
+
     /**
      * Creates a new TableStats which is the statistics for the table
      * that results from this TableStats joined with the given TableStats.
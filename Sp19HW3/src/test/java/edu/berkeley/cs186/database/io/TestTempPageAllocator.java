@@ -0,0 +1,113 @@
+package edu.berkeley.cs186.database.io;
+
+import static org.junit.Assert.*;
+
+import edu.berkeley.cs186.database.categories.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Tests TempPageAllocator.java and TempPagePool.java
+ */
+@Category(HW3Tests.class)
+public class TestTempPageAllocator {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private static byte[] pageOf(int value) {
+        byte[] bytes = new byte[Page.pageSize];
+        Arrays.fill(bytes, (byte) value);
+        return bytes;
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testNoScratchFileWhenPagesFit() throws IOException {
+        File scratch = new File(tempFolder.newFolder(), "scratch");
+        TempPagePool pool = new TempPagePool(4, scratch.getAbsolutePath());
+        TempPageAllocator allocator = new TempPageAllocator(pool);
+
+        for (int i = 0; i < 4; i++) {
+            int pageNum = allocator.allocPage(null);
+            assertEquals(i, pageNum);
+            allocator.fetchPage(null, pageNum).writeBytes(null, pageOf(i));
+        }
+        for (int i = 0; i < 4; i++) {
+            assertArrayEquals(pageOf(i), allocator.fetchPage(null, i).readBytes(null));
+        }
+        assertFalse(scratch.exists());
+        pool.close();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSpillAndReadBack() throws IOException {
+        File scratch = new File(tempFolder.newFolder(), "scratch");
+        TempPagePool pool = new TempPagePool(2, scratch.getAbsolutePath());
+        TempPageAllocator a = new TempPageAllocator(pool);
+        TempPageAllocator b = new TempPageAllocator(pool);
+
+        // Ten pages between two allocators share two frames.
+        for (int i = 0; i < 5; i++) {
+            a.fetchPage(null, a.allocPage(null)).writeBytes(null, pageOf(i));
+            b.fetchPage(null, b.allocPage(null)).writeBytes(null, pageOf(100 + i));
+        }
+        assertTrue(scratch.exists());
+        for (int i = 0; i < 5; i++) {
+            assertArrayEquals(pageOf(i), a.fetchPage(null, i).readBytes(null));
+            assertArrayEquals(pageOf(100 + i), b.fetchPage(null, i).readBytes(null));
+        }
+
+        // A new page is all zeros, even if its frame was used before.
+        int pageNum = a.allocPage(null);
+        assertArrayEquals(new byte[Page.pageSize], a.fetchPage(null, pageNum).readBytes(null));
+
+        pool.close();
+        assertFalse(scratch.exists());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testFreeAndIterate() throws IOException {
+        File scratch = new File(tempFolder.newFolder(), "scratch");
+        TempPagePool pool = new TempPagePool(2, scratch.getAbsolutePath());
+        TempPageAllocator allocator = new TempPageAllocator(pool);
+
+        for (int i = 0; i < 6; i++) {
+            allocator.fetchPage(null, allocator.allocPage(null)).writeBytes(null, pageOf(i));
+        }
+        assertTrue(allocator.freePage(null, 1));
+        assertTrue(allocator.freePage(null, allocator.fetchPage(null, 4)));
+        assertFalse(allocator.freePage(null, 4));
+        assertEquals(4, allocator.getNumPages());
+
+        List<Integer> pageNums = new ArrayList<>();
+        Iterator<Page> iter = allocator.iterator(null);
+        while (iter.hasNext()) {
+            Page page = iter.next();
+            pageNums.add(page.getPageNum());
+            assertArrayEquals(pageOf(page.getPageNum()), page.readBytes(null));
+        }
+        assertEquals(Arrays.asList(0, 2, 3, 5), pageNums);
+
+        try {
+            allocator.fetchPage(null, 1);
+            fail();
+        } catch (PageException e) {
+            // The page was freed.
+        }
+
+        allocator.close();
+        assertEquals(0, allocator.getNumPages());
+        pool.close();
+    }
+}
@@ -194,4 +194,50 @@ public class TestBasicQuery {
 
         assertEquals(count, 10);
     }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGroupByMultipleAggregates() throws DatabaseException, QueryPlanException {
+        Table table = db.getTable(TABLENAME);
+        BaseTransaction transaction = db.beginTransaction();
+
+        //creates 100 records with ints 0 to 9 and floats 0 to 99
+        try {
+            for (int i = 0; i < 100; ++i) {
+                Record r = createRecordWithAllTypes(false, i % 10, "test", (float) i);
+                table.addRecord(transaction, r.getValues());
+            }
+        } catch(DatabaseException e) {}
+
+        //build the statistics on the table
+        table.buildStatistics(transaction, 10);
+
+        // end + create a new transaction
+        transaction.end();
+        transaction = this.db.beginTransaction();
+
+        // group by int, and compute several aggregates of float per group
+        QueryPlan query = transaction.query("T");
+        query.project(Arrays.asList("T.int"));
+        query.groupBy("T.int");
+        query.count();
+        query.sum("T.float");
+        query.min("T.float");
+        query.max("T.float");
+
+        Iterator<Record> queryOutput = query.executeOptimal();
+
+        int count = 0;
+        while(queryOutput.hasNext()) {
+            Record r = queryOutput.next();
+            int i = r.getValues().get(0).getInt();
+            assertEquals(new IntDataBox(10), r.getValues().get(1));
+            assertEquals(new FloatDataBox(10 * i + 450), r.getValues().get(2));
+            assertEquals(new FloatDataBox(i), r.getValues().get(3));
+            assertEquals(new FloatDataBox(i + 90), r.getValues().get(4));
+            count++;
+        }
+
+        assertEquals(count, 10);
+    }
 }
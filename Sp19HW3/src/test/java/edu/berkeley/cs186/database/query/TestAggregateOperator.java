@@ -0,0 +1,177 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.TimeoutScaling;
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.query.AggregateOperator.Aggregate;
+import edu.berkeley.cs186.database.query.AggregateOperator.AggregateFunction;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@Category(HW3Tests.class)
+public class TestAggregateOperator {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // 10 second max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (10000 * TimeoutScaling.factor)));
+
+    /**
+     * Returns a source of 100 records (i % 10, i, i / 2, "s" + i % 3) for i
+     * from 0 to 99, with columns g, int, float and string.
+     */
+    private static TestSourceOperator sourceOperator() throws QueryPlanException {
+        Schema schema = new Schema(Arrays.asList("g", "int", "float", "string"),
+                                   Arrays.asList(Type.intType(), Type.intType(), Type.floatType(),
+                                                 Type.stringType(5)));
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            records.add(new Record(Arrays.asList(new IntDataBox(i % 10), new IntDataBox(i),
+                                                 new FloatDataBox(i / 2.0f), new StringDataBox("s" + i % 3, 5))));
+        }
+        return new TestSourceOperator(records, schema);
+    }
+
+    private static List<Aggregate> aggregates(Object... functionsAndColumns) {
+        List<Aggregate> aggregates = new ArrayList<>();
+        for (int i = 0; i < functionsAndColumns.length; i += 2) {
+            aggregates.add(new Aggregate((AggregateFunction) functionsAndColumns[i],
+                                         (String) functionsAndColumns[i + 1]));
+        }
+        return aggregates;
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testOperatorSchema() throws QueryPlanException, DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("aggregateTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath()).beginTransaction();
+        QueryOperator aggregateOperator = new AggregateOperator(sourceOperator(), transaction, "g",
+                aggregates(AggregateFunction.COUNT, null, AggregateFunction.SUM, "int",
+                           AggregateFunction.SUM, "float", AggregateFunction.AVERAGE, "int",
+                           AggregateFunction.MAX, "string", AggregateFunction.COUNT_DISTINCT, "string"));
+
+        Schema expectedSchema = new Schema(
+            Arrays.asList("g", "countAgg", "sumAgg", "sumAgg2", "averageAgg", "maxAgg", "countDistinctAgg"),
+            Arrays.asList(Type.intType(), Type.intType(), Type.intType(), Type.floatType(), Type.floatType(),
+                          Type.stringType(5), Type.intType()));
+        assertEquals(expectedSchema, aggregateOperator.getOutputSchema());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testNonNumericSum() throws QueryPlanException, DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("aggregateTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath()).beginTransaction();
+        try {
+            new AggregateOperator(sourceOperator(), transaction, "g",
+                                  aggregates(AggregateFunction.SUM, "string"));
+            fail();
+        } catch (QueryPlanException e) {
+            // expected
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGroupByAggregates() throws QueryPlanException, DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("aggregateTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath()).beginTransaction();
+        QueryOperator aggregateOperator = new AggregateOperator(sourceOperator(), transaction, "g",
+                aggregates(AggregateFunction.COUNT, null, AggregateFunction.SUM, "int",
+                           AggregateFunction.AVERAGE, "float", AggregateFunction.MIN, "int",
+                           AggregateFunction.MAX, "float", AggregateFunction.MIN, "string",
+                           AggregateFunction.COUNT_DISTINCT, "string"));
+
+        Iterator<Record> outputIterator = aggregateOperator.iterator();
+        boolean[] seen = new boolean[10];
+        while (outputIterator.hasNext()) {
+            List<DataBox> values = outputIterator.next().getValues();
+            int g = values.get(0).getInt();
+            assertFalse(seen[g]);
+            seen[g] = true;
+
+            // The group holds g, g + 10, ..., g + 90.
+            assertEquals(new IntDataBox(10), values.get(1));
+            assertEquals(new IntDataBox(10 * g + 450), values.get(2));
+            assertEquals(new FloatDataBox((g + 45) / 2.0f), values.get(3));
+            assertEquals(new IntDataBox(g), values.get(4));
+            assertEquals(new FloatDataBox((g + 90) / 2.0f), values.get(5));
+            assertEquals(new StringDataBox("s0", 5), values.get(6));
+            assertEquals(new IntDataBox(3), values.get(7));
+        }
+        for (int g = 0; g < 10; g++) {
+            assertTrue(seen[g]);
+        }
+
+        // Nothing was spilled to a temporary table.
+        assertEquals("tempTable0", transaction.createTempTable(aggregateOperator.getOutputSchema()));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testAggregatesWithoutGroupBy() throws QueryPlanException, DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("aggregateTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath()).beginTransaction();
+        QueryOperator aggregateOperator = new AggregateOperator(sourceOperator(), transaction, null,
+                aggregates(AggregateFunction.COUNT, null, AggregateFunction.AVERAGE, "int",
+                           AggregateFunction.MAX, "int", AggregateFunction.COUNT_DISTINCT, "g"));
+
+        Iterator<Record> outputIterator = aggregateOperator.iterator();
+        assertTrue(outputIterator.hasNext());
+        assertEquals(Arrays.asList(new IntDataBox(100), new FloatDataBox(49.5f), new IntDataBox(99),
+                                   new IntDataBox(10)), outputIterator.next().getValues());
+        assertFalse(outputIterator.hasNext());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testAggregateSpill() throws QueryPlanException, DatabaseException, IOException {
+        // Wide group by values, so that few groups fill memory.
+        Schema schema = new Schema(Arrays.asList("g", "int"),
+                                   Arrays.asList(Type.stringType(250), Type.intType()));
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            records.add(new Record(Arrays.asList(new StringDataBox("g" + i % 100, 250), new IntDataBox(i))));
+        }
+        TestSourceOperator sourceOperator = new TestSourceOperator(records, schema);
+        File tempDir = tempFolder.newFolder("aggregateTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath(), 3).beginTransaction();
+        QueryOperator aggregateOperator = new AggregateOperator(sourceOperator, transaction, "g",
+                aggregates(AggregateFunction.COUNT, null, AggregateFunction.SUM, "int"));
+
+        Iterator<Record> outputIterator = aggregateOperator.iterator();
+        Set<String> groups = new HashSet<>();
+        while (outputIterator.hasNext()) {
+            List<DataBox> values = outputIterator.next().getValues();
+            int g = Integer.parseInt(values.get(0).getString().trim().substring(1));
+            assertTrue(groups.add(values.get(0).getString()));
+            assertEquals(new IntDataBox(3), values.get(1));
+            assertEquals(new IntDataBox(3 * g + 300), values.get(2));
+        }
+        assertEquals(100, groups.size());
+
+        // Groups that did not fit in memory were spilled.
+        assertNotEquals("tempTable0", transaction.createTempTable(schema));
+    }
+}
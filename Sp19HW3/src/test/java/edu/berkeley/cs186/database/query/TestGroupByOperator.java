@@ -0,0 +1,156 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.TimeoutScaling;
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.MarkerRecord;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@Category(HW3Tests.class)
+public class TestGroupByOperator {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // 10 second max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (10000 * TimeoutScaling.factor)));
+
+    /**
+     * Splits the output of a group by operator at its marker records, and
+     * checks that every group holds a single group by value that no other
+     * group holds. Returns the number of records of each group by value.
+     */
+    private static Map<Integer, Integer> groupSizes(Iterator<Record> outputIterator) {
+        Map<Integer, Integer> sizes = new HashMap<>();
+        Integer currGroup = null;
+        boolean prevWasMarker = true;
+        while (outputIterator.hasNext()) {
+            Record r = outputIterator.next();
+            if (r == MarkerRecord.getMarker()) {
+                assertFalse(prevWasMarker);
+                prevWasMarker = true;
+                continue;
+            }
+            int group = r.getValues().get(0).getInt();
+            if (prevWasMarker) {
+                assertFalse(sizes.containsKey(group));
+                currGroup = group;
+                sizes.put(group, 0);
+            }
+            assertEquals(currGroup, Integer.valueOf(group));
+            sizes.put(group, sizes.get(group) + 1);
+            prevWasMarker = false;
+        }
+        // There is no marker after the last group.
+        assertTrue(sizes.isEmpty() || !prevWasMarker);
+        return sizes;
+    }
+
+    private static TestSourceOperator wideSourceOperator(List<Integer> values) throws QueryPlanException {
+        // Wide records, so that few records take up many pages.
+        Schema schema = new Schema(Arrays.asList("int", "string"),
+                                   Arrays.asList(Type.intType(), Type.stringType(250)));
+        List<Record> records = new ArrayList<>();
+        for (int v : values) {
+            records.add(new Record(Arrays.asList(new IntDataBox(v), new StringDataBox("s", 250))));
+        }
+        return new TestSourceOperator(records, schema);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGroupByInMemory() throws QueryPlanException, DatabaseException, IOException {
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            values.add(i % 10);
+        }
+        TestSourceOperator sourceOperator = TestUtils.createTestSourceOperatorWithInts(values);
+        File tempDir = tempFolder.newFolder("groupByTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath()).beginTransaction();
+        QueryOperator groupByOperator = new GroupByOperator(sourceOperator, transaction, "int");
+
+        Map<Integer, Integer> sizes = groupSizes(groupByOperator.iterator());
+        assertEquals(10, sizes.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Integer.valueOf(5), sizes.get(i));
+        }
+
+        // Nothing was spilled to a temporary table.
+        assertEquals("tempTable0", transaction.createTempTable(sourceOperator.getOutputSchema()));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGroupByEmpty() throws QueryPlanException, DatabaseException, IOException {
+        TestSourceOperator sourceOperator = TestUtils.createTestSourceOperatorWithInts(
+                                                new ArrayList<Integer>());
+        File tempDir = tempFolder.newFolder("groupByTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath()).beginTransaction();
+        QueryOperator groupByOperator = new GroupByOperator(sourceOperator, transaction, "int");
+        assertFalse(groupByOperator.iterator().hasNext());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGroupBySpill() throws QueryPlanException, DatabaseException, IOException {
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            values.add(i % 20);
+        }
+        TestSourceOperator sourceOperator = wideSourceOperator(values);
+        File tempDir = tempFolder.newFolder("groupByTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath(), 5).beginTransaction();
+        QueryOperator groupByOperator = new GroupByOperator(sourceOperator, transaction, "int");
+
+        Map<Integer, Integer> sizes = groupSizes(groupByOperator.iterator());
+        assertEquals(20, sizes.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(Integer.valueOf(5), sizes.get(i));
+        }
+
+        // The input was spilled to one temporary table per partition.
+        assertEquals("tempTable4", transaction.createTempTable(sourceOperator.getOutputSchema()));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGroupBySkewedSpill() throws QueryPlanException, DatabaseException, IOException {
+        // The value 7 is too common for its partition to ever fit in memory.
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            values.add(i);
+            values.add(7);
+            values.add(7);
+        }
+        TestSourceOperator sourceOperator = wideSourceOperator(values);
+        File tempDir = tempFolder.newFolder("groupByTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath(), 3).beginTransaction();
+        QueryOperator groupByOperator = new GroupByOperator(sourceOperator, transaction, "int");
+
+        Map<Integer, Integer> sizes = groupSizes(groupByOperator.iterator());
+        assertEquals(40, sizes.size());
+        for (int i = 0; i < 40; i++) {
+            assertEquals(Integer.valueOf(i == 7 ? 81 : 1), sizes.get(i));
+        }
+    }
+}
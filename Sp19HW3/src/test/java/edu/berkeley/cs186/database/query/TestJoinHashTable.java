@@ -0,0 +1,72 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.databox.BoolDataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.TypeId;
+import edu.berkeley.cs186.database.table.Record;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+@Category(HW3Tests.class)
+public class TestJoinHashTable {
+    private static Record record(int i) {
+        return new Record(Collections.singletonList(new IntDataBox(i)));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testIntKeys() {
+        JoinHashTable table = new JoinHashTable(TypeId.INT);
+        for (int i = 0; i < 1000; i++) {
+            table.put(new IntDataBox(i % 500), record(i));
+        }
+        for (int i = 0; i < 500; i++) {
+            assertEquals(Arrays.asList(record(i), record(i + 500)), table.get(new IntDataBox(i)));
+        }
+        assertTrue(table.get(new IntDataBox(500)).isEmpty());
+        assertTrue(table.get(new IntDataBox(-1)).isEmpty());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testFloatKeys() {
+        JoinHashTable table = new JoinHashTable(TypeId.FLOAT);
+        table.put(new FloatDataBox(1.5f), record(0));
+        table.put(new FloatDataBox(-0.0f), record(1));
+        table.put(new FloatDataBox(Float.NaN), record(2));
+
+        assertEquals(Collections.singletonList(record(0)), table.get(new FloatDataBox(1.5f)));
+        // 0.0 and -0.0 are equal FloatDataBoxes, but NaN is equal to nothing.
+        assertEquals(Collections.singletonList(record(1)), table.get(new FloatDataBox(0.0f)));
+        assertTrue(table.get(new FloatDataBox(Float.NaN)).isEmpty());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testBoolKeys() {
+        JoinHashTable table = new JoinHashTable(TypeId.BOOL);
+        table.put(new BoolDataBox(true), record(0));
+        table.put(new BoolDataBox(true), record(1));
+
+        assertEquals(Arrays.asList(record(0), record(1)), table.get(new BoolDataBox(true)));
+        assertTrue(table.get(new BoolDataBox(false)).isEmpty());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testStringKeys() {
+        JoinHashTable table = new JoinHashTable(TypeId.STRING);
+        table.put(new StringDataBox("abc", 5), record(0));
+
+        assertEquals(Collections.singletonList(record(0)), table.get(new StringDataBox("abc", 5)));
+        assertTrue(table.get(new StringDataBox("abd", 5)).isEmpty());
+    }
+}
@@ -456,4 +456,206 @@ public class TestJoinOperator {
         }
         assertTrue(count == 82944);
     }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSimpleJoinGraceHash() throws QueryPlanException, DatabaseException, IOException {
+        TestSourceOperator sourceOperator = new TestSourceOperator();
+        File tempDir = tempFolder.newFolder("joinTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath()).beginTransaction();
+        JoinOperator joinOperator = new GraceHashOperator(sourceOperator, sourceOperator, "int", "int",
+                transaction);
+
+        Iterator<Record> outputIterator = joinOperator.iterator();
+        int numRecords = 0;
+
+        List<DataBox> expectedRecordValues = new ArrayList<DataBox>();
+        expectedRecordValues.add(new BoolDataBox(true));
+        expectedRecordValues.add(new IntDataBox(1));
+        expectedRecordValues.add(new StringDataBox("abcde", 5));
+        expectedRecordValues.add(new FloatDataBox(1.2f));
+        expectedRecordValues.add(new BoolDataBox(true));
+        expectedRecordValues.add(new IntDataBox(1));
+        expectedRecordValues.add(new StringDataBox("abcde", 5));
+        expectedRecordValues.add(new FloatDataBox(1.2f));
+        Record expectedRecord = new Record(expectedRecordValues);
+
+        while (outputIterator.hasNext()) {
+            assertEquals(expectedRecord, outputIterator.next());
+            numRecords++;
+        }
+
+        assertEquals(100 * 100, numRecords);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGraceHashRecursivePartitioning() throws QueryPlanException, DatabaseException,
+        IOException {
+        File tempDir = tempFolder.newFolder("joinTest");
+        Database d = new Database(tempDir.getAbsolutePath(), 3);
+        Database.Transaction transaction = d.beginTransaction();
+
+        // Wide records, so that few records take up many pages.
+        Schema schema = new Schema(Arrays.asList("int", "string"),
+                                   Arrays.asList(Type.intType(), Type.stringType(250)));
+        transaction.createTable(schema, "leftTable");
+        transaction.createTable(schema, "rightTable");
+
+        // Both tables are several times larger than memory, and the value 7 is
+        // too common to ever fit in memory on either side.
+        for (int i = 0; i < 200; i++) {
+            transaction.addRecord("leftTable", Arrays.asList(new IntDataBox(i), new StringDataBox("l", 250)));
+            transaction.addRecord("rightTable", Arrays.asList(new IntDataBox(199 - i),
+                                  new StringDataBox("r", 250)));
+        }
+        for (int i = 0; i < 60; i++) {
+            if (i < 40) {
+                transaction.addRecord("leftTable", Arrays.asList(new IntDataBox(7), new StringDataBox("l", 250)));
+            }
+            transaction.addRecord("rightTable", Arrays.asList(new IntDataBox(7), new StringDataBox("r", 250)));
+        }
+
+        QueryOperator s1 = new SequentialScanOperator(transaction, "leftTable");
+        QueryOperator s2 = new SequentialScanOperator(transaction, "rightTable");
+        QueryOperator joinOperator = new GraceHashOperator(s1, s2, "int", "int", transaction);
+        Iterator<Record> outputIterator = joinOperator.iterator();
+        int count = 0;
+        int[] matches = new int[200];
+        while (outputIterator.hasNext()) {
+            List<DataBox> values = outputIterator.next().getValues();
+            assertEquals(values.get(0), values.get(2));
+            assertEquals(new StringDataBox("l", 250), values.get(1));
+            assertEquals(new StringDataBox("r", 250), values.get(3));
+            matches[values.get(0).getInt()]++;
+            count++;
+        }
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i == 7 ? 41 * 61 : 1, matches[i]);
+        }
+        assertEquals(199 + 41 * 61, count);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGraceHashNegativeZero() throws QueryPlanException, DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("joinTest");
+        // With 3 partitions, Float.hashCode would send 0.0 and -0.0 to
+        // different partitions in the first pass.
+        Database d = new Database(tempDir.getAbsolutePath(), 4);
+        Database.Transaction transaction = d.beginTransaction();
+
+        // Wide records, so that both tables are partitioned.
+        Schema schema = new Schema(Arrays.asList("float", "string"),
+                                   Arrays.asList(Type.floatType(), Type.stringType(250)));
+        transaction.createTable(schema, "leftTable");
+        transaction.createTable(schema, "rightTable");
+
+        // -0.0 on the left and 0.0 on the right are equal join values.
+        for (int i = 1; i < 200; i++) {
+            transaction.addRecord("leftTable", Arrays.asList(new FloatDataBox(i), new StringDataBox("l", 250)));
+            transaction.addRecord("rightTable", Arrays.asList(new FloatDataBox(200 - i),
+                                  new StringDataBox("r", 250)));
+        }
+        for (int i = 0; i < 5; i++) {
+            transaction.addRecord("leftTable", Arrays.asList(new FloatDataBox(-0.0f), new StringDataBox("l", 250)));
+            transaction.addRecord("rightTable", Arrays.asList(new FloatDataBox(0.0f), new StringDataBox("r", 250)));
+        }
+
+        QueryOperator s1 = new SequentialScanOperator(transaction, "leftTable");
+        QueryOperator s2 = new SequentialScanOperator(transaction, "rightTable");
+        Iterator<Record> outputIterator = new GraceHashOperator(s1, s2, "float", "float", transaction).iterator();
+        int numZeros = 0;
+        int count = 0;
+        while (outputIterator.hasNext()) {
+            List<DataBox> values = outputIterator.next().getValues();
+            assertEquals(values.get(0), values.get(2));
+            if (values.get(0).getFloat() == 0.0f) {
+                numZeros++;
+            }
+            count++;
+        }
+        assertEquals(5 * 5, numZeros);
+        assertEquals(199 + 5 * 5, count);
+        // The inputs were partitioned into temporary tables.
+        assertNotEquals("tempTable0", transaction.createTempTable(schema));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGraceHashInMemory() throws QueryPlanException, DatabaseException, IOException {
+        List<Integer> leftValues = new ArrayList<Integer>();
+        List<Integer> rightValues = new ArrayList<Integer>();
+        for (int i = 0; i < 100; i++) {
+            leftValues.add(i);
+            rightValues.add(2 * i);
+            rightValues.add(2 * i);
+        }
+        TestSourceOperator leftSourceOperator = TestUtils.createTestSourceOperatorWithInts(leftValues);
+        TestSourceOperator rightSourceOperator = TestUtils.createTestSourceOperatorWithInts(rightValues);
+        File tempDir = tempFolder.newFolder("joinTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath()).beginTransaction();
+        JoinOperator joinOperator = new GraceHashOperator(leftSourceOperator, rightSourceOperator, "int",
+                "int", transaction);
+
+        Iterator<Record> outputIterator = joinOperator.iterator();
+        int[] matches = new int[100];
+        int numRecords = 0;
+        while (outputIterator.hasNext()) {
+            List<DataBox> values = outputIterator.next().getValues();
+            assertEquals(values.get(0), values.get(1));
+            matches[values.get(0).getInt()]++;
+            numRecords++;
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i % 2 == 0 ? 2 : 0, matches[i]);
+        }
+        assertEquals(100, numRecords);
+
+        // Neither input was written to a temporary table.
+        assertEquals("tempTable0", transaction.createTempTable(leftSourceOperator.getOutputSchema()));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testNestedLoopJoinsStreamLeftInput() throws QueryPlanException, DatabaseException,
+        IOException {
+        File tempDir = tempFolder.newFolder("joinTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath()).beginTransaction();
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "rightTable");
+        for (int i = 0; i < 600; i++) {
+            transaction.addRecord("rightTable", TestUtils.createRecordWithAllTypesWithValue(i % 300).getValues());
+        }
+
+        List<Record> leftRecords = new ArrayList<Record>();
+        for (int i = 0; i < 400; i++) {
+            leftRecords.add(TestUtils.createRecordWithAllTypesWithValue(i));
+        }
+        TestSourceOperator leftSourceOperator = new TestSourceOperator(leftRecords,
+                TestUtils.createSchemaWithAllTypes());
+        QueryOperator rightSourceOperator = new SequentialScanOperator(transaction, "rightTable");
+
+        List<JoinOperator> joinOperators = new ArrayList<JoinOperator>();
+        joinOperators.add(new SNLJOperator(leftSourceOperator, rightSourceOperator, "int", "int",
+                                           transaction));
+        joinOperators.add(new PNLJOperator(leftSourceOperator, rightSourceOperator, "int", "int",
+                                           transaction));
+        joinOperators.add(new BNLJOperator(leftSourceOperator, rightSourceOperator, "int", "int",
+                                           transaction));
+        for (JoinOperator joinOperator : joinOperators) {
+            Iterator<Record> outputIterator = joinOperator.iterator();
+            int[] matches = new int[400];
+            while (outputIterator.hasNext()) {
+                List<DataBox> values = outputIterator.next().getValues();
+                assertEquals(values.get(1), values.get(5));
+                matches[values.get(1).getInt()]++;
+            }
+            for (int i = 0; i < 400; i++) {
+                assertEquals(i < 300 ? 2 : 0, matches[i]);
+            }
+        }
+
+        // Neither input was written to a temporary table.
+        assertEquals("tempTable0", transaction.createTempTable(TestUtils.createSchemaWithAllTypes()));
+    }
 }
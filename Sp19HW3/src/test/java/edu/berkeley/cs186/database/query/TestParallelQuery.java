@@ -0,0 +1,212 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.TimeoutScaling;
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.concurrency.DummyLockManager;
+import edu.berkeley.cs186.database.databox.BoolDataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@Category(HW3Tests.class)
+public class TestParallelQuery {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // 10 second max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (10000 * TimeoutScaling.factor)));
+
+    /**
+     * Counts the occurrences of each record, since parallel workers yield
+     * records in no particular order.
+     */
+    private static Map<Record, Integer> counts(Iterator<Record> records) {
+        Map<Record, Integer> counts = new HashMap<>();
+        while (records.hasNext()) {
+            counts.merge(records.next(), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * Creates a database that runs queries on up to 4 workers, with a table
+     * named "table" of numRecords records, whose int column holds i % numInts
+     * for the ith record. The records are wide, so that the table takes up
+     * enough pages for several workers.
+     */
+    private Database.Transaction createTable(int numMemoryPages, int numRecords,
+            int numInts) throws DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("parallelTest");
+        Database db = new Database(tempDir.getAbsolutePath(), numMemoryPages, new DummyLockManager(), 4);
+        Database.Transaction transaction = db.beginTransaction();
+        transaction.createTable(new Schema(Arrays.asList("bool", "int", "string", "float"),
+                                           Arrays.asList(Type.boolType(), Type.intType(), Type.stringType(200),
+                                                   Type.floatType())), "table");
+        for (int i = 0; i < numRecords; i++) {
+            transaction.addRecord("table", Arrays.asList(new BoolDataBox(i % 2 == 0), new IntDataBox(i % numInts),
+                                  new StringDataBox(String.format("%05d", i % 1000), 200),
+                                  new FloatDataBox((float) (i % 64) / 4)));
+        }
+        return transaction;
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGatherSelect() throws QueryPlanException, DatabaseException, IOException {
+        Database.Transaction transaction = createTable(5, 2000, 100);
+        QueryOperator scan = new SequentialScanOperator(transaction, "table");
+        QueryOperator select = new SelectOperator(scan, "float", QueryPlan.PredicateOperator.LESS_THAN,
+                                                  new FloatDataBox(3.0f));
+        QueryOperator gather = new GatherOperator(select, transaction, 4);
+
+        Map<Record, Integer> expected = counts(select.iterator());
+        assertEquals(expected, counts(gather.iterator()));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGatherCancelledOnEnd() throws QueryPlanException, DatabaseException, IOException,
+        InterruptedException {
+        Database.Transaction transaction = createTable(5, 10000, 100);
+        ForkJoinPool pool = transaction.getWorkerPool();
+        QueryOperator gather = new GatherOperator(new SequentialScanOperator(transaction, "table"),
+                transaction, 2);
+
+        // Only one record is read, so the workers fill the exchange, which
+        // holds 4 of the 10 batches of the table, and wait for room until the
+        // transaction ends.
+        Iterator<Record> records = gather.iterator();
+        assertTrue(records.hasNext());
+        records.next();
+        transaction.end();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testParallelAggregate() throws QueryPlanException, DatabaseException, IOException {
+        Database.Transaction transaction = createTable(5, 2000, 100);
+        List<AggregateOperator.Aggregate> aggregates = Arrays.asList(
+                    new AggregateOperator.Aggregate(AggregateOperator.AggregateFunction.COUNT, null),
+                    new AggregateOperator.Aggregate(AggregateOperator.AggregateFunction.SUM, "int"),
+                    new AggregateOperator.Aggregate(AggregateOperator.AggregateFunction.MIN, "float"),
+                    new AggregateOperator.Aggregate(AggregateOperator.AggregateFunction.MAX, "string"),
+                    new AggregateOperator.Aggregate(AggregateOperator.AggregateFunction.COUNT_DISTINCT, "int"));
+        QueryOperator scan = new SequentialScanOperator(transaction, "table");
+        QueryOperator gather = new GatherOperator(scan, transaction, 4);
+
+        Iterator<Record> output = new AggregateOperator(gather, transaction, null, aggregates).iterator();
+        assertEquals(new Record(Arrays.asList(new IntDataBox(2000), new IntDataBox(2000 / 100 * 4950),
+                                              new FloatDataBox(0.0f), new StringDataBox("00999", 200),
+                                              new IntDataBox(100))), output.next());
+        assertFalse(output.hasNext());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testParallelAggregateEmpty() throws QueryPlanException, DatabaseException, IOException {
+        Database.Transaction transaction = createTable(5, 2000, 100);
+        QueryOperator scan = new SequentialScanOperator(transaction, "table");
+        QueryOperator select = new SelectOperator(scan, "int", QueryPlan.PredicateOperator.GREATER_THAN,
+                                                  new IntDataBox(100));
+        QueryOperator gather = new GatherOperator(select, transaction, 4);
+        List<AggregateOperator.Aggregate> aggregates = Collections.singletonList(
+                    new AggregateOperator.Aggregate(AggregateOperator.AggregateFunction.COUNT, null));
+        assertFalse(new AggregateOperator(gather, transaction, null, aggregates).iterator().hasNext());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testParallelGroupBy() throws QueryPlanException, DatabaseException, IOException {
+        // With 3 pages of memory, the 1000 groups do not fit in memory, so
+        // each consumer spills some of its partition to temporary tables.
+        Database.Transaction transaction = createTable(3, 2000, 1000);
+        List<AggregateOperator.Aggregate> aggregates = Arrays.asList(
+                    new AggregateOperator.Aggregate(AggregateOperator.AggregateFunction.COUNT, null),
+                    new AggregateOperator.Aggregate(AggregateOperator.AggregateFunction.AVERAGE, "float"));
+        QueryOperator scan = new SequentialScanOperator(transaction, "table");
+        QueryOperator gather = new GatherOperator(scan, transaction, 4);
+
+        Map<Record, Integer> expected = counts(new AggregateOperator(scan, transaction, "int",
+                                               aggregates).iterator());
+        assertEquals(1000, expected.size());
+        assertEquals(expected, counts(new AggregateOperator(gather, transaction, "int", aggregates).iterator()));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testParallelHashJoin() throws QueryPlanException, DatabaseException, IOException {
+        Database.Transaction transaction = createTable(5, 2000, 100);
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "small");
+        for (int i = 0; i < 150; i++) {
+            transaction.addRecord("small", TestUtils.createRecordWithAllTypesWithValue(i % 75).getValues());
+        }
+        QueryOperator left = new SequentialScanOperator(transaction, "table");
+        QueryOperator right = new SequentialScanOperator(transaction, "small");
+        QueryOperator join = new ParallelHashJoinOperator(left, right, "int", "int", transaction);
+        QueryOperator gather = new GatherOperator(join, transaction, 4);
+
+        Map<Record, Integer> expected = counts(new SNLJOperator(left, right, "int", "int",
+                                               transaction).iterator());
+        Map<Record, Integer> output = counts(gather.iterator());
+        assertEquals(expected, output);
+        int numRecords = 0;
+        for (int n : output.values()) {
+            numRecords += n;
+        }
+        assertEquals(2000 / 100 * 75 * 2, numRecords);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testQueryPlanParallelism() throws QueryPlanException, DatabaseException, IOException {
+        Database.Transaction transaction = createTable(5, 2000, 100);
+        QueryPlan query = transaction.query("table");
+        query.project(Arrays.asList("int"));
+        query.groupBy("int");
+        query.count();
+        Map<Record, Integer> output = counts(query.execute());
+
+        assertTrue(query.getFinalOperator().getSource().isGather());
+        assertEquals(100, output.size());
+        for (Record r : output.keySet()) {
+            assertEquals(20, r.getValues().get(1).getInt());
+        }
+
+        // A table too small to keep more than one worker busy is not run in
+        // parallel.
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "small");
+        transaction.addRecord("small", TestUtils.createRecordWithAllTypes().getValues());
+        query = transaction.query("small");
+        query.count();
+        query.execute();
+        assertTrue(query.getFinalOperator().getSource().isSequentialScan());
+
+        // Unless it is given a parallelism, a database runs queries serially.
+        Database db = new Database(tempFolder.newFolder("serialTest").getAbsolutePath());
+        assertEquals(1, db.beginTransaction().getParallelism());
+    }
+}
@@ -0,0 +1,139 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.TimeoutScaling;
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.databox.BoolDataBox;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordId;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@Category(HW3Tests.class)
+public class TestRecordBatch {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // 10 second max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (10000 * TimeoutScaling.factor)));
+
+    private static List<Record> toList(Iterator<Record> records) {
+        List<Record> list = new ArrayList<>();
+        records.forEachRemaining(list::add);
+        return list;
+    }
+
+    /**
+     * Creates a table of 3000 records of all types spanning several pages,
+     * with every third record deleted, so that pages have holes in them.
+     */
+    private Database.Transaction createTable() throws DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("batchTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath()).beginTransaction();
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "table");
+        for (int i = 0; i < 3000; i++) {
+            RecordId rid = transaction.addRecord("table", Arrays.asList(new BoolDataBox(i % 2 == 0),
+                                                 new IntDataBox(i % 100), new StringDataBox(String.format("%05d", i % 50), 5),
+                                                 new FloatDataBox((float) (i % 40) / 4)));
+            if (i % 3 == 0) {
+                transaction.deleteRecord("table", rid);
+            }
+        }
+        return transaction;
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testScanBatches() throws QueryPlanException, DatabaseException, IOException {
+        Database.Transaction transaction = createTable();
+        QueryOperator scan = new SequentialScanOperator(transaction, "table");
+
+        Iterator<RecordBatch> batches = scan.batchIterator();
+        int numRecords = 0;
+        while (batches.hasNext()) {
+            RecordBatch batch = batches.next();
+            assertTrue(batch.getNumSelected() > 0);
+            // Only the last batch is not full.
+            assertTrue(batch.isFull() || !batches.hasNext());
+            numRecords += batch.getNumSelected();
+        }
+        assertEquals(2000, numRecords);
+        assertEquals(toList(scan.iterator()), toList(RecordBatch.toRecords(scan.batchIterator())));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSelectBatches() throws QueryPlanException, DatabaseException, IOException {
+        Database.Transaction transaction = createTable();
+        QueryOperator scan = new SequentialScanOperator(transaction, "table");
+        List<DataBox> values = Arrays.asList(new BoolDataBox(true), new IntDataBox(42),
+                                             new StringDataBox("00025", 5), new FloatDataBox(2.5f));
+        List<String> columns = Arrays.asList("bool", "int", "string", "float");
+
+        for (int i = 0; i < columns.size(); i++) {
+            for (QueryPlan.PredicateOperator operator : QueryPlan.PredicateOperator.values()) {
+                QueryOperator select = new SelectOperator(scan, columns.get(i), operator, values.get(i));
+                List<Record> expected = toList(select.iterator());
+                assertEquals(columns.get(i) + " " + operator, expected,
+                             toList(RecordBatch.toRecords(select.batchIterator())));
+            }
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testProjectBatches() throws QueryPlanException, DatabaseException, IOException {
+        Database.Transaction transaction = createTable();
+        QueryOperator scan = new SequentialScanOperator(transaction, "table");
+        QueryOperator select = new SelectOperator(scan, "int", QueryPlan.PredicateOperator.LESS_THAN,
+                                                  new IntDataBox(10));
+        QueryOperator project = new ProjectOperator(select, Arrays.asList("float", "int"));
+
+        List<Record> expected = toList(project.iterator());
+        assertEquals(200, expected.size());
+        assertEquals(expected, toList(RecordBatch.toRecords(project.batchIterator())));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testRecordAdapters() throws QueryPlanException {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            records.add(TestUtils.createRecordWithAllTypesWithValue(i));
+        }
+        TestSourceOperator sourceOperator = new TestSourceOperator(records,
+                TestUtils.createSchemaWithAllTypes());
+
+        Iterator<RecordBatch> batches = RecordBatch.fromRecords(sourceOperator.iterator(),
+                                        sourceOperator.getOutputSchema());
+        List<Integer> batchSizes = new ArrayList<>();
+        List<Record> output = new ArrayList<>();
+        while (batches.hasNext()) {
+            RecordBatch batch = batches.next();
+            batchSizes.add(batch.getNumSelected());
+            for (int i = 0; i < batch.getNumSelected(); i++) {
+                output.add(batch.getRecord(batch.getSelection()[i]));
+            }
+        }
+        assertEquals(Arrays.asList(1024, 1024, 452), batchSizes);
+        assertEquals(records, output);
+    }
+}
@@ -4,6 +4,7 @@ import edu.berkeley.cs186.database.Database;
 import edu.berkeley.cs186.database.TimeoutScaling;
 import edu.berkeley.cs186.database.categories.*;
 import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.concurrency.DummyLockManager;
 import edu.berkeley.cs186.database.io.Page;
 import org.junit.Ignore;
 import org.junit.Rule;
@@ -247,4 +248,32 @@ public class TestSortOperator {
 
     }
 
+    @Test
+    @Category(PublicTests.class)
+    public void testSortParallel() throws QueryPlanException, DatabaseException, IOException {
+        // 40 pages of records, sorted by 4 workers with 2 buffers each.
+        File tempDir = tempFolder.newFolder("sortTest");
+        Database d = new Database(tempDir.getAbsolutePath(), 8, new DummyLockManager(), 4);
+        Database.Transaction transaction = d.beginTransaction();
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "table");
+        List<Record> records = new ArrayList<>();
+        List<Record> recordsToShuffle = new ArrayList<>();
+        for (int i = 0; i < 288 * 40; i++) {
+            Record r = TestUtils.createRecordWithAllTypesWithValue(i);
+            records.add(r);
+            recordsToShuffle.add(r);
+        }
+        Collections.shuffle(recordsToShuffle, new Random(42));
+        transaction.appendRecords("table", recordsToShuffle);
+        SortOperator s = new SortOperator(transaction, "table", new SortRecordComparator(1));
+        String sortedTableName = s.sort();
+        Iterator<Record> iter = transaction.getRecordIterator(sortedTableName);
+        int i = 0;
+        while (iter.hasNext()) {
+            assertEquals(records.get(i), iter.next());
+            i++;
+        }
+        assertTrue(i == 288 * 40);
+    }
+
 }
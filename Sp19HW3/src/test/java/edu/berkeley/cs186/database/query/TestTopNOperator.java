@@ -0,0 +1,167 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.TimeoutScaling;
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.concurrency.DummyLockManager;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@Category(HW3Tests.class)
+public class TestTopNOperator {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // 10 second max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (10000 * TimeoutScaling.factor)));
+
+    private List<Record> records;
+
+    /**
+     * Creates a database with a table named "table" of numRecords records in
+     * a random order, whose int column holds i % numInts and whose string
+     * column holds i for the ith record. The records are kept in this.records
+     * in the order they were added.
+     */
+    private Database.Transaction createTable(int numMemoryPages, int numRecords,
+            int numInts) throws DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("topNTest");
+        Database db = new Database(tempDir.getAbsolutePath(), numMemoryPages, new DummyLockManager(), 4);
+        Database.Transaction transaction = db.beginTransaction();
+        transaction.createTable(new Schema(Arrays.asList("int", "string"),
+                                           Arrays.asList(Type.intType(), Type.stringType(100))), "table");
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < numRecords; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(186));
+        this.records = new ArrayList<>();
+        for (int i : order) {
+            this.records.add(new Record(Arrays.asList(new IntDataBox(i % numInts),
+                                        new StringDataBox(String.format("%05d", i), 100))));
+        }
+        transaction.appendRecords("table", this.records);
+        return transaction;
+    }
+
+    private static List<Record> toList(Iterator<Record> records) {
+        List<Record> list = new ArrayList<>();
+        while (records.hasNext()) {
+            list.add(records.next());
+        }
+        return list;
+    }
+
+    private List<Record> expected(boolean ascending, int limit) {
+        Comparator<Record> comparator = Comparator.comparing(r -> r.getValues().get(0));
+        List<Record> sorted = new ArrayList<>(this.records);
+        // List.sort is stable, as TopNOperator is.
+        sorted.sort(ascending ? comparator : comparator.reversed());
+        return sorted.subList(0, Math.min(limit, sorted.size()));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testTopNAscending() throws QueryPlanException, DatabaseException, IOException {
+        Database.Transaction transaction = createTable(5, 1000, 37);
+        QueryOperator scan = new SequentialScanOperator(transaction, "table");
+        QueryOperator topN = new TopNOperator(scan, transaction, "int", true, 50);
+        assertEquals(expected(true, 50), toList(topN.iterator()));
+        assertEquals(50, topN.getStats().getNumRecords());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testTopNDescending() throws QueryPlanException, DatabaseException, IOException {
+        Database.Transaction transaction = createTable(5, 1000, 37);
+        QueryOperator scan = new SequentialScanOperator(transaction, "table");
+        QueryOperator topN = new TopNOperator(scan, transaction, "int", false, 50);
+        assertEquals(expected(false, 50), toList(topN.iterator()));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testTopNLimitLargerThanSource() throws QueryPlanException, DatabaseException, IOException {
+        Database.Transaction transaction = createTable(5, 100, 7);
+        QueryOperator scan = new SequentialScanOperator(transaction, "table");
+        assertEquals(expected(true, 100), toList(new TopNOperator(scan, transaction, "int", true, 500).iterator()));
+        assertFalse(new TopNOperator(scan, transaction, "int", true, 0).iterator().hasNext());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testOrderByWithoutLimit() throws QueryPlanException, DatabaseException, IOException {
+        Database.Transaction transaction = createTable(3, 1000, 1000);
+        QueryOperator scan = new SequentialScanOperator(transaction, "table");
+        QueryOperator topN = new TopNOperator(scan, transaction, "int", false, TopNOperator.NO_LIMIT);
+        assertEquals(expected(false, 1000), toList(topN.iterator()));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testLimit() throws QueryPlanException, DatabaseException, IOException {
+        Database.Transaction transaction = createTable(5, 1000, 37);
+        QueryOperator scan = new SequentialScanOperator(transaction, "table");
+        assertEquals(this.records.subList(0, 300), toList(new LimitOperator(scan, 300).iterator()));
+        assertEquals(this.records.subList(0, 300),
+                     toList(RecordBatch.toRecords(new LimitOperator(scan, 300).batchIterator())));
+        assertFalse(new LimitOperator(scan, 0).iterator().hasNext());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testQueryPlanOrderByLimit() throws QueryPlanException, DatabaseException, IOException {
+        Database.Transaction transaction = createTable(5, 1000, 37);
+        QueryPlan query = transaction.query("table");
+        query.project(Collections.singletonList("string"));
+        query.orderBy("int", true);
+        query.limit(10);
+        List<Record> results = toList(query.execute());
+
+        // The order by column need not be projected, and the top 10 are
+        // found before projecting.
+        List<Record> expected = new ArrayList<>();
+        for (Record record : expected(true, 10)) {
+            expected.add(new Record(Collections.singletonList(record.getValues().get(1))));
+        }
+        assertEquals(expected, results);
+        QueryOperator finalOperator = query.getFinalOperator();
+        assertTrue(finalOperator.isProject());
+        assertEquals(QueryOperator.OperatorType.TOPN, finalOperator.getSource().getType());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testQueryPlanLimit() throws QueryPlanException, DatabaseException, IOException {
+        Database.Transaction transaction = createTable(5, 1000, 37);
+        QueryPlan query = transaction.query("table");
+        query.limit(5);
+        assertEquals(this.records.subList(0, 5), toList(query.execute()));
+        assertEquals(QueryOperator.OperatorType.LIMIT, query.getFinalOperator().getType());
+
+        try {
+            query.limit(6);
+            fail();
+        } catch (QueryPlanException e) {
+            // Only one limit per query.
+        }
+    }
+}
@@ -141,6 +141,32 @@ public class TestTable {
         }
     }
 
+    @Test
+    @Category(PublicTests.class)
+    public void testAppendRecords() throws DatabaseException {
+        // Two and a half pages of records, with the last page partly full.
+        int numRecords = table.getNumRecordsPerPage() * 5 / 2 + 3;
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < numRecords; ++i) {
+            records.add(createRecordWithAllTypes(i));
+        }
+        table.appendRecords(null, records);
+        assertEquals(numRecords, table.getNumRecords());
+        assertEquals(3, table.getNumDataPages());
+
+        Iterator<Record> iter = table.iterator(null);
+        for (int i = 0; i < numRecords; ++i) {
+            assertTrue(iter.hasNext());
+            assertEquals(records.get(i), iter.next());
+        }
+        assertFalse(iter.hasNext());
+
+        // The free slots of the last page are filled by addRecord.
+        RecordId rid = table.addRecord(null, createRecordWithAllTypes(numRecords).getValues());
+        assertEquals(3, table.getNumDataPages());
+        assertEquals(numRecords % table.getNumRecordsPerPage(), rid.getEntryNum());
+    }
+
     @Test
     @Category(SystemTests.class)
     public void testSingleDelete() throws DatabaseException {
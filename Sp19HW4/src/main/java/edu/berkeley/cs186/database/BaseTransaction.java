@@ -2,6 +2,7 @@ package edu.berkeley.cs186.database;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import edu.berkeley.cs186.database.common.BacktrackingIterator;
 import edu.berkeley.cs186.database.databox.DataBox;
@@ -156,6 +157,12 @@ public abstract class BaseTransaction implements AutoCloseable {
 
     public abstract void deleteTempTable(String tempTableName);
 
+    /**
+     * Returns the pool that work done for this transaction, such as building
+     * statistics, is split across, or null if it runs on the calling thread.
+     */
+    public abstract ForkJoinPool getWorkerPool();
+
     public abstract void block();
 
     public abstract void unblock();
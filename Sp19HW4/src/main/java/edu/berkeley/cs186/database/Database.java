@@ -5,6 +5,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -16,10 +17,14 @@ import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.index.BPlusTree;
 import edu.berkeley.cs186.database.index.BPlusTreeException;
 import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.query.CostModel;
+import edu.berkeley.cs186.database.query.PlanCache;
 import edu.berkeley.cs186.database.query.QueryPlan;
 import edu.berkeley.cs186.database.query.QueryPlanException;
 import edu.berkeley.cs186.database.query.SortOperator;
+import edu.berkeley.cs186.database.table.FilteredRecordIterator;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordFilter;
 import edu.berkeley.cs186.database.table.RecordId;
 import edu.berkeley.cs186.database.table.RecordIterator;
 import edu.berkeley.cs186.database.table.Schema;
@@ -36,6 +41,10 @@ public class Database {
     private String fileDir;
     private LockManager lockManager;
     private int numMemoryPages;
+    private PlanCache planCache;
+    private CostModel costModel;
+    private int parallelism;
+    private ForkJoinPool workerPool;
 
     /**
      * Creates a new database with locking disabled.
@@ -59,7 +68,7 @@ public class Database {
     }
 
     /**
-     * Creates a new database.
+     * Creates a new database, which builds statistics on a single thread.
      *
      * @param fileDir the directory to put the table files in
      * @param numMemoryPages the number of pages of memory Database Operations should use when executing Queries
@@ -67,14 +76,31 @@ public class Database {
      * @throws DatabaseException
      */
     public Database(String fileDir, int numMemoryPages, LockManager lockManager)
+    throws DatabaseException {
+        this(fileDir, numMemoryPages, lockManager, 1);
+    }
+
+    /**
+     * Creates a new database.
+     *
+     * @param fileDir the directory to put the table files in
+     * @param numMemoryPages the number of pages of memory Database Operations should use when executing Queries
+     * @param lockManager the lock manager
+     * @param parallelism the most worker threads that statistics are built on at once, or 1 to
+     *                    build them on the thread that asks for them
+     * @throws DatabaseException
+     */
+    public Database(String fileDir, int numMemoryPages, LockManager lockManager, int parallelism)
     throws DatabaseException {
         this.numMemoryPages = numMemoryPages;
+        this.parallelism = Math.max(1, parallelism);
         this.fileDir = fileDir;
         numTransactions = 0;
         tableLookup = new ConcurrentHashMap<>();
         indexLookup = new ConcurrentHashMap<>();
         tableIndices = new ConcurrentHashMap<>();
         activeTransactions = new ConcurrentHashMap<>();
+        planCache = new PlanCache();
 
         File dir = new File(fileDir);
         this.lockManager = lockManager;
@@ -82,6 +108,7 @@ public class Database {
         if (!dir.exists()) {
             dir.mkdirs();
         }
+        costModel = CostModel.load(Paths.get(fileDir, CostModel.FILENAME).toString());
 
         File[] files = dir.listFiles();
 
@@ -132,6 +159,21 @@ public class Database {
             this.indexLookup.clear();
             this.tableIndices.clear();
         }
+        if (this.workerPool != null) {
+            this.workerPool.shutdownNow();
+            this.workerPool = null;
+        }
+    }
+
+    /**
+     * Returns the pool that statistics are built on, which is created the
+     * first time it is needed.
+     */
+    private synchronized ForkJoinPool getWorkerPool() {
+        if (this.workerPool == null) {
+            this.workerPool = new ForkJoinPool(this.parallelism);
+        }
+        return this.workerPool;
     }
 
     public Table getTable(String tableName) {
@@ -271,6 +313,9 @@ public class Database {
                     throw new DatabaseException(e.getMessage());
                 }
             }
+
+            // Cached plans may be able to use the new indices.
+            Database.this.planCache.clear();
         }
 
         /**
@@ -284,11 +329,13 @@ public class Database {
                 return false;
             }
 
-            Database.this.tableLookup.get(tableName).close();
+            Table table = Database.this.tableLookup.get(tableName);
+            table.close();
             Database.this.tableLookup.remove(tableName);
 
             File f = new File(fileDir + tableName + Table.FILENAME_EXTENSION);
             f.delete();
+            new File(Table.getStatsFilename(table.getFilename())).delete();
 
             Iterator<String> indices = Database.this.tableIndices.get(tableName).iterator();
             while (indices.hasNext()) {
@@ -302,6 +349,9 @@ public class Database {
             }
             Database.this.tableIndices.remove(tableName);
 
+            // Cached plans may scan the deleted indices.
+            Database.this.planCache.clear();
+
             return true;
         }
 
@@ -363,8 +413,9 @@ public class Database {
 
             Path path = Paths.get(Database.this.fileDir, "temp", tempTableName + Table.FILENAME_EXTENSION);
             LockContext lockContext = lockManager.orphanContext("temp-" + tempTableName);
-            this.tempTables.put(tempTableName, newTable(tempTableName, schema, path.toString(), lockContext,
-                                this));
+            Table table = newTable(tempTableName, schema, path.toString(), lockContext, this);
+            table.setTemporary();
+            this.tempTables.put(tempTableName, table);
         }
 
         public boolean indexExists(String tableName, String columnName) {
@@ -399,6 +450,15 @@ public class Database {
             return new RecordIterator(this, tab, index.getSecond().scanGreaterEqual(this, startValue));
         }
 
+        public Iterator<Record> sortedScanFrom(String tableName, String columnName,
+                                               DataBox startValue,
+                                               RecordFilter filter) throws DatabaseException {
+            Table tab = getTable(tableName);
+            Pair<String, BPlusTree> index = resolveIndexFromName(tableName, columnName);
+            return new FilteredRecordIterator(this, tab, index.getSecond().scanGreaterEqual(this, startValue),
+                                              filter);
+        }
+
         public Iterator<Record> lookupKey(String tableName, String columnName,
                                           DataBox key) throws DatabaseException {
             Table tab = getTable(tableName);
@@ -406,6 +466,13 @@ public class Database {
             return new RecordIterator(this, tab, index.getSecond().scanEqual(this, key));
         }
 
+        public Iterator<Record> lookupKey(String tableName, String columnName,
+                                          DataBox key, RecordFilter filter) throws DatabaseException {
+            Table tab = getTable(tableName);
+            Pair<String, BPlusTree> index = resolveIndexFromName(tableName, columnName);
+            return new FilteredRecordIterator(this, tab, index.getSecond().scanEqual(this, key), filter);
+        }
+
         public boolean contains(String tableName, String columnName, DataBox key) throws DatabaseException {
             Pair<String, BPlusTree> index = resolveIndexFromName(tableName, columnName);
             return index.getSecond().get(this, key).isPresent();
@@ -466,6 +533,16 @@ public class Database {
             return getTable(tableName).iterator(this);
         }
 
+        /**
+         * Returns an iterator over the records of the table that filter
+         * matches, without decoding the others.
+         */
+        public Iterator<Record> getRecordIterator(String tableName,
+                RecordFilter filter) throws DatabaseException {
+            assert(this.active);
+            return getTable(tableName).iterator(this, filter);
+        }
+
         public RecordId updateRecord(String tableName, List<DataBox> values,
                                      RecordId rid)  throws DatabaseException {
             return runUpdateRecord(tableName, values, rid);
@@ -548,6 +625,32 @@ public class Database {
             return getTable(tableName).getStats();
         }
 
+        /**
+         * Returns the cache of the plans that QueryPlan.executeOptimal has
+         * chosen, which is shared by every transaction on this database.
+         */
+        public PlanCache getPlanCache() {
+            return Database.this.planCache;
+        }
+
+        /**
+         * Returns the coefficients that the optimizer scales the estimated IO
+         * costs of operators by, loaded from CostModel.FILENAME in the directory
+         * of this database when it was opened.
+         */
+        public CostModel getCostModel() {
+            return Database.this.costModel;
+        }
+
+        /**
+         * Returns the pool that statistics are built on, or null if the
+         * database was opened with a parallelism of 1.
+         */
+        public ForkJoinPool getWorkerPool() {
+            assert(this.active);
+            return Database.this.parallelism > 1 ? Database.this.getWorkerPool() : null;
+        }
+
         public int getNumDataPages(String tableName) throws DatabaseException {
             assert(this.active);
             return getTable(tableName).getNumDataPages();
@@ -39,6 +39,7 @@ public class PageAllocator implements Closeable {
     private static LRUCache<Long, Page> pageLRU = new LRUCache<>(cacheSize);
     private static AtomicLong numIOs = new AtomicLong(0);
     private static AtomicLong cacheMisses = new AtomicLong(0);
+    private static AtomicLong numPageAllocations = new AtomicLong(0);
 
     private LockContext lockContext;
     private Page masterPage;
@@ -168,6 +169,7 @@ public class PageAllocator implements Closeable {
         int pageNum = headerIndex * Page.pageSize + pageIndex;
         fetchPage(transaction, pageNum).wipe(transaction);
         this.numPages += 1;
+        numPageAllocations.getAndIncrement();
         if (pageCounts[headerIndex] == 0) {
             this.numUsedHeaderPages += 1;
         }
@@ -362,6 +364,14 @@ public class PageAllocator implements Closeable {
         return PageAllocator.cacheMisses.get();
     }
 
+    /**
+     * Returns the number of pages allocated by every PageAllocator, which while
+     * a query runs is the number of pages it writes to temporary tables.
+     */
+    public synchronized static long getNumPageAllocations() {
+        return PageAllocator.numPageAllocations.get();
+    }
+
     private synchronized long translatePageNum(int pageNum) {
         return (((long) this.allocID) << 32) | (((long) pageNum) & 0xFFFFFFFFL);
     }
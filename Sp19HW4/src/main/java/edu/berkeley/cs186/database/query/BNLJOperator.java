@@ -4,9 +4,6 @@ import java.util.*;
 
 import edu.berkeley.cs186.database.Database;
 import edu.berkeley.cs186.database.DatabaseException;
-import edu.berkeley.cs186.database.common.BacktrackingIterator;
-import edu.berkeley.cs186.database.databox.DataBox;
-import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.table.Record;
 
 public class BNLJOperator extends JoinOperator {
@@ -26,8 +23,12 @@ public class BNLJOperator extends JoinOperator {
         this.cost = this.estimateIOCost();
     }
 
+    /**
+     * BNLJ: Block Nested Loop Join, with blocks of all but two pages of memory:
+     * one for the page of the right input being scanned and one for output.
+     */
     public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
-        return new BNLJIterator();
+        return new BlockNestedLoopIterator(numBuffers - 2);
     }
 
     public int estimateIOCost() {
@@ -40,53 +41,8 @@ public class BNLJOperator extends JoinOperator {
 
         int numRightPages = getRightSource().getStats().getNumPages();
 
-        return ((int) Math.ceil((double) numLeftPages / (double) usableBuffers)) * numRightPages +
-               numLeftPages;
-
-    }
-
-    /**
-     * BNLJ: Block Nested Loop Join
-     *  See lecture slides.
-     *
-     * An implementation of Iterator that provides an iterator interface for this operator.
-     *
-     * Before proceeding, you should read and understand SNLJOperator.java
-     *    You can find it in the same directory as this file.
-     *
-     * Word of advice: try to decompose the problem into distinguishable sub-problems.
-     *    This means you'll probably want to add more methods than those given (Once again,
-     *    SNLJOperator.java might prove to be a useful reference).
-     */
-
-    private class BNLJIterator extends JoinIterator {
-        public BNLJIterator() throws QueryPlanException, DatabaseException {
-            super();
-            return;
-        }
-
-        /**
-         * Checks if there are more record(s) to yield
-         *
-         * @return true if this iterator has another record to yield, otherwise false
-         */
-        public boolean hasNext() {
-            return false;
-        }
-
-        /**
-         * Yields the next record of this iterator.
-         *
-         * @return the next Record
-         * @throws NoSuchElementException if there are no more Records to yield
-         */
-        public Record next() {
-            throw new NoSuchElementException();
-        }
-
-        public void remove() {
-            throw new UnsupportedOperationException();
-        }
+        return this.scaleIOCost(((int) Math.ceil((double) numLeftPages / (double) usableBuffers)) *
+                                numRightPages + numLeftPages);
 
     }
 }
@@ -0,0 +1,226 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.RecordFilter;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+/**
+ * A CompiledPredicate is a conjunction of SELECT predicates that is evaluated
+ * on the bytes of a record, so that a scan only decodes the records that
+ * satisfy all of them. Each predicate compares the bytes of its column, at the
+ * offset the Schema puts it at, with its value, without creating a DataBox.
+ *
+ * The predicates are evaluated in ascending order of (selectivity - 1) / cost,
+ * so that a predicate that rejects many records and is cheap to evaluate is
+ * evaluated first: an int comparison that keeps 1% of the records comes before
+ * one that keeps half of them, and both come before a string comparison that
+ * keeps half of them.
+ */
+class CompiledPredicate implements RecordFilter {
+    private Term[] terms;
+
+    private CompiledPredicate(Term[] terms) {
+        this.terms = terms;
+    }
+
+    /**
+     * Compiles the conjunction of the predicates columns[i] operators[i]
+     * values[i] on records of the given schema, using stats to estimate their
+     * selectivities.
+     *
+     * @return the compiled predicate, or null if a value is not of the type of
+     * its column, in which case its comparison is left to a SelectOperator
+     */
+    static CompiledPredicate compile(Schema schema,
+                                     TableStats stats,
+                                     List<Integer> columns,
+                                     List<QueryPlan.PredicateOperator> operators,
+                                     List<DataBox> values) {
+        List<Type> types = schema.getFieldTypes();
+        int[] offsets = new int[types.size()];
+        for (int i = 1; i < types.size(); i++) {
+            offsets[i] = offsets[i - 1] + types.get(i - 1).getSizeInBytes();
+        }
+
+        List<Term> terms = new ArrayList<>();
+        for (int i = 0; i < columns.size(); i++) {
+            int column = columns.get(i);
+            Type type = types.get(column);
+            DataBox value = values.get(i);
+            if (value.type().getTypeId() != type.getTypeId()) {
+                return null;
+            }
+
+            Term term;
+            switch (type.getTypeId()) {
+            case BOOL:
+                term = new BoolTerm(value.getBool());
+                break;
+            case INT:
+                term = new IntTerm(value.getInt());
+                break;
+            case FLOAT:
+                term = new FloatTerm(value.getFloat());
+                break;
+            case STRING:
+                term = new StringTerm(value.toBytes(), type.getSizeInBytes());
+                break;
+            default:
+                return null;
+            }
+            term.offset = offsets[column];
+            term.operator = operators.get(i);
+
+            float selectivity = 1.0f;
+            if (stats != null && column < stats.getHistograms().size()) {
+                selectivity = stats.getHistograms().get(column).computeReductionFactor(term.operator, value);
+                if (Float.isNaN(selectivity)) {
+                    selectivity = 1.0f;
+                }
+            }
+            term.rank = (selectivity - 1.0f) / term.cost();
+            terms.add(term);
+        }
+
+        terms.sort((x, y) -> Float.compare(x.rank, y.rank));
+        return new CompiledPredicate(terms.toArray(new Term[0]));
+    }
+
+    public boolean matches(Buffer buf, int offset) {
+        for (Term term : this.terms) {
+            if (!term.matches(buf, offset)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A single predicate: a comparison of the bytes of a column with a value.
+     */
+    private abstract static class Term {
+        int offset;
+        QueryPlan.PredicateOperator operator;
+        float rank;
+
+        /**
+         * Compares the column of the record whose bytes start at recordOffset
+         * with the value, like DataBox.compareTo.
+         */
+        abstract int compare(Buffer buf, int recordOffset);
+
+        /** The cost of a comparison, relative to that of an int comparison. */
+        float cost() {
+            return 1.0f;
+        }
+
+        boolean matches(Buffer buf, int recordOffset) {
+            int c = this.compare(buf, recordOffset);
+            switch (this.operator) {
+            case EQUALS:
+                return c == 0;
+            case NOT_EQUALS:
+                return c != 0;
+            case LESS_THAN:
+                return c < 0;
+            case LESS_THAN_EQUALS:
+                return c <= 0;
+            case GREATER_THAN:
+                return c > 0;
+            case GREATER_THAN_EQUALS:
+                return c >= 0;
+            default:
+                return false;
+            }
+        }
+    }
+
+    private static class BoolTerm extends Term {
+        private boolean value;
+
+        BoolTerm(boolean value) {
+            this.value = value;
+        }
+
+        int compare(Buffer buf, int recordOffset) {
+            return Boolean.compare(buf.get(recordOffset + this.offset) == 1, this.value);
+        }
+    }
+
+    private static class IntTerm extends Term {
+        private int value;
+
+        IntTerm(int value) {
+            this.value = value;
+        }
+
+        int compare(Buffer buf, int recordOffset) {
+            return Integer.compare(buf.getInt(recordOffset + this.offset), this.value);
+        }
+    }
+
+    private static class FloatTerm extends Term {
+        private float value;
+
+        FloatTerm(float value) {
+            this.value = value;
+        }
+
+        int compare(Buffer buf, int recordOffset) {
+            return Float.compare(buf.getFloat(recordOffset + this.offset), this.value);
+        }
+
+        /**
+         * FloatDataBox.equals compares with ==, under which 0.0 equals -0.0
+         * and NaN equals nothing, unlike Float.compare, so EQUALS and
+         * NOT_EQUALS do too.
+         */
+        boolean matches(Buffer buf, int recordOffset) {
+            switch (this.operator) {
+            case EQUALS:
+                return buf.getFloat(recordOffset + this.offset) == this.value;
+            case NOT_EQUALS:
+                return buf.getFloat(recordOffset + this.offset) != this.value;
+            default:
+                return super.matches(buf, recordOffset);
+            }
+        }
+    }
+
+    /**
+     * Strings are made of ASCII characters (see StringDataBox), so comparing
+     * their bytes compares them as String.compareTo would. The bytes are read
+     * one at a time, up to the first that differs.
+     */
+    private static class StringTerm extends Term {
+        private byte[] value;
+        private int size;
+
+        StringTerm(byte[] value, int size) {
+            this.value = value;
+            this.size = size;
+        }
+
+        int compare(Buffer buf, int recordOffset) {
+            int start = recordOffset + this.offset;
+            int n = Math.min(this.size, this.value.length);
+            for (int i = 0; i < n; i++) {
+                byte b = buf.get(start + i);
+                if (b != this.value[i]) {
+                    return b - this.value[i];
+                }
+            }
+            return this.size - this.value.length;
+        }
+
+        float cost() {
+            return 1.0f + this.size / 4.0f;
+        }
+    }
+}
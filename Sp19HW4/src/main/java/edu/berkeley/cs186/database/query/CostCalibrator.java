@@ -0,0 +1,310 @@
+package edu.berkeley.cs186.database.query;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+
+/**
+ * A CostCalibrator fits the coefficients of a CostModel to measured runs. It
+ * generates tables of several sizes, runs sequential scans, index scans and
+ * every type of join over them with profiling enabled, and compares the time
+ * each run took with the IO cost the optimizer estimated for it.
+ *
+ * Times are converted into pages: the unit is the time a sequential scan takes
+ * per page it is estimated to read, so SEQSCAN keeps the coefficient 1 and the
+ * coefficient of every other kind of operator is the least squares fit of
+ *
+ *   time / (time per sequentially scanned page) = coefficient * estimate
+ *
+ * over its runs. A kind of operator whose runs fail or do not produce the
+ * records they should (such as a join whose iterator is left to be
+ * implemented) is not fitted, and keeps the coefficient it had.
+ *
+ * Usage: java edu.berkeley.cs186.database.query.CostCalibrator <database directory>
+ * calibrates the database in that directory, whose tables are left alone, and
+ * saves the coefficients to CostModel.FILENAME in it, for the next time the
+ * database is opened.
+ */
+public class CostCalibrator {
+    private static final String TABLE_PREFIX = "calibration_";
+    // Each run is timed this many times, and the fastest time is kept.
+    private static final int REPEATS = 3;
+
+    private Database database;
+    private int[] tableSizes;
+    private List<Measurement> measurements;
+    private Map<String, String> skipped;
+
+    /**
+     * @param database the database to calibrate
+     * @param tableSizes the numbers of records of the generated tables
+     */
+    public CostCalibrator(Database database, int... tableSizes) {
+        this.database = database;
+        this.tableSizes = tableSizes;
+        this.measurements = new ArrayList<>();
+        this.skipped = new LinkedHashMap<>();
+    }
+
+    /**
+     * Generates the tables, runs every query of the suite over them, fits the
+     * coefficients and sets them on the CostModel of the database, clearing its
+     * PlanCache. The generated tables are deleted afterwards.
+     *
+     * @return the CostModel of the database
+     */
+    public CostModel calibrate() throws DatabaseException, QueryPlanException {
+        this.measurements.clear();
+        this.skipped.clear();
+
+        Database.Transaction transaction = this.database.beginTransaction();
+        try {
+            for (int size : this.tableSizes) {
+                this.createTable(transaction, getTableName("l", size), size);
+                this.createTable(transaction, getTableName("r", size), size);
+            }
+            // The first round is not measured, so that it is not the one in
+            // which the JVM compiles the code of the operators.
+            this.runSuite(transaction, false);
+            this.runSuite(transaction, true);
+
+            CostModel costModel = transaction.getCostModel();
+            this.fit(costModel);
+            transaction.getPlanCache().clear();
+            return costModel;
+        } finally {
+            for (int size : this.tableSizes) {
+                transaction.deleteTable(getTableName("l", size));
+                transaction.deleteTable(getTableName("r", size));
+            }
+            transaction.end();
+        }
+    }
+
+    private static String getTableName(String side, int size) {
+        return TABLE_PREFIX + side + size;
+    }
+
+    private void createTable(Database.Transaction transaction, String tableName, int size)
+    throws DatabaseException {
+        Schema schema = new Schema(Arrays.asList("id", "payload"),
+                                   Arrays.asList(Type.intType(), Type.stringType(20)));
+        transaction.createTableWithIndices(schema, tableName, Arrays.asList("id"));
+        for (int i = 0; i < size; i++) {
+            List<DataBox> values = Arrays.asList(new IntDataBox(i),
+                                                 new StringDataBox("payload " + i, 20));
+            transaction.addRecord(tableName, values);
+        }
+        this.database.getTable(tableName).buildStatistics(transaction, 10);
+    }
+
+    private void runSuite(Database.Transaction transaction, boolean record)
+    throws DatabaseException, QueryPlanException {
+        for (int size : this.tableSizes) {
+            String tableName = getTableName("l", size);
+            this.run(new SequentialScanOperator(transaction, tableName), size, record);
+            this.run(new IndexScanOperator(transaction, tableName, "id",
+                                           QueryPlan.PredicateOperator.EQUALS, new IntDataBox(size / 2)),
+                     1, record);
+            this.run(new IndexScanOperator(transaction, tableName, "id",
+                                           QueryPlan.PredicateOperator.GREATER_THAN_EQUALS,
+                                           new IntDataBox(size / 2)),
+                     size - size / 2, record);
+        }
+        for (int leftSize : this.tableSizes) {
+            for (int rightSize : this.tableSizes) {
+                for (JoinOperator.JoinType joinType : JoinOperator.JoinType.values()) {
+                    if (this.skipped.containsKey(joinType.toString())) {
+                        continue;
+                    }
+                    QueryOperator left = new SequentialScanOperator(transaction, getTableName("l", leftSize));
+                    QueryOperator right = new SequentialScanOperator(transaction, getTableName("r", rightSize));
+                    this.run(this.createJoin(joinType, left, right, transaction),
+                             Math.min(leftSize, rightSize), record);
+                }
+            }
+        }
+    }
+
+    private JoinOperator createJoin(JoinOperator.JoinType joinType,
+                                    QueryOperator left,
+                                    QueryOperator right,
+                                    Database.Transaction transaction) throws QueryPlanException, DatabaseException {
+        switch (joinType) {
+        case SNLJ:
+            return new SNLJOperator(left, right, "id", "id", transaction);
+        case PNLJ:
+            return new PNLJOperator(left, right, "id", "id", transaction);
+        case BNLJ:
+            return new BNLJOperator(left, right, "id", "id", transaction);
+        case SORTMERGE:
+            return new SortMergeOperator(left, right, "id", "id", transaction);
+        case GRACEHASH:
+            return new GraceHashOperator(left, right, "id", "id", transaction);
+        default:
+            throw new QueryPlanException("Unknown join type " + joinType + ".");
+        }
+    }
+
+    /**
+     * Runs op REPEATS times, and if record is true, records the fastest run,
+     * unless op does not produce numRecords records, in which case its kind is
+     * skipped.
+     */
+    private void run(QueryOperator op, long numRecords, boolean record) {
+        String kind = getKind(op);
+        if (this.skipped.containsKey(kind)) {
+            return;
+        }
+        OperatorProfile fastest = null;
+        for (int i = 0; i < REPEATS; i++) {
+            op.enableProfiling();
+            try {
+                Iterator<Record> records = op.execute();
+                while (records.hasNext()) {
+                    records.next();
+                }
+            } catch (DatabaseException | QueryPlanException | RuntimeException e) {
+                this.skipped.put(kind, e.toString());
+                return;
+            }
+            OperatorProfile profile = op.getProfile();
+            if (profile.getNumRecords() != numRecords) {
+                this.skipped.put(kind, "expected " + numRecords + " records, got " + profile.getNumRecords());
+                return;
+            }
+            if (fastest == null || profile.getNanos() < fastest.getNanos()) {
+                fastest = profile;
+            }
+        }
+        if (record) {
+            this.measurements.add(new Measurement(kind, op.getIOCost(), fastest));
+        }
+    }
+
+    private static String getKind(QueryOperator op) {
+        if (op.isJoin()) {
+            return ((JoinOperator) op).getJoinType().toString();
+        }
+        return op.getType().toString();
+    }
+
+    /**
+     * Fits the coefficient of every kind of operator that was measured, and
+     * sets it on costModel.
+     */
+    private void fit(CostModel costModel) {
+        String reference = QueryOperator.OperatorType.SEQSCAN.toString();
+        double referenceNanos = 0.0;
+        double referencePages = 0.0;
+        for (Measurement m : this.measurements) {
+            if (m.kind.equals(reference)) {
+                referenceNanos += m.profile.getNanos();
+                referencePages += m.getEstimate(costModel);
+            }
+        }
+        if (referenceNanos == 0.0 || referencePages == 0.0) {
+            return;
+        }
+        double nanosPerPage = referenceNanos / referencePages;
+
+        Map<String, double[]> sums = new LinkedHashMap<>();
+        for (Measurement m : this.measurements) {
+            double estimate = m.getEstimate(costModel);
+            double measured = m.profile.getNanos() / nanosPerPage;
+            double[] s = sums.computeIfAbsent(m.kind, k -> new double[2]);
+            s[0] += estimate * measured;
+            s[1] += estimate * estimate;
+        }
+        for (Map.Entry<String, double[]> e : sums.entrySet()) {
+            double[] s = e.getValue();
+            float coefficient = e.getKey().equals(reference) ? 1.0f : (float) (s[0] / s[1]);
+            if (s[1] > 0.0 && coefficient > 0.0f && !Float.isInfinite(coefficient)) {
+                costModel.setCoefficient(e.getKey(), coefficient);
+            }
+        }
+    }
+
+    /**
+     * Returns, for every kind of operator, the number of runs measured and
+     * their estimated cost, pages fetched, cache misses and time, and the kinds
+     * that were skipped.
+     */
+    public String report() {
+        Map<String, long[]> totals = new LinkedHashMap<>();
+        for (Measurement m : this.measurements) {
+            long[] t = totals.computeIfAbsent(m.kind, k -> new long[5]);
+            t[0]++;
+            t[1] += m.cost;
+            t[2] += m.profile.getNumIOs();
+            t[3] += m.profile.getNumCacheMisses();
+            t[4] += m.profile.getNanos();
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, long[]> e : totals.entrySet()) {
+            long[] t = e.getValue();
+            sb.append(e.getKey()).append(": runs: ").append(t[0])
+            .append(", estimated cost: ").append(t[1])
+            .append(", IOs: ").append(t[2])
+            .append(", cache misses: ").append(t[3])
+            .append(", time: ").append(String.format("%.3f", t[4] / 1e6)).append(" ms\n");
+        }
+        for (Map.Entry<String, String> e : this.skipped.entrySet()) {
+            sb.append(e.getKey()).append(": skipped (").append(e.getValue()).append(")\n");
+        }
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws DatabaseException, QueryPlanException, IOException {
+        if (args.length != 1) {
+            System.err.println("usage: CostCalibrator <database directory>");
+            System.exit(1);
+        }
+        Database database = new Database(args[0]);
+        try {
+            CostCalibrator calibrator = new CostCalibrator(database, 100, 1000, 4000);
+            CostModel costModel = calibrator.calibrate();
+            System.out.print(calibrator.report());
+            String filename = Paths.get(args[0], CostModel.FILENAME).toString();
+            costModel.save(filename);
+            System.out.println("Saved coefficients to " + filename);
+        } finally {
+            database.close();
+        }
+    }
+
+    /**
+     * The fastest of the runs of an operator, with the cost estimated for it.
+     */
+    private static class Measurement {
+        private String kind;
+        private int cost;
+        private OperatorProfile profile;
+
+        private Measurement(String kind, int cost, OperatorProfile profile) {
+            this.kind = kind;
+            this.cost = cost;
+            this.profile = profile;
+        }
+
+        // The estimate of the formula of the operator, without the coefficient
+        // the cost was scaled by.
+        private double getEstimate(CostModel costModel) {
+            return this.cost / (double) costModel.getCoefficient(this.kind);
+        }
+    }
+}
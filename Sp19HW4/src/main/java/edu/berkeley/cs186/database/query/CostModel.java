@@ -0,0 +1,97 @@
+package edu.berkeley.cs186.database.query;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * A CostModel holds a coefficient for each kind of operator, by which the
+ * estimateIOCost of operators of that kind is scaled. The estimates count the
+ * pages a textbook would say an operator reads and writes; the coefficients,
+ * fitted by CostCalibrator from measured runs, make up for what the formulas
+ * leave out, such as the page cache, random versus sequential reads, and the
+ * time spent on the records of each page.
+ *
+ * The kinds of operators are SEQSCAN, INDEXSCAN and the names of the join
+ * types (see JoinOperator.JoinType). A kind without a coefficient has the
+ * coefficient 1, so that a default CostModel leaves every estimate as it is.
+ *
+ * A CostModel is saved to and loaded from a properties file, one line per kind
+ * of operator:
+ *
+ *   BNLJ=1.25
+ *   SEQSCAN=1.0
+ */
+public class CostModel {
+    // The name of the file, in the directory of a Database, that the Database
+    // loads its CostModel from.
+    public static final String FILENAME = "cost_model.properties";
+
+    private Map<String, Float> coefficients;
+
+    public CostModel() {
+        this.coefficients = new HashMap<>();
+    }
+
+    public float getCoefficient(String kind) {
+        return this.coefficients.getOrDefault(kind, 1.0f);
+    }
+
+    public void setCoefficient(String kind, float coefficient) {
+        if (!(coefficient > 0.0f) || Float.isInfinite(coefficient)) {
+            throw new IllegalArgumentException("Invalid coefficient " + coefficient + " for " + kind + ".");
+        }
+        this.coefficients.put(kind, coefficient);
+    }
+
+    /**
+     * Scales cost, as estimated for an operator of the given kind, by the
+     * coefficient of that kind.
+     */
+    public int scale(String kind, int cost) {
+        float coefficient = this.getCoefficient(kind);
+        if (coefficient == 1.0f) {
+            return cost;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, Math.round((double) coefficient * cost));
+    }
+
+    // Serialization /////////////////////////////////////////////////////////////
+    public void save(String filename) throws IOException {
+        Properties properties = new Properties();
+        for (Map.Entry<String, Float> e : new TreeMap<>(this.coefficients).entrySet()) {
+            properties.setProperty(e.getKey(), Float.toString(e.getValue()));
+        }
+        try (OutputStream out = new FileOutputStream(filename)) {
+            properties.store(out, "Cost coefficients fitted by CostCalibrator");
+        }
+    }
+
+    /**
+     * Loads the CostModel saved to filename, or returns a default CostModel if
+     * there is none. Coefficients that cannot be read are left out.
+     */
+    public static CostModel load(String filename) {
+        CostModel costModel = new CostModel();
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(filename)) {
+            properties.load(in);
+        } catch (IOException e) {
+            return costModel;
+        }
+        for (String kind : properties.stringPropertyNames()) {
+            try {
+                costModel.setCoefficient(kind, Float.parseFloat(properties.getProperty(kind)));
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+        }
+        return costModel;
+    }
+}
@@ -0,0 +1,294 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.*;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.TypeId;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.table.Record;
+
+public class GraceHashOperator extends JoinOperator {
+    private int numBuffers;
+
+    public GraceHashOperator(QueryOperator leftSource,
+                             QueryOperator rightSource,
+                             String leftColumnName,
+                             String rightColumnName,
+                             Database.Transaction transaction) throws QueryPlanException, DatabaseException {
+        super(leftSource, rightSource, leftColumnName, rightColumnName, transaction, JoinType.GRACEHASH);
+
+        this.numBuffers = transaction.getNumMemoryPages();
+
+        // for HW4
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        return new GraceHashIterator();
+    }
+
+    /**
+     * Estimates the IO cost of a Grace hash join. Every partitioning pass reads
+     * and writes both inputs once, and a pass divides the smaller input into
+     * numBuffers - 1 partitions. Partitioning stops once the partitions of the
+     * smaller input fit in the numBuffers - 2 pages left for a hash table, and
+     * the final pass reads both inputs once more to build and probe.
+     */
+    public int estimateIOCost() {
+        int numLeftPages = getLeftSource().getStats().getNumPages();
+        int numRightPages = getRightSource().getStats().getNumPages();
+
+        int numPasses = 0;
+        double partitionPages = Math.min(numLeftPages, numRightPages);
+        while (partitionPages > numBuffers - 2) {
+            partitionPages /= numBuffers - 1;
+            numPasses++;
+        }
+
+        return this.scaleIOCost((2 * numPasses + 1) * (numLeftPages + numRightPages));
+    }
+
+    /**
+     * Hashes a join value for the given partitioning pass. Each pass must use
+     * a different hash function, or repartitioning a partition would put all
+     * of its records back into a single partition.
+     */
+    private static int hash(DataBox value, int pass) {
+        int h = joinKey(value).hashCode() ^ (pass * 0x9E3779B9);
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Returns the key that a join value is hashed and looked up by.
+     * FloatDataBoxes compare with ==, so 0.0 and -0.0 are the same join value,
+     * but Float.hashCode tells them apart, so -0.0 is keyed as 0.0.
+     */
+    private static DataBox joinKey(DataBox value) {
+        if (value.type().getTypeId() == TypeId.FLOAT && value.getFloat() == 0.0f) {
+            return new FloatDataBox(0.0f);
+        }
+        return value;
+    }
+
+    /**
+     * A pair of tables holding the left and right records whose join values
+     * hash to the same partition in every pass so far.
+     */
+    private class Partition {
+        String leftTableName;
+        String rightTableName;
+        int pass;
+        boolean splittable;
+
+        Partition(String leftTableName, String rightTableName, int pass, boolean splittable) {
+            this.leftTableName = leftTableName;
+            this.rightTableName = rightTableName;
+            this.pass = pass;
+            this.splittable = splittable;
+        }
+    }
+
+    /**
+     * Grace Hash Join
+     *
+     * Both inputs are hashed on their join column into numBuffers - 1
+     * partitions, each spilled to a temporary table, so that matching records
+     * always end up in partitions with the same number. For each pair of
+     * partitions, the smaller one is then loaded into an in-memory hash table
+     * and the other one is streamed past it.
+     *
+     * A pair whose smaller partition does not fit in memory is partitioned
+     * again with a different hash function. If that does not make it any
+     * smaller, as happens when most of its records share one join value, it is
+     * joined a memory-sized chunk of the smaller partition at a time instead.
+     */
+    private class GraceHashIterator extends JoinIterator {
+        private Deque<Partition> partitions = new ArrayDeque<>();
+
+        // The partition being joined, and which of its sides the hash table is
+        // built from.
+        private Partition partition;
+        private boolean buildLeft;
+        private Iterator<Page> buildPageIterator;
+
+        private Map<DataBox, List<Record>> hashTable;
+        private Iterator<Record> probeIterator;
+        private Record probeRecord;
+        private Iterator<Record> matchIterator = Collections.emptyIterator();
+        private Record nextRecord;
+
+        public GraceHashIterator() throws QueryPlanException, DatabaseException {
+            super();
+            this.partitions.push(new Partition(getLeftTableName(), getRightTableName(), 0, true));
+        }
+
+        /**
+         * Partitions both sides of the given partition with the hash function
+         * of its pass, and queues the resulting pairs that are not empty.
+         */
+        private void repartition(Partition parent) throws DatabaseException {
+            int numPartitions = numBuffers - 1;
+            String[] leftTableNames = this.spill(parent.leftTableName, getLeftColumnIndex(),
+                                                 parent.pass, numPartitions, true);
+            String[] rightTableNames = this.spill(parent.rightTableName, getRightColumnIndex(),
+                                                  parent.pass, numPartitions, false);
+
+            long leftRecords = getTransaction().getNumRecords(parent.leftTableName);
+            long rightRecords = getTransaction().getNumRecords(parent.rightTableName);
+            for (int i = 0; i < numPartitions; i++) {
+                long numLeft = getTransaction().getNumRecords(leftTableNames[i]);
+                long numRight = getTransaction().getNumRecords(rightTableNames[i]);
+                if (numLeft == 0 || numRight == 0) {
+                    continue;
+                }
+                boolean splittable = numLeft < leftRecords || numRight < rightRecords;
+                this.partitions.push(new Partition(leftTableNames[i], rightTableNames[i],
+                                                   parent.pass + 1, splittable));
+            }
+        }
+
+        private String[] spill(String tableName, int columnIndex, int pass, int numPartitions,
+                               boolean left) throws DatabaseException {
+            String[] tableNames = new String[numPartitions];
+            for (int i = 0; i < numPartitions; i++) {
+                tableNames[i] = createTempTable(left ? getLeftSource().getOutputSchema() :
+                                                getRightSource().getOutputSchema());
+            }
+            Iterator<Record> records = getRecordIterator(tableName);
+            while (records.hasNext()) {
+                List<DataBox> values = records.next().getValues();
+                int i = Math.floorMod(hash(values.get(columnIndex), pass), numPartitions);
+                addRecord(tableNames[i], values);
+            }
+            return tableNames;
+        }
+
+        /**
+         * Moves on to the next partition to join, partitioning partitions that
+         * are too large for memory along the way.
+         *
+         * @return false if there are no partitions left
+         */
+        private boolean nextPartition() throws DatabaseException {
+            while (!this.partitions.isEmpty()) {
+                Partition p = this.partitions.pop();
+                int numLeftPages = getTransaction().getNumDataPages(p.leftTableName);
+                int numRightPages = getTransaction().getNumDataPages(p.rightTableName);
+                if (Math.min(numLeftPages, numRightPages) > numBuffers - 2 && p.splittable) {
+                    this.repartition(p);
+                    continue;
+                }
+
+                this.partition = p;
+                this.buildLeft = numLeftPages <= numRightPages;
+                this.buildPageIterator = getPageIterator(this.buildTableName());
+                this.buildPageIterator.next(); // skip the header page
+                return true;
+            }
+            return false;
+        }
+
+        private String buildTableName() {
+            return this.buildLeft ? this.partition.leftTableName : this.partition.rightTableName;
+        }
+
+        private String probeTableName() {
+            return this.buildLeft ? this.partition.rightTableName : this.partition.leftTableName;
+        }
+
+        /**
+         * Builds a hash table over the next chunk of at most numBuffers - 2
+         * pages of the build side of the current partition, and starts a new
+         * scan of its probe side.
+         *
+         * @return false if the build side has no pages left
+         */
+        private boolean nextChunk() throws DatabaseException {
+            if (this.buildPageIterator == null || !this.buildPageIterator.hasNext()) {
+                return false;
+            }
+            int columnIndex = this.buildLeft ? getLeftColumnIndex() : getRightColumnIndex();
+            this.hashTable = new HashMap<>();
+            Iterator<Record> records = getBlockIterator(this.buildTableName(), this.buildPageIterator,
+                                       numBuffers - 2);
+            while (records.hasNext()) {
+                Record record = records.next();
+                DataBox key = joinKey(record.getValues().get(columnIndex));
+                this.hashTable.computeIfAbsent(key, k -> new ArrayList<>()).add(record);
+            }
+            this.probeIterator = getRecordIterator(this.probeTableName());
+            return true;
+        }
+
+        private Record joinRecords(Record leftRecord, Record rightRecord) {
+            List<DataBox> values = new ArrayList<>(leftRecord.getValues());
+            values.addAll(rightRecord.getValues());
+            return new Record(values);
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        public boolean hasNext() {
+            if (this.nextRecord != null) {
+                return true;
+            }
+
+            try {
+                while (true) {
+                    if (this.matchIterator.hasNext()) {
+                        Record match = this.matchIterator.next();
+                        this.nextRecord = this.buildLeft ? joinRecords(match, this.probeRecord) :
+                                          joinRecords(this.probeRecord, match);
+                        return true;
+                    }
+                    if (this.probeIterator != null && this.probeIterator.hasNext()) {
+                        this.probeRecord = this.probeIterator.next();
+                        int columnIndex = this.buildLeft ? getRightColumnIndex() : getLeftColumnIndex();
+                        DataBox key = joinKey(this.probeRecord.getValues().get(columnIndex));
+                        List<Record> matches = this.hashTable.get(key);
+                        if (matches != null) {
+                            this.matchIterator = matches.iterator();
+                        }
+                        continue;
+                    }
+                    if (!this.nextChunk() && !this.nextPartition()) {
+                        return false;
+                    }
+                }
+            } catch (DatabaseException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        public Record next() {
+            if (this.hasNext()) {
+                Record r = this.nextRecord;
+                this.nextRecord = null;
+                return r;
+            }
+            throw new NoSuchElementException();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -6,11 +6,13 @@ import edu.berkeley.cs186.database.concurrency.LockType;
 import edu.berkeley.cs186.database.concurrency.LockUtil;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordFilter;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 import edu.berkeley.cs186.database.table.stats.Histogram;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -60,6 +62,10 @@ public class IndexScanOperator extends QueryOperator {
                "\nvalue: " + this.value;
     }
 
+    public String getTableName() {
+        return this.tableName;
+    }
+
     /**
      * Returns the column name that the index scan is on
      *
@@ -69,6 +75,23 @@ public class IndexScanOperator extends QueryOperator {
         return this.columnName;
     }
 
+    public QueryPlan.PredicateOperator getPredicate() {
+        return this.predicate;
+    }
+
+    public DataBox getValue() {
+        return this.value;
+    }
+
+    /**
+     * Records are yielded in the order of the index, which is sorted on the
+     * column the index is on.
+     */
+    @Override
+    public String getOutputOrder() {
+        return this.getOutputSchema().getFieldNames().get(this.columnIndex);
+    }
+
     /**
      * Estimates the table statistics for the result of executing this query operator.
      *
@@ -119,14 +142,51 @@ public class IndexScanOperator extends QueryOperator {
 
         }
 
-        return (int)(tableStats.getHistograms().get(columnIndex).getCount() +
-                     numIndexPages); //round up and cast to an int
+        // One IO for each matching record, since the index is unclustered.
+        int numMatches = tableStats.copyWithPredicate(this.columnIndex, this.predicate, this.value)
+                         .getNumRecords();
+        return this.transaction.getCostModel().scale(this.getType().toString(),
+                (int)(numMatches + numIndexPages)); //round up and cast to an int
     }
 
     public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
         return new IndexScanIterator();
     }
 
+    /**
+     * An index scan can filter its records on their bytes when the index finds
+     * exactly the records that satisfy its predicate, up to the records equal to
+     * the value for GREATER_THAN, which the filter skips. With LESS_THAN and
+     * LESS_THAN_EQUALS, the scan decodes each record to find where to stop.
+     */
+    @Override
+    boolean canFilter() {
+        return this.predicate == QueryPlan.PredicateOperator.EQUALS ||
+               this.predicate == QueryPlan.PredicateOperator.GREATER_THAN ||
+               this.predicate == QueryPlan.PredicateOperator.GREATER_THAN_EQUALS;
+    }
+
+    @Override
+    protected Iterator<Record> iterator(RecordFilter filter) throws QueryPlanException,
+        DatabaseException {
+        if (this.predicate == QueryPlan.PredicateOperator.EQUALS) {
+            return this.transaction.lookupKey(this.tableName, this.columnName, this.value, filter);
+        }
+        if (this.predicate == QueryPlan.PredicateOperator.GREATER_THAN) {
+            CompiledPredicate bound = CompiledPredicate.compile(this.getOutputSchema(), null,
+                                      Collections.singletonList(this.columnIndex),
+                                      Collections.singletonList(this.predicate),
+                                      Collections.singletonList(this.value));
+            if (bound == null) {
+                throw new QueryPlanException("Cannot compare column " + this.columnName + " with " +
+                                             this.value + ".");
+            }
+            RecordFilter unbounded = filter;
+            filter = (buf, offset) -> bound.matches(buf, offset) && unbounded.matches(buf, offset);
+        }
+        return this.transaction.sortedScanFrom(this.tableName, this.columnName, this.value, filter);
+    }
+
     public Schema computeSchema() throws QueryPlanException {
         try {
             return this.transaction.getFullyQualifiedSchema(this.tableName);
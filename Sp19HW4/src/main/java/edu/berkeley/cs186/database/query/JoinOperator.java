@@ -3,6 +3,7 @@ package edu.berkeley.cs186.database.query;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import edu.berkeley.cs186.database.Database;
 import edu.berkeley.cs186.database.DatabaseException;
@@ -126,6 +127,33 @@ public abstract class JoinOperator extends QueryOperator {
         return r;
     }
 
+    @Override
+    public String toAnalyzedString() {
+        String r = this.analyzedStr();
+        if (this.leftSource != null) {
+            r += "\n" + ("(left)\n" + this.leftSource.toAnalyzedString()).replaceAll("(?m)^", "\t");
+        }
+        if (this.rightSource != null) {
+            if (this.leftSource != null) {
+                r += "\n";
+            }
+            r += "\n" + ("(right)\n" + this.rightSource.toAnalyzedString()).replaceAll("(?m)^", "\t");
+        }
+        return r;
+    }
+
+    @Override
+    protected List<QueryOperator> getSources() {
+        List<QueryOperator> sources = new ArrayList<>();
+        if (this.leftSource != null) {
+            sources.add(this.leftSource);
+        }
+        if (this.rightSource != null) {
+            sources.add(this.rightSource);
+        }
+        return sources;
+    }
+
     /**
      * Estimates the table statistics for the result of executing this query operator.
      *
@@ -229,6 +257,17 @@ public abstract class JoinOperator extends QueryOperator {
         return this.joinType;
     }
 
+    /**
+     * Scales cost, as estimated by the formula of this type of join, by the
+     * coefficient that the CostModel of the database has for it.
+     */
+    protected int scaleIOCost(int cost) {
+        if (this.transaction == null) {
+            return cost;
+        }
+        return this.transaction.getCostModel().scale(this.joinType.toString(), cost);
+    }
+
     /**
      * All iterators for subclasses of JoinOperator should subclass from
      * JoinIterator; JoinIterator handles creating temporary tables out of the left and right
@@ -244,7 +283,7 @@ public abstract class JoinOperator extends QueryOperator {
             } else {
                 this.leftTableName = JoinOperator.this.createTempTable(
                                          JoinOperator.this.getLeftSource().getOutputSchema());
-                Iterator<Record> leftIter = JoinOperator.this.getLeftSource().iterator();
+                Iterator<Record> leftIter = JoinOperator.this.getLeftSource().execute();
                 while (leftIter.hasNext()) {
                     JoinOperator.this.addRecord(this.leftTableName, leftIter.next().getValues());
                 }
@@ -254,7 +293,7 @@ public abstract class JoinOperator extends QueryOperator {
             } else {
                 this.rightTableName = JoinOperator.this.createTempTable(
                                           JoinOperator.this.getRightSource().getOutputSchema());
-                Iterator<Record> rightIter = JoinOperator.this.getRightSource().iterator();
+                Iterator<Record> rightIter = JoinOperator.this.getRightSource().execute();
                 while (rightIter.hasNext()) {
                     JoinOperator.this.addRecord(this.rightTableName, rightIter.next().getValues());
                 }
@@ -269,4 +308,123 @@ public abstract class JoinOperator extends QueryOperator {
             return this.rightTableName;
         }
     }
+
+    /**
+     * A nested loop join iterator that reads the left input a block of at most
+     * blockPages pages at a time, and scans the right input once per block, a
+     * page at a time. Each left record of the block is joined against each page
+     * of the right input in turn.
+     */
+    protected class BlockNestedLoopIterator extends JoinIterator {
+        private int blockPages;
+        private Iterator<Page> leftPageIterator;
+        private Iterator<Page> rightPageIterator;
+        private List<Record> leftBlock = new ArrayList<>();
+        private List<Record> rightPage;
+        private int leftIndex;
+        private int rightIndex;
+        private Record nextRecord;
+
+        public BlockNestedLoopIterator(int blockPages) throws QueryPlanException, DatabaseException {
+            super();
+            this.blockPages = Math.max(1, blockPages);
+            this.leftPageIterator = JoinOperator.this.getPageIterator(this.getLeftTableName());
+            this.leftPageIterator.next(); // skip the header page
+        }
+
+        /**
+         * Reads the records of the next block of the left input, and starts a
+         * new scan of the right input.
+         *
+         * @return false if there are no left records left
+         */
+        private boolean nextLeftBlock() throws DatabaseException {
+            this.leftBlock.clear();
+            while (this.leftBlock.isEmpty()) {
+                if (!this.leftPageIterator.hasNext()) {
+                    return false;
+                }
+                JoinOperator.this.getBlockIterator(this.getLeftTableName(), this.leftPageIterator,
+                                                   this.blockPages)
+                .forEachRemaining(this.leftBlock::add);
+            }
+            this.rightPageIterator = JoinOperator.this.getPageIterator(this.getRightTableName());
+            this.rightPageIterator.next(); // skip the header page
+            this.rightPage = null;
+            return true;
+        }
+
+        /**
+         * Reads the records of the next page of the right input.
+         *
+         * @return false if the right input has no pages left in this scan
+         */
+        private boolean nextRightPage() throws DatabaseException {
+            if (this.rightPageIterator == null || !this.rightPageIterator.hasNext()) {
+                return false;
+            }
+            this.rightPage = new ArrayList<>();
+            JoinOperator.this.getBlockIterator(this.getRightTableName(),
+                                               new Page[] {this.rightPageIterator.next()})
+            .forEachRemaining(this.rightPage::add);
+            this.leftIndex = 0;
+            this.rightIndex = 0;
+            return true;
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        public boolean hasNext() {
+            if (this.nextRecord != null) {
+                return true;
+            }
+
+            try {
+                while (true) {
+                    if (this.rightPage != null) {
+                        for (; this.leftIndex < this.leftBlock.size(); this.leftIndex++, this.rightIndex = 0) {
+                            Record leftRecord = this.leftBlock.get(this.leftIndex);
+                            DataBox leftJoinValue = leftRecord.getValues().get(getLeftColumnIndex());
+                            while (this.rightIndex < this.rightPage.size()) {
+                                Record rightRecord = this.rightPage.get(this.rightIndex++);
+                                if (leftJoinValue.equals(rightRecord.getValues().get(getRightColumnIndex()))) {
+                                    List<DataBox> values = new ArrayList<>(leftRecord.getValues());
+                                    values.addAll(rightRecord.getValues());
+                                    this.nextRecord = new Record(values);
+                                    return true;
+                                }
+                            }
+                        }
+                    }
+                    if (!this.nextRightPage() && !this.nextLeftBlock()) {
+                        return false;
+                    }
+                }
+            } catch (DatabaseException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        public Record next() {
+            if (this.hasNext()) {
+                Record r = this.nextRecord;
+                this.nextRecord = null;
+                return r;
+            }
+            throw new NoSuchElementException();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
@@ -0,0 +1,178 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.Iterator;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.io.PageAllocator;
+import edu.berkeley.cs186.database.table.MarkerRecord;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordFilter;
+
+/**
+ * An OperatorProfile records what a QueryOperator did while it was executed:
+ * the records it produced, and the time spent, pages fetched, cache misses and
+ * pages allocated (for temporary tables) while creating its iterator and
+ * calling hasNext and next on it.
+ *
+ * The time and page counts include those of the operators it pulls records
+ * from; QueryOperator.getExclusiveProfile subtracts them. The page counts come
+ * from the counters that PageAllocator keeps for every table, so they are only
+ * meaningful while no other query runs.
+ */
+public class OperatorProfile {
+    private int numExecutions;
+    private long numRecords;
+    private long nanos;
+    private long numIOs;
+    private long numCacheMisses;
+    private long numPageAllocations;
+
+    // The number of calls into the operator that are under way, so that the
+    // counters are only read around the outermost one.
+    private int depth;
+    private long startNanos;
+    private long startIOs;
+    private long startCacheMisses;
+    private long startPageAllocations;
+
+    OperatorProfile() {}
+
+    private OperatorProfile(OperatorProfile other) {
+        this.numExecutions = other.numExecutions;
+        this.numRecords = other.numRecords;
+        this.nanos = other.nanos;
+        this.numIOs = other.numIOs;
+        this.numCacheMisses = other.numCacheMisses;
+        this.numPageAllocations = other.numPageAllocations;
+    }
+
+    /**
+     * Creates the iterator of op, with filter if it is not null, recording what
+     * it does.
+     */
+    Iterator<Record> execute(QueryOperator op, RecordFilter filter) throws QueryPlanException,
+        DatabaseException {
+        this.numExecutions++;
+        this.start();
+        try {
+            return new ProfiledIterator(filter == null ? op.iterator() : op.iterator(filter));
+        } finally {
+            this.stop();
+        }
+    }
+
+    private void start() {
+        if (this.depth++ == 0) {
+            this.startNanos = System.nanoTime();
+            this.startIOs = PageAllocator.getNumIOs();
+            this.startCacheMisses = PageAllocator.getNumCacheMisses();
+            this.startPageAllocations = PageAllocator.getNumPageAllocations();
+        }
+    }
+
+    private void stop() {
+        if (--this.depth == 0) {
+            this.nanos += System.nanoTime() - this.startNanos;
+            this.numIOs += PageAllocator.getNumIOs() - this.startIOs;
+            this.numCacheMisses += PageAllocator.getNumCacheMisses() - this.startCacheMisses;
+            this.numPageAllocations += PageAllocator.getNumPageAllocations() - this.startPageAllocations;
+        }
+    }
+
+    /**
+     * Returns a copy of this profile without what is recorded in other.
+     */
+    OperatorProfile minus(OperatorProfile other) {
+        OperatorProfile profile = new OperatorProfile(this);
+        profile.nanos -= other.nanos;
+        profile.numIOs -= other.numIOs;
+        profile.numCacheMisses -= other.numCacheMisses;
+        profile.numPageAllocations -= other.numPageAllocations;
+        return profile;
+    }
+
+    /** Returns the number of times the iterator of the operator was created. */
+    public int getNumExecutions() {
+        return this.numExecutions;
+    }
+
+    /** Returns the number of records produced, over every execution. */
+    public long getNumRecords() {
+        return this.numRecords;
+    }
+
+    /** Returns the time spent, in nanoseconds. */
+    public long getNanos() {
+        return this.nanos;
+    }
+
+    /** Returns the number of pages fetched, cached or not. */
+    public long getNumIOs() {
+        return this.numIOs;
+    }
+
+    /** Returns the number of pages fetched that were not cached. */
+    public long getNumCacheMisses() {
+        return this.numCacheMisses;
+    }
+
+    /** Returns the number of pages allocated, for temporary tables. */
+    public long getNumPageAllocations() {
+        return this.numPageAllocations;
+    }
+
+    /**
+     * Returns the time and page counts of this profile, without the records.
+     */
+    public String costString() {
+        return "time: " + String.format("%.3f", this.nanos / 1e6) + " ms" +
+               ", IOs: " + this.numIOs +
+               ", cache misses: " + this.numCacheMisses +
+               ", spilled pages: " + this.numPageAllocations;
+    }
+
+    public String toString() {
+        if (this.numExecutions == 0) {
+            return "never executed";
+        }
+        return "records: " + this.numRecords + ", " + this.costString() +
+               (this.numExecutions > 1 ? ", executions: " + this.numExecutions : "");
+    }
+
+    /**
+     * An iterator that records what the iterator of the operator does.
+     */
+    private class ProfiledIterator implements Iterator<Record> {
+        private Iterator<Record> iterator;
+
+        private ProfiledIterator(Iterator<Record> iterator) {
+            this.iterator = iterator;
+        }
+
+        public boolean hasNext() {
+            OperatorProfile.this.start();
+            try {
+                return this.iterator.hasNext();
+            } finally {
+                OperatorProfile.this.stop();
+            }
+        }
+
+        public Record next() {
+            OperatorProfile.this.start();
+            try {
+                Record record = this.iterator.next();
+                if (record != MarkerRecord.getMarker()) {
+                    OperatorProfile.this.numRecords++;
+                }
+                return record;
+            } finally {
+                OperatorProfile.this.stop();
+            }
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -4,9 +4,6 @@ import java.util.*;
 
 import edu.berkeley.cs186.database.Database;
 import edu.berkeley.cs186.database.DatabaseException;
-import edu.berkeley.cs186.database.common.BacktrackingIterator;
-import edu.berkeley.cs186.database.databox.DataBox;
-import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.table.Record;
 
 public class PNLJOperator extends JoinOperator {
@@ -27,56 +24,22 @@ public class PNLJOperator extends JoinOperator {
         this.cost = this.estimateIOCost();
     }
 
+    /**
+     * PNLJ: Page Nested Loop Join, a block nested loop join whose blocks are a
+     * single page of the left input.
+     */
     public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
-        return new PNLJIterator();
-    }
-
-    public int estimateIOCost() throws QueryPlanException {
-        //does nothing
-        return 0;
+        return new BlockNestedLoopIterator(1);
     }
 
     /**
-     * PNLJ: Page Nested Loop Join
-     *  See lecture slides.
-     *
-     * An implementation of Iterator that provides an iterator interface for this operator.
-     *
-     * Before proceeding, you should read and understand SNLJOperator.java
-     *    You can find it in the same directory as this file.
-     *
-     * Word of advice: try to decompose the problem into distinguishable sub-problems.
-     *    This means you'll probably want to add more methods than those given (Once again,
-     *    SNLJOperator.java might prove to be a useful reference).
+     * Estimates the IO cost of a page nested loop join: the left input is read
+     * once, and the right input once for every page of the left input.
      */
-    private class PNLJIterator extends JoinIterator {
-        public PNLJIterator() throws QueryPlanException, DatabaseException {
-            super();
-            return;
-        }
-
-        /**
-         * Checks if there are more record(s) to yield
-         *
-         * @return true if this iterator has another record to yield, otherwise false
-         */
-        public boolean hasNext() {
-            return false;
-        }
-
-        /**
-         * Yields the next record of this iterator.
-         *
-         * @return the next Record
-         * @throws NoSuchElementException if there are no more Records to yield
-         */
-        public Record next() {
-            throw new NoSuchElementException();
-        }
+    public int estimateIOCost() throws QueryPlanException {
+        int numLeftPages = getLeftSource().getStats().getNumPages();
+        int numRightPages = getRightSource().getStats().getNumPages();
 
-        public void remove() {
-            throw new UnsupportedOperationException();
-        }
+        return this.scaleIOCost(numLeftPages * numRightPages + numLeftPages);
     }
 }
-
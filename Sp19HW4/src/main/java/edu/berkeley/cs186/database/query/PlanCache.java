@@ -0,0 +1,172 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+/**
+ * A PlanCache keeps the join plans that QueryPlan.executeOptimal has chosen,
+ * keyed by the shape of their queries: the tables, the join predicates, and
+ * the columns and operators of the SELECT predicates, but not the values that
+ * the SELECT predicates compare against. A query of the same shape with other
+ * values reuses the plan, so that only the operators of that one plan are
+ * created and estimated again, instead of those of every plan the optimizer
+ * would consider.
+ *
+ * A plan is only reused while the statistics of its tables are close to those
+ * it was chosen with. Each table must have the same TableStats (it has not
+ * been deleted and created again, which is how its indices change), whose
+ * histograms have not been rebuilt, and whose number of records is within
+ * STATS_DRIFT_FRACTION of what it was. Creating or deleting a table with
+ * indices empties the cache.
+ */
+public class PlanCache {
+    // The largest fraction by which the number of records of a table may have
+    // changed for a plan on it to be reused.
+    static final float STATS_DRIFT_FRACTION = 0.1f;
+
+    private Map<String, Entry> entries;
+    private int numHits;
+    private int numMisses;
+
+    public PlanCache() {
+        this.entries = new HashMap<>();
+        this.numHits = 0;
+        this.numMisses = 0;
+    }
+
+    /**
+     * A plan of a query, from which its operators can be created again. A plan
+     * either accesses a single table or joins two plans. The SELECT predicate
+     * that the index scan of an access is on is kept as its index in the SELECT
+     * predicates of the query, so that its value can differ.
+     */
+    static class Plan {
+        // For an access: the table, and the index of the SELECT predicate of its
+        // index scan, or -1 for a sequential scan.
+        String table;
+        int indexSelect;
+
+        // For a join: the type of join, its inputs, and its join columns.
+        JoinOperator.JoinType joinType;
+        Plan left;
+        Plan right;
+        String leftColumn;
+        String rightColumn;
+
+        static Plan access(String table, int indexSelect) {
+            Plan plan = new Plan();
+            plan.table = table;
+            plan.indexSelect = indexSelect;
+            return plan;
+        }
+
+        static Plan join(JoinOperator.JoinType joinType, Plan left, Plan right,
+                         String leftColumn, String rightColumn) {
+            Plan plan = new Plan();
+            plan.joinType = joinType;
+            plan.left = left;
+            plan.right = right;
+            plan.leftColumn = leftColumn;
+            plan.rightColumn = rightColumn;
+            return plan;
+        }
+
+        boolean isJoin() {
+            return this.joinType != null;
+        }
+    }
+
+    /**
+     * The statistics of a table as they were when a plan was chosen.
+     */
+    private static class Snapshot {
+        private TableStats stats;
+        private int numRecords;
+        private int numRefreshes;
+
+        private Snapshot(TableStats stats) {
+            this.stats = stats;
+            this.numRecords = stats.getNumRecords();
+            this.numRefreshes = stats.getNumRefreshes();
+        }
+
+        private boolean isCurrent(TableStats stats) {
+            if (stats != this.stats || stats.getNumRefreshes() != this.numRefreshes) {
+                return false;
+            }
+            int drift = Math.abs(stats.getNumRecords() - this.numRecords);
+            return drift <= STATS_DRIFT_FRACTION * this.numRecords;
+        }
+    }
+
+    private static class Entry {
+        private Plan plan;
+        private Map<String, Snapshot> snapshots;
+
+        private Entry(Plan plan, Map<String, TableStats> stats) {
+            this.plan = plan;
+            this.snapshots = new HashMap<>();
+            for (Map.Entry<String, TableStats> e : stats.entrySet()) {
+                this.snapshots.put(e.getKey(), new Snapshot(e.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Returns the plan kept for queries of the given shape, or null if there is
+     * none or the statistics of its tables have changed too much since, in
+     * which case it is dropped.
+     *
+     * @param shape the shape of the query
+     * @param stats the current TableStats of each table of the query
+     */
+    synchronized Plan get(String shape, Map<String, TableStats> stats) {
+        Entry entry = this.entries.get(shape);
+        if (entry != null) {
+            for (Map.Entry<String, TableStats> e : stats.entrySet()) {
+                Snapshot snapshot = entry.snapshots.get(e.getKey());
+                if (snapshot == null || !snapshot.isCurrent(e.getValue())) {
+                    this.entries.remove(shape);
+                    entry = null;
+                    break;
+                }
+            }
+        }
+        if (entry == null) {
+            this.numMisses++;
+            return null;
+        }
+        this.numHits++;
+        return entry.plan;
+    }
+
+    /**
+     * Keeps plan for queries of the given shape, chosen with the given
+     * TableStats of each table of the query.
+     */
+    synchronized void put(String shape, Plan plan, Map<String, TableStats> stats) {
+        this.entries.put(shape, new Entry(plan, stats));
+    }
+
+    /** Drops every plan. */
+    public synchronized void clear() {
+        this.entries.clear();
+    }
+
+    /** Returns the number of plans kept. */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /** Returns the number of lookups that found a plan to reuse. */
+    public synchronized int getNumHits() {
+        return this.numHits;
+    }
+
+    /** Returns the number of lookups that did not. */
+    public synchronized int getNumMisses() {
+        return this.numMisses;
+    }
+}
@@ -196,7 +196,7 @@ public class ProjectOperator extends QueryOperator {
         private List<DataBox> baseValues;
 
         public ProjectIterator() throws QueryPlanException, DatabaseException {
-            this.sourceIterator = ProjectOperator.this.getSource().iterator();
+            this.sourceIterator = ProjectOperator.this.getSource().execute();
             this.markerRecord = MarkerRecord.getMarker();
             this.nextRecord = null;
             this.prevWasMarker = true;
@@ -1,10 +1,12 @@
 package edu.berkeley.cs186.database.query;
 
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordFilter;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
@@ -14,6 +16,7 @@ public abstract class QueryOperator {
     private Schema operatorSchema;
     protected TableStats stats;
     protected int cost;
+    private OperatorProfile profile;
 
     public enum OperatorType {
         JOIN,
@@ -89,18 +92,63 @@ public abstract class QueryOperator {
         return this.operatorSchema;
     }
 
+    /**
+     * Returns the column of the output schema that the records of this
+     * operator come out in ascending order of, or null if there is no such
+     * column that the optimizer can count on.
+     *
+     * @return the name of the column, as it appears in the output schema
+     */
+    public String getOutputOrder() throws QueryPlanException {
+        return null;
+    }
+
     protected void setOutputSchema(Schema schema) {
         this.operatorSchema = schema;
     }
 
     protected abstract Schema computeSchema() throws QueryPlanException;
 
+    /**
+     * Returns the iterator of this operator, which records what it does if
+     * profiling is enabled. Operators pull records from their sources with
+     * execute rather than iterator, so that every operator is profiled.
+     */
     public Iterator<Record> execute() throws QueryPlanException, DatabaseException {
-        return iterator();
+        return this.execute(null);
+    }
+
+    /**
+     * Like execute, but only returns the records that filter matches, or all of
+     * them if filter is null. Only operators for which canFilter returns true
+     * take a filter.
+     */
+    Iterator<Record> execute(RecordFilter filter) throws QueryPlanException, DatabaseException {
+        if (this.profile != null) {
+            return this.profile.execute(this, filter);
+        }
+        return filter == null ? this.iterator() : this.iterator(filter);
     }
 
     public abstract Iterator<Record> iterator() throws QueryPlanException, DatabaseException;
 
+    /**
+     * Returns whether iterator(RecordFilter) can filter the records of this
+     * operator on their bytes, before they are decoded (see SelectOperator).
+     */
+    boolean canFilter() {
+        return false;
+    }
+
+    /**
+     * Returns an iterator over the records of this operator that filter
+     * matches. Only operators for which canFilter returns true implement this.
+     */
+    protected Iterator<Record> iterator(RecordFilter filter) throws QueryPlanException,
+        DatabaseException {
+        throw new QueryPlanException("Cannot filter the records of a " + this.getType() + " operator.");
+    }
+
     /**
      * Utility method that checks to see if a column is found in a schema using dot notation.
      *
@@ -151,10 +199,73 @@ public abstract class QueryOperator {
         return foundName;
     }
 
+    /**
+     * Returns the operators that this operator pulls records from.
+     */
+    protected List<QueryOperator> getSources() {
+        if (this.source == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(this.source);
+    }
+
+    /**
+     * Has this operator, and every operator below it, record what it does
+     * whenever it is executed from now on (see OperatorProfile).
+     */
+    public void enableProfiling() {
+        this.profile = new OperatorProfile();
+        for (QueryOperator source : this.getSources()) {
+            source.enableProfiling();
+        }
+    }
+
+    /**
+     * Returns what this operator and the operators below it did while it was
+     * executed, or null if profiling is not enabled.
+     */
+    public OperatorProfile getProfile() {
+        return this.profile;
+    }
+
+    /**
+     * Returns what this operator did while it was executed, without what the
+     * operators it pulled records from did, or null if profiling is not enabled.
+     */
+    public OperatorProfile getExclusiveProfile() {
+        if (this.profile == null) {
+            return null;
+        }
+        OperatorProfile profile = this.profile;
+        for (QueryOperator source : this.getSources()) {
+            if (source.getProfile() != null) {
+                profile = profile.minus(source.getProfile());
+            }
+        }
+        return profile;
+    }
+
     public String str() {
         return "type: " + this.getType();
     }
 
+    /**
+     * Returns str() followed by the estimates of this operator and, if it was
+     * profiled, what it actually did.
+     */
+    public String analyzedStr() {
+        String r = this.str() +
+                   "\nestimated: records: " + this.getStats().getNumRecords() +
+                   ", IO cost: " + this.getIOCost();
+        if (this.profile != null) {
+            r += "\nactual: " + this.profile;
+            if (this.profile.getNumExecutions() > 0) {
+                r += "\nself: " + this.getExclusiveProfile().costString();
+            }
+        }
+        return r;
+    }
+
     public String toString() {
         String r = this.str();
         if (this.source != null) {
@@ -163,6 +274,17 @@ public abstract class QueryOperator {
         return r;
     }
 
+    /**
+     * Like toString, but with analyzedStr() for each operator.
+     */
+    public String toAnalyzedString() {
+        String r = this.analyzedStr();
+        if (this.source != null) {
+            r += "\n" + this.source.toAnalyzedString().replaceAll("(?m)^", "\t");
+        }
+        return r;
+    }
+
     /**
      * Estimates the table statistics for the result of executing this query operator.
      *
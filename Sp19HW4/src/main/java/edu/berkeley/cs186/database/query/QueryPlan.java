@@ -7,6 +7,7 @@ import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.TableStats;
 
 /**
  * QueryPlan provides a set of functions to generate simple queries. Calling the methods corresponding
@@ -38,6 +39,10 @@ public class QueryPlan {
     private boolean hasCount;
     private String averageColumnName;
     private String sumColumnName;
+    private int greedyJoinThreshold;
+
+    // Queries over more tables than this are joined greedily by default.
+    public static final int DEFAULT_GREEDY_JOIN_THRESHOLD = 10;
 
     /**
      * Creates a new QueryPlan within transaction. The base table is startTableName.
@@ -63,6 +68,7 @@ public class QueryPlan {
         this.sumColumnName = null;
 
         this.groupByColumn = null;
+        this.greedyJoinThreshold = DEFAULT_GREEDY_JOIN_THRESHOLD;
 
         this.finalOperator = null;
     }
@@ -159,6 +165,21 @@ public class QueryPlan {
         this.joinRightColumnNames.add(rightColumnName);
     }
 
+    /**
+     * Set the largest number of tables for which executeOptimal searches all
+     * left-deep join orders. Queries over more tables are joined greedily
+     * instead, since the search takes time exponential in the number of tables.
+     *
+     * @param numTables the largest number of tables to search all join orders of
+     * @throws QueryPlanException
+     */
+    public void setGreedyJoinThreshold(int numTables) throws QueryPlanException {
+        if (numTables < 1) {
+            throw new QueryPlanException("Cannot search the join orders of fewer than one table.");
+        }
+        this.greedyJoinThreshold = numTables;
+    }
+
     //Returns a 2-array of table name, column name
     public String [] getJoinLeftColumnNameByIndex(int i) {
         return this.joinLeftColumnNames.get(i).split("\\.");
@@ -197,40 +218,210 @@ public class QueryPlan {
 
     /**
      * Generates an optimal QueryPlan based on the System R cost-based query optimizer.
+     * If a query of the same shape has been planned before, and the statistics of its
+     * tables have not changed much since, its plan is reused with the values of this
+     * query (see PlanCache).
      *
      * @return an iterator of records that is the result of this query
      * @throws DatabaseException
      * @throws QueryPlanException
      */
     public Iterator<Record> executeOptimal() throws DatabaseException, QueryPlanException {
-        //TODO: HW4 Implement
-
-        // Pass 1: Iterate through all single tables. For each single table, find
-        // the lowest cost QueryOperator to access that table. Construct a mapping
-        // of each table name to its lowest cost operator.
+        this.planOptimal();
+        return this.finalOperator.execute();
+    }
 
-        // Pass i: On each pass, use the results from the previous pass to find the
-        // lowest cost joins with each single table. Repeat until all tables have
-        // been joined.
+    /**
+     * Runs the query with the plan executeOptimal chooses, with every operator
+     * recording what it does (see OperatorProfile), and returns the operators
+     * with their estimates next to what they actually did. The records of the
+     * query are read and thrown away.
+     *
+     * @return the operators of the plan, one per line, with their estimates and profiles
+     * @throws DatabaseException
+     * @throws QueryPlanException
+     */
+    public String explainAnalyze() throws DatabaseException, QueryPlanException {
+        this.planOptimal();
+        this.finalOperator.enableProfiling();
 
-        // Get the lowest cost operator from the last pass, add GROUP BY and SELECT
-        // operators, and return an iterator on the final operator
+        Iterator<Record> records = this.finalOperator.execute();
+        while (records.hasNext()) {
+            records.next();
+        }
+        return this.finalOperator.toAnalyzedString();
+    }
 
+    /**
+     * Sets this.finalOperator to the optimal plan of this query.
+     */
+    private void planOptimal() throws DatabaseException, QueryPlanException {
         List<String> tableNames = new ArrayList<>();
         tableNames.add(this.startTableName);
         tableNames.addAll(this.joinTableNames);
+
+        PlanCache planCache = this.transaction.getPlanCache();
+        String shape = this.getShape(tableNames);
+        Map<String, TableStats> stats = new HashMap<>();
+        for (String table : tableNames) {
+            stats.put(table, this.transaction.getStats(table));
+        }
+
+        PlanCache.Plan plan = planCache.get(shape, stats);
+        if (plan != null) {
+            this.finalOperator = this.buildPlan(plan);
+        } else {
+            if (tableNames.size() > this.greedyJoinThreshold) {
+                this.finalOperator = this.greedyJoins(tableNames);
+            } else {
+                this.finalOperator = this.searchJoins(tableNames);
+            }
+            planCache.put(shape, this.describePlan(this.finalOperator), stats);
+        }
+        this.addGroupBy();
+        this.addProjects();
+    }
+
+    /**
+     * Returns the shape of this query as far as choosing its joins goes: its
+     * tables, its join predicates, and the columns and operators of its SELECT
+     * predicates, but not their values.
+     */
+    private String getShape(List<String> tableNames) {
+        StringBuilder shape = new StringBuilder("tables: " + tableNames);
+        for (int i = 0; i < this.joinTableNames.size(); i++) {
+            shape.append("\njoin: ").append(this.joinLeftColumnNames.get(i))
+            .append(" = ").append(this.joinRightColumnNames.get(i));
+        }
+        for (int i = 0; i < this.selectColumnNames.size(); i++) {
+            shape.append("\nselect: ").append(this.selectColumnNames.get(i))
+            .append(" ").append(this.selectOperators.get(i));
+        }
+        shape.append("\ngreedy join threshold: ").append(this.greedyJoinThreshold);
+        return shape.toString();
+    }
+
+    /**
+     * Returns the plan of the given joins of accesses to single tables, as
+     * chosen by searchJoins or greedyJoins, to be kept in the PlanCache.
+     */
+    private PlanCache.Plan describePlan(QueryOperator op) throws QueryPlanException {
+        if (op.isJoin()) {
+            JoinOperator join = (JoinOperator) op;
+            return PlanCache.Plan.join(join.getJoinType(),
+                                       this.describePlan(join.getLeftSource()),
+                                       this.describePlan(join.getRightSource()),
+                                       join.getLeftColumnName(),
+                                       join.getRightColumnName());
+        }
+
+        // Selections are pushed down onto the scan again by buildPlan.
+        while (op.isSelect()) {
+            op = op.getSource();
+        }
+        if (op.isSequentialScan()) {
+            return PlanCache.Plan.access(((SequentialScanOperator) op).getTableName(), -1);
+        }
+
+        IndexScanOperator scan = (IndexScanOperator) op;
+        for (int i = 0; i < this.selectColumnNames.size(); i++) {
+            if (this.selectColumnNames.get(i).equals(scan.getColumnName()) &&
+                    this.selectOperators.get(i).equals(scan.getPredicate()) &&
+                    this.selectDataBoxes.get(i).equals(scan.getValue())) {
+                return PlanCache.Plan.access(scan.getTableName(), i);
+            }
+        }
+        throw new QueryPlanException("No SELECT predicate found for index scan on " +
+                                     scan.getColumnName() + ".");
+    }
+
+    /**
+     * Creates the operators of a plan kept in the PlanCache, with the values of
+     * the SELECT predicates of this query.
+     */
+    private QueryOperator buildPlan(PlanCache.Plan plan) throws DatabaseException,
+        QueryPlanException {
+        if (!plan.isJoin()) {
+            QueryOperator scan;
+            if (plan.indexSelect == -1) {
+                scan = new SequentialScanOperator(this.transaction, plan.table);
+            } else {
+                scan = new IndexScanOperator(this.transaction, plan.table,
+                                             this.selectColumnNames.get(plan.indexSelect),
+                                             this.selectOperators.get(plan.indexSelect),
+                                             this.selectDataBoxes.get(plan.indexSelect));
+            }
+            return this.addEligibleSelections(scan, plan.indexSelect);
+        }
+
+        QueryOperator leftOp = this.buildPlan(plan.left);
+        QueryOperator rightOp = this.buildPlan(plan.right);
+        switch (plan.joinType) {
+        case SNLJ:
+            return new SNLJOperator(leftOp, rightOp, plan.leftColumn, plan.rightColumn, this.transaction);
+        case BNLJ:
+            return new BNLJOperator(leftOp, rightOp, plan.leftColumn, plan.rightColumn, this.transaction);
+        case PNLJ:
+            return new PNLJOperator(leftOp, rightOp, plan.leftColumn, plan.rightColumn, this.transaction);
+        case SORTMERGE:
+            return new SortMergeOperator(leftOp, rightOp, plan.leftColumn, plan.rightColumn,
+                                         this.transaction);
+        case GRACEHASH:
+            return new GraceHashOperator(leftOp, rightOp, plan.leftColumn, plan.rightColumn,
+                                         this.transaction);
+        default:
+            throw new QueryPlanException("Unknown join type " + plan.joinType + ".");
+        }
+    }
+
+    /**
+     * Finds the lowest cost left-deep join of the given tables with the System R
+     * dynamic programming search.
+     *
+     * @return the lowest cost QueryOperator joining all the tables
+     * @throws DatabaseException
+     * @throws QueryPlanException
+     */
+    private QueryOperator searchJoins(List<String> tableNames) throws DatabaseException,
+        QueryPlanException {
+        // Pass 1: Iterate through all single tables. For each single table, find
+        // the lowest cost QueryOperator to access that table, and the lowest cost
+        // QueryOperator to access it in each interesting order that the lowest
+        // cost one does not already produce. Construct a mapping of each table
+        // name to its operators.
+
+        // Pass i: On each pass, use the results from the previous pass to find the
+        // lowest cost joins with each single table, keeping the lowest cost join
+        // of each set of tables along with the lowest cost join that produces
+        // each interesting order. Repeat until all tables have been joined.
+
+        // Return the lowest cost operator from the last pass
+
         int pass = 1;
 
-        Map<Set, QueryOperator> maps = new HashMap<>();
+        Map<String, QueryOperator> minCostAccesses = new HashMap<>();
+        for (String table : tableNames) {
+            minCostAccesses.put(table, this.minCostSingleAccess(table));
+        }
+        Map<String, List<String>> interestingOrders = this.findInterestingOrders(minCostAccesses);
+
+        Map<Set<String>, Map<String, QueryOperator>> maps = new HashMap<>();
         for (String table : tableNames) {
-            QueryOperator minOp = this.minCostSingleAccess(table);
             Set<String> keys = new HashSet<>();
             keys.add(table);
-            maps.put(keys, minOp);
+            Map<String, QueryOperator> plans = new HashMap<>();
+            this.addPlan(plans, keys, minCostAccesses.get(table));
+            for (String column : interestingOrders.get(table)) {
+                QueryOperator orderedOp = this.minCostOrderedAccess(table, column);
+                if (orderedOp != null) {
+                    this.addPlan(plans, keys, orderedOp);
+                }
+            }
+            maps.put(keys, plans);
         }
 
-        Map<Set, QueryOperator> pass1Map = maps;
-        Map<Set, QueryOperator> prevMap;
+        Map<Set<String>, Map<String, QueryOperator>> pass1Map = maps;
+        Map<Set<String>, Map<String, QueryOperator>> prevMap;
 
         while (pass < tableNames.size()) {
             prevMap = maps;
@@ -238,12 +429,117 @@ public class QueryPlan {
             pass++;
         }
 
-        this.finalOperator = this.minCostOperator(maps);
-        this.addGroupBy();
-        this.addProjects();
+        return this.minCostOperator(maps);
+    }
+
+    /**
+     * Joins the given tables greedily (Greedy Operator Ordering). Starting from
+     * the lowest cost operator to access each table, the two operators with a
+     * join predicate between them whose join is estimated to yield the fewest
+     * records are joined, with the lowest cost join type and order of inputs,
+     * until a single operator is left. This takes time polynomial in the number
+     * of tables, and unlike searchJoins, it can join two joins together (a bushy
+     * plan) when that makes for smaller intermediate results.
+     *
+     * @return a QueryOperator joining all the tables
+     * @throws DatabaseException
+     * @throws QueryPlanException
+     */
+    private QueryOperator greedyJoins(List<String> tableNames) throws DatabaseException,
+        QueryPlanException {
+        List<Set<String>> joinedTables = new ArrayList<>();
+        List<QueryOperator> joins = new ArrayList<>();
+        for (String table : tableNames) {
+            Set<String> tables = new HashSet<>();
+            tables.add(table);
+            joinedTables.add(tables);
+            joins.add(this.minCostSingleAccess(table));
+        }
+
+        while (joins.size() > 1) {
+            int minI = -1;
+            int minJ = -1;
+            String[] minColumns = null;
+            int minRecords = Integer.MAX_VALUE;
+            for (int i = 0; i < joins.size(); i++) {
+                for (int j = i + 1; j < joins.size(); j++) {
+                    String[] columns = this.getJoinColumns(joinedTables.get(i), joinedTables.get(j));
+                    if (columns == null) {
+                        continue;
+                    }
+                    int numRecords = this.estimateJoinNumRecords(joins.get(i), joins.get(j),
+                                     columns[0], columns[1]);
+                    // Estimates too large for an int are Integer.MAX_VALUE.
+                    if (minI == -1 || numRecords < minRecords) {
+                        minI = i;
+                        minJ = j;
+                        minColumns = columns;
+                        minRecords = numRecords;
+                    }
+                }
+            }
+            if (minI == -1) {
+                throw new QueryPlanException("Cannot join " + joinedTables.get(0) + " to " +
+                                             joinedTables.get(1) + " without a join predicate.");
+            }
+
+            QueryOperator left = joins.get(minI);
+            QueryOperator right = joins.get(minJ);
+            List<QueryOperator> allJoins = this.allJoinTypes(left, right, minColumns[0], minColumns[1]);
+            allJoins.addAll(this.allJoinTypes(right, left, minColumns[1], minColumns[0]));
+            QueryOperator minOp = null;
+            int minCost = Integer.MAX_VALUE;
+            for (QueryOperator join : allJoins) {
+                int cost = this.totalIOCost(join);
+                if (cost < minCost) {
+                    minOp = join;
+                    minCost = cost;
+                }
+            }
 
-        return this.finalOperator.iterator();
+            Set<String> tables = new HashSet<>(joinedTables.get(minI));
+            tables.addAll(joinedTables.get(minJ));
+            joinedTables.remove(minJ);
+            joins.remove(minJ);
+            joinedTables.set(minI, tables);
+            joins.set(minI, minOp);
+        }
+        return joins.get(0);
+    }
+
+    /**
+     * Estimates the number of records of the join of leftOp and rightOp on the
+     * given columns, which does not depend on the type of join, without creating
+     * a join operator.
+     */
+    private int estimateJoinNumRecords(QueryOperator leftOp, QueryOperator rightOp,
+                                       String leftColumn, String rightColumn) throws QueryPlanException {
+        Schema leftSchema = leftOp.getOutputSchema();
+        Schema rightSchema = rightOp.getOutputSchema();
+        int leftIndex = leftSchema.getFieldNames().indexOf(leftOp.checkSchemaForColumn(leftSchema, leftColumn));
+        int rightIndex = rightSchema.getFieldNames().indexOf(rightOp.checkSchemaForColumn(rightSchema,
+                         rightColumn));
+        return leftOp.getStats().estimateJoinNumRecords(leftIndex, rightOp.getStats(), rightIndex);
+    }
 
+    /**
+     * Finds a join predicate between a table in left and a table in right.
+     *
+     * @return a 2-array of the fully qualified join column in left and the one in
+     * right, or null if there is no join predicate between them
+     */
+    private String[] getJoinColumns(Set<String> left, Set<String> right) {
+        for (int i = 0; i < this.joinTableNames.size(); i++) {
+            String leftTable = this.getJoinLeftColumnNameByIndex(i)[0];
+            String rightTable = this.getJoinRightColumnNameByIndex(i)[0];
+            if (left.contains(leftTable) && right.contains(rightTable)) {
+                return new String[] {this.joinLeftColumnNames.get(i), this.joinRightColumnNames.get(i)};
+            }
+            if (left.contains(rightTable) && right.contains(leftTable)) {
+                return new String[] {this.joinRightColumnNames.get(i), this.joinLeftColumnNames.get(i)};
+            }
+        }
+        return null;
     }
 
     /**
@@ -343,16 +639,8 @@ public class QueryPlan {
         // Find the cost of a sequential scan of the table
         minOp = new SequentialScanOperator(this.transaction, table);
 
-        //TODO: HW4 Implement
-
-        // 1. Find the cost of a sequential scan of the table
-
-        // 2. For each eligible index column, find the cost of an index scan of the
+        // For each eligible index column, find the cost of an index scan of the
         // table and retain the lowest cost operator
-
-        // 3. Push down SELECT predicates that apply to this table and that were not
-        // used for an index scan
-
         List<Integer> validCol = this.getEligibleIndexColumns(table);
 
         int indexUsedForScan = -1;
@@ -373,97 +661,164 @@ public class QueryPlan {
                 if (indexIOCost < minCost) {
                     minCost = indexIOCost;
                     minOp = indexScanOperator;
-                    indexUsedForScan = i;
+                    indexUsedForScan = validCol.get(i);
                 }
             }
 
         }
 
+        // Push down SELECT predicates that apply to this table and that were not
+        // used for an index scan
         minOp = this.addEligibleSelections(minOp, indexUsedForScan);
 
         return minOp;
     }
 
     /**
-     * Given a join condition between an outer relation represented by leftOp
-     * and an inner relation represented by rightOp, find the lowest cost join
-     * operator out of all the possible join types in JoinOperator.JoinType.
+     * Finds the lowest cost QueryOperator that scans the given table in order of
+     * column, which is an index scan on column for one of the SELECT predicates
+     * on it, with the other eligible SELECT predicates pushed down. An index scan
+     * may cost more than the operator minCostSingleAccess finds and still make
+     * for a cheaper plan, if a later join can make use of its order.
      *
-     * @return lowest cost join QueryOperator between the input operators
+     * @return the lowest cost QueryOperator whose output is ordered on column, or
+     * null if there is none
+     * @throws DatabaseException
      * @throws QueryPlanException
      */
-    private QueryOperator minCostJoinType(QueryOperator leftOp,
-                                          QueryOperator rightOp,
-                                          String leftColumn,
-                                          String rightColumn) throws QueryPlanException,
-        DatabaseException {
+    private QueryOperator minCostOrderedAccess(String table, String column) throws DatabaseException,
+        QueryPlanException {
         QueryOperator minOp = null;
+        for (int i : this.getEligibleIndexColumns(table)) {
+            QueryOperator indexScanOperator = new IndexScanOperator(this.transaction, table,
+                    this.selectColumnNames.get(i),
+                    this.selectOperators.get(i),
+                    this.selectDataBoxes.get(i));
+            if (!column.equals(indexScanOperator.getOutputOrder())) {
+                continue;
+            }
+            if (minOp == null || indexScanOperator.getIOCost() < minOp.getIOCost()) {
+                minOp = this.addEligibleSelections(indexScanOperator, i);
+            }
+        }
+        return minOp;
+    }
 
-        int minCost = Integer.MAX_VALUE;
+    /**
+     * Given a join condition between an outer relation represented by leftOp
+     * and an inner relation represented by rightOp, creates a join operator of
+     * each of the possible join types in JoinOperator.JoinType.
+     *
+     * @return a join QueryOperator of each type between the input operators
+     * @throws QueryPlanException
+     */
+    private List<QueryOperator> allJoinTypes(QueryOperator leftOp,
+                                             QueryOperator rightOp,
+                                             String leftColumn,
+                                             String rightColumn) throws QueryPlanException,
+        DatabaseException {
         List<QueryOperator> allJoins = new ArrayList<QueryOperator>();
         allJoins.add(new SNLJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
         allJoins.add(new BNLJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
+        allJoins.add(new PNLJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
+        allJoins.add(new SortMergeOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
+        allJoins.add(new GraceHashOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
+        return allJoins;
+    }
 
-        for (QueryOperator join : allJoins) {
-            int joinCost = join.estimateIOCost();
-            if (joinCost < minCost) {
-                minOp = join;
-                minCost = joinCost;
+    /**
+     * Returns whether a plan joining the given set of tables whose output is
+     * ordered on column is worth keeping for its order even if a cheaper plan
+     * exists: that is, whether column is joined against a table that is not in
+     * the set yet, so that a sort-merge join could skip sorting the plan.
+     */
+    private boolean isInterestingOrder(Set<String> tables, String column) {
+        if (column == null) {
+            return false;
+        }
+        for (int i = 0; i < this.joinTableNames.size(); i++) {
+            String [] left = this.getJoinLeftColumnNameByIndex(i);
+            String [] right = this.getJoinRightColumnNameByIndex(i);
+            if (column.equals(this.joinLeftColumnNames.get(i)) &&
+                    tables.contains(left[0]) && !tables.contains(right[0])) {
+                return true;
+            }
+            if (column.equals(this.joinRightColumnNames.get(i)) &&
+                    tables.contains(right[0]) && !tables.contains(left[0])) {
+                return true;
             }
         }
-        return minOp;
+        return false;
+    }
+
+    /**
+     * Returns the IO cost of executing plan as a whole. The IO cost of a join
+     * operator counts reading its inputs, but not computing them, so the IO costs
+     * of the operators below it are added to it.
+     */
+    private int totalIOCost(QueryOperator plan) {
+        if (!plan.isJoin()) {
+            return plan.getIOCost();
+        }
+        JoinOperator join = (JoinOperator) plan;
+        return join.getIOCost() + this.totalIOCost(join.getLeftSource()) +
+               this.totalIOCost(join.getRightSource());
+    }
+
+    /**
+     * Adds plan, which joins the given set of tables, to the plans kept for that
+     * set. The plans are keyed by their output order if it is interesting, and
+     * by null otherwise, and only the plan of each key with the lowest total IO
+     * cost is kept. A plan
+     * with no interesting order is not kept if a plan with one costs no more.
+     *
+     * @throws QueryPlanException
+     */
+    private void addPlan(Map<String, QueryOperator> plans, Set<String> tables,
+                         QueryOperator plan) throws QueryPlanException {
+        String order = plan.getOutputOrder();
+        if (!this.isInterestingOrder(tables, order)) {
+            order = null;
+        }
+
+        int cost = this.totalIOCost(plan);
+        QueryOperator current = plans.get(order);
+        if (current != null && this.totalIOCost(current) <= cost) {
+            return;
+        }
+        if (order == null) {
+            for (QueryOperator other : plans.values()) {
+                if (this.totalIOCost(other) <= cost) {
+                    return;
+                }
+            }
+        } else if (plans.containsKey(null) && cost <= this.totalIOCost(plans.get(null))) {
+            plans.remove(null);
+        }
+        plans.put(order, plan);
     }
 
     /**
      * Iterate through all table sets in the previous pass of the search. For each
      * table set, check each join predicate to see if there is a valid join
-     * condition with a new table. If so, check the cost of each type of join and
-     * keep the minimum cost join. Construct and return a mapping of each set of
-     * table names being joined to its lowest cost join operator. A join predicate
-     * is represented as elements of this.joinTableNames, this.joinLeftColumnNames,
-     * and this.joinRightColumnNames that correspond to the same index of these lists.
+     * condition with a new table. If so, check the cost of each type of join
+     * between each plan kept for the set and each plan kept for the new table, and
+     * keep the minimum cost join of each interesting order (see addPlan).
+     * Construct and return a mapping of each set of table names being joined to
+     * its kept join operators. A join predicate is represented as elements of
+     * this.joinTableNames, this.joinLeftColumnNames, and this.joinRightColumnNames
+     * that correspond to the same index of these lists.
      *
-     * @return a mapping of table names to a join QueryOperator
+     * @return a mapping of table names to join QueryOperators
      * @throws QueryPlanException
      */
-    private Map<Set, QueryOperator> minCostJoins(Map<Set, QueryOperator> prevMap,
-            Map<Set, QueryOperator> pass1Map) throws QueryPlanException,
+    private Map<Set<String>, Map<String, QueryOperator>> minCostJoins(
+        Map<Set<String>, Map<String, QueryOperator>> prevMap,
+        Map<Set<String>, Map<String, QueryOperator>> pass1Map) throws QueryPlanException,
         DatabaseException {
-        Map<Set, QueryOperator> map = new HashMap<Set, QueryOperator>();
-
-        //TODO: HW4 Implement
-
-        //We provide a basic description of the logic you have to implement
-
-        //Input: prevMap (maps a set of tables to a query operator--the operator that joins the set)
-        //Input: pass1Map (each set is a singleton with one table and single table access query operator)
-
-        //FOR EACH set of tables in prevMap:
-
-        //FOR EACH join condition listed in the query
-
-        //get the left side and the right side (table name and column)
-
-        /**
-         * Case 1. Set contains left table but not right, use pass1Map to
-         * fetch the right operator to access the rightTable
-         *
-         * Case 2. Set contains right table but not left, use pass1Map to
-         * fetch the right operator to access the leftTable.
-         *
-         * Case 3. Set contains neither or both the left table or right table (contiue loop)
-         *
-         * --- Then given the operator, use minCostJoinType to calculate the cheapest join with that
-         * and the previously joined tables.
-         */
+        Map<Set<String>, Map<String, QueryOperator>> map = new HashMap<>();
 
-        /**
-         * Create a new set that is the union of the new table and previously
-         * joined tables. Add to result map this value mapping to the result from
-         * minCostJoinType if it doesn't exist or it exists and cost is lower.
-         */
-
-        for (Set tables : prevMap.keySet()) {
+        for (Set<String> tables : prevMap.keySet()) {
             for (int i = 0; i < this.joinTableNames.size(); i++) {
                 String [] left = this.getJoinLeftColumnNameByIndex(i);
                 String [] right = this.getJoinRightColumnNameByIndex(i);
@@ -472,24 +827,32 @@ public class QueryPlan {
                 String rightTable = right[0];
                 String rightCol = right[1];
 
-                QueryOperator minOp;
                 Set<String> tableSet = new HashSet<>();
+                String prevCol;
+                String newCol;
 
                 if (tables.contains(leftTable) && !tables.contains(rightTable)) {
                     tableSet.add(rightTable);
-                    minOp = this.minCostJoinType(prevMap.get(tables), pass1Map.get(tableSet), leftCol, rightCol);
+                    prevCol = leftCol;
+                    newCol = rightCol;
                 } else if (!tables.contains(leftTable) && tables.contains(rightTable)) {
                     tableSet.add(leftTable);
-                    minOp = this.minCostJoinType(prevMap.get(tables), pass1Map.get(tableSet), rightCol, leftCol);
+                    prevCol = rightCol;
+                    newCol = leftCol;
                 } else {
                     continue;
                 }
 
+                Collection<QueryOperator> newOps = pass1Map.get(tableSet).values();
                 tableSet.addAll(tables);
 
-                QueryOperator op = map.get(tableSet);
-                if (op == null || minOp.getIOCost() < op.getIOCost()) {
-                    map.put(tableSet, minOp);
+                Map<String, QueryOperator> plans = map.computeIfAbsent(tableSet, k -> new HashMap<>());
+                for (QueryOperator prevOp : prevMap.get(tables).values()) {
+                    for (QueryOperator newOp : newOps) {
+                        for (QueryOperator join : this.allJoinTypes(prevOp, newOp, prevCol, newCol)) {
+                            this.addPlan(plans, tableSet, join);
+                        }
+                    }
                 }
             }
         }
@@ -499,25 +862,25 @@ public class QueryPlan {
     /**
      * Finds the lowest cost QueryOperator in the given mapping. A mapping is
      * generated on each pass of the search algorithm, and relates a set of tables
-     * to the lowest cost QueryOperator accessing those tables. This method is
+     * to the lowest cost QueryOperators accessing those tables. This method is
      * called at the end of the search algorithm after all passes have been
      * processed.
      *
      * @return a QueryOperator in the given mapping
      * @throws QueryPlanException
      */
-    private QueryOperator minCostOperator(Map<Set, QueryOperator> map) throws QueryPlanException,
-        DatabaseException {
+    private QueryOperator minCostOperator(Map<Set<String>, Map<String, QueryOperator>> map) throws
+        QueryPlanException, DatabaseException {
         QueryOperator minOp = null;
-        QueryOperator newOp;
         int minCost = Integer.MAX_VALUE;
         int newCost;
-        for (Set tables : map.keySet()) {
-            newOp = map.get(tables);
-            newCost = newOp.getIOCost();
-            if (newCost < minCost) {
-                minOp = newOp;
-                minCost = newCost;
+        for (Map<String, QueryOperator> plans : map.values()) {
+            for (QueryOperator newOp : plans.values()) {
+                newCost = this.totalIOCost(newOp);
+                if (newCost < minCost) {
+                    minOp = newOp;
+                    minCost = newCost;
+                }
             }
         }
         return minOp;
@@ -624,6 +987,31 @@ public class QueryPlan {
 
     public Map<String, List<String>> findInterestingOrders(Map<String, QueryOperator> pass1Map) throws
         DatabaseException, QueryPlanException {
-        throw new UnsupportedOperationException("TODO(hw4_extra): implement");
+        // A table's join columns are its interesting orders: a sort-merge join on
+        // one of them need not sort the table if it comes in that order. Orders
+        // the table's single access operator already produces are not remaining.
+        Map<String, List<String>> interestingOrders = new HashMap<>();
+        for (String table : pass1Map.keySet()) {
+            interestingOrders.put(table, new ArrayList<>());
+        }
+
+        for (int i = 0; i < this.joinTableNames.size(); i++) {
+            String [] left = this.getJoinLeftColumnNameByIndex(i);
+            String [] right = this.getJoinRightColumnNameByIndex(i);
+            this.addInterestingOrder(interestingOrders, pass1Map, left[0], this.joinLeftColumnNames.get(i));
+            this.addInterestingOrder(interestingOrders, pass1Map, right[0], this.joinRightColumnNames.get(i));
+        }
+        return interestingOrders;
+    }
+
+    private void addInterestingOrder(Map<String, List<String>> interestingOrders,
+                                     Map<String, QueryOperator> pass1Map, String table,
+                                     String column) throws QueryPlanException {
+        List<String> orders = interestingOrders.get(table);
+        if (orders == null || orders.contains(column) ||
+                column.equals(pass1Map.get(table).getOutputOrder())) {
+            return;
+        }
+        orders.add(column);
     }
 }
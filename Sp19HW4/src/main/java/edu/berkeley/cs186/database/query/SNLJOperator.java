@@ -41,13 +41,22 @@ public class SNLJOperator extends JoinOperator {
         return new SNLJIterator();
     }
 
+    /**
+     * The outer loop is over the left records in the order they come in, so
+     * the records are yielded in that order.
+     */
+    @Override
+    public String getOutputOrder() throws QueryPlanException {
+        return this.getLeftSource().getOutputOrder();
+    }
+
     public int estimateIOCost() throws QueryPlanException {
         int numLeftRecords = getLeftSource().getStats().getNumRecords();
 
         int numRightPages = getRightSource().getStats().getNumPages();
         int numLeftPages = getLeftSource().getStats().getNumPages();
 
-        return numLeftRecords * numRightPages + numLeftPages;
+        return this.scaleIOCost(numLeftRecords * numRightPages + numLeftPages);
     }
 
     /**
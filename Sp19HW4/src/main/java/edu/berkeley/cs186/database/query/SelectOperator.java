@@ -1,6 +1,8 @@
 package edu.berkeley.cs186.database.query;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 import edu.berkeley.cs186.database.DatabaseException;
@@ -45,6 +47,14 @@ public class SelectOperator extends QueryOperator {
         return this.getSource().getOutputSchema();
     }
 
+    /**
+     * Records are yielded in the order the source yields them.
+     */
+    @Override
+    public String getOutputOrder() throws QueryPlanException {
+        return this.getSource().getOutputOrder();
+    }
+
     public String str() {
         return "type: " + this.getType() +
                "\ncolumn: " + this.columnName +
@@ -68,7 +78,33 @@ public class SelectOperator extends QueryOperator {
         return this.getSource().getIOCost();
     }
 
-    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException { return new SelectIterator(); }
+    /**
+     * If this operator is the top of a chain of SelectOperators over a scan that
+     * can filter its records, the predicates of the whole chain are compiled into
+     * a single CompiledPredicate that the scan evaluates on the bytes of each
+     * record, and the other SelectOperators of the chain are not executed.
+     */
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        List<Integer> columns = new ArrayList<>();
+        List<QueryPlan.PredicateOperator> operators = new ArrayList<>();
+        List<DataBox> values = new ArrayList<>();
+        QueryOperator op = this;
+        while (op.isSelect()) {
+            SelectOperator select = (SelectOperator) op;
+            columns.add(select.columnIndex);
+            operators.add(select.operator);
+            values.add(select.value);
+            op = op.getSource();
+        }
+        if (op.canFilter()) {
+            CompiledPredicate predicate = CompiledPredicate.compile(op.getOutputSchema(), op.getStats(),
+                                          columns, operators, values);
+            if (predicate != null) {
+                return op.execute(predicate);
+            }
+        }
+        return new SelectIterator();
+    }
 
     /**
      * An implementation of Iterator that provides an iterator interface for this operator.
@@ -79,7 +115,7 @@ public class SelectOperator extends QueryOperator {
         private Record nextRecord;
 
         public SelectIterator() throws QueryPlanException, DatabaseException {
-            this.sourceIterator = SelectOperator.this.getSource().iterator();
+            this.sourceIterator = SelectOperator.this.getSource().execute();
             this.markerRecord = MarkerRecord.getMarker();
             this.nextRecord = null;
         }
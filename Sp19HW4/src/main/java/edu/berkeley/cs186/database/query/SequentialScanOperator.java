@@ -5,6 +5,7 @@ import java.util.Iterator;
 import edu.berkeley.cs186.database.Database;
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordFilter;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
@@ -42,6 +43,16 @@ public class SequentialScanOperator extends QueryOperator {
         return this.transaction.getRecordIterator(tableName);
     }
 
+    @Override
+    boolean canFilter() {
+        return true;
+    }
+
+    @Override
+    protected Iterator<Record> iterator(RecordFilter filter) throws DatabaseException {
+        return this.transaction.getRecordIterator(tableName, filter);
+    }
+
     public Schema computeSchema() throws QueryPlanException {
         try {
             return this.transaction.getFullyQualifiedSchema(this.tableName);
@@ -70,7 +81,8 @@ public class SequentialScanOperator extends QueryOperator {
 
     public int estimateIOCost() throws QueryPlanException {
         try {
-            return this.transaction.getNumDataPages(this.tableName);
+            return this.transaction.getCostModel().scale(this.getType().toString(),
+                    this.transaction.getNumDataPages(this.tableName));
         } catch (DatabaseException de) {
             throw new QueryPlanException(de);
         }
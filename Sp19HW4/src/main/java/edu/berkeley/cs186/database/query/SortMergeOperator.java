@@ -9,6 +9,8 @@ import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.RecordIterator;
 
 public class SortMergeOperator extends JoinOperator {
+    private int numBuffers;
+
     public SortMergeOperator(QueryOperator leftSource,
                              QueryOperator rightSource,
                              String leftColumnName,
@@ -16,6 +18,8 @@ public class SortMergeOperator extends JoinOperator {
                              Database.Transaction transaction) throws QueryPlanException, DatabaseException {
         super(leftSource, rightSource, leftColumnName, rightColumnName, transaction, JoinType.SORTMERGE);
 
+        this.numBuffers = transaction.getNumMemoryPages();
+
         // for HW4
         this.stats = this.estimateStats();
         this.cost = this.estimateIOCost();
@@ -25,26 +29,132 @@ public class SortMergeOperator extends JoinOperator {
         return new SortMergeIterator();
     }
 
+    /**
+     * Records are merged in order of the join columns, so they are yielded in
+     * ascending order of the left join column (and of the right one, which is
+     * equal to it).
+     */
+    @Override
+    public String getOutputOrder() {
+        return this.getLeftColumnName();
+    }
+
+    /**
+     * Estimates the IO cost of a sort-merge join: the cost of sorting each
+     * input, and one more read of both inputs to merge them. An input that
+     * already comes in order of its join column, such as the output of an
+     * index scan on that column, need not be sorted.
+     */
     public int estimateIOCost() throws QueryPlanException {
-        //does nothing
-        return 0;
+        int numLeftPages = getLeftSource().getStats().getNumPages();
+        int numRightPages = getRightSource().getStats().getNumPages();
+
+        int cost = numLeftPages + numRightPages;
+        if (!this.getLeftColumnName().equals(getLeftSource().getOutputOrder())) {
+            cost += this.estimateSortCost(numLeftPages);
+        }
+        if (!this.getRightColumnName().equals(getRightSource().getOutputOrder())) {
+            cost += this.estimateSortCost(numRightPages);
+        }
+        return this.scaleIOCost(cost);
+    }
+
+    /**
+     * An external merge sort of numPages pages reads and writes every page
+     * once to make sorted runs of numBuffers pages, and once more for each
+     * pass that merges numBuffers - 1 runs at a time.
+     */
+    private int estimateSortCost(int numPages) {
+        int numRuns = (int) Math.ceil((double) numPages / this.numBuffers);
+        int numPasses = 1;
+        while (numRuns > 1) {
+            numRuns = (int) Math.ceil((double) numRuns / (this.numBuffers - 1));
+            numPasses++;
+        }
+        return 2 * numPages * numPasses;
     }
 
     /**
      * An implementation of Iterator that provides an iterator interface for this operator.
      *
-     * Before proceeding, you should read and understand SNLJOperator.java
-     *    You can find it in the same directory as this file.
-     *
-     * Word of advice: try to decompose the problem into distinguishable sub-problems.
-     *    This means you'll probably want to add more methods than those given (Once again,
-     *    SNLJOperator.java might be a useful reference).
-     *
+     * Both inputs are sorted on their join columns, unless they already come in
+     * that order, and then merged: the right input is marked at the first record
+     * of each run of records with the same join value, and reset to it for each
+     * left record with that value.
      */
     private class SortMergeIterator extends JoinIterator {
+        private Iterator<Record> leftIterator;
+        private RecordIterator rightIterator;
+        private Record leftRecord;
+        private Record rightRecord;
+        private Record nextRecord;
+        // Whether rightIterator is marked at the first right record that
+        // matches leftRecord.
+        private boolean marked;
+        private LR_RecordComparator comparator;
+
         public SortMergeIterator() throws QueryPlanException, DatabaseException {
             super();
-            return;
+            String leftTableName = getLeftTableName();
+            if (!getLeftColumnName().equals(getLeftSource().getOutputOrder())) {
+                leftTableName = new SortOperator(getTransaction(), leftTableName,
+                                                 new LeftRecordComparator()).sort();
+            }
+            String rightTableName = getRightTableName();
+            if (!getRightColumnName().equals(getRightSource().getOutputOrder())) {
+                rightTableName = new SortOperator(getTransaction(), rightTableName,
+                                                  new RightRecordComparator()).sort();
+            }
+            this.leftIterator = getRecordIterator(leftTableName);
+            this.rightIterator = getRecordIterator(rightTableName);
+            this.comparator = new LR_RecordComparator();
+
+            this.leftRecord = this.leftIterator.hasNext() ? this.leftIterator.next() : null;
+            this.rightRecord = this.rightIterator.hasNext() ? this.rightIterator.next() : null;
+            this.marked = false;
+            this.fetchNextRecord();
+        }
+
+        /**
+         * Finds the next pair of records with equal join values, and sets
+         * nextRecord to their join, or to null if there is none.
+         */
+        private void fetchNextRecord() {
+            this.nextRecord = null;
+            while (this.leftRecord != null) {
+                if (!this.marked) {
+                    if (this.rightRecord == null) {
+                        // No right records are left to match this left record
+                        // or any after it.
+                        this.leftRecord = null;
+                        return;
+                    }
+                    int c = this.comparator.compare(this.leftRecord, this.rightRecord);
+                    if (c < 0) {
+                        this.leftRecord = this.leftIterator.hasNext() ? this.leftIterator.next() : null;
+                        continue;
+                    }
+                    if (c > 0) {
+                        this.rightRecord = this.rightIterator.hasNext() ? this.rightIterator.next() : null;
+                        continue;
+                    }
+                    this.rightIterator.mark();
+                    this.marked = true;
+                }
+                if (this.rightRecord != null && this.comparator.compare(this.leftRecord, this.rightRecord) == 0) {
+                    List<DataBox> values = new ArrayList<>(this.leftRecord.getValues());
+                    values.addAll(this.rightRecord.getValues());
+                    this.nextRecord = new Record(values);
+                    this.rightRecord = this.rightIterator.hasNext() ? this.rightIterator.next() : null;
+                    return;
+                }
+                // The run of right records that match leftRecord is over, so
+                // the next left record starts over at the beginning of it.
+                this.leftRecord = this.leftIterator.hasNext() ? this.leftIterator.next() : null;
+                this.rightIterator.reset();
+                this.rightRecord = this.rightIterator.next();
+                this.marked = false;
+            }
         }
 
         /**
@@ -53,7 +163,7 @@ public class SortMergeOperator extends JoinOperator {
          * @return true if this iterator has another record to yield, otherwise false
          */
         public boolean hasNext() {
-            return false;
+            return this.nextRecord != null;
         }
 
         /**
@@ -63,7 +173,12 @@ public class SortMergeOperator extends JoinOperator {
          * @throws NoSuchElementException if there are no more Records to yield
          */
         public Record next() {
-            throw new NoSuchElementException();
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Record r = this.nextRecord;
+            this.fetchNextRecord();
+            return r;
         }
 
         public void remove() {
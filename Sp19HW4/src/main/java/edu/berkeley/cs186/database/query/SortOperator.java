@@ -71,7 +71,13 @@ public class SortOperator {
      * size of the buffer, but it is done this way for ease.
      */
     public Run sortRun(Run run) throws DatabaseException {
-        return null;
+        List<Record> records = new ArrayList<>();
+        run.iterator().forEachRemaining(records::add);
+        records.sort(this.comparator);
+
+        Run sortedRun = this.createRun();
+        sortedRun.addRecords(records);
+        return sortedRun;
     }
 
     /**
@@ -83,7 +89,27 @@ public class SortOperator {
      * sorting on currently unmerged from run i.
      */
     public Run mergeSortedRuns(List<Run> runs) throws DatabaseException {
-        return null;
+        List<Iterator<Record>> iterators = new ArrayList<>();
+        PriorityQueue<Pair<Record, Integer>> queue = new PriorityQueue<>(Math.max(1, runs.size()),
+                new RecordPairComparator());
+        for (int i = 0; i < runs.size(); i++) {
+            Iterator<Record> iterator = runs.get(i).iterator();
+            iterators.add(iterator);
+            if (iterator.hasNext()) {
+                queue.add(new Pair<>(iterator.next(), i));
+            }
+        }
+
+        Run mergedRun = this.createRun();
+        while (!queue.isEmpty()) {
+            Pair<Record, Integer> smallest = queue.poll();
+            mergedRun.addRecord(smallest.getFirst().getValues());
+            Iterator<Record> iterator = iterators.get(smallest.getSecond());
+            if (iterator.hasNext()) {
+                queue.add(new Pair<>(iterator.next(), smallest.getSecond()));
+            }
+        }
+        return mergedRun;
     }
 
     /**
@@ -92,7 +118,12 @@ public class SortOperator {
      * of the input runs at a time.
      */
     public List<Run> mergePass(List<Run> runs) throws DatabaseException {
-        return Collections.emptyList();
+        List<Run> mergedRuns = new ArrayList<>();
+        for (int i = 0; i < runs.size(); i += this.numBuffers - 1) {
+            mergedRuns.add(this.mergeSortedRuns(runs.subList(i, Math.min(runs.size(),
+                                                i + this.numBuffers - 1))));
+        }
+        return mergedRuns;
     }
 
     /**
@@ -101,7 +132,28 @@ public class SortOperator {
      * Returns the name of the table that backs the final run.
      */
     public String sort() throws DatabaseException {
-        return tableName;
+        // Pass 0: sort numBuffers pages of the table at a time.
+        List<Run> runs = new ArrayList<>();
+        Iterator<Page> pageIterator = this.transaction.getPageIterator(this.tableName);
+        pageIterator.next(); // skip the header page
+        while (pageIterator.hasNext()) {
+            Run run = this.createRun();
+            Iterator<Record> records = this.transaction.getBlockIterator(this.tableName, pageIterator,
+                                       this.numBuffers);
+            while (records.hasNext()) {
+                run.addRecord(records.next().getValues());
+            }
+            runs.add(this.sortRun(run));
+        }
+        if (runs.isEmpty()) {
+            return this.createRun().tableName();
+        }
+
+        // Passes 1, 2, ...: merge numBuffers - 1 runs at a time.
+        while (runs.size() > 1) {
+            runs = this.mergePass(runs);
+        }
+        return runs.get(0).tableName();
     }
 
     public Iterator<Record> iterator() throws DatabaseException {
@@ -0,0 +1,48 @@
+package edu.berkeley.cs186.database.table;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import edu.berkeley.cs186.database.BaseTransaction;
+import edu.berkeley.cs186.database.DatabaseException;
+
+/**
+ * A FilteredRecordIterator is like a RecordIterator, but only yields the
+ * records that a RecordFilter matches, which are the only ones decoded.
+ */
+public class FilteredRecordIterator implements Iterator<Record> {
+    private Iterator<RecordId> ridIter;
+    private Table table;
+    private BaseTransaction transaction;
+    private RecordFilter filter;
+    private Record nextRecord;
+
+    public FilteredRecordIterator(BaseTransaction transaction, Table table, Iterator<RecordId> ridIter,
+                                  RecordFilter filter) {
+        this.ridIter = ridIter;
+        this.table = table;
+        this.transaction = transaction;
+        this.filter = filter;
+        this.nextRecord = null;
+    }
+
+    public boolean hasNext() {
+        while (this.nextRecord == null && this.ridIter.hasNext()) {
+            try {
+                this.nextRecord = this.table.getRecord(this.transaction, this.ridIter.next(), this.filter);
+            } catch (DatabaseException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return this.nextRecord != null;
+    }
+
+    public Record next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Record r = this.nextRecord;
+        this.nextRecord = null;
+        return r;
+    }
+}
@@ -0,0 +1,19 @@
+package edu.berkeley.cs186.database.table;
+
+import edu.berkeley.cs186.database.common.Buffer;
+
+/**
+ * A RecordFilter decides whether a record is wanted from its serialized bytes,
+ * so that records that are not wanted are never decoded into DataBoxes. For
+ * example, a filter for records whose first column, an int, is positive:
+ *
+ *   RecordFilter filter = (buf, offset) -> buf.getInt(offset) > 0;
+ *   Iterator<Record> records = table.iterator(transaction, filter);
+ */
+public interface RecordFilter {
+    /**
+     * Returns whether the record whose bytes start at offset in buf is wanted.
+     * buf is read at absolute positions, and its position is left unchanged.
+     */
+    boolean matches(Buffer buf, int offset);
+}
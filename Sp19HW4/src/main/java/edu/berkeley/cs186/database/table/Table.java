@@ -1,6 +1,12 @@
 package edu.berkeley.cs186.database.table;
 
 import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 
 import edu.berkeley.cs186.database.BaseTransaction;
@@ -9,12 +15,14 @@ import edu.berkeley.cs186.database.common.ArrayBacktrackingIterator;
 import edu.berkeley.cs186.database.common.BacktrackingIterator;
 import edu.berkeley.cs186.database.common.Bits;
 import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
 import edu.berkeley.cs186.database.concurrency.LockContext;
 import edu.berkeley.cs186.database.concurrency.LockType;
 import edu.berkeley.cs186.database.concurrency.LockUtil;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.io.PageAllocator;
+import edu.berkeley.cs186.database.io.PageException;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 /**
@@ -52,6 +60,16 @@ import edu.berkeley.cs186.database.table.stats.TableStats;
  *   // Don't forget to close the table.
  *   t.close();
  *
+ * A table also saves its statistics (see TableStats) into a file "t.stats"
+ * when it is closed. When the table is loaded again, they are read back the
+ * first time they are needed instead of being recomputed from every record.
+ * The file is deleted once it has been read, since the statistics in it stop
+ * being those of the table as soon as the table changes, so a table that was
+ * not closed has no statistics to read back and recomputes them. The file is
+ * written under another name and then renamed, so it is either whole or
+ * missing; statistics that cannot be read back anyway are recomputed too.
+ * Temporary tables (see setTemporary) are never opened again, and save none.
+ *
  * # Storage Format
  * Now, we discuss how tables serialize their data into files.
  *
@@ -97,6 +115,7 @@ import edu.berkeley.cs186.database.table.stats.TableStats;
 public class Table implements Closeable {
     public static final String FILENAME_PREFIX = "db";
     public static final String FILENAME_EXTENSION = ".table";
+    public static final String STATS_FILENAME_EXTENSION = ".stats";
 
     // The name of the database.
     private String name;
@@ -116,8 +135,17 @@ public class Table implements Closeable {
     // The number of records on each data page.
     private int numRecordsPerPage;
 
-    // Statistics about the contents of the database.
+    // Statistics about the contents of the database. This is null until the
+    // statistics read from the stats file, savedStats, are first needed.
     private TableStats stats;
+    private byte[] savedStats;
+
+    // The filename of the file in which the statistics are saved.
+    private String statsFilename;
+
+    // Whether this is a temporary table, which is deleted instead of being
+    // opened again, and so does not save its statistics when it is closed.
+    private boolean temporary;
 
     // The page numbers of all allocated pages which have room for more records.
     private TreeSet<Integer> freePageNums;
@@ -142,11 +170,14 @@ public class Table implements Closeable {
         this.bitmapSizeInBytes = computeBitmapSizeInBytes(Page.pageSize, schema);
         numRecordsPerPage = computeNumRecordsPerPage(Page.pageSize, schema);
         this.stats = new TableStats(this.schema);
+        this.savedStats = null;
+        this.statsFilename = getStatsFilename(filename);
         this.freePageNums = new TreeSet<Integer>();
         this.numRecords = 0;
         this.lockContext = lockContext;
 
         writeSchemaToHeaderPage(transaction, allocator, schema);
+        new File(this.statsFilename).delete();
     }
 
     /**
@@ -162,10 +193,14 @@ public class Table implements Closeable {
         this.bitmapSizeInBytes = computeBitmapSizeInBytes(Page.pageSize, this.schema);
         this.numRecordsPerPage = computeNumRecordsPerPage(Page.pageSize, this.schema);
 
-        // We compute the stats, free pages, and number of records naively. We
-        // iterate through every single data page of the file, and for each data
-        // data page, we use the bitmap to read every single record.
-        this.stats = new TableStats(this.schema);
+        this.statsFilename = getStatsFilename(filename);
+
+        // We compute the free pages and number of records naively, from the
+        // bitmap of every single data page of the file. If no statistics were
+        // saved when the table was closed, we compute those naively too, by
+        // reading every single record.
+        byte[] savedStats = readSavedStats();
+        this.stats = savedStats == null ? new TableStats(this.schema) : null;
         this.freePageNums = new TreeSet<Integer>();
         this.numRecords = 0;
 
@@ -173,21 +208,26 @@ public class Table implements Closeable {
         iter.next(); // Skip the header page.
         while(iter.hasNext()) {
             Page page = iter.next();
-            byte[] bitmap = getBitMap(transaction, page);
-
-            for (short i = 0; i < numRecordsPerPage; ++i) {
-                if (Bits.getBit(bitmap, i) == Bits.Bit.ONE) {
-                    Record r = getRecord(transaction, new RecordId(page.getPageNum(), i));
-                    stats.addRecord(r);
-                    numRecords++;
-                }
+            if (this.stats != null) {
+                addRecordsToStats(transaction, page);
             }
 
-            if (numRecordsOnPage(transaction, page) != numRecordsPerPage) {
+            int numRecordsOnPage = numRecordsOnPage(transaction, page);
+            numRecords += numRecordsOnPage;
+            if (numRecordsOnPage != numRecordsPerPage) {
                 freePageNums.add(page.getPageNum());
             }
         }
 
+        // Saved statistics of another version of the table are of no use.
+        if (savedStats != null && !TableStats.canLoad(savedStats, this.schema, numRecords)) {
+            savedStats = null;
+            recomputeStats(transaction);
+        }
+        this.savedStats = savedStats;
+        new File(this.statsFilename).delete();
+        new File(getTempStatsFilename()).delete();
+
         this.lockContext = lockContext;
 
     }
@@ -201,6 +241,18 @@ public class Table implements Closeable {
         return filename;
     }
 
+    /**
+     * Returns the filename of the file in which the statistics of the table
+     * persisted in `filename` are saved: `filename` with FILENAME_EXTENSION
+     * replaced by STATS_FILENAME_EXTENSION.
+     */
+    public static String getStatsFilename(String filename) {
+        if (filename.endsWith(FILENAME_EXTENSION)) {
+            filename = filename.substring(0, filename.length() - FILENAME_EXTENSION.length());
+        }
+        return filename + STATS_FILENAME_EXTENSION;
+    }
+
     public Schema getSchema() {
         return schema;
     }
@@ -217,7 +269,30 @@ public class Table implements Closeable {
         return numRecordsPerPage;
     }
 
-    public TableStats getStats() {
+    /**
+     * Marks this table as a temporary table, which does not save its
+     * statistics when it is closed.
+     */
+    public void setTemporary() {
+        this.temporary = true;
+    }
+
+    public synchronized TableStats getStats() {
+        if (stats == null) {
+            try {
+                stats = TableStats.fromBytes(ByteBuffer.wrap(savedStats));
+            } catch (RuntimeException e) {
+                // The saved statistics are damaged past the header that canLoad
+                // checked. The transaction that loaded the table has ended, so
+                // the records are read outside of one.
+                try {
+                    recomputeStats(null);
+                } catch (DatabaseException de) {
+                    throw new PageException("Could not recompute statistics: " + de.getMessage());
+                }
+            }
+            savedStats = null;
+        }
         return stats;
     }
 
@@ -254,11 +329,25 @@ public class Table implements Closeable {
     // Modifiers /////////////////////////////////////////////////////////////////
     /**
      * buildStatistics builds histograms on each of the columns of a table. Running
-     * it multiple times refreshes the statistics
+     * it multiple times refreshes the statistics, but once built they are kept up
+     * to date as records are added, updated and deleted.
      */
-    public TableStats buildStatistics(BaseTransaction transaction, int buckets) {
-        this.stats.refreshHistograms(transaction, buckets, this);
-        return this.stats;
+    public synchronized TableStats buildStatistics(BaseTransaction transaction, int buckets) {
+        TableStats stats = getStats();
+        stats.refreshHistograms(transaction, buckets, this);
+        return stats;
+    }
+
+    /**
+     * Like buildStatistics(transaction, buckets), but builds the histograms from a
+     * random sample of sampleFraction of the data pages of the table.
+     */
+    public synchronized TableStats buildStatistics(BaseTransaction transaction, int buckets,
+            float sampleFraction) {
+        TableStats stats = getStats();
+        stats.refreshHistograms(transaction, buckets, this, sampleFraction,
+                                transaction == null ? null : transaction.getWorkerPool());
+        return stats;
     }
 
     // Modifiers /////////////////////////////////////////////////////////////////
@@ -303,7 +392,7 @@ public class Table implements Closeable {
         Bits.setBit(page.getBuffer(transaction), entryNum, Bits.Bit.ONE);
 
         // Update the metadata.
-        stats.addRecord(record);
+        getStats().addRecord(record);
         if (numRecordsOnPage(transaction, page) == numRecordsPerPage) {
             freePageNums.pollFirst();
         }
@@ -318,6 +407,16 @@ public class Table implements Closeable {
      */
     public synchronized Record getRecord(BaseTransaction transaction,
                                          RecordId rid) throws DatabaseException {
+        return getRecord(transaction, rid, null);
+    }
+
+    /**
+     * Like getRecord(transaction, rid), but returns null without decoding the
+     * record if filter does not match its bytes. A null filter matches every
+     * record.
+     */
+    public synchronized Record getRecord(BaseTransaction transaction, RecordId rid,
+                                         RecordFilter filter) throws DatabaseException {
         validateRecordId(rid);
         Page page = allocator.fetchPage(transaction, rid.getPageNum());
         byte[] bitmap = getBitMap(transaction, page);
@@ -328,6 +427,9 @@ public class Table implements Closeable {
 
         int offset = bitmapSizeInBytes + (rid.getEntryNum() * schema.getSizeInBytes());
         Buffer buf = page.getBuffer(transaction);
+        if (filter != null && !filter.matches(buf, offset)) {
+            return null;
+        }
         buf.position(offset);
         return Record.fromBytes(buf, schema);
     }
@@ -345,8 +447,8 @@ public class Table implements Closeable {
 
         Page page = allocator.fetchPage(transaction, rid.getPageNum());
         insertRecord(transaction, page, rid.getEntryNum(), newRecord);
-        this.stats.removeRecord(oldRecord);
-        this.stats.addRecord(newRecord);
+        getStats().removeRecord(oldRecord);
+        getStats().addRecord(newRecord);
         return oldRecord;
     }
 
@@ -362,7 +464,7 @@ public class Table implements Closeable {
         Record record = getRecord(transaction, rid);
         Bits.setBit(page.getBuffer(transaction), rid.getEntryNum(), Bits.Bit.ZERO);
 
-        stats.removeRecord(record);
+        getStats().removeRecord(record);
         if(numRecordsOnPage(transaction, page) == numRecordsPerPage - 1) {
             freePageNums.add(page.getPageNum());
         }
@@ -381,8 +483,22 @@ public class Table implements Closeable {
         freePageNums.clear();
     }
 
-    public void close() {
-        allocator.close();
+    public synchronized void close() {
+        if (temporary) {
+            allocator.close();
+            return;
+        }
+        byte[] bytes = stats == null ? savedStats : stats.toBytes();
+        try {
+            Path tempPath = Paths.get(getTempStatsFilename());
+            Files.write(tempPath, bytes);
+            Files.move(tempPath, Paths.get(statsFilename), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new PageException("Could not save statistics: " + e.getMessage());
+        } finally {
+            allocator.close();
+        }
     }
 
     // Helpers ///////////////////////////////////////////////////////////////////
@@ -393,6 +509,50 @@ public class Table implements Closeable {
         return Schema.fromBytes(buf);
     }
 
+    /**
+     * Returns the contents of the stats file, or null if there is none.
+     */
+    private byte[] readSavedStats() {
+        try {
+            return Files.readAllBytes(Paths.get(statsFilename));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the filename that the statistics are written to before they are
+     * renamed to statsFilename.
+     */
+    private String getTempStatsFilename() {
+        return statsFilename + ".tmp";
+    }
+
+    /**
+     * Replaces the statistics with new ones computed from every record.
+     */
+    private void recomputeStats(BaseTransaction transaction) throws DatabaseException {
+        stats = new TableStats(schema);
+        Iterator<Page> iter = allocator.iterator(transaction);
+        iter.next(); // Skip the header page.
+        while(iter.hasNext()) {
+            addRecordsToStats(transaction, iter.next());
+        }
+    }
+
+    /**
+     * Adds every record on a data page to the statistics.
+     */
+    private void addRecordsToStats(BaseTransaction transaction, Page page) throws DatabaseException {
+        byte[] bitmap = getBitMap(transaction, page);
+        for (short i = 0; i < numRecordsPerPage; ++i) {
+            if (Bits.getBit(bitmap, i) == Bits.Bit.ONE) {
+                Record r = getRecord(transaction, new RecordId(page.getPageNum(), i));
+                stats.addRecord(r);
+            }
+        }
+    }
+
     private static void writeSchemaToHeaderPage(BaseTransaction transaction, PageAllocator allocator,
             Schema schema) {
         Page headerPage = allocator.fetchPage(transaction, allocator.allocPage(transaction));
@@ -467,6 +627,10 @@ public class Table implements Closeable {
         return new RecordIterator(transaction, this, ridIterator(transaction));
     }
 
+    public Iterator<Record> iterator(BaseTransaction transaction, RecordFilter filter) {
+        return new FilteredRecordIterator(transaction, this, ridIterator(transaction), filter);
+    }
+
     public BacktrackingIterator<Record> blockIterator(BaseTransaction transaction, Page[] block) {
         return new RecordIterator(transaction, this, new RIDBlockIterator(transaction, block));
     }
@@ -489,26 +653,61 @@ public class Table implements Closeable {
      * should function.
      */
     public class RIDPageIterator implements BacktrackingIterator<RecordId> {
+        private int pageNum;
+        private byte[] bitmap;
+        // The entry number of the next record, or numRecordsPerPage if there
+        // is none.
+        private short nextEntryNum;
+        // The entry number of the record returned last time next() was called,
+        // and of the marked record, or -1 if there is none.
+        private short prevEntryNum = -1;
+        private short markedEntryNum = -1;
+
         // You do not need to manipulate the transaction parameter, just pass it
         // into any method that requires a transaction that you need to call.
         public RIDPageIterator(BaseTransaction transaction, Page page) {
-            return;
+            this.pageNum = page.getPageNum();
+            this.bitmap = getBitMap(transaction, page);
+            this.nextEntryNum = this.findEntryNum((short) 0);
+        }
+
+        /**
+         * Returns the entry number of the first record at or after entryNum, or
+         * numRecordsPerPage if there is none.
+         */
+        private short findEntryNum(short entryNum) {
+            while (entryNum < numRecordsPerPage && Bits.getBit(this.bitmap, entryNum) == Bits.Bit.ZERO) {
+                entryNum++;
+            }
+            return entryNum;
         }
 
         public boolean hasNext() {
-            return false;
+            return this.nextEntryNum < numRecordsPerPage;
         }
 
         public RecordId next() {
-            throw new NoSuchElementException();
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            this.prevEntryNum = this.nextEntryNum;
+            this.nextEntryNum = this.findEntryNum((short) (this.nextEntryNum + 1));
+            return new RecordId(this.pageNum, this.prevEntryNum);
         }
 
         public void mark() {
-            return;
+            if (this.prevEntryNum == -1) {
+                return;
+            }
+            this.markedEntryNum = this.prevEntryNum;
         }
 
         public void reset() {
-            return;
+            if (this.markedEntryNum == -1) {
+                return;
+            }
+            this.prevEntryNum = -1;
+            this.nextEntryNum = this.markedEntryNum;
         }
     }
 
@@ -618,11 +817,21 @@ public class Table implements Closeable {
         }
 
         public boolean hasNext() {
-            return false;
+            while (this.recordIter == null || !this.recordIter.hasNext()) {
+                if (!this.pageIter.hasNext()) {
+                    return false;
+                }
+                this.recordIter = new RIDPageIterator(this.transaction, this.pageIter.next());
+            }
+            return true;
         }
 
         public RecordId next() {
-            throw new NoSuchElementException();
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            this.prevRecordIter = this.recordIter;
+            return this.recordIter.next();
         }
 
         /**
@@ -1,7 +1,9 @@
 package edu.berkeley.cs186.database.table.stats;
 
+import java.nio.ByteBuffer;
 import java.util.Objects;
-import java.util.HashSet;
+
+import edu.berkeley.cs186.database.common.Buffer;
 
 /**
  * A histogram bucket. There are two types of buckets:
@@ -10,6 +12,10 @@ import java.util.HashSet;
  *      values in the range [start, stop).
  *   2. An unbounded bucket `new Bucket<T>(start)` represents a count of values
  *      in the range [start, infinity).
+ *
+ * The number of distinct values in a bucket is estimated with a
+ * DistinctSketch, so a bucket takes up the same space however many values it
+ * counts.
  */
 public class Bucket<T> {
     // If end is not null, then this bucket corresponds to range [start, stop).
@@ -17,10 +23,10 @@ public class Bucket<T> {
     private T start;
     private T end;
     private int count;
+    // The distinct count set by setDistinctCount, to which the distinct values
+    // incremented since are added.
     private int distinctCount;
-
-    //todo fix later
-    private HashSet<Float> dictionary;
+    private DistinctSketch sketch;
 
     public Bucket(T start) {
         this.start = start;
@@ -28,7 +34,7 @@ public class Bucket<T> {
         this.count = 0;
 
         this.distinctCount = 0;
-        this.dictionary = new HashSet();
+        this.sketch = new DistinctSketch();
 
     }
 
@@ -38,10 +44,20 @@ public class Bucket<T> {
         this.count = 0;
 
         this.distinctCount = 0;
-        this.dictionary = new HashSet();
+        this.sketch = new DistinctSketch();
 
     }
 
+    /** Returns a copy of other that can be changed without changing other. */
+    public Bucket(Bucket<T> other) {
+        this.start = other.start;
+        this.end = other.end;
+        this.count = other.count;
+
+        this.distinctCount = other.distinctCount;
+        this.sketch = other.sketch.copy();
+    }
+
     public T getStart() {
         return start;
     }
@@ -60,21 +76,73 @@ public class Bucket<T> {
 
     public void setDistinctCount(int count) {
         this.distinctCount = count;
-        dictionary = new HashSet();
+        sketch = new DistinctSketch();
     }
 
     public int getDistinctCount() {
-        return this.distinctCount + dictionary.size();
+        return this.distinctCount + sketch.estimate();
     }
 
     public void increment(float val) {
         count ++;
-        dictionary.add(val);
+        sketch.add(val);
     }
 
     public void decrement(float val) {
         count --;
-        dictionary.remove(val);
+        sketch.remove(val);
+    }
+
+    /**
+     * Counts a value whose hash is hash, which tells it apart from other
+     * values that share its quantized value.
+     */
+    void increment(long hash) {
+        count ++;
+        sketch.addHash(hash);
+    }
+
+    void decrement(long hash) {
+        count --;
+        sketch.removeHash(hash);
+    }
+
+    /**
+     * Adds the values counted by other, a bucket over the same range of
+     * another part of the same column, to this bucket.
+     */
+    public void merge(Bucket<T> other) {
+        count += other.count;
+        distinctCount += other.distinctCount;
+        sketch.merge(other.sketch);
+    }
+
+    // Serialization /////////////////////////////////////////////////////////////
+    // Histograms only use buckets of floats, so only those are serialized.
+    static byte[] toBytes(Bucket<Float> bucket) {
+        // We write the start (4 bytes), whether there is an end (1 byte), the
+        // end or 0 (4 bytes), the count (4 bytes), the distinct count set by
+        // setDistinctCount (4 bytes), and then the sketch.
+        byte[] sketchBytes = bucket.sketch.toBytes();
+        ByteBuffer buf = ByteBuffer.allocate(2 * Float.BYTES + 1 + 2 * Integer.BYTES + sketchBytes.length);
+        buf.putFloat(bucket.start);
+        buf.put((byte) (bucket.end == null ? 0 : 1));
+        buf.putFloat(bucket.end == null ? 0.0f : bucket.end);
+        buf.putInt(bucket.count);
+        buf.putInt(bucket.distinctCount);
+        buf.put(sketchBytes);
+        return buf.array();
+    }
+
+    static Bucket<Float> fromBytes(Buffer buf) {
+        float start = buf.getFloat();
+        boolean hasEnd = buf.get() == 1;
+        float end = buf.getFloat();
+        Bucket<Float> bucket = hasEnd ? new Bucket<>(start, end) : new Bucket<>(start);
+        bucket.count = buf.getInt();
+        bucket.distinctCount = buf.getInt();
+        bucket.sketch = DistinctSketch.fromBytes(buf);
+        return bucket;
     }
 
     @Override
@@ -0,0 +1,255 @@
+package edu.berkeley.cs186.database.table.stats;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import edu.berkeley.cs186.database.common.Buffer;
+
+/**
+ * A DistinctSketch estimates the number of distinct values added to it in a
+ * fixed amount of memory, no matter how many values there are. It is a
+ * HyperLogLog sketch: each value is hashed, the first PRECISION bits of the
+ * hash pick one of NUM_REGISTERS registers, and the register keeps the
+ * longest run of leading zeros seen in the remaining bits.
+ *
+ * While there are at most EXACT_LIMIT distinct values, the sketch keeps their
+ * hashes instead, which are distinct for distinct values, along with how many
+ * times each was added, so that small counts are exact and values can still
+ * be removed: a value is only forgotten once it has been removed as many times
+ * as it was added.
+ *
+ *   DistinctSketch sketch = new DistinctSketch();
+ *   sketch.add(1.0f);
+ *   sketch.add(2.0f);
+ *   sketch.add(1.0f);
+ *   sketch.estimate(); // 2
+ *
+ * Two sketches can be merged into a sketch of all the values added to
+ * either, so that a sketch can be built in parts.
+ */
+public class DistinctSketch {
+    static final int PRECISION = 10;
+    static final int NUM_REGISTERS = 1 << PRECISION;
+    static final int EXACT_LIMIT = 128;
+
+    // The hashes of the distinct values, while there are at most EXACT_LIMIT,
+    // and how many times each was added.
+    private long[] hashes;
+    private int[] counts;
+    private int numHashes;
+
+    // The registers of the sketch, once there are more than EXACT_LIMIT
+    // distinct values, at which point hashes is null.
+    private byte[] registers;
+
+    public DistinctSketch() {
+        this.hashes = new long[EXACT_LIMIT];
+        this.counts = new int[EXACT_LIMIT];
+        this.numHashes = 0;
+        this.registers = null;
+    }
+
+    /** Returns a copy of this sketch. */
+    public DistinctSketch copy() {
+        DistinctSketch copy = new DistinctSketch();
+        if (this.registers != null) {
+            copy.hashes = null;
+            copy.counts = null;
+            copy.registers = this.registers.clone();
+        } else {
+            System.arraycopy(this.hashes, 0, copy.hashes, 0, this.numHashes);
+            System.arraycopy(this.counts, 0, copy.counts, 0, this.numHashes);
+            copy.numHashes = this.numHashes;
+        }
+        return copy;
+    }
+
+    /**
+     * A 64-bit mix of the bits of value. The mix is a bijection, so distinct
+     * values have distinct hashes.
+     */
+    static long hash(float value) {
+        return mix(Float.floatToIntBits(value));
+    }
+
+    /**
+     * A 64-bit hash of all the characters of value, so that strings are not
+     * confused with one another as their hashCodes or quantized values are.
+     */
+    static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public void add(float value) {
+        this.addHash(hash(value));
+    }
+
+    void addHash(long h) {
+        this.addHash(h, 1);
+    }
+
+    private void addHash(long h, int count) {
+        if (this.registers != null) {
+            int register = (int) (h >>> (Long.SIZE - PRECISION));
+            int rank = Math.min(Long.numberOfLeadingZeros(h << PRECISION), Long.SIZE - PRECISION) + 1;
+            if (rank > this.registers[register]) {
+                this.registers[register] = (byte) rank;
+            }
+            return;
+        }
+        for (int i = 0; i < this.numHashes; i++) {
+            if (this.hashes[i] == h) {
+                this.counts[i] += count;
+                return;
+            }
+        }
+        if (this.numHashes < EXACT_LIMIT) {
+            this.hashes[this.numHashes] = h;
+            this.counts[this.numHashes] = count;
+            this.numHashes++;
+            return;
+        }
+
+        // Too many distinct values to keep; switch to the registers.
+        long[] hashes = this.hashes;
+        this.hashes = null;
+        this.counts = null;
+        this.numHashes = 0;
+        this.registers = new byte[NUM_REGISTERS];
+        for (long old : hashes) {
+            this.addHash(old);
+        }
+        this.addHash(h);
+    }
+
+    /**
+     * Removes one of the times value was added from the sketch, so that the
+     * value is only forgotten once every time it was added has been removed.
+     * Values can only be removed while the count is exact; a HyperLogLog
+     * sketch cannot forget a value, so the estimate stays where it is after
+     * that.
+     */
+    public void remove(float value) {
+        this.removeHash(hash(value));
+    }
+
+    void removeHash(long h) {
+        if (this.registers != null) {
+            return;
+        }
+        for (int i = 0; i < this.numHashes; i++) {
+            if (this.hashes[i] == h) {
+                if (--this.counts[i] == 0) {
+                    this.numHashes--;
+                    this.hashes[i] = this.hashes[this.numHashes];
+                    this.counts[i] = this.counts[this.numHashes];
+                }
+                return;
+            }
+        }
+    }
+
+    /** Adds every value added to other to this sketch. */
+    public void merge(DistinctSketch other) {
+        if (other.registers == null) {
+            for (int i = 0; i < other.numHashes; i++) {
+                this.addHash(other.hashes[i], other.counts[i]);
+            }
+            return;
+        }
+        if (this.registers == null) {
+            long[] hashes = Arrays.copyOf(this.hashes, this.numHashes);
+            this.hashes = null;
+            this.counts = null;
+            this.numHashes = 0;
+            this.registers = other.registers.clone();
+            for (long h : hashes) {
+                this.addHash(h);
+            }
+            return;
+        }
+        for (int i = 0; i < NUM_REGISTERS; i++) {
+            this.registers[i] = (byte) Math.max(this.registers[i], other.registers[i]);
+        }
+    }
+
+    /** Returns an estimate of the number of distinct values in the sketch. */
+    public int estimate() {
+        if (this.registers == null) {
+            return this.numHashes;
+        }
+
+        double sum = 0.0;
+        int numZeros = 0;
+        for (byte register : this.registers) {
+            sum += Math.scalb(1.0, -register);
+            if (register == 0) {
+                numZeros++;
+            }
+        }
+        double alpha = 0.7213 / (1.0 + 1.079 / NUM_REGISTERS);
+        double estimate = alpha * NUM_REGISTERS * NUM_REGISTERS / sum;
+
+        // Small counts are estimated better by how many registers are empty.
+        if (estimate <= 2.5 * NUM_REGISTERS && numZeros > 0) {
+            estimate = NUM_REGISTERS * Math.log((double) NUM_REGISTERS / numZeros);
+        }
+        return (int) Math.round(estimate);
+    }
+
+    // Serialization /////////////////////////////////////////////////////////////
+    public byte[] toBytes() {
+        // A sketch whose count is exact is serialized as the literal value 0
+        // (1 byte), the number n of hashes (4 bytes) and the n hashes (8 bytes
+        // each), each followed by the number of times it was added (4 bytes).
+        // Any other sketch is serialized as the literal value 1 (1 byte)
+        // and its NUM_REGISTERS registers (1 byte each).
+        if (this.registers == null) {
+            ByteBuffer buf = ByteBuffer.allocate(1 + Integer.BYTES
+                                                 + (Long.BYTES + Integer.BYTES) * this.numHashes);
+            buf.put((byte) 0);
+            buf.putInt(this.numHashes);
+            for (int i = 0; i < this.numHashes; i++) {
+                buf.putLong(this.hashes[i]);
+                buf.putInt(this.counts[i]);
+            }
+            return buf.array();
+        }
+        ByteBuffer buf = ByteBuffer.allocate(1 + NUM_REGISTERS);
+        buf.put((byte) 1);
+        buf.put(this.registers);
+        return buf.array();
+    }
+
+    public static DistinctSketch fromBytes(Buffer buf) {
+        DistinctSketch sketch = new DistinctSketch();
+        if (buf.get() == 0) {
+            int numHashes = buf.getInt();
+            for (int i = 0; i < numHashes; i++) {
+                sketch.hashes[i] = buf.getLong();
+                sketch.counts[i] = buf.getInt();
+            }
+            sketch.numHashes = numHashes;
+        } else {
+            sketch.hashes = null;
+            sketch.counts = null;
+            sketch.registers = new byte[NUM_REGISTERS];
+            buf.get(sketch.registers);
+        }
+        return sketch;
+    }
+}
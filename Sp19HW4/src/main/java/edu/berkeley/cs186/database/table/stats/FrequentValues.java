@@ -0,0 +1,250 @@
+package edu.berkeley.cs186.database.table.stats;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.berkeley.cs186.database.common.Buffer;
+
+/**
+ * FrequentValues tracks the most frequent values added to it with at most
+ * NUM_COUNTERS counters, using the Space-Saving algorithm. A value that is
+ * not being counted takes over the counter with the smallest count, and
+ * inherits that count as its error. So for every value that is counted,
+ * getCount returns a count that the value is guaranteed to have reached,
+ * and every value that makes up more than 1/NUM_COUNTERS of all the values
+ * is counted.
+ *
+ *   FrequentValues values = new FrequentValues();
+ *   values.add(7.0f);
+ *   values.add(7.0f);
+ *   values.add(3.0f);
+ *   values.getCount(7.0f); // 2
+ *
+ * Two sketches can be merged into a sketch of all the values added to
+ * either.
+ *
+ * Values are told apart by a 64-bit hash, so that a string can be counted
+ * under the hash of all its characters while being reported as its quantized
+ * value.
+ */
+public class FrequentValues {
+    static final int NUM_COUNTERS = 16;
+
+    private long[] keys;
+    private float[] values;
+    private int[] counts;
+    private int[] errors;
+    private int size;
+
+    public FrequentValues() {
+        this.keys = new long[NUM_COUNTERS];
+        this.values = new float[NUM_COUNTERS];
+        this.counts = new int[NUM_COUNTERS];
+        this.errors = new int[NUM_COUNTERS];
+        this.size = 0;
+    }
+
+    private int indexOf(long key) {
+        for (int i = 0; i < this.size; i++) {
+            if (this.keys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOfMin() {
+        int min = 0;
+        for (int i = 1; i < this.size; i++) {
+            if (this.counts[i] < this.counts[min]) {
+                min = i;
+            }
+        }
+        return min;
+    }
+
+    public void add(float value) {
+        this.add(DistinctSketch.hash(value), value);
+    }
+
+    /**
+     * Adds one occurrence of the value whose hash is key, and which is
+     * reported as value.
+     */
+    void add(long key, float value) {
+        int i = this.indexOf(key);
+        if (i == -1 && this.size < NUM_COUNTERS) {
+            i = this.size++;
+            this.keys[i] = key;
+            this.values[i] = value;
+            this.counts[i] = 0;
+            this.errors[i] = 0;
+        } else if (i == -1) {
+            i = this.indexOfMin();
+            this.keys[i] = key;
+            this.values[i] = value;
+            this.errors[i] = this.counts[i];
+        }
+        this.counts[i]++;
+    }
+
+    /**
+     * Removes one occurrence of value, if it is being counted.
+     */
+    public void remove(float value) {
+        this.remove(DistinctSketch.hash(value));
+    }
+
+    void remove(long key) {
+        int i = this.indexOf(key);
+        if (i == -1) {
+            return;
+        }
+        this.counts[i]--;
+        this.errors[i] = Math.min(this.errors[i], this.counts[i]);
+        if (this.counts[i] == 0) {
+            this.size--;
+            this.keys[i] = this.keys[this.size];
+            this.values[i] = this.values[this.size];
+            this.counts[i] = this.counts[this.size];
+            this.errors[i] = this.errors[this.size];
+        }
+    }
+
+    /**
+     * Returns a count that value is guaranteed to have reached, or 0 if value
+     * is not being counted.
+     */
+    public int getCount(float value) {
+        return this.getCount(DistinctSketch.hash(value));
+    }
+
+    int getCount(long key) {
+        int i = this.indexOf(key);
+        return i == -1 ? 0 : this.counts[i] - this.errors[i];
+    }
+
+    /**
+     * Returns the values being counted. Two strings may be counted separately
+     * but share a quantized value.
+     */
+    public List<Float> getValues() {
+        List<Float> values = new ArrayList<>(this.size);
+        for (int i = 0; i < this.size; i++) {
+            values.add(this.values[i]);
+        }
+        return values;
+    }
+
+    /** Returns the number of values being counted. */
+    int size() {
+        return this.size;
+    }
+
+    /** Returns the ith value being counted. */
+    float getValueAt(int i) {
+        return this.values[i];
+    }
+
+    /** Returns a count that the ith value being counted is guaranteed to have reached. */
+    int getCountAt(int i) {
+        return this.counts[i] - this.errors[i];
+    }
+
+    /**
+     * Scales every count by factor, for a sketch of a sample of 1/factor of
+     * the values.
+     */
+    void scale(float factor) {
+        for (int i = 0; i < this.size; i++) {
+            this.counts[i] = Math.round(factor * this.counts[i]);
+            this.errors[i] = Math.round(factor * this.errors[i]);
+        }
+    }
+
+    /**
+     * Adds every value added to other to this sketch. A value counted by only
+     * one of the two sketches may have been added to the other up to the
+     * smallest count of the other, if the other is full, so that much is
+     * added to both its count and its error. The NUM_COUNTERS largest counts
+     * are kept.
+     */
+    public void merge(FrequentValues other) {
+        int thisMin = this.size == NUM_COUNTERS ? this.counts[this.indexOfMin()] : 0;
+        int otherMin = other.size == NUM_COUNTERS ? other.counts[other.indexOfMin()] : 0;
+
+        Map<Long, Counter> merged = new LinkedHashMap<>();
+        for (int i = 0; i < this.size; i++) {
+            int j = other.indexOf(this.keys[i]);
+            if (j == -1) {
+                merged.put(this.keys[i], new Counter(this.keys[i], this.values[i],
+                                                     this.counts[i] + otherMin, this.errors[i] + otherMin));
+            } else {
+                merged.put(this.keys[i], new Counter(this.keys[i], this.values[i],
+                                                     this.counts[i] + other.counts[j],
+                                                     this.errors[i] + other.errors[j]));
+            }
+        }
+        for (int j = 0; j < other.size; j++) {
+            if (this.indexOf(other.keys[j]) == -1) {
+                merged.put(other.keys[j], new Counter(other.keys[j], other.values[j],
+                                                      other.counts[j] + thisMin, other.errors[j] + thisMin));
+            }
+        }
+
+        List<Counter> counters = new ArrayList<>(merged.values());
+        counters.sort((x, y) -> Integer.compare(y.count, x.count));
+        this.size = Math.min(counters.size(), NUM_COUNTERS);
+        for (int i = 0; i < this.size; i++) {
+            Counter counter = counters.get(i);
+            this.keys[i] = counter.key;
+            this.values[i] = counter.value;
+            this.counts[i] = counter.count;
+            this.errors[i] = counter.error;
+        }
+    }
+
+    private static class Counter {
+        private long key;
+        private float value;
+        private int count;
+        private int error;
+
+        private Counter(long key, float value, int count, int error) {
+            this.key = key;
+            this.value = value;
+            this.count = count;
+            this.error = error;
+        }
+    }
+
+    // Serialization /////////////////////////////////////////////////////////////
+    public byte[] toBytes() {
+        // We write the number n of counters (4 bytes), and then each counter's
+        // key (8 bytes), value (4 bytes), count (4 bytes) and error (4 bytes).
+        ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES + (Long.BYTES + 3 * Integer.BYTES) * this.size);
+        buf.putInt(this.size);
+        for (int i = 0; i < this.size; i++) {
+            buf.putLong(this.keys[i]);
+            buf.putFloat(this.values[i]);
+            buf.putInt(this.counts[i]);
+            buf.putInt(this.errors[i]);
+        }
+        return buf.array();
+    }
+
+    public static FrequentValues fromBytes(Buffer buf) {
+        FrequentValues frequentValues = new FrequentValues();
+        frequentValues.size = buf.getInt();
+        for (int i = 0; i < frequentValues.size; i++) {
+            frequentValues.keys[i] = buf.getLong();
+            frequentValues.values[i] = buf.getFloat();
+            frequentValues.counts[i] = buf.getInt();
+            frequentValues.errors[i] = buf.getInt();
+        }
+        return frequentValues;
+    }
+}
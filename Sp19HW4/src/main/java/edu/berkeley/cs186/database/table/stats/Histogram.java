@@ -1,8 +1,11 @@
 package edu.berkeley.cs186.database.table.stats;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 
 import edu.berkeley.cs186.database.BaseTransaction;
+import edu.berkeley.cs186.database.common.Buffer;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.query.QueryPlan.PredicateOperator;
 import edu.berkeley.cs186.database.table.Table;
@@ -50,14 +53,22 @@ import edu.berkeley.cs186.database.databox.TypeId;
  * b.getCount();//returns the number of items added to the bucket
  * b.getDistinctCount();//returns the approximate number of distinct iterms added to the bucket
  *
+ * Along with the buckets, a histogram keeps a FrequentValues sketch of the most frequent values of
+ * the column, which refines the estimates of equality predicates on values that are more frequent
+ * than the others in their bucket. Both take up a fixed amount of memory, however large the table.
+ *
+ * buildHistogram builds buckets of equal width. toEquiDepth turns a histogram with many narrow
+ * buckets into one with fewer buckets that each hold about the same number of values, so that the
+ * ranges where most of the values are get the most buckets; the filters below use the width of
+ * each bucket, whatever it is.
  *
  */
 public class Histogram {
     private Bucket<Float> [] buckets; //An array of float buckets the basic data structure
+    private FrequentValues frequentValues;
 
     private float minValue;
     private float maxValue;
-    private float width;
 
     /*This constructor initialize an empty histogram object*/
     public Histogram() {
@@ -66,31 +77,41 @@ public class Histogram {
 
     /*This constructor initialize a histogram object with a set number of buckets*/
     public Histogram(int numBuckets) {
-        buckets = new Bucket[numBuckets];
+        buckets = newBuckets(numBuckets);
         for (int i = 0; i < numBuckets; ++i) {
             buckets[i] = new Bucket<>(Float.MIN_VALUE, Float.MAX_VALUE);
         }
+        frequentValues = new FrequentValues();
+    }
+
+    /*Creates an array of numBuckets float buckets, all null. Java cannot create an array of
+     *Bucket<Float> directly, so an array of Bucket<?> is cast.*/
+    @SuppressWarnings("unchecked")
+    private static Bucket<Float> [] newBuckets(int numBuckets) {
+        return (Bucket<Float> []) new Bucket<?>[numBuckets];
     }
 
-    /*This is a copy constructor that generates a new histogram from a bucket list*/
+    /*This is a copy constructor that generates a new histogram from a bucket list. The copy does not
+     *know the frequent values of the column.*/
     private Histogram(Bucket<Float> buckets []) {
         this.buckets = buckets;
+        this.frequentValues = new FrequentValues();
         this.minValue = buckets[0].getStart();
-        this.width = buckets[0].getEnd() - buckets[0].getStart();
         this.maxValue = buckets[this.buckets.length - 1].getEnd();
     }
 
     /** We only consider float histograms, and these two methods turn every data type into a float.
      *  We call this mapping quantization. That means given any DataBox, we turn it into a float number.
-     *  For Booleans, Integers, Floats, order is preserved in the mapping. But for strings, only equalities
-     *  are preserved.
+     *  For Booleans, Integers, Floats, order is preserved in the mapping. Strings are mapped by their
+     *  first STRING_PREFIX_LENGTH characters, which preserves their order but not their equalities;
+     *  values are told apart by hash(DataBox) instead.
      */
-    private float quantization(Record record, int attribute) {
+    private static float quantization(Record record, int attribute) {
         DataBox d = record.getValues().get(attribute);
         return quantization(d);
     }
 
-    private float quantization(DataBox d) {
+    static float quantization(DataBox d) {
         switch (d.type().getTypeId()) {
         case BOOL:   { return (d.getBool()) ? 1.0f : 0.0f; }
 
@@ -98,12 +119,36 @@ public class Histogram {
 
         case FLOAT:  { return d.getFloat(); }
 
-        case STRING: { return (float) (d.getString().hashCode()); }
+        case STRING: { return quantization(d.getString()); }
         }
 
         return 0f;
     }
 
+    // The number of characters of a string that its quantized value depends on. Each character takes
+    // 8 bits, and a float holds every integer of up to 24 bits exactly.
+    static final int STRING_PREFIX_LENGTH = 3;
+
+    /* The first STRING_PREFIX_LENGTH characters of s as a base 256 number, with characters past the
+     * end of s as 0 and characters past 255 as 255, so that s < t implies q(s) <= q(t).*/
+    private static float quantization(String s) {
+        int q = 0;
+        for (int i = 0; i < STRING_PREFIX_LENGTH; i++) {
+            int c = i < s.length() ? Math.min(s.charAt(i), 255) : 0;
+            q = (q << 8) | c;
+        }
+        return (float) q;
+    }
+
+    /* A 64-bit hash of d, which is the same for equal values and, with high probability, different for
+     * different ones, even strings that share their quantized value.*/
+    static long hash(DataBox d) {
+        if (d.type().getTypeId() == TypeId.STRING) {
+            return DistinctSketch.hash(d.getString());
+        }
+        return DistinctSketch.hash(quantization(d));
+    }
+
     /** buildHistogram() takes a table and an attribute and builds a fixed width histogram, with
      *  the following procedure.
      *
@@ -120,12 +165,10 @@ public class Histogram {
         maxValue = Float.MIN_VALUE;
         minValue = Float.MAX_VALUE;
         Iterator<Record> tableIter = table.iterator(transaction);
-        float[] recordList = new float[(int) table.getNumRecords()];
 
         //1. first calculate the min and the max values
-        for (int i = 0; i < table.getNumRecords(); i++) {
-            float record = this.quantization(tableIter.next(), attribute);
-            recordList[i] = record;
+        while (tableIter.hasNext()) {
+            float record = quantization(tableIter.next(), attribute);
             if (record < minValue) {
               minValue = record;
             }
@@ -135,24 +178,194 @@ public class Histogram {
             }
         }
 
-        //2. calculate the width of each bin
-        width = (maxValue - minValue) / buckets.length;
-        
-        //3. create each bucket object
+        //2. and 3. calculate the width of each bin and create each bucket object
+        setRange(minValue, maxValue);
+
+        //4. populate the data using the increment(value) method, in a second pass so that the values
+        //   need not be held in memory
+        tableIter = table.iterator(transaction);
+        while (tableIter.hasNext()) {
+            addValue(tableIter.next().getValues().get(attribute));
+        }
+    }
+
+    /**
+     * Sets the range of the histogram to [minValue, maxValue] and empties it, with buckets of equal
+     * width.
+     */
+    void setRange(float minValue, float maxValue) {
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+        float width = (maxValue - minValue) / buckets.length;
         for (int i = 0; i < buckets.length; i++) {
-            buckets[i] = new Bucket(width * i, width * (i + 1));
+            buckets[i] = new Bucket<>(minValue + width * i, minValue + width * (i + 1));
+        }
+        frequentValues = new FrequentValues();
+    }
+
+    /** Adds value to the histogram, as when a record is added to its table. A value out of the range
+     *  of the histogram is counted in its first or last bucket. */
+    public void addValue(DataBox value) {
+        float qvalue = quantization(value);
+        long hash = hash(value);
+        buckets[clampedBucketIndex(qvalue)].increment(hash);
+        frequentValues.add(hash, qvalue);
+    }
+
+    /** Removes value from the histogram, as when a record is removed from its table. */
+    public void removeValue(DataBox value) {
+        float qvalue = quantization(value);
+        long hash = hash(value);
+        Bucket<Float> bucket = buckets[clampedBucketIndex(qvalue)];
+        if (bucket.getCount() > 0) {
+            bucket.decrement(hash);
         }
+        frequentValues.remove(hash);
+    }
+
+    /**
+     * Returns a histogram of the same values with at most numBuckets buckets, each of which holds
+     * about as many values as the others. The buckets of this histogram are merged in order: a bucket
+     * is closed once it holds at least its share of the values not yet placed, so a value more frequent
+     * than that gets a bucket of its own (or shares one with its neighbours, if its bucket here holds
+     * other values too). The buckets of this histogram should be narrow compared to the ones wanted.
+     */
+    Histogram toEquiDepth(int numBuckets) {
+        if (numBuckets >= buckets.length) {
+            return this;
+        }
+
+        Bucket<Float> [] newBuckets = newBuckets(numBuckets);
+        int remaining = getCount();
+        int i = 0;
+        for (int b = 0; b < numBuckets; b++) {
+            int bucketsLeft = numBuckets - b;
+            float target = (float) remaining / bucketsLeft;
+
+            int end = i;
+            int count = 0;
+            if (remaining == 0) {
+                // The rest of the buckets are empty, so split them evenly.
+                end = i + (buckets.length - i) / bucketsLeft;
+            } else {
+                // Leave at least one bucket of this histogram for each of the buckets left to fill.
+                do {
+                    count += buckets[end].getCount();
+                    end++;
+                } while (end < buckets.length - (bucketsLeft - 1) && (bucketsLeft == 1 || count < target));
+            }
+
+            Bucket<Float> bucket = new Bucket<>(buckets[i].getStart(), buckets[end - 1].getEnd());
+            for (; i < end; i++) {
+                bucket.merge(buckets[i]);
+            }
+            newBuckets[b] = bucket;
+            remaining -= count;
+        }
+
+        Histogram histogram = new Histogram(newBuckets);
+        histogram.minValue = minValue;
+        histogram.maxValue = maxValue;
+        histogram.frequentValues = frequentValues;
+        return histogram;
+    }
+
+    /**
+     * Scales the counts of the histogram by factor, for a histogram built from a sample of
+     * 1/factor of a table. The distinct counts of buckets whose values were nearly all distinct in
+     * the sample are scaled as well; those of other buckets are assumed to have been seen in full.
+     */
+    void scale(float factor) {
+        for (Bucket<Float> bucket : buckets) {
+            int count = bucket.getCount();
+            int distinctCount = bucket.getDistinctCount();
+            int newCount = Math.round(factor * count);
+            bucket.setCount(newCount);
+            if (distinctCount >= 0.9 * count) {
+                bucket.setDistinctCount(Math.min(newCount, Math.round(factor * distinctCount)));
+            } else {
+                bucket.setDistinctCount(distinctCount);
+            }
+        }
+        frequentValues.scale(factor);
+    }
 
-        //4. populate the data using the increment(value) method
-        for (int i = 0; i < table.getNumRecords(); i++) {
-            float record = recordList[i];
-            buckets[bucketIndex(record)].increment(record);
+    /**
+     * Adds the values of another histogram over the same buckets, built from another part of the same
+     * column, to this histogram.
+     */
+    public void merge(Histogram other) {
+        if (other.buckets.length != this.buckets.length) {
+            throw new IllegalArgumentException("Cannot merge histograms with different buckets.");
+        }
+        for (int i = 0; i < this.buckets.length; i++) {
+            if (!other.buckets[i].getStart().equals(this.buckets[i].getStart()) ||
+                    !other.buckets[i].getEnd().equals(this.buckets[i].getEnd())) {
+                throw new IllegalArgumentException("Cannot merge histograms with different buckets.");
+            }
         }
+        for (int i = 0; i < this.buckets.length; i++) {
+            this.buckets[i].merge(other.buckets[i]);
+        }
+        this.frequentValues.merge(other.frequentValues);
     }
 
+    /* The index of the bucket whose range holds v, which is -1 if v is below the range of the histogram
+     * and buckets.length if it is above it. The buckets need not be of equal width, so the last one
+     * whose start is at most v is found by binary search.*/
     private int bucketIndex(float v) {
         if (Math.abs(v - maxValue) < 0.00001) { return buckets.length - 1; }
-        return (int) Math.floor((v - minValue) / width);
+        if (v < minValue) { return -1; }
+        if (v > maxValue) { return buckets.length; }
+
+        int low = 0;
+        int high = buckets.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (buckets[mid].getStart() <= v) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private int clampedBucketIndex(float v) {
+        return Math.max(0, Math.min(buckets.length - 1, bucketIndex(v)));
+    }
+
+    //Serialization//////////////////////////////////////////////////////////////
+    public byte[] toBytes() {
+        // We write the number n of buckets (4 bytes), the min and max values (4 bytes each), the n
+        // buckets, and then the frequent values.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + 2 * Float.BYTES);
+        header.putInt(buckets.length);
+        header.putFloat(minValue);
+        header.putFloat(maxValue);
+        bytes.write(header.array(), 0, header.capacity());
+        for (Bucket<Float> bucket : buckets) {
+            byte[] bucketBytes = Bucket.toBytes(bucket);
+            bytes.write(bucketBytes, 0, bucketBytes.length);
+        }
+        byte[] frequentBytes = frequentValues.toBytes();
+        bytes.write(frequentBytes, 0, frequentBytes.length);
+        return bytes.toByteArray();
+    }
+
+    public static Histogram fromBytes(Buffer buf) {
+        Bucket<Float> [] buckets = newBuckets(buf.getInt());
+        float minValue = buf.getFloat();
+        float maxValue = buf.getFloat();
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = Bucket.fromBytes(buf);
+        }
+        Histogram histogram = new Histogram(buckets);
+        histogram.minValue = minValue;
+        histogram.maxValue = maxValue;
+        histogram.frequentValues = FrequentValues.fromBytes(buf);
+        return histogram;
     }
 
     //Accessor Methods//////////////////////////////////////////////////////////////
@@ -221,18 +434,13 @@ public class Histogram {
      */
     public float[] filter(PredicateOperator predicate, DataBox value) {
         float qvalue =  quantization(value);
+        long hash = hash(value);
 
-        //do not handle non equality predicates on strings
-        if (value.type().getTypeId() == TypeId.STRING &&
-                ! (predicate == PredicateOperator.EQUALS ||
-                   predicate == PredicateOperator.NOT_EQUALS) ) {
-            return stringNonEquality(qvalue);
-
-        } else if (predicate == PredicateOperator.EQUALS) {
-            return allEquality(qvalue);
+        if (predicate == PredicateOperator.EQUALS) {
+            return allEquality(qvalue, hash);
 
         } else if (predicate == PredicateOperator.NOT_EQUALS) {
-            return allNotEquality(qvalue);
+            return allNotEquality(qvalue, hash);
 
         } else if (predicate == PredicateOperator.GREATER_THAN) {
             return allGreaterThan(qvalue);
@@ -241,29 +449,20 @@ public class Histogram {
             return allLessThan(qvalue);
 
         } else if (predicate == PredicateOperator.GREATER_THAN_EQUALS) {
-            return allGreaterThanEquals(qvalue);
+            return allGreaterThanEquals(qvalue, hash);
 
         } else {
-            return allLessThanEquals(qvalue);
+            return allLessThanEquals(qvalue, hash);
 
         }
 
     }
 
-    /** Given, we don't handle non equality comparisons of strings. Return 1*/
-    private float [] stringNonEquality(float qvalue) {
-        float [] result = new float[this.buckets.length];
-        for (int i = 0; i < this.buckets.length; i++) {
-            result[i] = 1.0f;
-        }
-        return result;
-    }
-
     /*Nothing fancy here take max of gt and equals*/
-    private float [] allGreaterThanEquals(float qvalue) {
+    private float [] allGreaterThanEquals(float qvalue, long hash) {
         float [] result = new float[this.buckets.length];
         float [] resultGT = allGreaterThan(qvalue);
-        float [] resultEquals = allEquality(qvalue);
+        float [] resultEquals = allEquality(qvalue, hash);
 
         for (int i = 0; i < this.buckets.length; i++) {
             result[i] = Math.max(resultGT[i], resultEquals[i]);
@@ -273,10 +472,10 @@ public class Histogram {
     }
 
     /*Nothing fancy here take max of lt and equals*/
-    private float [] allLessThanEquals(float qvalue) {
+    private float [] allLessThanEquals(float qvalue, long hash) {
         float [] result = new float[this.buckets.length];
         float [] resultLT = allLessThan(qvalue);
-        float [] resultEquals = allEquality(qvalue);
+        float [] resultEquals = allEquality(qvalue, hash);
 
         for (int i = 0; i < this.buckets.length; i++) {
             result[i] = Math.max(resultLT[i], resultEquals[i]);
@@ -289,16 +488,17 @@ public class Histogram {
 
     /**
      *  Given a quantized value, scale the bucket that contains the value by 1/distinctCount,
-     *  and set all other values to 0.
+     *  and set all other values to 0. If the value is known to be more frequent than that, scale
+     *  the bucket by its share of the bucket instead.
      */
-    private float [] allEquality(float qvalue) {
+    private float [] allEquality(float qvalue, long hash) {
         float [] result = new float[this.buckets.length];
 
         // TODO: HW4 implement;
 
         for (int i = 0; i < this.buckets.length; i++) {
             if (i == this.bucketIndex(qvalue)) {
-                result[i] = 1 / (float) this.buckets[i].getDistinctCount();
+                result[i] = equalityFraction(i, hash);
             } else {
               result[i] = 0;
             } 
@@ -308,17 +508,17 @@ public class Histogram {
     }
 
     /**
-      *  Given a quantized value, scale the bucket that contains the value by 1-1/distinctCount,
-      *  and set all other values to 1.
+      *  Given a quantized value, scale the bucket that contains the value by 1-1/distinctCount
+      *  (or by one minus its known share of the bucket), and set all other values to 1.
       */
-    private float [] allNotEquality(float qvalue) {
+    private float [] allNotEquality(float qvalue, long hash) {
         float [] result = new float[this.buckets.length];
 
         // TODO: HW4 implement;
 
         for (int i = 0; i < this.buckets.length; i++) {
             if (i == this.bucketIndex(qvalue)) {
-                result[i] = 1 - 1 / (float) this.buckets[i].getDistinctCount();
+                result[i] = 1 - equalityFraction(i, hash);
             } else {
               result[i] = 1;
             } 
@@ -327,9 +527,42 @@ public class Histogram {
         return result;
     }
 
+    /* The fraction of the values in bucket i that equal the value whose hash is hash. A most common
+     * value has at least its known share of the bucket. Any other value shares what the most common
+     * values of the bucket leave evenly with the other distinct values of the bucket.*/
+    private float equalityFraction(int i, long hash) {
+        int count = this.buckets[i].getCount();
+        int distinctCount = this.buckets[i].getDistinctCount();
+        if (count == 0) {
+            return 0;
+        }
+        float uniform = 1 / (float) distinctCount;
+        int frequentCount = this.frequentValues.getCount(hash);
+        if (frequentCount > 0) {
+            return Math.max(uniform, Math.min(1.0f, frequentCount / (float) count));
+        }
+
+        // The most common values of this bucket are those known to be more frequent than average.
+        int commonCount = 0;
+        int numCommon = 0;
+        for (int j = 0; j < this.frequentValues.size(); j++) {
+            int frequent = this.frequentValues.getCountAt(j);
+            if (frequent > count / (float) distinctCount &&
+                    clampedBucketIndex(this.frequentValues.getValueAt(j)) == i) {
+                commonCount += frequent;
+                numCommon++;
+            }
+        }
+        if (numCommon == 0 || numCommon >= distinctCount || commonCount >= count) {
+            return uniform;
+        }
+        return (count - commonCount) / (float) count / (distinctCount - numCommon);
+    }
+
     /**
      *  Given a quantized value, scale the bucket that contains the value by (end - q)/width,
-     *  and set all other buckets to 1 if higher and 0 if lower.
+     *  and set all other buckets to 1 if higher and 0 if lower. A bucket of width 0 holds a single
+     *  value, none of which are greater than it.
      */
     private float [] allGreaterThan(float qvalue) {
         float [] result = new float[this.buckets.length];
@@ -338,7 +571,7 @@ public class Histogram {
 
         for (int i = 0; i < this.buckets.length; i++) {
             if (i == this.bucketIndex(qvalue)) {
-                result[i] = (this.buckets[i].getEnd() - qvalue) / this.width;
+                result[i] = bucketFraction(i, this.buckets[i].getEnd() - qvalue);
             } else if (i > this.bucketIndex(qvalue)) {
               result[i] = 1;
             } else {
@@ -360,7 +593,7 @@ public class Histogram {
 
         for (int i = 0; i < this.buckets.length; i++) {
             if (i == this.bucketIndex(qvalue)) {
-                result[i] = (qvalue - this.buckets[i].getStart()) / this.width;
+                result[i] = bucketFraction(i, qvalue - this.buckets[i].getStart());
             } else if (i < this.bucketIndex(qvalue)) {
               result[i] = 1;
             } else {
@@ -371,6 +604,15 @@ public class Histogram {
         return result;
     }
 
+    /* The fraction of the width of bucket i that length is.*/
+    private float bucketFraction(int i, float length) {
+        float width = this.buckets[i].getEnd() - this.buckets[i].getStart();
+        if (width <= 0) {
+            return 0;
+        }
+        return Math.max(0, Math.min(1, length / width));
+    }
+
     // Cost Estimation ///////////////////////////////////////////////////////////////////
 
     /**
@@ -382,13 +624,21 @@ public class Histogram {
     public float computeReductionFactor(PredicateOperator predicate, DataBox value) {
         float [] reduction = filter(predicate, value);
 
+        //each bucket counts as much as the values in it, now that buckets need not hold the same
+        //number of them
         float sum = 0.0f;
         int total = 0;
 
         for (int i = 0; i < this.buckets.length; i++) {
-            //non empty buckets
-            sum += reduction[i] * this.buckets[i].getDistinctCount();
-            total += this.buckets[i].getDistinctCount();
+            sum += reduction[i] * this.buckets[i].getCount();
+            total += this.buckets[i].getCount();
+        }
+
+        if (total == 0) {
+            for (int i = 0; i < this.buckets.length; i++) {
+                sum += reduction[i] * this.buckets[i].getDistinctCount();
+                total += this.buckets[i].getDistinctCount();
+            }
         }
 
         return sum / total;
@@ -414,14 +664,15 @@ public class Histogram {
      */
     public Histogram copyWithPredicate(PredicateOperator predicate, DataBox value) {
         float [] reduction = filter(predicate, value);
-        Bucket<Float> [] newBuckets = this.buckets.clone();
+        Bucket<Float> [] newBuckets = newBuckets(this.buckets.length);
 
         for (int i = 0; i < this.buckets.length; i++) {
             int newCount = (int) Math.round(reduction[i] * this.buckets[i].getCount());
             int newDistinctCount = (int) Math.round(reduction[i] * this.buckets[i].getDistinctCount());
 
+            newBuckets[i] = new Bucket<>(this.buckets[i]);
             newBuckets[i].setCount(newCount);
-            newBuckets[i].setDistinctCount(newCount);
+            newBuckets[i].setDistinctCount(Math.min(newCount, newDistinctCount));
         }
 
         return new Histogram(newBuckets);
@@ -430,14 +681,15 @@ public class Histogram {
 
     //uniformly reduces the values across the board with the mean reduction assumes uncorrelated
     public Histogram copyWithReduction(float reduction) {
-        Bucket<Float> [] newBuckets = this.buckets.clone();
+        Bucket<Float> [] newBuckets = newBuckets(this.buckets.length);
 
         for (int i = 0; i < this.buckets.length; i++) {
             int newCount = (int) Math.round(reduction * this.buckets[i].getCount());
             int newDistinctCount = (int) Math.round(reduction * this.buckets[i].getDistinctCount());
 
+            newBuckets[i] = new Bucket<>(this.buckets[i]);
             newBuckets[i].setCount(newCount);
-            newBuckets[i].setDistinctCount(newCount);
+            newBuckets[i].setDistinctCount(Math.min(newCount, newDistinctCount));
         }
 
         return new Histogram(newBuckets);
@@ -0,0 +1,180 @@
+package edu.berkeley.cs186.database.table.stats;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import edu.berkeley.cs186.database.BaseTransaction;
+import edu.berkeley.cs186.database.common.Bits;
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
+
+/**
+ * Builds the histograms of every column of a table in a single pass over its
+ * data pages, instead of the two passes per column of
+ * Histogram.buildHistogram.
+ *
+ * The range of each histogram is known before the pass begins, from the
+ * smallest and largest values that TableStats has seen added to the table.
+ * The data pages are read directly, and split into contiguous ranges that are
+ * read by the workers of a ForkJoinPool, one range per worker of the pool, each
+ * of which fills histograms of its own that are merged once all the workers
+ * are done. Without a pool, the pages are read on the calling thread.
+ *
+ * The histograms are filled with FINE_BUCKETS_PER_BUCKET times as many buckets
+ * of equal width as are wanted, which are then merged into equi-depth buckets
+ * (see Histogram.toEquiDepth).
+ *
+ * With a sample fraction below 1, only a random sample of that fraction of the
+ * data pages is read (block sampling), and the counts of the histograms are
+ * scaled up to the number of records in the table.
+ */
+class StatisticsBuilder {
+    // Each worker reads at least this many data pages.
+    static final int MIN_PAGES_PER_WORKER = 4;
+    // The number of buckets of equal width read for each equi-depth bucket.
+    static final int FINE_BUCKETS_PER_BUCKET = 8;
+
+    private Table table;
+    private Schema schema;
+    private int numBuckets;
+    private float[] minValues;
+    private float[] maxValues;
+
+    StatisticsBuilder(Table table, int numBuckets, float[] minValues, float[] maxValues) {
+        this.table = table;
+        this.schema = table.getSchema();
+        this.numBuckets = numBuckets;
+        this.minValues = minValues;
+        this.maxValues = maxValues;
+    }
+
+    /**
+     * The result of a build: a histogram on each column, and the number of
+     * records that were read to build them.
+     */
+    static class Result {
+        List<Histogram> histograms;
+        int numRecordsRead;
+
+        Result(List<Histogram> histograms, int numRecordsRead) {
+            this.histograms = histograms;
+            this.numRecordsRead = numRecordsRead;
+        }
+    }
+
+    /**
+     * Builds a histogram on each column from sampleFraction of the data pages,
+     * on the workers of pool, or on the calling thread if pool is null.
+     */
+    Result build(BaseTransaction transaction, float sampleFraction, ForkJoinPool pool, long seed) {
+        List<Page> pages = this.samplePages(transaction, sampleFraction, seed);
+        int parallelism = pool == null ? 1 : pool.getParallelism();
+        int numWorkers = Math.max(1, Math.min(parallelism, pages.size() / MIN_PAGES_PER_WORKER));
+
+        Result result;
+        if (numWorkers == 1) {
+            result = this.read(transaction, pages);
+        } else {
+            List<Future<Result>> futures = new ArrayList<>();
+            int start = 0;
+            for (int i = 0; i < numWorkers; i++) {
+                int end = start + (pages.size() - start) / (numWorkers - i);
+                List<Page> range = pages.subList(start, end);
+                futures.add(pool.submit(() -> this.read(transaction, range)));
+                start = end;
+            }
+            result = null;
+            for (Future<Result> future : futures) {
+                Result part;
+                try {
+                    part = future.get();
+                } catch (InterruptedException | ExecutionException e) {
+                    throw new RuntimeException("Failed to build statistics on " + this.table.getName(), e);
+                }
+                if (result == null) {
+                    result = part;
+                } else {
+                    for (int c = 0; c < result.histograms.size(); c++) {
+                        result.histograms.get(c).merge(part.histograms.get(c));
+                    }
+                    result.numRecordsRead += part.numRecordsRead;
+                }
+            }
+        }
+
+        for (int c = 0; c < result.histograms.size(); c++) {
+            result.histograms.set(c, result.histograms.get(c).toEquiDepth(this.numBuckets));
+        }
+        if (sampleFraction < 1.0f && result.numRecordsRead > 0) {
+            float factor = (float) this.table.getNumRecords() / result.numRecordsRead;
+            for (Histogram histogram : result.histograms) {
+                histogram.scale(factor);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Picks each data page with probability sampleFraction, but at least one
+     * page if there are any.
+     */
+    private List<Page> samplePages(BaseTransaction transaction, float sampleFraction, long seed) {
+        Random random = new Random(seed);
+        List<Page> pages = new ArrayList<>();
+        Page lastPage = null;
+        Iterator<Page> iter = this.table.getAllocator().iterator(transaction);
+        iter.next(); // Skip the header page.
+        while (iter.hasNext()) {
+            lastPage = iter.next();
+            if (sampleFraction >= 1.0f || random.nextFloat() < sampleFraction) {
+                pages.add(lastPage);
+            }
+        }
+        if (pages.isEmpty() && lastPage != null) {
+            pages.add(lastPage);
+        }
+        return pages;
+    }
+
+    /**
+     * Reads the records of pages into a new histogram on each column.
+     */
+    private Result read(BaseTransaction transaction, List<Page> pages) {
+        List<Histogram> histograms = new ArrayList<>();
+        for (int c = 0; c < this.minValues.length; c++) {
+            Histogram histogram = new Histogram(this.numBuckets * FINE_BUCKETS_PER_BUCKET);
+            histogram.setRange(this.minValues[c], this.maxValues[c]);
+            histograms.add(histogram);
+        }
+
+        int bitmapSize = this.table.getBitmapSizeInBytes();
+        int recordSize = this.schema.getSizeInBytes();
+        int numRecordsRead = 0;
+        for (Page page : pages) {
+            byte[] bytes = page.readBytes(transaction);
+            Buffer buf = ByteBuffer.wrap(bytes);
+            for (int entry = 0; entry < this.table.getNumRecordsPerPage(); entry++) {
+                if (Bits.getBit(bytes[entry / 8], entry % 8) == Bits.Bit.ZERO) {
+                    continue;
+                }
+                buf.position(bitmapSize + entry * recordSize);
+                List<DataBox> values = Record.fromBytes(buf, this.schema).getValues();
+                for (int c = 0; c < values.size(); c++) {
+                    histograms.get(c).addValue(values.get(c));
+                }
+                numRecordsRead++;
+            }
+        }
+        return new Result(histograms, numRecordsRead);
+    }
+}
@@ -1,9 +1,14 @@
 package edu.berkeley.cs186.database.table.stats;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import edu.berkeley.cs186.database.BaseTransaction;
+import edu.berkeley.cs186.database.common.Buffer;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.Page;
@@ -45,12 +50,46 @@ import edu.berkeley.cs186.database.table.Table;
  *   stats.getNumRecords(); // Estimated number of records.
  *   stats.getNumPages();   // Estimated number of pages.
  *   stats.getHistograms(); // Histograms on each column.
+ *
+ * Once the histograms have been built by refreshHistograms, they are kept up
+ * to date as records are added and removed, so that they need not be rebuilt
+ * after every change to the table. They can be built from a sample of the
+ * pages of the table, in which case getSelectivityError bounds the error of
+ * the selectivities estimated from them.
+ *
+ * A TableStats can be serialized with toBytes, so that a table can save its
+ * statistics when it is closed and load them when it is opened again instead
+ * of reading every record. The serialized form begins with FORMAT_VERSION and
+ * the schema, and canLoad checks both before it is read back.
  */
 public class TableStats {
+    // The version of the format written by toBytes, which is changed whenever
+    // the format of TableStats, Histogram, Bucket, DistinctSketch or
+    // FrequentValues changes.
+    public static final int FORMAT_VERSION = 2;
+
     private Schema tableSchema;
     private int numRecords;
     private List<Histogram> histograms;
 
+    // Whether the histograms have been built, after which records added and
+    // removed are added to and removed from them.
+    private boolean histogramsBuilt;
+
+    // The fraction of the pages of the table and the number of records the
+    // histograms were last built from.
+    private float sampleFraction;
+    private int numSampledRecords;
+
+    // The number of times the histograms have been built, so that a plan made
+    // with them can tell that they have been rebuilt since.
+    private int numRefreshes;
+
+    // The smallest and largest quantized value added to each column, which
+    // are the ranges of the histograms when they are built.
+    private float[] minValues;
+    private float[] maxValues;
+
     /** Construct a TableStats for an empty table with schema `tableSchema`. */
     public TableStats(Schema tableSchema) {
         this.tableSchema = tableSchema;
@@ -60,37 +99,86 @@ public class TableStats {
             Histogram h = new Histogram();
             this.histograms.add(h);
         }
+        this.histogramsBuilt = false;
+        this.sampleFraction = 1.0f;
+        this.numSampledRecords = 0;
+        initRanges();
     }
 
     private TableStats(Schema tableSchema, int numRecords, List<Histogram> histograms) {
         this.tableSchema = tableSchema;
         this.numRecords = numRecords;
         this.histograms = histograms;
+        this.histogramsBuilt = false;
+        this.sampleFraction = 1.0f;
+        this.numSampledRecords = 0;
+        initRanges();
+    }
+
+    private void initRanges() {
+        int numColumns = tableSchema.getFieldNames().size();
+        this.minValues = new float[numColumns];
+        this.maxValues = new float[numColumns];
+        Arrays.fill(this.minValues, Float.MAX_VALUE);
+        Arrays.fill(this.maxValues, -Float.MAX_VALUE);
     }
 
     // Modifiers /////////////////////////////////////////////////////////////////
     public void addRecord(Record record) {
         numRecords++;
+        List<DataBox> values = record.getValues();
+        for (int i = 0; i < values.size(); i++) {
+            float qvalue = Histogram.quantization(values.get(i));
+            minValues[i] = Math.min(minValues[i], qvalue);
+            maxValues[i] = Math.max(maxValues[i], qvalue);
+            if (histogramsBuilt) {
+                histograms.get(i).addValue(values.get(i));
+            }
+        }
     }
 
+    /**
+     * Builds a histogram with `buckets` buckets on every column of `tab` from
+     * all of its pages, on the worker pool of `transaction`.
+     */
     public void refreshHistograms(BaseTransaction transaction, int buckets, Table tab) {
-        List<Histogram> newHistograms = new ArrayList<>();
-        int count = 0;
-        int totalRecords = 0;
-        for (Type t : tableSchema.getFieldTypes()) {
-            Histogram h = new Histogram(buckets);
-            h.buildHistogram(transaction, tab, count);
-            newHistograms.add(h);
-            totalRecords += h.getCount();
-            count++;
-        }
+        refreshHistograms(transaction, buckets, tab, 1.0f,
+                          transaction == null ? null : transaction.getWorkerPool());
+    }
 
-        this.histograms = newHistograms;
-        this.numRecords = (int) Math.round(((float)totalRecords) / count);
+    /**
+     * Builds an equi-depth histogram with `buckets` buckets on every column of
+     * `tab` in a single pass over a random sample of `sampleFraction` of its
+     * data pages, read by the workers of `pool`, or on the calling thread if
+     * `pool` is null.
+     */
+    public void refreshHistograms(BaseTransaction transaction, int buckets, Table tab,
+                                  float sampleFraction, ForkJoinPool pool) {
+        if (sampleFraction <= 0.0f || sampleFraction > 1.0f) {
+            throw new IllegalArgumentException("The sample fraction must be in (0, 1].");
+        }
+        StatisticsBuilder builder = new StatisticsBuilder(tab, buckets, minValues, maxValues);
+        StatisticsBuilder.Result result = builder.build(transaction, sampleFraction, pool,
+                                                        System.nanoTime());
+
+        this.histograms = result.histograms;
+        this.histogramsBuilt = true;
+        this.numRefreshes++;
+        this.sampleFraction = sampleFraction;
+        this.numSampledRecords = result.numRecordsRead;
+        if (sampleFraction >= 1.0f) {
+            this.numRecords = result.numRecordsRead;
+        }
     }
 
     public void removeRecord(Record record) {
         numRecords = Math.max(numRecords - 1, 0);
+        if (histogramsBuilt) {
+            List<DataBox> values = record.getValues();
+            for (int i = 0; i < values.size(); i++) {
+                histograms.get(i).removeValue(values.get(i));
+            }
+        }
     }
 
     // Accessors /////////////////////////////////////////////////////////////////
@@ -119,6 +207,102 @@ public class TableStats {
         return histograms;
     }
 
+    /** Returns the number of times the histograms have been built. */
+    public int getNumRefreshes() {
+        return numRefreshes;
+    }
+
+    public float getSampleFraction() {
+        return sampleFraction;
+    }
+
+    /**
+     * Returns the standard error of a selectivity estimated from the
+     * histograms, if the true selectivity is `selectivity`. It is 0 if the
+     * histograms were built from the whole table, and otherwise that of a
+     * proportion in a sample of numSampledRecords of the records, with the
+     * finite population correction for the sample fraction. Pages are sampled
+     * whole, so for columns clustered by page the error can be larger.
+     */
+    public float getSelectivityError(float selectivity) {
+        if (sampleFraction >= 1.0f || numSampledRecords == 0) {
+            return 0.0f;
+        }
+        double variance = selectivity * (1.0 - selectivity) / numSampledRecords * (1.0 - sampleFraction);
+        return (float) Math.sqrt(variance);
+    }
+
+    // Serialization /////////////////////////////////////////////////////////////
+    public byte[] toBytes() {
+        // We write FORMAT_VERSION (4 bytes), the length of the serialized
+        // schema (4 bytes) and the schema, the number of records (4 bytes),
+        // whether the histograms have been built (1 byte), the sample fraction
+        // (4 bytes) and the number of sampled records (4 bytes). Then we write
+        // the min and max value of each column (4 bytes each) and the histogram
+        // of each column.
+        byte[] schemaBytes = tableSchema.toBytes();
+        int numColumns = minValues.length;
+        ByteBuffer header = ByteBuffer.allocate(4 * Integer.BYTES + schemaBytes.length + 1 +
+                                                Float.BYTES + 2 * Float.BYTES * numColumns);
+        header.putInt(FORMAT_VERSION);
+        header.putInt(schemaBytes.length);
+        header.put(schemaBytes);
+        header.putInt(numRecords);
+        header.put((byte) (histogramsBuilt ? 1 : 0));
+        header.putFloat(sampleFraction);
+        header.putInt(numSampledRecords);
+        for (int i = 0; i < numColumns; i++) {
+            header.putFloat(minValues[i]);
+            header.putFloat(maxValues[i]);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(header.array(), 0, header.capacity());
+        for (Histogram histogram : histograms) {
+            byte[] histogramBytes = histogram.toBytes();
+            bytes.write(histogramBytes, 0, histogramBytes.length);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns whether bytes were written by toBytes in the current format, for
+     * a table with schema `schema` and `numRecords` records.
+     */
+    public static boolean canLoad(byte[] bytes, Schema schema, long numRecords) {
+        byte[] schemaBytes = schema.toBytes();
+        int headerSize = 3 * Integer.BYTES + schemaBytes.length;
+        if (bytes.length < headerSize) {
+            return false;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        if (buf.getInt() != FORMAT_VERSION || buf.getInt() != schemaBytes.length) {
+            return false;
+        }
+        byte[] savedSchemaBytes = new byte[schemaBytes.length];
+        buf.get(savedSchemaBytes);
+        return Arrays.equals(savedSchemaBytes, schemaBytes) && buf.getInt() == numRecords;
+    }
+
+    public static TableStats fromBytes(Buffer buf) {
+        buf.getInt(); // FORMAT_VERSION, checked by canLoad.
+        buf.getInt(); // The length of the schema.
+        Schema schema = Schema.fromBytes(buf);
+        TableStats stats = new TableStats(schema);
+        stats.numRecords = buf.getInt();
+        stats.histogramsBuilt = buf.get() == 1;
+        stats.sampleFraction = buf.getFloat();
+        stats.numSampledRecords = buf.getInt();
+        for (int i = 0; i < stats.minValues.length; i++) {
+            stats.minValues[i] = buf.getFloat();
+            stats.maxValues[i] = buf.getFloat();
+        }
+        for (int i = 0; i < stats.histograms.size(); i++) {
+            stats.histograms.set(i, Histogram.fromBytes(buf));
+        }
+        return stats;
+    }
+
     // Copiers ///////////////////////////////////////////////////////////////////
     /**
      * Estimates the table statistics for the table that would be produced after
@@ -172,11 +356,43 @@ public class TableStats {
             }
         }
 
-        Histogram qhistogram = histograms.get(column);
+        Histogram qhistogram = copyHistograms.get(column);
         int numRecords = qhistogram.getCount();
         return new TableStats(this.tableSchema, numRecords, copyHistograms);
     }
 
+    /**
+     * Estimates the number of records in the table that results from this
+     * TableStats joined with the given TableStats, without creating the
+     * TableStats of the result (see copyWithJoin).
+     *
+     * @param leftIndex the index of the join column for this
+     * @param rightStats the TableStats of the right table to be joined
+     * @param rightIndex the index of the join column for the right table
+     * @return the estimated number of records in the result
+     */
+    public int estimateJoinNumRecords(int leftIndex, TableStats rightStats, int rightIndex) {
+        // The product of the sizes of two large tables overflows an int.
+        double inputSize = (double) this.numRecords * rightStats.getNumRecords();
+
+        int leftNumDistinct;
+        if (this.histograms.size() > 0) {
+            leftNumDistinct = this.histograms.get(leftIndex).getNumDistinct() + 1;
+        } else {
+            leftNumDistinct = 1;
+        }
+
+        int rightNumDistinct;
+        if (rightStats.histograms.size() > 0) {
+            rightNumDistinct = rightStats.histograms.get(rightIndex).getNumDistinct() + 1;
+        } else {
+            rightNumDistinct = 1;
+        }
+
+        double numRecords = inputSize / Math.max(leftNumDistinct, rightNumDistinct);
+        return (int) Math.min(numRecords, Integer.MAX_VALUE);
+    }
+
     /**
      * Creates a new TableStats which is the statistics for the table
      * that results from this TableStats joined with the given TableStats.
@@ -205,7 +421,7 @@ public class TableStats {
 
         //System.out.println(this.numRecords  + " " +rightStats.getNumRecords());
 
-        int inputSize = this.numRecords * rightStats.getNumRecords();
+        int outputSize = this.estimateJoinNumRecords(leftIndex, rightStats, rightIndex);
 
         int leftNumDistinct;
         if (this.histograms.size() > 0) {
@@ -221,8 +437,6 @@ public class TableStats {
             rightNumDistinct = 1;
         }
 
-        float reductionFactor = 1.0f / Math.max(leftNumDistinct, rightNumDistinct);
-
         List<Histogram> copyHistograms = new ArrayList<Histogram>();
 
         int leftNumRecords = this.numRecords;
@@ -246,8 +460,6 @@ public class TableStats {
             copyHistograms.add(rightHistogram.copyWithReduction(rightReductionFactor));
         }
 
-        int outputSize = (int)(reductionFactor * inputSize);
-
         return new TableStats(joinedSchema, outputSize, copyHistograms);
     }
 }
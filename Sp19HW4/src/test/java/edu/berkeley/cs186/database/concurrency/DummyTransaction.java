@@ -2,6 +2,7 @@ package edu.berkeley.cs186.database.concurrency;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import edu.berkeley.cs186.database.BaseTransaction;
 import edu.berkeley.cs186.database.DatabaseException;
@@ -195,6 +196,10 @@ public class DummyTransaction extends BaseTransaction {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    public ForkJoinPool getWorkerPool() {
+        return null;
+    }
+
     public void block() {
         this.blocked = true;
         lockManager.emit("block " + tNum);
@@ -15,6 +15,9 @@ import edu.berkeley.cs186.database.query.QueryPlan.PredicateOperator;
 import edu.berkeley.cs186.database.query.QueryPlan;
 import edu.berkeley.cs186.database.query.QueryOperator;
 import edu.berkeley.cs186.database.query.QueryPlanException;
+import edu.berkeley.cs186.database.query.ProjectOperator;
+import edu.berkeley.cs186.database.query.SelectOperator;
+import edu.berkeley.cs186.database.query.SequentialScanOperator;
 
 import edu.berkeley.cs186.database.table.Table;
 import edu.berkeley.cs186.database.table.Record;
@@ -153,6 +156,87 @@ public class TestBasicQuery {
 
     }
 
+    private static int countRecords(QueryOperator op) throws DatabaseException, QueryPlanException {
+        Iterator<Record> records = op.execute();
+        int count = 0;
+        while (records.hasNext()) {
+            records.next();
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testFloatSelectsOnNegativeZero() throws DatabaseException, QueryPlanException {
+        Table table = db.getTable(TABLENAME);
+        BaseTransaction transaction = db.beginTransaction();
+
+        //creates 20 records, 5 holding -0.0, 5 holding 0.0 and the rest 10 to 19
+        for (int i = 0; i < 20; ++i) {
+            float f = i < 5 ? -0.0f : i < 10 ? 0.0f : i;
+            table.addRecord(transaction, createRecordWithAllTypes(true, i, "a", f).getValues());
+        }
+        transaction.end();
+        Database.Transaction t = this.db.beginTransaction();
+
+        // A select over a scan is evaluated by the scan, and one over a project
+        // by the SelectOperator itself, and both compare floats with ==.
+        for (PredicateOperator operator : Arrays.asList(PredicateOperator.EQUALS, PredicateOperator.NOT_EQUALS)) {
+            QueryOperator fused = new SelectOperator(new SequentialScanOperator(t, TABLENAME), "float",
+                    operator, new FloatDataBox(0.0f));
+            QueryOperator project = new ProjectOperator(new SequentialScanOperator(t, TABLENAME),
+                    this.schema.getFieldNames(), false, null, null);
+            QueryOperator unfused = new SelectOperator(project, "float", operator, new FloatDataBox(0.0f));
+            assertEquals(10, countRecords(fused));
+            assertEquals(10, countRecords(unfused));
+        }
+        t.end();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSelectsOnEveryType() throws DatabaseException, QueryPlanException {
+        Table table = db.getTable(TABLENAME);
+        BaseTransaction transaction = db.beginTransaction();
+
+        //creates 100 records int 0 to 99, with every other one true and "even"
+        try {
+            for (int i = 0; i < 100; ++i) {
+                Record r = createRecordWithAllTypes(i % 2 == 0, i, i % 2 == 0 ? "even" : "odd",
+                                                    i / 2.0f);
+                table.addRecord(transaction, r.getValues());
+            }
+        } catch(DatabaseException e) {}
+
+        table.buildStatistics(transaction, 10);
+
+        transaction.end();
+        transaction = this.db.beginTransaction();
+
+        // the selects are evaluated together by the scan, on the bytes of the records
+        QueryPlan query = transaction.query("T");
+        query.select("int", PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(10));
+        query.select("int", PredicateOperator.LESS_THAN, new IntDataBox(90));
+        query.select("bool", PredicateOperator.EQUALS, new BoolDataBox(true));
+        query.select("float", PredicateOperator.NOT_EQUALS, new FloatDataBox(20.0f));
+        query.select("string", PredicateOperator.GREATER_THAN, new StringDataBox("eve", 5));
+        query.select("string", PredicateOperator.LESS_THAN_EQUALS, new StringDataBox("even", 5));
+
+        Iterator<Record> queryOutput = query.executeOptimal();
+
+        int count = 0;
+        while (queryOutput.hasNext()) {
+            Record r = queryOutput.next();
+            int i = r.getValues().get(1).getInt();
+            assertTrue(i >= 10 && i < 90 && i != 40);
+            assertEquals(new BoolDataBox(true), r.getValues().get(0));
+            assertEquals(new StringDataBox("even", 5), r.getValues().get(2));
+            count++;
+        }
+        assertEquals(39, count);
+    }
+
     @Test
     @Category(PublicTests.class)
     public void testGroupBy() throws DatabaseException, QueryPlanException {
@@ -194,4 +278,53 @@ public class TestBasicQuery {
 
         assertEquals(count, 10);
     }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testExplainAnalyze() throws DatabaseException, QueryPlanException {
+        Table table = db.getTable(TABLENAME);
+        BaseTransaction transaction = db.beginTransaction();
+
+        //creates 100 records int 0 to 99
+        try {
+            for (int i = 0; i < 100; ++i) {
+                Record r = createRecordWithAllTypes(false, i, "test", 0.0f);
+                table.addRecord(transaction, r.getValues());
+            }
+        } catch(DatabaseException e) {}
+
+        table.buildStatistics(transaction, 10);
+
+        transaction.end();
+        transaction = this.db.beginTransaction();
+
+        QueryPlan query = transaction.query("T");
+        query.select("int", PredicateOperator.LESS_THAN, new IntDataBox(30));
+        query.project(Arrays.asList("int"));
+
+        String analyzed = query.explainAnalyze();
+
+        // project <- select <- sequential scan, each with what it produced
+        QueryOperator project = query.getFinalOperator();
+        QueryOperator select = project.getSource();
+        QueryOperator scan = select.getSource();
+        assertTrue(project.isProject());
+        assertTrue(select.isSelect());
+        assertTrue(scan.isSequentialScan());
+
+        assertEquals(1, project.getProfile().getNumExecutions());
+        assertEquals(30, project.getProfile().getNumRecords());
+        assertEquals(30, select.getProfile().getNumRecords());
+        // the predicate is evaluated by the scan itself
+        assertEquals(30, scan.getProfile().getNumRecords());
+        assertTrue(scan.getProfile().getNumIOs() > 0);
+
+        // what an operator did itself excludes what its source did
+        assertEquals(select.getProfile().getNumIOs() - scan.getProfile().getNumIOs(),
+                     select.getExclusiveProfile().getNumIOs());
+        assertTrue(project.getProfile().getNanos() >= select.getProfile().getNanos());
+
+        assertTrue(analyzed.contains("actual: records: 30,"));
+        assertTrue(analyzed.contains("estimated: records: " + scan.getStats().getNumRecords()));
+    }
 }
@@ -0,0 +1,131 @@
+package edu.berkeley.cs186.database.optimization;
+
+import edu.berkeley.cs186.database.*;
+import edu.berkeley.cs186.database.categories.*;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Paths;
+
+import edu.berkeley.cs186.database.query.CostCalibrator;
+import edu.berkeley.cs186.database.query.CostModel;
+import edu.berkeley.cs186.database.query.QueryPlanException;
+import edu.berkeley.cs186.database.query.SequentialScanOperator;
+
+import edu.berkeley.cs186.database.table.Record;
+
+import static org.junit.Assert.*;
+
+@Category(HW4Tests.class)
+public class TestCostModel {
+    public static final String TABLENAME = "T";
+
+    public static final String TestDir = "testDatabase";
+    private Database db;
+    private String filename;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void beforeEach() throws Exception {
+        File testDir = tempFolder.newFolder(TestDir);
+        this.filename = testDir.getAbsolutePath();
+        this.db = new DatabaseWithTableStub(filename);
+        BaseTransaction t = this.db.beginTransaction();
+        t.deleteAllTables();
+        t.createTable(TestUtils.createSchemaWithAllTypes(), TABLENAME);
+        t.end();
+    }
+
+    @After
+    public void afterEach() {
+        BaseTransaction t = this.db.beginTransaction();
+        t.deleteAllTables();
+        t.end();
+        this.db.close();
+    }
+
+    private void addRecords(int n) throws DatabaseException {
+        Database.Transaction transaction = this.db.beginTransaction();
+        for (int i = 0; i < n; ++i) {
+            Record r = TestUtils.createRecordWithAllTypes();
+            transaction.addRecord(TABLENAME, r.getValues());
+        }
+        transaction.end();
+    }
+
+    private int getScanCost() throws DatabaseException, QueryPlanException {
+        Database.Transaction transaction = this.db.beginTransaction();
+        int cost = new SequentialScanOperator(transaction, TABLENAME).getIOCost();
+        transaction.end();
+        return cost;
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSaveAndLoad() throws Exception {
+        String costModelFilename = Paths.get(this.filename, CostModel.FILENAME).toString();
+        CostModel costModel = new CostModel();
+        costModel.setCoefficient("SEQSCAN", 2.5f);
+        costModel.setCoefficient("BNLJ", 0.75f);
+        costModel.save(costModelFilename);
+
+        CostModel loaded = CostModel.load(costModelFilename);
+        assertEquals(2.5f, loaded.getCoefficient("SEQSCAN"), 0.0f);
+        assertEquals(0.75f, loaded.getCoefficient("BNLJ"), 0.0f);
+        assertEquals(1.0f, loaded.getCoefficient("SNLJ"), 0.0f);
+
+        // A missing file is a default CostModel.
+        CostModel missing = CostModel.load(Paths.get(this.filename, "missing").toString());
+        assertEquals(1.0f, missing.getCoefficient("SEQSCAN"), 0.0f);
+        assertEquals(42, missing.scale("SEQSCAN", 42));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testDatabaseScalesEstimates() throws Exception {
+        this.addRecords(1000);
+        int cost = this.getScanCost();
+        assertTrue(cost > 0);
+
+        CostModel costModel = new CostModel();
+        costModel.setCoefficient("SEQSCAN", 2.0f);
+        costModel.save(Paths.get(this.filename, CostModel.FILENAME).toString());
+
+        this.db.close();
+        this.db = new DatabaseWithTableStub(this.filename);
+        assertEquals(2 * cost, this.getScanCost());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    @Category(PublicTests.class)
+    public void testInvalidCoefficient() {
+        new CostModel().setCoefficient("SEQSCAN", 0.0f);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testCalibrate() throws Exception {
+        CostCalibrator calibrator = new CostCalibrator(this.db, 100, 400);
+        CostModel costModel = calibrator.calibrate();
+        String report = calibrator.report();
+
+        // Sequential scans are the unit everything else is measured in.
+        assertEquals(1.0f, costModel.getCoefficient("SEQSCAN"), 0.0f);
+        assertTrue(report, report.contains("SEQSCAN: runs: 2"));
+        assertTrue(report, report.contains("SNLJ: runs: 4"));
+        assertTrue(costModel.getCoefficient("SNLJ") > 0.0f);
+
+        // Every kind of operator is either measured or skipped.
+        for (String kind : new String[] {"INDEXSCAN", "PNLJ", "BNLJ", "GRACEHASH", "SORTMERGE"}) {
+            assertTrue(report, report.contains(kind + ": "));
+        }
+
+        // The generated tables are deleted.
+        assertNull(this.db.getTable("calibration_l100"));
+        assertNotNull(this.db.getTable(TABLENAME));
+    }
+}
@@ -7,14 +7,27 @@ import org.junit.experimental.categories.Category;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.query.QueryPlan.PredicateOperator;
+import edu.berkeley.cs186.database.query.BNLJOperator;
+import edu.berkeley.cs186.database.query.GraceHashOperator;
+import edu.berkeley.cs186.database.query.IndexScanOperator;
+import edu.berkeley.cs186.database.query.JoinOperator;
+import edu.berkeley.cs186.database.query.PNLJOperator;
 import edu.berkeley.cs186.database.query.QueryPlan;
 import edu.berkeley.cs186.database.query.QueryOperator;
 import edu.berkeley.cs186.database.query.QueryPlanException;
+import edu.berkeley.cs186.database.query.SNLJOperator;
+import edu.berkeley.cs186.database.query.SequentialScanOperator;
+import edu.berkeley.cs186.database.query.SortMergeOperator;
 
 import edu.berkeley.cs186.database.table.Table;
 import edu.berkeley.cs186.database.table.Record;
@@ -22,9 +35,12 @@ import edu.berkeley.cs186.database.databox.IntDataBox;
 import edu.berkeley.cs186.database.databox.StringDataBox;
 import edu.berkeley.cs186.database.databox.FloatDataBox;
 import edu.berkeley.cs186.database.databox.BoolDataBox;
+import edu.berkeley.cs186.database.databox.Type;
 
 import org.junit.After;
 
+import static org.junit.Assert.*;
+
 @Category(HW4Tests.class)
 public class TestOptimizationJoins {
     private Schema schema;
@@ -324,10 +340,251 @@ public class TestOptimizationJoins {
 
         QueryOperator finalOperator = query.getFinalOperator();
 
-        //smallest to largest order
-        assert(finalOperator.toString().contains("\t\t\ttable: To1"));
-        assert(finalOperator.toString().contains("\t\t\ttable: To4"));
-        assert(finalOperator.toString().contains("\t\ttable: To2"));
-        assert(finalOperator.toString().contains("\ttable: To3"));
+        //every record of To1 and To4 has the same string, so their join is
+        //left for last: To2 and To3 are joined first, then To1, then To4
+        assert(finalOperator.toString().contains("\t\t\ttable: To2"));
+        assert(finalOperator.toString().contains("\t\t\ttable: To3"));
+        assert(finalOperator.toString().contains("\t\ttable: To1"));
+        assert(finalOperator.toString().contains("\ttable: To4"));
+        assert(!finalOperator.toString().contains("\t\t\ttable: To4"));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSortMergeSkipsOrderedInputs() throws DatabaseException, QueryPlanException {
+        Table table = db.getTable(TABLENAME + "I");
+        Database.Transaction transaction = db.beginTransaction();
+
+        for (int i = 0; i < 1000; ++i) {
+            Record r = createRecordWithAllTypes(false, i, "test", 0.0f);
+            table.addRecord(transaction, r.getValues());
+        }
+        table.buildStatistics(transaction, 10);
+        transaction.end();
+        transaction = this.db.beginTransaction();
+
+        transaction.queryAs("TI", "t1");
+        transaction.queryAs("TI", "t2");
+
+        QueryOperator seqScan1 = new SequentialScanOperator(transaction, "t1");
+        QueryOperator seqScan2 = new SequentialScanOperator(transaction, "t2");
+        QueryOperator indexScan1 = new IndexScanOperator(transaction, "t1", "int",
+                PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(500));
+        QueryOperator indexScan2 = new IndexScanOperator(transaction, "t2", "int",
+                PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(500));
+        assertNull(seqScan1.getOutputOrder());
+        assertEquals("t1.int", indexScan1.getOutputOrder());
+
+        // Inputs that come in order of the join column are only read to merge.
+        QueryOperator sorted = new SortMergeOperator(indexScan1, indexScan2, "int", "int", transaction);
+        assertEquals(indexScan1.getStats().getNumPages() + indexScan2.getStats().getNumPages(),
+                     sorted.getIOCost());
+        assertEquals("t1.int", sorted.getOutputOrder());
+
+        QueryOperator unsorted = new SortMergeOperator(seqScan1, seqScan2, "int", "int", transaction);
+        assertTrue(unsorted.getIOCost() > seqScan1.getStats().getNumPages() +
+                   seqScan2.getStats().getNumPages());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testFindInterestingOrders() throws DatabaseException, QueryPlanException {
+        Table table = db.getTable(TABLENAME + "I");
+        Database.Transaction transaction = db.beginTransaction();
+
+        for (int i = 0; i < 100; ++i) {
+            Record r = createRecordWithAllTypes(false, i, "test", 0.0f);
+            table.addRecord(transaction, r.getValues());
+        }
+        table.buildStatistics(transaction, 10);
+        transaction.end();
+        transaction = this.db.beginTransaction();
+
+        transaction.queryAs("TI", "t1");
+        transaction.queryAs("TI", "t2");
+        transaction.queryAs("TI", "t3");
+
+        QueryPlan query = transaction.query("t1");
+        query.join("t2", "t1.int", "t2.int");
+        query.join("t3", "t2.string", "t3.string");
+
+        Map<String, QueryOperator> pass1Map = new HashMap<>();
+        pass1Map.put("t1", new SequentialScanOperator(transaction, "t1"));
+        pass1Map.put("t2", new SequentialScanOperator(transaction, "t2"));
+        pass1Map.put("t3", new SequentialScanOperator(transaction, "t3"));
+
+        Map<String, List<String>> orders = query.findInterestingOrders(pass1Map);
+        assertEquals(Collections.singletonList("t1.int"), orders.get("t1"));
+        assertEquals(Arrays.asList("t2.int", "t2.string"), orders.get("t2"));
+        assertEquals(Collections.singletonList("t3.string"), orders.get("t3"));
+
+        // An order the single access operator already produces is not remaining.
+        pass1Map.put("t1", new IndexScanOperator(transaction, "t1", "int",
+                     PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(50)));
+        assertEquals(Collections.emptyList(), query.findInterestingOrders(pass1Map).get("t1"));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGreedyBushyJoin() throws DatabaseException, QueryPlanException {
+        BaseTransaction transaction = db.beginTransaction();
+        int[] numRecords = {100, 10, 10, 100};
+        for (int t = 0; t < numRecords.length; t++) {
+            Table table = db.getTable(TABLENAME + "o" + (t + 1));
+            for (int i = 0; i < numRecords[t]; ++i) {
+                Record r = createRecordWithAllTypes(false, i, "test", 0.0f);
+                table.addRecord(transaction, r.getValues());
+            }
+            table.buildStatistics(transaction, 10);
+        }
+
+        // end + create a new transaction
+        transaction.end();
+        transaction = this.db.beginTransaction();
+
+        // Every record of To2 and To3 has the same bool, so the small joins of
+        // To1 with To2 and To3 with To4 should be made first, and then joined.
+        QueryPlan query = transaction.query("To1");
+        query.join("To2", "To1.one_int", "To2.two_int");
+        query.join("To3", "To2.two_bool", "To3.three_bool");
+        query.join("To4", "To3.three_int", "To4.four_int");
+        query.setGreedyJoinThreshold(1);
+
+        query.executeOptimal();
+
+        QueryOperator finalOperator = query.getFinalOperator();
+        assertTrue(finalOperator.isJoin());
+        assertTrue(((JoinOperator) finalOperator).getLeftSource().isJoin());
+        assertTrue(((JoinOperator) finalOperator).getRightSource().isJoin());
+        for (int t = 1; t <= 4; t++) {
+            assertTrue(finalOperator.toString().contains("table: To" + t));
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGreedyLargeTables() throws DatabaseException, QueryPlanException {
+        BaseTransaction transaction = db.beginTransaction();
+        // Wide records, so that few are stored on each page.
+        for (String prefix : new String[] {"a_", "b_"}) {
+            Schema wideSchema = new Schema(Arrays.asList(prefix + "bool", prefix + "int", prefix + "string"),
+                                           Arrays.asList(Type.boolType(), Type.intType(),
+                                                         Type.stringType(200)));
+            transaction.createTable(wideSchema, TABLENAME + prefix);
+            Table table = db.getTable(TABLENAME + prefix);
+            for (int i = 0; i < 50000; ++i) {
+                table.addRecord(transaction, Arrays.asList(new BoolDataBox(false), new IntDataBox(i),
+                                new StringDataBox("test", 200)));
+            }
+            table.buildStatistics(transaction, 10);
+        }
+        Table small = db.getTable("To1");
+        for (int i = 0; i < 10; ++i) {
+            Record r = createRecordWithAllTypes(false, i, "test", 0.0f);
+            small.addRecord(transaction, r.getValues());
+        }
+        small.buildStatistics(transaction, 10);
+
+        // end + create a new transaction
+        transaction.end();
+        transaction = this.db.beginTransaction();
+
+        // Every record of Ta_ and Tb_ has the same bool, so the product of their
+        // sizes does not fit in an int, and their join should be made last.
+        QueryPlan query = transaction.query("Ta_");
+        query.join("Tb_", "Ta_.a_bool", "Tb_.b_bool");
+        query.join("To1", "Tb_.b_int", "To1.one_int");
+        query.setGreedyJoinThreshold(1);
+
+        query.executeOptimal();
+
+        QueryOperator finalOperator = query.getFinalOperator();
+        assertTrue(finalOperator.isJoin());
+        assert(finalOperator.toString().contains("\t\ttable: Tb_"));
+        assert(finalOperator.toString().contains("\t\ttable: To1"));
+        assert(!finalOperator.toString().contains("\t\ttable: Ta_"));
+    }
+
+    // Returns, for every int value, the number of records joined on it, checking
+    // that the join columns of each record (the second and sixth) are equal.
+    private static Map<Integer, Integer> countJoinedValues(Iterator<Record> records) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        while (records.hasNext()) {
+            Record r = records.next();
+            int value = r.getValues().get(1).getInt();
+            assertEquals(value, r.getValues().get(5).getInt());
+            counts.merge(value, 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testJoinResults() throws DatabaseException, QueryPlanException {
+        Database.Transaction transaction = db.beginTransaction();
+        Table table = db.getTable(TABLENAME);
+        for (int i = 0; i < 1000; ++i) {
+            Record r = createRecordWithAllTypes(false, i, "test", 0.0f);
+            table.addRecord(transaction, r.getValues());
+        }
+        table.buildStatistics(transaction, 10);
+        Table other = db.getTable(TABLENAME + "o1");
+        for (int i = 0; i < 400; ++i) {
+            Record r = createRecordWithAllTypes(false, i % 200, "test", 0.0f);
+            other.addRecord(transaction, r.getValues());
+        }
+        other.buildStatistics(transaction, 10);
+        transaction.end();
+
+        // Every value from 0 to 199 is joined twice.
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200; ++i) {
+            expected.put(i, 2);
+        }
+
+        transaction = this.db.beginTransaction();
+        QueryPlan query = transaction.query(TABLENAME);
+        query.join(TABLENAME + "o1", TABLENAME + ".int", TABLENAME + "o1.one_int");
+        assertEquals(expected, countJoinedValues(query.executeOptimal()));
+
+        // Whichever type of join the optimizer picks returns the same records.
+        List<JoinOperator> joins = new ArrayList<>();
+        for (int i = 0; i < 5; ++i) {
+            QueryOperator left = new SequentialScanOperator(transaction, TABLENAME);
+            QueryOperator right = new SequentialScanOperator(transaction, TABLENAME + "o1");
+            switch (i) {
+            case 0:
+                joins.add(new SNLJOperator(left, right, "int", "one_int", transaction));
+                break;
+            case 1:
+                joins.add(new PNLJOperator(left, right, "int", "one_int", transaction));
+                break;
+            case 2:
+                joins.add(new BNLJOperator(left, right, "int", "one_int", transaction));
+                break;
+            case 3:
+                joins.add(new SortMergeOperator(left, right, "int", "one_int", transaction));
+                break;
+            default:
+                joins.add(new GraceHashOperator(left, right, "int", "one_int", transaction));
+                break;
+            }
+        }
+        for (JoinOperator join : joins) {
+            assertEquals(join.getJoinType().toString(), expected, countJoinedValues(join.execute()));
+        }
+        transaction.end();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGreedyJoinThreshold() throws DatabaseException, QueryPlanException {
+        QueryPlan query = db.beginTransaction().query("To1");
+        try {
+            query.setGreedyJoinThreshold(0);
+            fail();
+        } catch (QueryPlanException e) {
+            // Every query has at least one table.
+        }
     }
 }
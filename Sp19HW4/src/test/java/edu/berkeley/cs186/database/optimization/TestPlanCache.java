@@ -0,0 +1,207 @@
+package edu.berkeley.cs186.database.optimization;
+
+import edu.berkeley.cs186.database.*;
+import edu.berkeley.cs186.database.categories.*;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.query.IndexScanOperator;
+import edu.berkeley.cs186.database.query.JoinOperator;
+import edu.berkeley.cs186.database.query.PlanCache;
+import edu.berkeley.cs186.database.query.QueryPlan.PredicateOperator;
+import edu.berkeley.cs186.database.query.QueryPlan;
+import edu.berkeley.cs186.database.query.QueryOperator;
+import edu.berkeley.cs186.database.query.QueryPlanException;
+
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.BoolDataBox;
+
+import static org.junit.Assert.*;
+
+@Category(HW4Tests.class)
+public class TestPlanCache {
+    public static final String TABLENAME = "T";
+
+    public static final String TestDir = "testDatabase";
+    private Database db;
+    private String filename;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void beforeEach() throws Exception {
+        File testDir = tempFolder.newFolder(TestDir);
+        this.filename = testDir.getAbsolutePath();
+        this.db = new DatabaseWithTableStub(filename);
+        BaseTransaction t = this.db.beginTransaction();
+        t.deleteAllTables();
+
+        Schema schema = TestUtils.createSchemaWithAllTypes();
+        t.createTableWithIndices(schema, TABLENAME + "I", Arrays.asList("int"));
+        t.createTable(TestUtils.createSchemaWithAllTypes("one_"), TABLENAME + "o1");
+
+        t.end();
+    }
+
+    @After
+    public void afterEach() {
+        BaseTransaction t = this.db.beginTransaction();
+        t.deleteAllTables();
+        t.end();
+        this.db.close();
+    }
+
+    //creates a record with all specified types
+    private static Record createRecordWithAllTypes(boolean a1, int a2, String a3, float a4) {
+        Record r = TestUtils.createRecordWithAllTypes();
+        r.getValues().set(0, new BoolDataBox(a1));
+        r.getValues().set(1, new IntDataBox(a2));
+        r.getValues().set(2, new StringDataBox(a3, 5));
+        r.getValues().set(3, new FloatDataBox(a4));
+        return r;
+    }
+
+    private void addRecords(String tableName, int start, int end) throws DatabaseException {
+        Database.Transaction transaction = this.db.beginTransaction();
+        for (int i = start; i < end; ++i) {
+            Record r = createRecordWithAllTypes(false, i, "test", 0.0f);
+            transaction.addRecord(tableName, r.getValues());
+        }
+        transaction.end();
+    }
+
+    private void buildStatistics(String tableName) {
+        BaseTransaction transaction = this.db.beginTransaction();
+        this.db.getTable(tableName).buildStatistics(transaction, 10);
+        transaction.end();
+    }
+
+    // Joins TI with To1 on int, for the TI records whose int equals value, and
+    // returns the operators of the plan. (Several of the join iterators are left
+    // to be implemented, so the plan is checked rather than its records.)
+    private QueryOperator runQuery(int value) throws DatabaseException, QueryPlanException {
+        Database.Transaction transaction = this.db.beginTransaction();
+        transaction.queryAs(TABLENAME + "I", "t1");
+        transaction.queryAs(TABLENAME + "o1", "t2");
+
+        QueryPlan query = transaction.query("t1");
+        query.join("t2", "t1.int", "t2.one_int");
+        query.select("t1.int", PredicateOperator.EQUALS, new IntDataBox(value));
+
+        query.executeOptimal();
+        QueryOperator op = query.getFinalOperator();
+        transaction.end();
+        return op;
+    }
+
+    // Returns the index scan of the plan, which has to be on t1.int.
+    private IndexScanOperator getIndexScan(QueryOperator op) throws QueryPlanException {
+        assertTrue(op.isJoin());
+        JoinOperator join = (JoinOperator) op;
+        for (QueryOperator source : Arrays.asList(join.getLeftSource(), join.getRightSource())) {
+            while (source.isSelect()) {
+                source = source.getSource();
+            }
+            if (source.isIndexScan()) {
+                return (IndexScanOperator) source;
+            }
+        }
+        fail("No index scan in plan:\n" + op);
+        return null;
+    }
+
+    private PlanCache getPlanCache() {
+        Database.Transaction transaction = this.db.beginTransaction();
+        PlanCache planCache = transaction.getPlanCache();
+        transaction.end();
+        return planCache;
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testReusesPlanWithNewValues() throws DatabaseException, QueryPlanException {
+        this.addRecords(TABLENAME + "I", 0, 1000);
+        this.addRecords(TABLENAME + "o1", 0, 100);
+        this.buildStatistics(TABLENAME + "I");
+        this.buildStatistics(TABLENAME + "o1");
+
+        PlanCache planCache = this.getPlanCache();
+        QueryOperator first = this.runQuery(9);
+        assertEquals(new IntDataBox(9), this.getIndexScan(first).getValue());
+        assertEquals(0, planCache.getNumHits());
+        assertEquals(1, planCache.getNumMisses());
+
+        // The same shape with another value reuses the plan, with the new value.
+        QueryOperator second = this.runQuery(42);
+        assertEquals(new IntDataBox(42), this.getIndexScan(second).getValue());
+        assertEquals(first.toString().replace("value: 9", "value: 42"), second.toString());
+        this.runQuery(500);
+        assertEquals(2, planCache.getNumHits());
+        assertEquals(1, planCache.getNumMisses());
+        assertEquals(1, planCache.size());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testStatisticsDriftInvalidatesPlan() throws DatabaseException, QueryPlanException {
+        this.addRecords(TABLENAME + "I", 0, 1000);
+        this.addRecords(TABLENAME + "o1", 0, 100);
+        this.buildStatistics(TABLENAME + "I");
+        this.buildStatistics(TABLENAME + "o1");
+
+        PlanCache planCache = this.getPlanCache();
+        this.runQuery(9);
+
+        // A few more records are not enough to plan again.
+        this.addRecords(TABLENAME + "o1", 100, 105);
+        this.runQuery(9);
+        assertEquals(1, planCache.getNumHits());
+        assertEquals(1, planCache.getNumMisses());
+
+        // Many more records are.
+        this.addRecords(TABLENAME + "o1", 105, 200);
+        this.runQuery(150);
+        assertEquals(1, planCache.getNumHits());
+        assertEquals(2, planCache.getNumMisses());
+
+        // As are rebuilt histograms.
+        this.buildStatistics(TABLENAME + "I");
+        this.runQuery(9);
+        assertEquals(1, planCache.getNumHits());
+        assertEquals(3, planCache.getNumMisses());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testIndexChangesClearCache() throws DatabaseException, QueryPlanException {
+        this.addRecords(TABLENAME + "I", 0, 100);
+        this.addRecords(TABLENAME + "o1", 0, 100);
+
+        PlanCache planCache = this.getPlanCache();
+        this.runQuery(9);
+        assertEquals(1, planCache.size());
+
+        BaseTransaction t = this.db.beginTransaction();
+        t.createTableWithIndices(TestUtils.createSchemaWithAllTypes("two_"), TABLENAME + "o2",
+                                 Arrays.asList("two_int"));
+        t.end();
+        assertEquals(0, planCache.size());
+
+        this.runQuery(9);
+        assertEquals(1, planCache.size());
+
+        t = this.db.beginTransaction();
+        t.deleteTable(TABLENAME + "o2");
+        t.end();
+        assertEquals(0, planCache.size());
+    }
+}
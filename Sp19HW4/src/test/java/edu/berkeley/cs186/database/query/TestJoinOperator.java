@@ -456,4 +456,49 @@ public class TestJoinOperator {
         }
         assertTrue(count == 82944);
     }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGraceHashNegativeZero() throws QueryPlanException, DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("joinTest");
+        // With 3 partitions, Float.hashCode would send 0.0 and -0.0 to
+        // different partitions in the first pass.
+        Database d = new Database(tempDir.getAbsolutePath(), 4);
+        Database.Transaction transaction = d.beginTransaction();
+
+        // Wide records, so that both tables are partitioned.
+        Schema schema = new Schema(Arrays.asList("float", "string"),
+                                   Arrays.asList(Type.floatType(), Type.stringType(250)));
+        transaction.createTable(schema, "leftTable");
+        transaction.createTable(schema, "rightTable");
+
+        // -0.0 on the left and 0.0 on the right are equal join values.
+        for (int i = 1; i < 200; i++) {
+            transaction.addRecord("leftTable", Arrays.asList(new FloatDataBox(i), new StringDataBox("l", 250)));
+            transaction.addRecord("rightTable", Arrays.asList(new FloatDataBox(200 - i),
+                                  new StringDataBox("r", 250)));
+        }
+        for (int i = 0; i < 5; i++) {
+            transaction.addRecord("leftTable", Arrays.asList(new FloatDataBox(-0.0f), new StringDataBox("l", 250)));
+            transaction.addRecord("rightTable", Arrays.asList(new FloatDataBox(0.0f), new StringDataBox("r", 250)));
+        }
+
+        QueryOperator s1 = new SequentialScanOperator(transaction, "leftTable");
+        QueryOperator s2 = new SequentialScanOperator(transaction, "rightTable");
+        Iterator<Record> outputIterator = new GraceHashOperator(s1, s2, "float", "float", transaction).iterator();
+        int numZeros = 0;
+        int count = 0;
+        while (outputIterator.hasNext()) {
+            List<DataBox> values = outputIterator.next().getValues();
+            assertEquals(values.get(0), values.get(2));
+            if (values.get(0).getFloat() == 0.0f) {
+                numZeros++;
+            }
+            count++;
+        }
+        assertEquals(5 * 5, numZeros);
+        assertEquals(199 + 5 * 5, count);
+        // The inputs were partitioned into temporary tables.
+        assertNotEquals("tempTable0", transaction.createTempTable(schema));
+    }
 }
@@ -0,0 +1,89 @@
+package edu.berkeley.cs186.database.stats;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.table.stats.DistinctSketch;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.*;
+
+@Category(HW4Tests.class)
+public class TestDistinctSketch {
+    @Test
+    @Category(PublicTests.class)
+    public void testExactWhenSmall() {
+        DistinctSketch sketch = new DistinctSketch();
+        for (int i = 0; i < 1000; i++) {
+            sketch.add((float) (i % 100));
+        }
+        assertEquals(100, sketch.estimate());
+
+        // 5 was added ten times, so it is only forgotten once it has been
+        // removed ten times.
+        sketch.remove(5.0f);
+        sketch.remove(1000.0f);
+        assertEquals(100, sketch.estimate());
+        for (int i = 0; i < 9; i++) {
+            sketch.remove(5.0f);
+        }
+        assertEquals(99, sketch.estimate());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testEstimateLarge() {
+        DistinctSketch sketch = new DistinctSketch();
+        for (int i = 0; i < 100000; i++) {
+            sketch.add((float) i);
+            sketch.add((float) i);
+        }
+        // The standard error with 1024 registers is about 3%.
+        assertEquals(100000, sketch.estimate(), 100000 * 0.1);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testMerge() {
+        DistinctSketch small = new DistinctSketch();
+        DistinctSketch a = new DistinctSketch();
+        DistinctSketch b = new DistinctSketch();
+        for (int i = 0; i < 50; i++) {
+            small.add((float) i);
+        }
+        for (int i = 0; i < 20000; i++) {
+            a.add((float) i);
+            b.add((float) (i + 10000));
+        }
+
+        DistinctSketch smalls = small.copy();
+        smalls.merge(small);
+        assertEquals(50, smalls.estimate());
+        smalls.remove(0.0f);
+        assertEquals(50, smalls.estimate());
+        smalls.remove(0.0f);
+        assertEquals(49, smalls.estimate());
+
+        a.merge(b);
+        assertEquals(30000, a.estimate(), 30000 * 0.1);
+        small.merge(a);
+        assertEquals(a.estimate(), small.estimate());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSerialization() {
+        DistinctSketch exact = new DistinctSketch();
+        DistinctSketch estimated = new DistinctSketch();
+        for (int i = 0; i < 5000; i++) {
+            exact.add((float) (i % 10));
+            estimated.add((float) i);
+        }
+        DistinctSketch loaded = DistinctSketch.fromBytes(ByteBuffer.wrap(exact.toBytes()));
+        assertEquals(10, loaded.estimate());
+        loaded.remove(0.0f);
+        assertEquals(10, loaded.estimate());
+        assertEquals(estimated.estimate(),
+                     DistinctSketch.fromBytes(ByteBuffer.wrap(estimated.toBytes())).estimate());
+    }
+}
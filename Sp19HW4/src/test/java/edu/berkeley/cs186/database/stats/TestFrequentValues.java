@@ -0,0 +1,59 @@
+package edu.berkeley.cs186.database.stats;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.table.stats.FrequentValues;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.*;
+
+@Category(HW4Tests.class)
+public class TestFrequentValues {
+    @Test
+    @Category(PublicTests.class)
+    public void testHeavyHitters() {
+        FrequentValues values = new FrequentValues();
+        // 1000 each of 0 and 1, among 2000 values seen once.
+        for (int i = 0; i < 2000; i++) {
+            values.add(i % 4 == 0 ? 0.0f : (i % 4 == 1 ? 1.0f : (float) (i + 100)));
+            values.add((float) (-i - 1));
+        }
+        int zeros = values.getCount(0.0f);
+        int ones = values.getCount(1.0f);
+        assertTrue(zeros > 0 && zeros <= 500);
+        assertTrue(ones > 0 && ones <= 500);
+        assertTrue(values.getValues().contains(0.0f));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testExactWhenFew() {
+        FrequentValues values = new FrequentValues();
+        for (int i = 0; i < 100; i++) {
+            values.add((float) (i % 10));
+        }
+        assertEquals(10, values.getCount(3.0f));
+        values.remove(3.0f);
+        assertEquals(9, values.getCount(3.0f));
+        assertEquals(0, values.getCount(42.0f));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testMergeAndSerialize() {
+        FrequentValues a = new FrequentValues();
+        FrequentValues b = new FrequentValues();
+        for (int i = 0; i < 100; i++) {
+            a.add(7.0f);
+            b.add(7.0f);
+            b.add((float) i);
+        }
+        a.merge(b);
+        assertTrue(a.getCount(7.0f) >= 100 && a.getCount(7.0f) <= 201);
+
+        FrequentValues copy = FrequentValues.fromBytes(ByteBuffer.wrap(a.toBytes()));
+        assertEquals(a.getValues(), copy.getValues());
+        assertEquals(a.getCount(7.0f), copy.getCount(7.0f));
+    }
+}
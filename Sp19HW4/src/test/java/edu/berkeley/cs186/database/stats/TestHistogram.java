@@ -298,4 +298,34 @@ public class TestHistogram {
         }
 
     }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testCopyWithReduction() {
+        //creates a 100 records int 0 to 99
+        try {
+            for (int i = 0; i < 100; ++i) {
+                Record r = createRecordWithAllTypes(false, i, "test", 0.0f);
+                table.addRecord(null, r.getValues());
+            }
+        } catch(DatabaseException e) {}
+
+        //creates a histogram of 10 buckets
+        Histogram h = new Histogram(10);
+        h.buildHistogram(null, table, 1); //build on the integer col
+
+        Histogram reduced = h.copyWithReduction(0.5f);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(5, reduced.get(i).getCount());
+            assertEquals(5, reduced.get(i).getDistinctCount());
+        }
+
+        //the histogram that was copied is left as it was
+        assertEquals(100, h.getCount());
+        assertEquals(100, h.getNumDistinct());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(10, h.get(i).getCount());
+            assertEquals(10, h.get(i).getDistinctCount());
+        }
+    }
 }
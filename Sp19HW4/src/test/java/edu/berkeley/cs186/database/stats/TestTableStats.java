@@ -0,0 +1,268 @@
+package edu.berkeley.cs186.database.stats;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.query.QueryPlan.PredicateOperator;
+import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
+import edu.berkeley.cs186.database.table.TableStub;
+import edu.berkeley.cs186.database.table.stats.Histogram;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+@Category(HW4Tests.class)
+public class TestTableStats {
+    private Table table;
+    private String filename;
+    private ForkJoinPool pool;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void beforeEach() throws Exception {
+        // Wide records, so that the table has many pages.
+        Schema schema = new Schema(Arrays.asList("int", "string"),
+                                   Arrays.asList(Type.intType(), Type.stringType(400)));
+        File file = tempFolder.newFile("testtable" + Table.FILENAME_EXTENSION);
+        this.filename = file.getAbsolutePath();
+        this.table = new TableStub("testtable", schema, this.filename, new DummyLockContext(), null);
+        this.pool = new ForkJoinPool(4);
+    }
+
+    @After
+    public void afterEach() {
+        this.table.close();
+        this.pool.shutdownNow();
+    }
+
+    private List<RecordId> addRecords(int start, int end) throws DatabaseException {
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = start; i < end; i++) {
+            List<DataBox> values = Arrays.asList(new IntDataBox(i % 50), new StringDataBox("s" + i, 400));
+            rids.add(table.addRecord(null, values));
+        }
+        return rids;
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testRefreshBuildsEquiDepthHistograms() throws DatabaseException {
+        addRecords(0, 200);
+        TableStats stats = table.getStats();
+        stats.refreshHistograms(null, 10, table, 1.0f, this.pool);
+
+        assertEquals(200, stats.getNumRecords());
+        assertEquals(0.0f, stats.getSelectivityError(0.5f), 0.0f);
+        for (int c = 0; c < 2; c++) {
+            Histogram histogram = stats.getHistograms().get(c);
+            assertEquals(200, histogram.getCount());
+            for (int i = 1; i < 10; i++) {
+                assertEquals(histogram.get(i - 1).getEnd(), histogram.get(i).getStart());
+            }
+        }
+
+        // Each of the 50 ints is in 4 records, so each bucket holds 5 of them.
+        Histogram ints = stats.getHistograms().get(0);
+        assertEquals(50, ints.getNumDistinct());
+        assertEquals(0.0f, ints.get(0).getStart(), 0.0f);
+        assertEquals(49.0f, ints.get(9).getEnd(), 0.001f);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(20, ints.get(i).getCount());
+            assertEquals(5, ints.get(i).getDistinctCount());
+        }
+
+        // Strings that share their first characters are still counted apart.
+        assertEquals(200, stats.getHistograms().get(1).getNumDistinct());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSkewedEquiDepth() throws DatabaseException {
+        // Half of the records hold 0, and the rest hold 500 to 999.
+        for (int i = 0; i < 1000; i++) {
+            int x = i < 500 ? 0 : i;
+            table.addRecord(null, Arrays.asList(new IntDataBox(x), new StringDataBox("s" + i, 400)));
+        }
+        TableStats stats = table.getStats();
+        stats.refreshHistograms(null, 10, table, 1.0f, this.pool);
+
+        // 0 gets a bucket of its own, and the other buckets share the rest.
+        Histogram ints = stats.getHistograms().get(0);
+        assertEquals(500, ints.get(0).getCount());
+        for (int i = 1; i < 10; i++) {
+            assertEquals(500 / 9.0, ints.get(i).getCount(), 15);
+        }
+
+        IntDataBox zero = new IntDataBox(0);
+        assertEquals(0.5, ints.computeReductionFactor(PredicateOperator.EQUALS, zero), 0.001);
+        assertEquals(0.001, ints.computeReductionFactor(PredicateOperator.EQUALS, new IntDataBox(700)), 0.001);
+        assertEquals(0.5, ints.computeReductionFactor(PredicateOperator.NOT_EQUALS, zero), 0.001);
+        assertEquals(0.75, ints.computeReductionFactor(PredicateOperator.LESS_THAN, new IntDataBox(750)), 0.02);
+        assertEquals(0.1, ints.computeReductionFactor(PredicateOperator.GREATER_THAN, new IntDataBox(900)), 0.02);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testStringRanges() throws DatabaseException {
+        // The first letter of the strings cycles through the alphabet.
+        for (int i = 0; i < 520; i++) {
+            String s = (char) ('A' + i % 26) + String.format("%03d", i);
+            table.addRecord(null, Arrays.asList(new IntDataBox(i), new StringDataBox(s, 400)));
+        }
+        TableStats stats = table.getStats();
+        stats.refreshHistograms(null, 10, table, 1.0f, this.pool);
+
+        Histogram strings = stats.getHistograms().get(1);
+        assertEquals(520, strings.getNumDistinct());
+        assertEquals(0.5, strings.computeReductionFactor(PredicateOperator.LESS_THAN,
+                     new StringDataBox("N", 400)), 0.05);
+        assertEquals(0.25, strings.computeReductionFactor(PredicateOperator.GREATER_THAN_EQUALS,
+                     new StringDataBox("T", 400)), 0.05);
+        assertEquals(1 / 520.0, strings.computeReductionFactor(PredicateOperator.EQUALS,
+                     new StringDataBox("B001", 400)), 0.001);
+        assertEquals(0.0, strings.computeReductionFactor(PredicateOperator.LESS_THAN,
+                     new StringDataBox("A", 400)), 0.0);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSampledRefresh() throws DatabaseException {
+        addRecords(0, 1000);
+        TableStats stats = table.getStats();
+        stats.refreshHistograms(null, 10, table, 0.5f, this.pool);
+
+        assertEquals(1000, stats.getNumRecords());
+        assertEquals(0.5f, stats.getSampleFraction(), 0.0f);
+        // The counts are scaled up to the whole table, up to rounding in each bucket.
+        assertEquals(1000, stats.getHistograms().get(0).getCount(), 10);
+        float error = stats.getSelectivityError(0.5f);
+        assertTrue(error > 0.0f && error < 0.05f);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testIncrementalMaintenance() throws DatabaseException {
+        List<RecordId> rids = addRecords(0, 100);
+        TableStats stats = table.getStats();
+        stats.refreshHistograms(null, 10, table, 1.0f, null);
+        Histogram ints = stats.getHistograms().get(0);
+        assertEquals(100, ints.getCount());
+        assertEquals(10, ints.get(0).getCount());
+
+        // Values 0 to 4 are in the first bucket.
+        addRecords(0, 5);
+        assertEquals(105, ints.getCount());
+        assertEquals(15, ints.get(0).getCount());
+
+        for (RecordId rid : rids.subList(0, 5)) {
+            table.deleteRecord(null, rid);
+        }
+        assertEquals(100, ints.getCount());
+        assertEquals(10, ints.get(0).getCount());
+
+        table.updateRecord(null, Arrays.asList(new IntDataBox(49), new StringDataBox("x", 400)), rids.get(50));
+        assertEquals(9, ints.get(0).getCount());
+        assertEquals(11, ints.get(9).getCount());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testStatisticsSavedOnClose() throws DatabaseException {
+        List<RecordId> rids = addRecords(0, 200);
+        TableStats stats = table.getStats();
+        stats.refreshHistograms(null, 10, table, 1.0f, this.pool);
+        table.close();
+
+        File statsFile = new File(Table.getStatsFilename(filename));
+        assertTrue(statsFile.exists());
+        table = new TableStub("testtable", filename, new DummyLockContext(), null);
+        assertFalse(statsFile.exists());
+
+        TableStats loaded = table.getStats();
+        assertEquals(200, loaded.getNumRecords());
+        for (int c = 0; c < 2; c++) {
+            Histogram expected = stats.getHistograms().get(c);
+            Histogram actual = loaded.getHistograms().get(c);
+            assertEquals(expected.getNumDistinct(), actual.getNumDistinct());
+            for (int i = 0; i < 10; i++) {
+                assertEquals(expected.get(i), actual.get(i));
+                assertEquals(expected.get(i).getDistinctCount(), actual.get(i).getDistinctCount());
+            }
+        }
+        IntDataBox zero = new IntDataBox(0);
+        assertEquals(stats.getHistograms().get(0).computeReductionFactor(PredicateOperator.EQUALS, zero),
+                     loaded.getHistograms().get(0).computeReductionFactor(PredicateOperator.EQUALS, zero),
+                     0.0f);
+
+        // The loaded histograms are still kept up to date.
+        table.deleteRecord(null, rids.get(0));
+        assertEquals(199, loaded.getHistograms().get(0).getCount());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testOutdatedStatisticsIgnored() throws Exception {
+        addRecords(0, 200);
+        table.getStats().refreshHistograms(null, 10, table, 1.0f, this.pool);
+        table.close();
+
+        // Statistics in another format are recomputed from the records.
+        File statsFile = new File(Table.getStatsFilename(filename));
+        Files.write(statsFile.toPath(), new byte[] {0, 0, 0, 0});
+        table = new TableStub("testtable", filename, new DummyLockContext(), null);
+        assertEquals(200, table.getStats().getNumRecords());
+        assertEquals(0, table.getStats().getHistograms().get(0).getCount());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testTruncatedStatisticsRecomputed() throws Exception {
+        addRecords(0, 200);
+        table.getStats().refreshHistograms(null, 10, table, 1.0f, this.pool);
+        table.close();
+        File statsFile = new File(Table.getStatsFilename(filename));
+        assertFalse(new File(statsFile.getPath() + ".tmp").exists());
+
+        // The header is whole, so the damage is only found once the
+        // statistics are read back.
+        byte[] bytes = Files.readAllBytes(statsFile.toPath());
+        Files.write(statsFile.toPath(), Arrays.copyOf(bytes, bytes.length / 2));
+        table = new TableStub("testtable", filename, new DummyLockContext(), null);
+        assertEquals(200, table.getStats().getNumRecords());
+        assertEquals(0, table.getStats().getHistograms().get(0).getCount());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testTemporaryTableSavesNoStatistics() throws DatabaseException {
+        addRecords(0, 10);
+        table.setTemporary();
+        table.close();
+        assertFalse(new File(Table.getStatsFilename(filename)).exists());
+
+        // The table is reopened only so that afterEach can close it.
+        table = new TableStub("testtable", filename, new DummyLockContext(), null);
+        assertEquals(10, table.getStats().getNumRecords());
+    }
+}